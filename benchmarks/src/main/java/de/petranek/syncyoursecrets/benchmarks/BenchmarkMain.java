@@ -0,0 +1,77 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * The Class BenchmarkMain runs the benchmarks of the crypto path.
+ *
+ * Without arguments, all benchmarks run twice: single-threaded and with one
+ * thread per processor, both with the GC profiler, which reports the
+ * allocation rate and the bytes allocated per operation. With arguments, the
+ * usual JMH command line applies, e.g.
+ *
+ * java -jar benchmarks.jar CipherBenchmark -p size=1048576 -t 4 -prof gc
+ *
+ * @author Jan Petranek
+ */
+public final class BenchmarkMain {
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private BenchmarkMain() {
+		super();
+	}
+
+	/**
+	 * Run the benchmarks.
+	 *
+	 * @param args
+	 *            the JMH command line, may be empty
+	 *
+	 * @throws RunnerException
+	 *             when a benchmark fails
+	 * @throws IOException
+	 *             when the command line cannot be parsed
+	 */
+	public static void main(String[] args) throws RunnerException,
+			IOException {
+		if (args.length > 0) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads : processors > 1 ? new int[] { 1, processors }
+				: new int[] { 1 }) {
+			Options options = new OptionsBuilder().include(
+					BenchmarkMain.class.getPackage().getName() + ".*")
+					.threads(threads).addProfiler(GCProfiler.class).build();
+			new Runner(options).run();
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.benchmarks;
+
+import de.petranek.syncyoursecrets.crypto.ChunkedCipher;
+import de.petranek.syncyoursecrets.crypto.CipherEngine;
+import de.petranek.syncyoursecrets.crypto.CipherScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class CipherBenchmark measures the ciphers alone, with a fixed key: no
+ * key derivation, no header, no Base64. AES-CBC comes from Bouncycastle,
+ * AES-GCM from the JRE, as in EnryptionUtil. The chunked scheme runs through
+ * ChunkedCipher and the common ForkJoinPool.
+ *
+ * @author Jan Petranek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CipherBenchmark {
+
+	/** The key size in bytes. */
+	private static final int KEY_SIZE = 32;
+
+	/** The associated data of the chunked scheme. */
+	private static final byte[] AAD = new byte[0];
+
+	/** The plaintext size in bytes, 1 KiB to 100 MiB. */
+	@Param({ "1024", "65536", "1048576", "10485760", "104857600" })
+	public int size;
+
+	/** The cipher scheme. */
+	@Param
+	public CipherScheme scheme;
+
+	/** The plaintext. */
+	private byte[] plaintext;
+
+	/** The cyphertext of the plaintext. */
+	private byte[] cyphertext;
+
+	/** The IV or nonce prefix of the cyphertext. */
+	private byte[] iv;
+
+	/** The key. */
+	private SecretKeySpec key;
+
+	/** The engine of the scheme. */
+	private CipherEngine engine;
+
+	/**
+	 * Create plaintext, key and the cyphertext to decrypt.
+	 *
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	@Setup
+	public void setUp() throws Exception {
+		plaintext = Payloads.createBytes(size);
+		key = new SecretKeySpec(CipherEngine.randomBytes(KEY_SIZE), "AES");
+		engine = scheme.isAuthenticated() ? new CipherEngine(null)
+				: new CipherEngine(CipherEngine.bouncyCastle());
+		iv = createIv();
+		if (scheme.isChunked()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			OutputStream plain = createChunkedCipher(iv).encrypt(out);
+			plain.write(plaintext);
+			plain.close();
+			cyphertext = out.toByteArray();
+		} else {
+			cyphertext = createCipher(Cipher.ENCRYPT_MODE, iv).doFinal(
+					plaintext);
+		}
+	}
+
+	/**
+	 * Encrypt the plaintext with a fresh IV.
+	 *
+	 * @return the size of the cyphertext
+	 *
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	@Benchmark
+	public long encrypt() throws Exception {
+		if (scheme.isChunked()) {
+			Payloads.CountingOutputStream sink = new Payloads.CountingOutputStream();
+			OutputStream plain = createChunkedCipher(createIv()).encrypt(sink);
+			plain.write(plaintext);
+			plain.close();
+			return sink.getCount();
+		}
+		return createCipher(Cipher.ENCRYPT_MODE, createIv()).doFinal(
+				plaintext).length;
+	}
+
+	/**
+	 * Decrypt the cyphertext.
+	 *
+	 * @return the size of the plaintext
+	 *
+	 * @throws Exception
+	 *             when the decryption fails
+	 */
+	@Benchmark
+	public long decrypt() throws Exception {
+		if (scheme.isChunked()) {
+			return Payloads.drain(createChunkedCipher(iv).decrypt(
+					new ByteArrayInputStream(cyphertext)));
+		}
+		return createCipher(Cipher.DECRYPT_MODE, iv).doFinal(cyphertext).length;
+	}
+
+	/**
+	 * Create a fresh IV, or nonce prefix for the chunked scheme. The JRE
+	 * refuses to encrypt twice with the same key and IV.
+	 *
+	 * @return the IV
+	 */
+	private byte[] createIv() {
+		return CipherEngine.randomBytes(scheme.getIvSize());
+	}
+
+	/**
+	 * Create a cipher of the scheme.
+	 *
+	 * @param mode
+	 *            the cipher mode
+	 * @param cipherIv
+	 *            the IV
+	 *
+	 * @return the initialized cipher
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	private Cipher createCipher(int mode, byte[] cipherIv)
+			throws GeneralSecurityException {
+		return engine.newCipher(scheme.getTransformation(), mode, key, scheme
+				.createParameters(cipherIv));
+	}
+
+	/**
+	 * Create a chunked cipher.
+	 *
+	 * @param prefix
+	 *            the nonce prefix
+	 *
+	 * @return the chunked cipher
+	 */
+	private ChunkedCipher createChunkedCipher(byte[] prefix) {
+		return new ChunkedCipher(engine, key.getEncoded(), prefix, AAD,
+				ChunkedCipher.DEFAULT_CHUNK_SIZE);
+	}
+
+}
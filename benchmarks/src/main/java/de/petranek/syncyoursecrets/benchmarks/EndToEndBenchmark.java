@@ -0,0 +1,185 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.benchmarks;
+
+import de.petranek.syncyoursecrets.crypto.DerivedKeyCache;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class EndToEndBenchmark measures EnryptionUtil as the application uses
+ * it, key derivation included:
+ *
+ * STRING_DERIVED and STRING_CACHED use encryptString/decryptString, the
+ * Jasypt compatible Base64 format, without and with the key cache. As each
+ * string gets a fresh salt, the cache only helps decryption.
+ *
+ * STREAM_DERIVED and STREAM_CACHED use encryptStream/decryptStream, the
+ * binary containers, without and with the key cache.
+ *
+ * SESSION uses the streams with an unlocked VaultSession.
+ *
+ * @author Jan Petranek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EndToEndBenchmark {
+
+	/** The plaintext size in bytes, 1 KiB to 100 MiB. */
+	@Param({ "1024", "65536", "1048576", "10485760", "104857600" })
+	public int size;
+
+	/** The way through EnryptionUtil. */
+	@Param({ "STRING_DERIVED", "STRING_CACHED", "STREAM_DERIVED",
+			"STREAM_CACHED", "SESSION" })
+	public String path;
+
+	/** The plaintext. */
+	private String plaintext;
+
+	/** The plaintext, UTF-8 encoded. */
+	private byte[] plainBytes;
+
+	/** The encrypted string. */
+	private String cypherString;
+
+	/** The container. */
+	private byte[] container;
+
+	/** The unlocked session. */
+	private VaultSession session;
+
+	/**
+	 * Create the plaintext and its cyphertext, configure the key cache and
+	 * unlock the session.
+	 *
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	@Setup
+	public void setUp() throws Exception {
+		plaintext = Payloads.createText(size);
+		plainBytes = plaintext.getBytes(StandardCharsets.UTF_8);
+		EnryptionUtil.getKeyCache().setMaxEntries(
+				path.endsWith("_DERIVED") ? 0
+						: DerivedKeyCache.DEFAULT_MAX_ENTRIES);
+		session = EnryptionUtil.unlock(Payloads.PASSWORD.toCharArray());
+
+		if (path.startsWith("STRING")) {
+			cypherString = EnryptionUtil.encryptString(plaintext,
+					Payloads.PASSWORD);
+		} else {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writeContainer(out);
+			container = out.toByteArray();
+		}
+	}
+
+	/**
+	 * Wipe keys and restore the default cache.
+	 */
+	@TearDown
+	public void tearDown() {
+		session.close();
+		EnryptionUtil.lock();
+		EnryptionUtil.getKeyCache().setMaxEntries(
+				DerivedKeyCache.DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Encrypt the plaintext.
+	 *
+	 * @return the size of the cyphertext
+	 *
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	@Benchmark
+	public long encrypt() throws Exception {
+		if (path.startsWith("STRING")) {
+			return EnryptionUtil.encryptString(plaintext, Payloads.PASSWORD)
+					.length();
+		}
+		Payloads.CountingOutputStream sink = new Payloads.CountingOutputStream();
+		writeContainer(sink);
+		return sink.getCount();
+	}
+
+	/**
+	 * Decrypt the cyphertext.
+	 *
+	 * @return the size of the plaintext
+	 *
+	 * @throws Exception
+	 *             when the decryption fails
+	 */
+	@Benchmark
+	public long decrypt() throws Exception {
+		if (path.startsWith("STRING")) {
+			return EnryptionUtil.decryptString(cypherString,
+					Payloads.PASSWORD).length();
+		}
+		InputStream cypher = new ByteArrayInputStream(container);
+		InputStream plain = "SESSION".equals(path) ? EnryptionUtil
+				.decryptStream(cypher, session) : EnryptionUtil.decryptStream(
+				cypher, Payloads.PASSWORD);
+		return Payloads.drain(plain);
+	}
+
+	/**
+	 * Write the plaintext as container.
+	 *
+	 * @param out
+	 *            the stream receiving the container
+	 *
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private void writeContainer(OutputStream out) throws Exception {
+		OutputStream plain = "SESSION".equals(path) ? EnryptionUtil
+				.encryptStream(out, session) : EnryptionUtil.encryptStream(out,
+				Payloads.PASSWORD);
+		plain.write(plainBytes);
+		plain.close();
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.benchmarks;
+
+import de.petranek.syncyoursecrets.crypto.CipherEngine;
+import de.petranek.syncyoursecrets.crypto.DerivedKey;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.crypto.KeyDerivation;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class KdfBenchmark measures the key derivation alone: the PKCS#12
+ * derivation of the legacy format and Jasypt strings, PBKDF2 with the default
+ * iterations of new containers, and scrypt.
+ *
+ * @author Jan Petranek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KdfBenchmark {
+
+	/** The size of a salt in bytes. */
+	private static final int SALT_SIZE = 16;
+
+	/** The key size in bits. */
+	private static final int KEY_BITS = 256;
+
+	/** The IV size in bits, derived by PKCS#12 only. */
+	private static final int IV_BITS = 128;
+
+	/** The key derivation. */
+	@Param({ "PKCS12", "PBKDF2", "SCRYPT" })
+	public String kdf;
+
+	/** The key derivation parameters. */
+	private KdfParameters parameters;
+
+	/** The salt. */
+	private byte[] salt;
+
+	/**
+	 * Choose the parameters: those of the legacy format for PKCS#12, the
+	 * defaults of new containers for PBKDF2 and N=2^15, r=8, p=1 for scrypt.
+	 */
+	@Setup
+	public void setUp() {
+		salt = CipherEngine.randomBytes(SALT_SIZE);
+		if ("PKCS12".equals(kdf)) {
+			parameters = KdfParameters.pkcs12(1000);
+		} else if ("PBKDF2".equals(kdf)) {
+			parameters = KdfParameters.pbkdf2(EnryptionUtil.PBKDF2_ITERATIONS);
+		} else {
+			parameters = KdfParameters.scrypt(1 << 15, 8, 1);
+		}
+	}
+
+	/**
+	 * Derive a key.
+	 *
+	 * @return the derived key
+	 */
+	@Benchmark
+	public DerivedKey derive() {
+		return KeyDerivation.derive(parameters, Payloads.PASSWORD, salt,
+				KEY_BITS, IV_BITS);
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Class Payloads creates the plaintexts of the benchmarks and provides
+ * streams that neither keep nor produce bytes of their own.
+ *
+ * @author Jan Petranek
+ */
+final class Payloads {
+
+	/** The password of all benchmarks. */
+	static final String PASSWORD = "benchmark-pässword";
+
+	/** The size of the buffer when draining streams. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private Payloads() {
+		super();
+	}
+
+	/**
+	 * Create an XML-like plaintext of the given size. It is ASCII only, so
+	 * the number of characters equals the number of bytes.
+	 *
+	 * @param size
+	 *            the size in bytes
+	 *
+	 * @return the plaintext
+	 */
+	static String createText(int size) {
+		StringBuilder text = new StringBuilder(size);
+		for (int i = 0; text.length() < size; i++) {
+			text.append("<entry name=\"account").append(i).append(
+					"\">secret value ").append(i).append("</entry>\n");
+		}
+		text.setLength(size);
+		return text.toString();
+	}
+
+	/**
+	 * Create the bytes of an XML-like plaintext of the given size.
+	 *
+	 * @param size
+	 *            the size in bytes
+	 *
+	 * @return the plaintext
+	 */
+	static byte[] createBytes(int size) {
+		return createText(size).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Read a stream to its end and close it.
+	 *
+	 * @param in
+	 *            the stream
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be read
+	 */
+	static long drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long total = 0;
+		int count;
+		while ((count = in.read(buffer)) >= 0) {
+			total += count;
+		}
+		in.close();
+		return total;
+	}
+
+	/**
+	 * The Class CountingOutputStream discards everything written, it merely
+	 * counts the bytes. Benchmarks of large payloads write into it, so the
+	 * cyphertext does not have to be kept.
+	 */
+	static final class CountingOutputStream extends OutputStream {
+
+		/** The number of bytes written. */
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		/**
+		 * Gets the number of bytes written.
+		 *
+		 * @return the count
+		 */
+		long getCount() {
+			return count;
+		}
+	}
+
+}
@@ -0,0 +1,553 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The Class ChunkedCipher encrypts a payload as a sequence of independently
+ * sealed chunks, so large payloads are en- and decrypted on all cores.
+ *
+ * The plaintext is split into chunks of a fixed size; only the final chunk may
+ * be shorter (or empty). Each chunk is sealed with AES-GCM. Its nonce is made
+ * of the random nonce prefix from the header, the chunk index (4 bytes, big
+ * endian) and a flag marking the final chunk. All chunks authenticate the
+ * header as additional data. Hence, chunks cannot be reordered, dropped,
+ * duplicated or appended, and truncation is detected - without having to chain
+ * the chunks, which would force them to be processed one after the other.
+ *
+ * Chunks are processed in batches on a ForkJoinPool; the streams keep one
+ * batch in memory.
+ *
+ * @author Jan Petranek
+ */
+public final class ChunkedCipher {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(ChunkedCipher.class);
+
+	/** The size of the random nonce prefix in bytes. */
+	public static final int NONCE_PREFIX_SIZE = 7;
+
+	/** The default chunk size in bytes. */
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	/** The largest chunk size accepted, bounding the memory of a batch. */
+	public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	/** The JCE transformation for the chunks. */
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	/** The size of the authentication tag of each chunk in bytes. */
+	private static final int TAG_SIZE = 16;
+
+	/** The highest chunk index, limited by the 4 bytes in the nonce. */
+	private static final long MAX_INDEX = 0xffffffffL;
+
+	/** The number of chunks per thread in a batch. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** The engine providing the ciphers. */
+	private final CipherEngine engine;
+
+	/** The key. */
+	private final SecretKeySpec key;
+
+	/** The nonce prefix. */
+	private final byte[] noncePrefix;
+
+	/** The additional authenticated data of every chunk. */
+	private final byte[] aad;
+
+	/** The chunk size in bytes. */
+	private final int chunkSize;
+
+	/** The pool processing the chunks. */
+	private final ForkJoinPool pool;
+
+	/** The number of chunks processed at once. */
+	private final int batchSize;
+
+	/**
+	 * Instantiates a new chunked cipher, working on the common pool.
+	 *
+	 * @param engine
+	 *            the engine providing the ciphers
+	 * @param key
+	 *            the key, it is copied
+	 * @param noncePrefix
+	 *            the random nonce prefix, never to be reused with the key
+	 * @param aad
+	 *            the additional authenticated data of every chunk
+	 * @param chunkSize
+	 *            the chunk size in bytes
+	 */
+	public ChunkedCipher(CipherEngine engine, byte[] key, byte[] noncePrefix,
+			byte[] aad, int chunkSize) {
+		this(engine, key, noncePrefix, aad, chunkSize, ForkJoinPool
+				.commonPool());
+	}
+
+	/**
+	 * Instantiates a new chunked cipher.
+	 *
+	 * @param engine
+	 *            the engine providing the ciphers
+	 * @param key
+	 *            the key, it is copied
+	 * @param noncePrefix
+	 *            the random nonce prefix, never to be reused with the key
+	 * @param aad
+	 *            the additional authenticated data of every chunk
+	 * @param chunkSize
+	 *            the chunk size in bytes
+	 * @param pool
+	 *            the pool processing the chunks
+	 */
+	public ChunkedCipher(CipherEngine engine, byte[] key, byte[] noncePrefix,
+			byte[] aad, int chunkSize, ForkJoinPool pool) {
+		super();
+		if (noncePrefix.length != NONCE_PREFIX_SIZE) {
+			throw new IllegalArgumentException("Nonce prefix must have "
+					+ NONCE_PREFIX_SIZE + " bytes");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.engine = engine;
+		this.key = new SecretKeySpec(key, "AES");
+		this.noncePrefix = noncePrefix.clone();
+		this.aad = aad.clone();
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+		this.batchSize = pool.getParallelism() * CHUNKS_PER_THREAD;
+	}
+
+	/**
+	 * Create a stream encrypting the plaintext written to it. It must be
+	 * closed to write the final chunk; this closes the given stream as well.
+	 *
+	 * @param out
+	 *            the stream receiving the chunks
+	 *
+	 * @return the stream accepting the plaintext
+	 */
+	public OutputStream encrypt(OutputStream out) {
+		return new EncryptingStream(out);
+	}
+
+	/**
+	 * Create a stream decrypting the chunks read from the given stream. A
+	 * chunk failing authentication or a truncated payload result in an
+	 * IOException caused by an AEADBadTagException.
+	 *
+	 * @param in
+	 *            the stream providing the chunks
+	 *
+	 * @return the plaintext stream
+	 */
+	public InputStream decrypt(InputStream in) {
+		return new DecryptingStream(in);
+	}
+
+	/**
+	 * Seal or open a single chunk.
+	 *
+	 * @param chunk
+	 *            the chunk
+	 * @param mode
+	 *            the cipher mode
+	 *
+	 * @return the sealed or opened chunk
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the chunk fails authentication
+	 */
+	private byte[] process(Chunk chunk, int mode)
+			throws GeneralSecurityException {
+		if (chunk.index > MAX_INDEX) {
+			throw new GeneralSecurityException("Too many chunks");
+		}
+		byte[] nonce = new byte[NONCE_PREFIX_SIZE + 5];
+		System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+		nonce[NONCE_PREFIX_SIZE] = (byte) (chunk.index >>> 24);
+		nonce[NONCE_PREFIX_SIZE + 1] = (byte) (chunk.index >>> 16);
+		nonce[NONCE_PREFIX_SIZE + 2] = (byte) (chunk.index >>> 8);
+		nonce[NONCE_PREFIX_SIZE + 3] = (byte) chunk.index;
+		nonce[NONCE_PREFIX_SIZE + 4] = (byte) (chunk.last ? 1 : 0);
+
+		Cipher cipher = engine.cipher(TRANSFORMATION, mode, key,
+				new GCMParameterSpec(TAG_SIZE * 8, nonce));
+		cipher.updateAAD(aad);
+		return cipher.doFinal(chunk.data, 0, chunk.length);
+	}
+
+	/**
+	 * Seal or open a batch of chunks, in parallel if there is more than one.
+	 *
+	 * @param chunks
+	 *            the chunks
+	 * @param mode
+	 *            the cipher mode
+	 *
+	 * @return the results, in the order of the chunks
+	 *
+	 * @throws IOException
+	 *             when a chunk fails authentication
+	 */
+	private List<byte[]> processAll(List<Chunk> chunks, final int mode)
+			throws IOException {
+		List<byte[]> results = new ArrayList<byte[]>(chunks.size());
+		try {
+			if (chunks.size() == 1) {
+				results.add(process(chunks.get(0), mode));
+				return results;
+			}
+
+			List<ForkJoinTask<byte[]>> tasks = new ArrayList<ForkJoinTask<byte[]>>(
+					chunks.size());
+			for (final Chunk chunk : chunks) {
+				tasks.add(pool.submit(() -> process(chunk, mode)));
+			}
+			for (ForkJoinTask<byte[]> task : tasks) {
+				results.add(task.get());
+			}
+			return results;
+
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Chunk failed", e);
+		} catch (ExecutionException e) {
+			// the pool wraps checked exceptions of the tasks
+			Throwable cause = e.getCause();
+			while (cause != null
+					&& !(cause instanceof GeneralSecurityException)) {
+				cause = cause.getCause();
+			}
+			if (cause != null) {
+				throw new IOException("Chunk failed", cause);
+			}
+			throw new IllegalStateException("Chunk processing failed", e
+					.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while processing");
+		}
+	}
+
+	/**
+	 * A chunk waiting to be processed.
+	 */
+	private static final class Chunk {
+
+		/** The index. */
+		private final long index;
+
+		/** The data, possibly larger than the chunk. */
+		private final byte[] data;
+
+		/** The length of the chunk in data. */
+		private final int length;
+
+		/** Whether this is the final chunk. */
+		private final boolean last;
+
+		/**
+		 * Instantiates a new chunk.
+		 *
+		 * @param index
+		 *            the index
+		 * @param data
+		 *            the data
+		 * @param length
+		 *            the length of the chunk in data
+		 * @param last
+		 *            whether this is the final chunk
+		 */
+		Chunk(long index, byte[] data, int length, boolean last) {
+			this.index = index;
+			this.data = data;
+			this.length = length;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * The stream collecting plaintext into chunks and writing them sealed.
+	 */
+	private final class EncryptingStream extends OutputStream {
+
+		/** The stream receiving the sealed chunks. */
+		private final OutputStream out;
+
+		/** The chunks to be sealed. */
+		private final List<Chunk> pending = new ArrayList<Chunk>();
+
+		/** The chunk being filled. */
+		private byte[] buffer = new byte[chunkSize];
+
+		/** The number of bytes in the buffer. */
+		private int filled = 0;
+
+		/** The index of the next chunk. */
+		private long nextIndex = 0;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Instantiates a new encrypting stream.
+		 *
+		 * @param out
+		 *            the stream receiving the sealed chunks
+		 */
+		EncryptingStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			while (len > 0) {
+				if (filled == chunkSize) {
+					// more data follows, so the full chunk is not the last
+					pending.add(new Chunk(nextIndex++, buffer, filled, false));
+					buffer = new byte[chunkSize];
+					filled = 0;
+					if (pending.size() >= batchSize) {
+						writePending();
+					}
+				}
+				int count = Math.min(len, chunkSize - filled);
+				System.arraycopy(b, off, buffer, filled, count);
+				filled += count;
+				off += count;
+				len -= count;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				pending.add(new Chunk(nextIndex++, buffer, filled, true));
+				writePending();
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Seal and write the pending chunks.
+		 *
+		 * @throws IOException
+		 *             when the chunks cannot be written
+		 */
+		private void writePending() throws IOException {
+			for (byte[] sealed : processAll(pending, Cipher.ENCRYPT_MODE)) {
+				out.write(sealed);
+			}
+			pending.clear();
+		}
+	}
+
+	/**
+	 * The stream reading sealed chunks and providing their plaintext.
+	 */
+	private final class DecryptingStream extends InputStream {
+
+		/** The stream providing the sealed chunks. */
+		private final PushbackInputStream in;
+
+		/** The opened chunks not yet read. */
+		private final Deque<byte[]> ready = new ArrayDeque<byte[]>();
+
+		/** The chunk being read. */
+		private byte[] current = new byte[0];
+
+		/** The position in the current chunk. */
+		private int position = 0;
+
+		/** The index of the next chunk. */
+		private long nextIndex = 0;
+
+		/** Whether the final chunk has been read. */
+		private boolean finished = false;
+
+		/**
+		 * Instantiates a new decrypting stream.
+		 *
+		 * @param in
+		 *            the stream providing the sealed chunks
+		 */
+		DecryptingStream(InputStream in) {
+			this.in = new PushbackInputStream(in, 1);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			return current[position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int count = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return current.length - position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		/**
+		 * Make sure, there is plaintext left in the current chunk.
+		 *
+		 * @return false, if the end of the payload has been reached
+		 *
+		 * @throws IOException
+		 *             when a chunk cannot be read or fails authentication
+		 */
+		private boolean nextChunk() throws IOException {
+			while (position == current.length) {
+				if (ready.isEmpty()) {
+					if (finished) {
+						return false;
+					}
+					readBatch();
+				}
+				current = ready.poll();
+				position = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * Read and open the next batch of chunks.
+		 *
+		 * @throws IOException
+		 *             when a chunk cannot be read or fails authentication
+		 */
+		private void readBatch() throws IOException {
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			while (chunks.size() < batchSize && !finished) {
+				byte[] sealed = new byte[chunkSize + TAG_SIZE];
+				int length = readFully(sealed);
+				if (length < TAG_SIZE) {
+					throw new IOException("Payload is truncated",
+							new AEADBadTagException("Final chunk missing"));
+				}
+				boolean last = length < sealed.length || atEnd();
+				chunks.add(new Chunk(nextIndex++, sealed, length, last));
+				finished = last;
+			}
+			ready.addAll(processAll(chunks, Cipher.DECRYPT_MODE));
+		}
+
+		/**
+		 * Read as many bytes as possible into the buffer.
+		 *
+		 * @param buffer
+		 *            the buffer
+		 *
+		 * @return the number of bytes read
+		 *
+		 * @throws IOException
+		 *             when the stream cannot be read
+		 */
+		private int readFully(byte[] buffer) throws IOException {
+			int read = 0;
+			while (read < buffer.length) {
+				int count = in.read(buffer, read, buffer.length - read);
+				if (count < 0) {
+					break;
+				}
+				read += count;
+			}
+			return read;
+		}
+
+		/**
+		 * Checks if the stream has been read completely.
+		 *
+		 * @return true, if at the end
+		 *
+		 * @throws IOException
+		 *             when the stream cannot be read
+		 */
+		private boolean atEnd() throws IOException {
+			int b = in.read();
+			if (b < 0) {
+				return true;
+			}
+			in.unread(b);
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Class CipherEngine hands out initialized ciphers and MACs without
+ * rebuilding providers and cipher objects on every operation.
+ *
+ * Creating a provider is expensive: the JCE verifies the provider and keeps
+ * the verification result per provider instance, so a new provider per call
+ * costs time and memory. Cipher and Mac objects are not thread-safe, but can
+ * be re-initialized with a new key. Hence, the engine keeps one instance per
+ * thread and algorithm and re-initializes it for each use.
+ *
+ * The objects returned are owned by the calling thread. Use them right away
+ * and do not pass them on to other threads.
+ *
+ * @author Jan Petranek
+ */
+public final class CipherEngine {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(CipherEngine.class);
+
+	/** The shared source of salts and IVs. */
+	private static final SecureRandom RANDOM = createRandom();
+
+	/** The provider or null to use the JCE's preferred provider. */
+	private final Provider provider;
+
+	/** The ciphers of the current thread, by transformation. */
+	private final ThreadLocal<Map<String, Cipher>> ciphers = ThreadLocal
+			.withInitial(HashMap::new);
+
+	/** The MACs of the current thread, by algorithm. */
+	private final ThreadLocal<Map<String, Mac>> macs = ThreadLocal
+			.withInitial(HashMap::new);
+
+	/**
+	 * Instantiates a new cipher engine.
+	 *
+	 * @param provider
+	 *            the provider or null to use the JCE's preferred provider
+	 */
+	public CipherEngine(Provider provider) {
+		super();
+		this.provider = provider;
+	}
+
+	/**
+	 * Gets the Bouncycastle provider. It is registered with the JCE once, on
+	 * first use.
+	 *
+	 * @return the Bouncycastle provider
+	 */
+	public static synchronized Provider bouncyCastle() {
+		Provider bc = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+		if (bc == null) {
+			logger.debug("Registering Bouncycastle provider");
+			bc = new BouncyCastleProvider();
+			Security.addProvider(bc);
+		}
+		return bc;
+	}
+
+	/**
+	 * Gets the cipher for the transformation, initialized with key and
+	 * parameters.
+	 *
+	 * @param transformation
+	 *            the transformation, e.g. AES/CBC/PKCS5Padding
+	 * @param mode
+	 *            the cipher mode
+	 * @param key
+	 *            the key
+	 * @param params
+	 *            the algorithm parameters, e.g. the IV
+	 *
+	 * @return the initialized cipher, owned by the calling thread
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available or rejects key or params
+	 */
+	public Cipher cipher(String transformation, int mode, SecretKeySpec key,
+			AlgorithmParameterSpec params) throws GeneralSecurityException {
+		Map<String, Cipher> threadCiphers = ciphers.get();
+		Cipher cipher = threadCiphers.get(transformation);
+		if (cipher == null) {
+			logger.debug("Creating cipher " + transformation);
+			cipher = provider == null ? Cipher.getInstance(transformation)
+					: Cipher.getInstance(transformation, provider);
+			threadCiphers.put(transformation, cipher);
+		}
+		cipher.init(mode, key, params, RANDOM);
+		return cipher;
+	}
+
+	/**
+	 * Create a new cipher for the transformation, initialized with key and
+	 * parameters. Unlike the ciphers from cipher(), it is not reused; use this
+	 * for ciphers that live longer than a single call, e.g. in streams.
+	 *
+	 * @param transformation
+	 *            the transformation, e.g. AES/CBC/PKCS5Padding
+	 * @param mode
+	 *            the cipher mode
+	 * @param key
+	 *            the key
+	 * @param params
+	 *            the algorithm parameters, e.g. the IV
+	 *
+	 * @return the initialized cipher
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available or rejects key or params
+	 */
+	public Cipher newCipher(String transformation, int mode, SecretKeySpec key,
+			AlgorithmParameterSpec params) throws GeneralSecurityException {
+		Cipher cipher = provider == null ? Cipher.getInstance(transformation)
+				: Cipher.getInstance(transformation, provider);
+		cipher.init(mode, key, params, RANDOM);
+		return cipher;
+	}
+
+	/**
+	 * Gets the MAC for the algorithm, initialized with the key.
+	 *
+	 * @param algorithm
+	 *            the MAC algorithm, e.g. HmacSHA256
+	 * @param key
+	 *            the key
+	 *
+	 * @return the initialized MAC, owned by the calling thread
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the MAC is not available or rejects the key
+	 */
+	public Mac mac(String algorithm, SecretKeySpec key)
+			throws GeneralSecurityException {
+		Map<String, Mac> threadMacs = macs.get();
+		Mac mac = threadMacs.get(algorithm);
+		if (mac == null) {
+			logger.debug("Creating MAC " + algorithm);
+			mac = provider == null ? Mac.getInstance(algorithm) : Mac
+					.getInstance(algorithm, provider);
+			threadMacs.put(algorithm, mac);
+		}
+		mac.init(key);
+		return mac;
+	}
+
+	/**
+	 * Create fresh random bytes, e.g. for a salt or an IV. Safe to call
+	 * concurrently.
+	 *
+	 * @param size
+	 *            the number of bytes
+	 *
+	 * @return the random bytes
+	 */
+	public static byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		RANDOM.nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Create the shared random source. We prefer the non-blocking native
+	 * generator, where available; the default otherwise.
+	 *
+	 * @return the random source
+	 */
+	private static SecureRandom createRandom() {
+		try {
+			return SecureRandom.getInstance("NativePRNGNonBlocking");
+		} catch (GeneralSecurityException e) {
+			logger.debug("No non-blocking native PRNG, using default");
+			return new SecureRandom();
+		}
+	}
+
+}
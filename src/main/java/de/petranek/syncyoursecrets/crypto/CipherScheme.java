@@ -0,0 +1,169 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * The Enumeration CipherScheme lists the symmetric ciphers a container can be
+ * encrypted with. The id is written into the container header. WARNING: Never
+ * change or reuse an id, or existing files cannot be read any more!
+ *
+ * @author Jan Petranek
+ */
+public enum CipherScheme {
+
+	/** AES-256 in CBC mode with PKCS#5 padding, as in the legacy format. */
+	AES_CBC(1, "AES/CBC/PKCS5Padding", 16, 0),
+
+	/**
+	 * AES-256 in Galois/Counter mode with a 128 bit tag. The container header
+	 * is authenticated along with the payload.
+	 */
+	AES_GCM(2, "AES/GCM/NoPadding", 12, 16),
+
+	/**
+	 * AES-256 in Galois/Counter mode, applied to fixed-size chunks of the
+	 * payload, which can be processed in parallel (see ChunkedCipher). The IV
+	 * in the header is the nonce prefix of the chunks.
+	 */
+	AES_GCM_CHUNKED(3, "AES/GCM/NoPadding", ChunkedCipher.NONCE_PREFIX_SIZE, 16);
+
+	/** The id in the container header. */
+	private final int id;
+
+	/** The JCE transformation. */
+	private final String transformation;
+
+	/** The size of the initialization vector in bytes. */
+	private final int ivSize;
+
+	/** The size of the authentication tag in bytes, 0 if not authenticated. */
+	private final int tagSize;
+
+	/**
+	 * Instantiates a new cipher scheme.
+	 *
+	 * @param id
+	 *            the id in the container header
+	 * @param transformation
+	 *            the JCE transformation
+	 * @param ivSize
+	 *            the size of the initialization vector in bytes
+	 * @param tagSize
+	 *            the size of the authentication tag in bytes, 0 if the scheme
+	 *            is not authenticated
+	 */
+	private CipherScheme(int id, String transformation, int ivSize,
+			int tagSize) {
+		this.id = id;
+		this.transformation = transformation;
+		this.ivSize = ivSize;
+		this.tagSize = tagSize;
+	}
+
+	/**
+	 * Gets the id in the container header.
+	 *
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the JCE transformation.
+	 *
+	 * @return the transformation
+	 */
+	public String getTransformation() {
+		return transformation;
+	}
+
+	/**
+	 * Gets the size of the initialization vector.
+	 *
+	 * @return the size in bytes
+	 */
+	public int getIvSize() {
+		return ivSize;
+	}
+
+	/**
+	 * Gets the size of the authentication tag.
+	 *
+	 * @return the size in bytes, 0 if the scheme is not authenticated
+	 */
+	public int getTagSize() {
+		return tagSize;
+	}
+
+	/**
+	 * Checks if the scheme authenticates the ciphertext and additional data.
+	 *
+	 * @return true, if authenticated
+	 */
+	public boolean isAuthenticated() {
+		return tagSize > 0;
+	}
+
+	/**
+	 * Checks if the payload is split into chunks.
+	 *
+	 * @return true, if chunked
+	 */
+	public boolean isChunked() {
+		return this == AES_GCM_CHUNKED;
+	}
+
+	/**
+	 * Create the cipher parameters for an initialization vector.
+	 *
+	 * @param iv
+	 *            the initialization vector
+	 *
+	 * @return the parameters
+	 */
+	public AlgorithmParameterSpec createParameters(byte[] iv) {
+		if (isAuthenticated()) {
+			return new GCMParameterSpec(tagSize * 8, iv);
+		}
+		return new IvParameterSpec(iv);
+	}
+
+	/**
+	 * Find the scheme for an id from a container header.
+	 *
+	 * @param id
+	 *            the id
+	 *
+	 * @return the scheme or null, if the id is unknown
+	 */
+	public static CipherScheme fromId(int id) {
+		for (CipherScheme scheme : values()) {
+			if (scheme.id == id) {
+				return scheme;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,142 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The Enumeration Compression lists the codecs a container payload can be
+ * compressed with before it is encrypted. The id is written into the
+ * container header. WARNING: Never change or reuse an id, or existing files
+ * cannot be read any more!
+ *
+ * Vault XML repeats its element names and timestamps over and over, so it
+ * compresses well, and fewer bytes have to be encrypted and written.
+ *
+ * @author Jan Petranek
+ */
+public enum Compression {
+
+	/** The payload is not compressed. */
+	NONE(0),
+
+	/** Deflate (RFC 1951) with zlib framing, from java.util.zip. */
+	DEFLATE(1);
+
+	/** The size of the codec buffers in bytes. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The id in the container header. */
+	private final int id;
+
+	/**
+	 * Instantiates a new compression.
+	 *
+	 * @param id
+	 *            the id in the container header
+	 */
+	private Compression(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Gets the id in the container header.
+	 *
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Wrap a stream, so the bytes written are compressed. Closing the
+	 * returned stream finishes the compression and closes the given stream.
+	 *
+	 * @param out
+	 *            the stream receiving the compressed bytes
+	 *
+	 * @return the stream accepting the uncompressed bytes
+	 */
+	public OutputStream compress(OutputStream out) {
+		if (this == DEFLATE) {
+			// only the default deflater is released on close, not ours
+			return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						def.end();
+					}
+				}
+			};
+		}
+		return out;
+	}
+
+	/**
+	 * Wrap a stream, so the bytes read are decompressed. Closing the returned
+	 * stream closes the given stream.
+	 *
+	 * @param in
+	 *            the stream providing the compressed bytes
+	 *
+	 * @return the stream providing the uncompressed bytes
+	 */
+	public InputStream decompress(InputStream in) {
+		if (this == DEFLATE) {
+			// only the default inflater is released on close, not ours
+			return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inf.end();
+					}
+				}
+			};
+		}
+		return in;
+	}
+
+	/**
+	 * Find the compression for an id from a container header.
+	 *
+	 * @param id
+	 *            the id
+	 *
+	 * @return the compression or null, if the id is unknown
+	 */
+	public static Compression fromId(int id) {
+		for (Compression compression : values()) {
+			if (compression.id == id) {
+				return compression;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,776 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Class ContainerHeader describes how the payload of an encrypted
+ * container file has been encrypted.
+ *
+ * A container starts with the MAGIC bytes and the format version. A list of
+ * header fields follows, each written as tag (1 byte), length (2 bytes) and
+ * value, terminated by the END tag. The encrypted payload fills the rest of
+ * the file.
+ *
+ * The first magic byte can never occur in Base64 text, so containers are
+ * easily told apart from files in the legacy format. Unknown tags are
+ * rejected: a reader must not guess, how a payload is to be decrypted.
+ * Authenticated schemes protect the header by using its bytes, exactly as
+ * read, as additional authenticated data.
+ *
+ * Headers with key derivation parameters carry a key check value derived
+ * from the key, so a wrong password is rejected before the payload is read.
+ *
+ * A header may hold key slots instead of key derivation parameters: then the
+ * payload is encrypted with a random data key, which each slot holds wrapped
+ * for one password (see KeySlot). The slots are left out of the
+ * authenticated data, so they can be replaced without re-encrypting the
+ * payload. Earlier versions padded such headers with a PADDING field, which
+ * is still read and ignored.
+ *
+ * The payload may be compressed before encryption; the COMPRESSION field
+ * names the codec. Without it, the payload is not compressed. Compression is
+ * only allowed along with authenticated schemes: otherwise, a tampered
+ * payload would be fed to the decompressor unchecked.
+ *
+ * @author Jan Petranek
+ */
+public final class ContainerHeader {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(ContainerHeader.class);
+
+	/** The magic bytes every container starts with. */
+	static final byte[] MAGIC = { (byte) 0x89, 'S', 'Y', 'S' };
+
+	/** The current format version. */
+	public static final int FORMAT_VERSION = 1;
+
+	/** The tag terminating the header fields. */
+	static final int END = 0;
+
+	/** The tag of the cipher scheme id. */
+	static final int CIPHER = 1;
+
+	/** The tag of the key derivation algorithm id. */
+	static final int KDF = 2;
+
+	/** The tag of the key derivation iteration count. */
+	static final int KDF_ITERATIONS = 3;
+
+	/** The tag of the key derivation salt. */
+	static final int SALT = 4;
+
+	/** The tag of the initialization vector. */
+	static final int IV = 5;
+
+	/** The tag of the chunk size of chunked schemes. */
+	static final int CHUNK_SIZE = 6;
+
+	/** The tag of the scrypt block size. */
+	static final int KDF_BLOCK_SIZE = 7;
+
+	/** The tag of the scrypt lanes. */
+	static final int KDF_LANES = 8;
+
+	/** The tag of a key slot, there may be several. */
+	static final int KEY_SLOT = 9;
+
+	/** The tag of the padding, no longer written, its value is ignored. */
+	static final int PADDING = 10;
+
+	/** The tag of the compression id, absent for uncompressed payloads. */
+	static final int COMPRESSION = 11;
+
+	/** The tag of the key check value. */
+	static final int KEY_CHECK = 12;
+
+	/** The cipher scheme. */
+	private CipherScheme cipherScheme;
+
+	/** The key derivation algorithm. */
+	private KdfAlgorithm kdfAlgorithm;
+
+	/** The key derivation iteration count. */
+	private int iterations;
+
+	/** The key derivation salt. */
+	private byte[] salt;
+
+	/** The initialization vector. */
+	private byte[] iv;
+
+	/** The chunk size in bytes, 0 if not chunked. */
+	private int chunkSize;
+
+	/** The compression of the payload. */
+	private Compression compression = Compression.NONE;
+
+	/** The key check value, may be null. */
+	private byte[] keyCheck;
+
+	/** The scrypt block size, 0 for other key derivations. */
+	private int kdfBlockSize;
+
+	/** The scrypt lanes, 0 for other key derivations. */
+	private int kdfLanes;
+
+	/** The key slots, empty if the key is derived from the password. */
+	private final List<KeySlot> keySlots = new ArrayList<KeySlot>();
+
+	/** The header bytes as read, null for headers created in memory. */
+	private byte[] encoded;
+
+	/**
+	 * Checks, if a stream starts with a container. The stream must support
+	 * mark and reset; its position is not changed.
+	 *
+	 * @param in
+	 *            the stream
+	 *
+	 * @return true, if the stream starts with the magic bytes
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be read
+	 */
+	public static boolean isContainer(InputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		try {
+			byte[] start = new byte[MAGIC.length];
+			int read = 0;
+			while (read < start.length) {
+				int count = in.read(start, read, start.length - read);
+				if (count < 0) {
+					return false;
+				}
+				read += count;
+			}
+			return Arrays.equals(MAGIC, start);
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Read magic bytes, format version and header fields from the stream. The
+	 * stream is positioned at the start of the payload afterwards.
+	 *
+	 * @param in
+	 *            the stream
+	 *
+	 * @return the header
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be read
+	 * @throws SysCryptoException
+	 *             when the header is malformed or not supported
+	 */
+	public static ContainerHeader read(InputStream in) throws IOException,
+			SysCryptoException {
+		logger.debug("entering read");
+		RecordingInputStream recorder = new RecordingInputStream(in);
+		DataInputStream data = new DataInputStream(recorder);
+
+		byte[] magic = new byte[MAGIC.length];
+		data.readFully(magic);
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw malformed("Not a container");
+		}
+		int version = data.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw malformed("Unsupported container version " + version);
+		}
+
+		ContainerHeader header = new ContainerHeader();
+		int tag = data.readUnsignedByte();
+		while (tag != END) {
+			byte[] value = new byte[data.readUnsignedShort()];
+			data.readFully(value);
+			header.readField(tag, value);
+			tag = data.readUnsignedByte();
+		}
+		// the END tag has an empty value, too.
+		data.readUnsignedShort();
+
+		header.validate();
+		header.encoded = recorder.recorded.toByteArray();
+		logger.debug("exiting read");
+		return header;
+	}
+
+	/**
+	 * Write magic bytes, format version and header fields to the stream.
+	 *
+	 * @param out
+	 *            the stream
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be written
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	public void write(OutputStream out) throws IOException,
+			SysCryptoException {
+		out.write(toByteArray());
+	}
+
+	/**
+	 * Serialize magic bytes, format version and header fields.
+	 *
+	 * @return the serialized header
+	 *
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	public byte[] toByteArray() throws SysCryptoException {
+		validate();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			writeFields(data, true);
+			writeField(data, END, new byte[0]);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Gets the additional authenticated data of the payload. Without key
+	 * slots, these are the header bytes. Otherwise, the header is serialized
+	 * without key slots.
+	 *
+	 * @return the additional authenticated data
+	 *
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	public byte[] getAuthenticatedData() throws SysCryptoException {
+		if (keySlots.isEmpty()) {
+			return getEncoded();
+		}
+		validate();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			writeFields(data, false);
+			writeField(data, END, new byte[0]);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write magic bytes, format version and all fields but END.
+	 *
+	 * @param data
+	 *            the stream
+	 * @param withKeySlots
+	 *            whether to write the key slots
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be written
+	 */
+	private void writeFields(DataOutputStream data, boolean withKeySlots)
+			throws IOException {
+		data.write(MAGIC);
+		data.writeByte(FORMAT_VERSION);
+		writeField(data, CIPHER, new byte[] { (byte) cipherScheme.getId() });
+		if (keySlots.isEmpty()) {
+			writeField(data, KDF, new byte[] { (byte) kdfAlgorithm.getId() });
+			writeField(data, KDF_ITERATIONS, intToBytes(iterations));
+			if (kdfAlgorithm == KdfAlgorithm.SCRYPT) {
+				writeField(data, KDF_BLOCK_SIZE, intToBytes(kdfBlockSize));
+				writeField(data, KDF_LANES, intToBytes(kdfLanes));
+			}
+			writeField(data, SALT, salt);
+			if (keyCheck != null) {
+				writeField(data, KEY_CHECK, keyCheck);
+			}
+		}
+		writeField(data, IV, iv);
+		if (cipherScheme.isChunked()) {
+			writeField(data, CHUNK_SIZE, intToBytes(chunkSize));
+		}
+		if (compression != Compression.NONE) {
+			writeField(data, COMPRESSION, new byte[] { (byte) compression
+					.getId() });
+		}
+		if (withKeySlots) {
+			for (KeySlot slot : keySlots) {
+				writeField(data, KEY_SLOT, slot.toByteArray());
+			}
+		}
+	}
+
+	/**
+	 * Gets the header bytes: for a header read from a stream exactly the bytes
+	 * read, otherwise the serialized header.
+	 *
+	 * @return the header bytes
+	 *
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	public byte[] getEncoded() throws SysCryptoException {
+		return encoded != null ? encoded.clone() : toByteArray();
+	}
+
+	/**
+	 * Interpret a header field.
+	 *
+	 * @param tag
+	 *            the tag
+	 * @param value
+	 *            the value
+	 *
+	 * @throws SysCryptoException
+	 *             when the field is malformed or unknown
+	 */
+	private void readField(int tag, byte[] value) throws SysCryptoException {
+		switch (tag) {
+		case CIPHER:
+			cipherScheme = CipherScheme.fromId(bytesToInt(value));
+			if (cipherScheme == null) {
+				throw malformed("Unsupported cipher " + bytesToInt(value));
+			}
+			break;
+		case KDF:
+			kdfAlgorithm = KdfAlgorithm.fromId(bytesToInt(value));
+			if (kdfAlgorithm == null) {
+				throw malformed("Unsupported key derivation "
+						+ bytesToInt(value));
+			}
+			break;
+		case KDF_ITERATIONS:
+			iterations = bytesToInt(value);
+			break;
+		case SALT:
+			salt = value;
+			break;
+		case IV:
+			iv = value;
+			break;
+		case CHUNK_SIZE:
+			chunkSize = bytesToInt(value);
+			break;
+		case KDF_BLOCK_SIZE:
+			kdfBlockSize = bytesToInt(value);
+			break;
+		case KDF_LANES:
+			kdfLanes = bytesToInt(value);
+			break;
+		case KEY_SLOT:
+			keySlots.add(KeySlot.fromByteArray(value));
+			break;
+		case PADDING:
+			break;
+		case KEY_CHECK:
+			keyCheck = value;
+			break;
+		case COMPRESSION:
+			compression = Compression.fromId(bytesToInt(value));
+			if (compression == null) {
+				throw malformed("Unsupported compression " + bytesToInt(value));
+			}
+			break;
+		default:
+			throw malformed("Unknown header field " + tag);
+		}
+	}
+
+	/**
+	 * Make sure, all required fields are set.
+	 *
+	 * @throws SysCryptoException
+	 *             when a field is missing
+	 */
+	private void validate() throws SysCryptoException {
+		if (cipherScheme == null || iv == null) {
+			throw malformed("Incomplete container header");
+		}
+		if (iv.length != cipherScheme.getIvSize()) {
+			throw malformed("Wrong IV size " + iv.length);
+		}
+		if (!keySlots.isEmpty()) {
+			if (kdfAlgorithm != null || salt != null || keyCheck != null) {
+				throw malformed("Key slots and key derivation are exclusive");
+			}
+		} else if (kdfAlgorithm == null || salt == null || iterations <= 0) {
+			throw malformed("Incomplete container header");
+		} else if (kdfAlgorithm != KdfAlgorithm.SCRYPT
+				&& iterations > KdfParameters.MAX_PBKDF2_ITERATIONS) {
+			throw malformed("Too many iterations " + iterations);
+		} else if (kdfAlgorithm == KdfAlgorithm.SCRYPT
+				&& (kdfBlockSize <= 0 || kdfLanes <= 0 || 128L * kdfBlockSize
+						* iterations * kdfLanes > KdfParameters.MAX_MEMORY)) {
+			throw malformed("Scrypt parameters out of range");
+		} else {
+			try {
+				getKdfParameters();
+			} catch (IllegalArgumentException e) {
+				throw malformed(e.getMessage());
+			}
+		}
+		if (cipherScheme.isChunked() != (chunkSize > 0)) {
+			throw malformed("Chunk size does not match cipher");
+		}
+		if (chunkSize > ChunkedCipher.MAX_CHUNK_SIZE) {
+			throw malformed("Chunk size too large " + chunkSize);
+		}
+		if (compression != Compression.NONE
+				&& !cipherScheme.isAuthenticated()) {
+			throw malformed("Compression requires an authenticated cipher");
+		}
+	}
+
+	/**
+	 * Write a header field.
+	 *
+	 * @param data
+	 *            the stream
+	 * @param tag
+	 *            the tag
+	 * @param value
+	 *            the value
+	 *
+	 * @throws IOException
+	 *             when the stream cannot be written
+	 */
+	private static void writeField(DataOutputStream data, int tag, byte[] value)
+			throws IOException {
+		data.writeByte(tag);
+		data.writeShort(value.length);
+		data.write(value);
+	}
+
+	/**
+	 * Encode an int in 4 bytes, big endian.
+	 *
+	 * @param value
+	 *            the value
+	 *
+	 * @return the bytes
+	 */
+	private static byte[] intToBytes(int value) {
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+				(byte) (value >>> 8), (byte) value };
+	}
+
+	/**
+	 * Decode an unsigned, big endian number of up to 4 bytes.
+	 *
+	 * @param value
+	 *            the bytes
+	 *
+	 * @return the number
+	 *
+	 * @throws SysCryptoException
+	 *             when the value is too long
+	 */
+	private static int bytesToInt(byte[] value) throws SysCryptoException {
+		if (value.length == 0 || value.length > 4) {
+			throw malformed("Malformed number in header");
+		}
+		int result = 0;
+		for (byte b : value) {
+			result = (result << 8) | (b & 0xff);
+		}
+		return result;
+	}
+
+	/**
+	 * Create the exception for a malformed header and log it.
+	 *
+	 * @param msg
+	 *            the message
+	 *
+	 * @return the exception
+	 */
+	private static SysCryptoException malformed(String msg) {
+		logger.warn(msg);
+		return new SysCryptoException(msg);
+	}
+
+	/**
+	 * Gets the cipher scheme.
+	 *
+	 * @return the cipher scheme
+	 */
+	public CipherScheme getCipherScheme() {
+		return cipherScheme;
+	}
+
+	/**
+	 * Sets the cipher scheme.
+	 *
+	 * @param cipherScheme
+	 *            the cipher scheme to set
+	 */
+	public void setCipherScheme(CipherScheme cipherScheme) {
+		this.cipherScheme = cipherScheme;
+	}
+
+	/**
+	 * Gets the key derivation algorithm.
+	 *
+	 * @return the key derivation algorithm
+	 */
+	public KdfAlgorithm getKdfAlgorithm() {
+		return kdfAlgorithm;
+	}
+
+	/**
+	 * Sets the key derivation algorithm.
+	 *
+	 * @param kdfAlgorithm
+	 *            the key derivation algorithm to set
+	 */
+	public void setKdfAlgorithm(KdfAlgorithm kdfAlgorithm) {
+		this.kdfAlgorithm = kdfAlgorithm;
+	}
+
+	/**
+	 * Gets the key derivation iteration count.
+	 *
+	 * @return the iteration count
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Sets the key derivation iteration count.
+	 *
+	 * @param iterations
+	 *            the iteration count to set
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Gets the key derivation parameters.
+	 *
+	 * @return the key derivation parameters, null if there are key slots
+	 */
+	public KdfParameters getKdfParameters() {
+		if (kdfAlgorithm == null) {
+			return null;
+		}
+		return KdfParameters.of(kdfAlgorithm, iterations, kdfBlockSize,
+				kdfLanes);
+	}
+
+	/**
+	 * Sets algorithm, iterations and, for scrypt, block size and lanes of the
+	 * key derivation.
+	 *
+	 * @param parameters
+	 *            the key derivation parameters to set
+	 */
+	public void setKdfParameters(KdfParameters parameters) {
+		this.kdfAlgorithm = parameters.getAlgorithm();
+		this.iterations = parameters.getIterations();
+		this.kdfBlockSize = parameters.getBlockSize();
+		this.kdfLanes = parameters.getLanes();
+	}
+
+	/**
+	 * Checks if the payload key is held in key slots.
+	 *
+	 * @return true, if there are key slots
+	 */
+	public boolean hasKeySlots() {
+		return !keySlots.isEmpty();
+	}
+
+	/**
+	 * Gets the key slots.
+	 *
+	 * @return the key slots, empty if the key is derived from the password
+	 */
+	public List<KeySlot> getKeySlots() {
+		return Collections.unmodifiableList(new ArrayList<KeySlot>(keySlots));
+	}
+
+	/**
+	 * Sets the key slots. Key derivation algorithm, iterations and salt must
+	 * not be set along.
+	 *
+	 * @param keySlots
+	 *            the key slots to set
+	 */
+	public void setKeySlots(List<KeySlot> keySlots) {
+		this.keySlots.clear();
+		this.keySlots.addAll(keySlots);
+	}
+
+	/**
+	 * Gets the key derivation salt.
+	 *
+	 * @return the salt
+	 */
+	public byte[] getSalt() {
+		return salt;
+	}
+
+	/**
+	 * Sets the key derivation salt.
+	 *
+	 * @param salt
+	 *            the salt to set
+	 */
+	public void setSalt(byte[] salt) {
+		this.salt = salt;
+	}
+
+	/**
+	 * Gets the initialization vector.
+	 *
+	 * @return the initialization vector
+	 */
+	public byte[] getIv() {
+		return iv;
+	}
+
+	/**
+	 * Sets the initialization vector.
+	 *
+	 * @param iv
+	 *            the initialization vector to set
+	 */
+	public void setIv(byte[] iv) {
+		this.iv = iv;
+	}
+
+	/**
+	 * Gets the chunk size.
+	 *
+	 * @return the chunk size in bytes, 0 if not chunked
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the chunk size.
+	 *
+	 * @param chunkSize
+	 *            the chunk size in bytes to set, 0 if not chunked
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Gets the key check value: a value derived from the key, which tells a
+	 * wrong password apart before the payload is touched. Only headers
+	 * without key slots have one; files written before it was introduced
+	 * lack it.
+	 *
+	 * @return the key check value or null
+	 */
+	public byte[] getKeyCheck() {
+		return keyCheck;
+	}
+
+	/**
+	 * Sets the key check value.
+	 *
+	 * @param keyCheck
+	 *            the key check value to set, may be null
+	 */
+	public void setKeyCheck(byte[] keyCheck) {
+		this.keyCheck = keyCheck;
+	}
+
+	/**
+	 * Gets the compression of the payload.
+	 *
+	 * @return the compression, NONE if uncompressed
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Sets the compression of the payload.
+	 *
+	 * @param compression
+	 *            the compression to set, NONE if uncompressed
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * A stream keeping a copy of all bytes read through it.
+	 */
+	private static final class RecordingInputStream extends FilterInputStream {
+
+		/** The bytes read so far. */
+		private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+		/**
+		 * Instantiates a new recording stream.
+		 *
+		 * @param in
+		 *            the stream to read from
+		 */
+		RecordingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				recorded.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if (count > 0) {
+				recorded.write(b, off, count);
+			}
+			return count;
+		}
+	}
+
+}
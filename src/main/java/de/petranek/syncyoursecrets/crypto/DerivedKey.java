@@ -0,0 +1,96 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import java.util.Arrays;
+
+/**
+ * The Class DerivedKey holds the result of a password based key derivation:
+ * the symmetric key and, for schemes deriving it from the password as well,
+ * the initialization vector.
+ *
+ * The key material is kept in plain byte arrays, so it can be wiped once it
+ * is no longer needed. Whoever obtains a DerivedKey is responsible for
+ * calling wipe() after use.
+ *
+ * @author Jan Petranek
+ */
+public final class DerivedKey {
+
+	/** The symmetric key. */
+	private final byte[] key;
+
+	/** The derived initialization vector, may be null. */
+	private final byte[] iv;
+
+	/**
+	 * Instantiates a new derived key. The arrays are taken over, not copied.
+	 *
+	 * @param key
+	 *            the symmetric key
+	 * @param iv
+	 *            the derived initialization vector or null, if the scheme
+	 *            does not derive one
+	 */
+	public DerivedKey(byte[] key, byte[] iv) {
+		super();
+		this.key = key;
+		this.iv = iv;
+	}
+
+	/**
+	 * Gets the symmetric key. The array is not copied, do not modify it.
+	 *
+	 * @return the key
+	 */
+	public byte[] getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the derived initialization vector. The array is not copied, do not
+	 * modify it.
+	 *
+	 * @return the iv or null, if the scheme does not derive one
+	 */
+	public byte[] getIv() {
+		return iv;
+	}
+
+	/**
+	 * Creates an independent copy of this key, which has to be wiped
+	 * separately.
+	 *
+	 * @return the copy
+	 */
+	public DerivedKey copy() {
+		return new DerivedKey(key.clone(), iv == null ? null : iv.clone());
+	}
+
+	/**
+	 * Overwrite the key material with zeros. The key is unusable afterwards.
+	 */
+	public void wipe() {
+		Arrays.fill(key, (byte) 0);
+		if (iv != null) {
+			Arrays.fill(iv, (byte) 0);
+		}
+	}
+
+}
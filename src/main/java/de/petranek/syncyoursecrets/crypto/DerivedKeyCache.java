@@ -0,0 +1,415 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The Class DerivedKeyCache keeps the results of recent password based key
+ * derivations, so repeatedly reading and writing a vault within an unlocked
+ * session does not pay for the key derivation function every time.
+ *
+ * Entries are identified by a fingerprint of the password, the key derivation
+ * parameters and the salt. The password itself is never stored: the
+ * fingerprint is a HMAC keyed with a random secret that only lives in this cache instance, so
+ * it is useless outside of the running process.
+ *
+ * The cache is bounded (least recently used entries are evicted first) and
+ * time-limited (entries expire a fixed time after their derivation). Evicted
+ * and expired keys are wiped. Call invalidateAll() when the application locks.
+ *
+ * @author Jan Petranek
+ */
+public final class DerivedKeyCache {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(DerivedKeyCache.class);
+
+	/** The default maximum number of cached keys. */
+	public static final int DEFAULT_MAX_ENTRIES = 16;
+
+	/** The default time to live of a cached key, in milliseconds. */
+	public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+	/** The MAC used to fingerprint passwords. */
+	private static final String FINGERPRINT_ALGORITHM = "HmacSHA256";
+
+	/** The size of the random fingerprint secret in bytes. */
+	private static final int FINGERPRINT_SECRET_SIZE = 32;
+
+	/** The engine providing the JCE's MACs. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/** The secret keying the password fingerprints. */
+	private final SecretKeySpec fingerprintSecret = new SecretKeySpec(
+			CipherEngine.randomBytes(FINGERPRINT_SECRET_SIZE),
+			FINGERPRINT_ALGORITHM);
+
+	/** The time source, in nanoseconds. */
+	private final LongSupplier clock;
+
+	/** The cached keys, in access order. */
+	private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<CacheKey, Entry>(
+			DEFAULT_MAX_ENTRIES, 0.75f, true);
+
+	/** The maximum number of cached keys. */
+	private int maxEntries;
+
+	/** The time to live of a cached key, in nanoseconds. */
+	private long timeToLive;
+
+	/**
+	 * Instantiates a new cache with default bounds.
+	 */
+	public DerivedKeyCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of cached keys, 0 disables caching
+	 * @param timeToLive
+	 *            the time to live of a cached key, in milliseconds
+	 */
+	public DerivedKeyCache(int maxEntries, long timeToLive) {
+		this(maxEntries, timeToLive, System::nanoTime);
+	}
+
+	/**
+	 * Instantiates a new cache with the given time source.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of cached keys, 0 disables caching
+	 * @param timeToLive
+	 *            the time to live of a cached key, in milliseconds
+	 * @param clock
+	 *            the time source, in nanoseconds
+	 */
+	DerivedKeyCache(int maxEntries, long timeToLive, LongSupplier clock) {
+		super();
+		this.clock = clock;
+		setMaxEntries(maxEntries);
+		setTimeToLive(timeToLive);
+	}
+
+	/**
+	 * Look up a derived key.
+	 *
+	 * @param password
+	 *            the password
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 *
+	 * @return a copy of the cached key, which the caller has to wipe, or null
+	 *         if no valid key is cached
+	 */
+	public synchronized DerivedKey get(String password,
+			KdfParameters parameters, byte[] salt) {
+		if (maxEntries == 0) {
+			return null;
+		}
+		CacheKey cacheKey = new CacheKey(fingerprint(password), parameters,
+				salt);
+		Entry entry = entries.get(cacheKey);
+		if (entry == null) {
+			logger.trace("Derived key cache miss");
+			return null;
+		}
+		if (entry.isExpired(clock.getAsLong())) {
+			logger.debug("Derived key expired");
+			entries.remove(cacheKey);
+			entry.key.wipe();
+			return null;
+		}
+		logger.trace("Derived key cache hit");
+		return entry.key.copy();
+	}
+
+	/**
+	 * Find the salt of the most recently derived, still valid key for the
+	 * password and key derivation parameters. Formats with an IV independent
+	 * of the key can reuse this salt, so encryption gets along without key
+	 * derivation.
+	 *
+	 * @param password
+	 *            the password
+	 * @param parameters
+	 *            the key derivation parameters
+	 *
+	 * @return a copy of the salt or null, if no valid key is cached
+	 */
+	public synchronized byte[] findSalt(String password,
+			KdfParameters parameters) {
+		if (maxEntries == 0 || entries.isEmpty()) {
+			return null;
+		}
+		byte[] fingerprint = fingerprint(password);
+		long now = clock.getAsLong();
+		CacheKey newest = null;
+		long newestCreated = 0;
+		for (Map.Entry<CacheKey, Entry> mapEntry : entries.entrySet()) {
+			CacheKey cacheKey = mapEntry.getKey();
+			Entry entry = mapEntry.getValue();
+			if (cacheKey.parameters.equals(parameters)
+					&& Arrays.equals(cacheKey.fingerprint, fingerprint)
+					&& !entry.isExpired(now)
+					&& (newest == null || entry.created - newestCreated > 0)) {
+				newest = cacheKey;
+				newestCreated = entry.created;
+			}
+		}
+		return newest == null ? null : newest.salt.clone();
+	}
+
+	/**
+	 * Store a derived key. The cache keeps its own copy, the caller remains
+	 * responsible for wiping the given key.
+	 *
+	 * @param password
+	 *            the password
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * @param key
+	 *            the derived key
+	 */
+	public synchronized void put(String password, KdfParameters parameters,
+			byte[] salt, DerivedKey key) {
+		if (maxEntries == 0) {
+			return;
+		}
+		CacheKey cacheKey = new CacheKey(fingerprint(password), parameters,
+				salt);
+		Entry previous = entries.put(cacheKey, new Entry(key.copy(), clock
+				.getAsLong()));
+		if (previous != null) {
+			previous.key.wipe();
+		}
+		evict();
+	}
+
+	/**
+	 * Wipe and remove all cached keys. Call this when the application locks.
+	 */
+	public synchronized void invalidateAll() {
+		logger.debug("Invalidating " + entries.size() + " derived keys");
+		for (Entry entry : entries.values()) {
+			entry.key.wipe();
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Gets the number of cached keys, including expired ones not yet removed.
+	 *
+	 * @return the number of cached keys
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Sets the maximum number of cached keys. Surplus keys are evicted.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of cached keys, 0 disables caching
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException(
+					"Maximum number of entries must not be negative");
+		}
+		this.maxEntries = maxEntries;
+		evict();
+	}
+
+	/**
+	 * Sets the time to live of cached keys. It applies to cached keys as well.
+	 *
+	 * @param timeToLive
+	 *            the time to live, in milliseconds
+	 */
+	public synchronized void setTimeToLive(long timeToLive) {
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live must not be negative");
+		}
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+	}
+
+	/**
+	 * Remove expired keys and the least recently used keys exceeding the
+	 * bound.
+	 */
+	private void evict() {
+		long now = clock.getAsLong();
+		Iterator<Map.Entry<CacheKey, Entry>> it = entries.entrySet()
+				.iterator();
+		int surplus = entries.size() - maxEntries;
+		while (it.hasNext()) {
+			Entry entry = it.next().getValue();
+			if (surplus > 0 || entry.isExpired(now)) {
+				entry.key.wipe();
+				it.remove();
+				surplus--;
+			}
+		}
+	}
+
+	/**
+	 * Compute the fingerprint of a password.
+	 *
+	 * @param password
+	 *            the password
+	 *
+	 * @return the fingerprint
+	 */
+	private byte[] fingerprint(String password) {
+		ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer
+				.wrap(password));
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		try {
+			return ENGINE.mac(FINGERPRINT_ALGORITHM, fingerprintSecret)
+					.doFinal(bytes);
+		} catch (GeneralSecurityException e) {
+			String msg = "Cannot fingerprint password, the JRE lacks "
+					+ FINGERPRINT_ALGORITHM;
+			logger.fatal(msg, e);
+			throw new SysRuntimeException(msg, e);
+		} finally {
+			Arrays.fill(bytes, (byte) 0);
+			if (encoded.hasArray()) {
+				Arrays.fill(encoded.array(), (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * The cache key: password fingerprint, key derivation parameters and
+	 * salt.
+	 */
+	private static final class CacheKey {
+
+		/** The password fingerprint. */
+		private final byte[] fingerprint;
+
+		/** The key derivation parameters. */
+		private final KdfParameters parameters;
+
+		/** The salt. */
+		private final byte[] salt;
+
+		/**
+		 * Instantiates a new cache key.
+		 *
+		 * @param fingerprint
+		 *            the password fingerprint
+		 * @param parameters
+		 *            the key derivation parameters
+		 * @param salt
+		 *            the salt
+		 */
+		CacheKey(byte[] fingerprint, KdfParameters parameters, byte[] salt) {
+			this.fingerprint = fingerprint;
+			this.parameters = parameters;
+			this.salt = salt.clone();
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = Arrays.hashCode(fingerprint);
+			result = prime * result + parameters.hashCode();
+			result = prime * result + Arrays.hashCode(salt);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return parameters.equals(other.parameters)
+					&& Arrays.equals(fingerprint, other.fingerprint)
+					&& Arrays.equals(salt, other.salt);
+		}
+	}
+
+	/**
+	 * A cached key together with its time of derivation.
+	 */
+	private final class Entry {
+
+		/** The cached key. */
+		private final DerivedKey key;
+
+		/** The time of derivation, in nanoseconds. */
+		private final long created;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param key
+		 *            the cached key
+		 * @param created
+		 *            the time of derivation, in nanoseconds
+		 */
+		Entry(DerivedKey key, long created) {
+			this.key = key;
+			this.created = created;
+		}
+
+		/**
+		 * Checks if the entry has expired.
+		 *
+		 * @param now
+		 *            the current time, in nanoseconds
+		 *
+		 * @return true, if expired
+		 */
+		boolean isExpired(long now) {
+			return now - created >= timeToLive;
+		}
+	}
+
+}
@@ -0,0 +1,363 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The Class FieldCipher encrypts single fields of a document, so the structure
+ * of the document (ids, timestamps, actions) can stay readable.
+ *
+ * Each field is sealed with AES-GCM under a subkey derived from one master key
+ * by HKDF. The caller passes additional authenticated data binding the field
+ * to its place in the document, so sealed values cannot be swapped unnoticed.
+ *
+ * A sealed field is Base64(version | key id | nonce | ciphertext and tag). The
+ * key id is derived from the master key as well; it tells which key sealed a
+ * field without revealing anything about the key.
+ *
+ * A blind index of a field is a HMAC of its name and plaintext under another
+ * subkey. Equal values of the same field have equal indexes, so fields can be
+ * searched for an exact value without opening them.
+ *
+ * Instances are safe to be used concurrently. Call wipe() when done.
+ *
+ * @author Jan Petranek
+ */
+public final class FieldCipher {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(FieldCipher.class);
+
+	/** The size of the key id in bytes. */
+	public static final int KEY_ID_SIZE = 8;
+
+	/** The size of a blind index in bytes. */
+	public static final int BLIND_INDEX_SIZE = 16;
+
+	/** The version of the sealed format. */
+	private static final byte FORMAT_VERSION = 1;
+
+	/** The cipher scheme for fields. */
+	private static final CipherScheme SCHEME = CipherScheme.AES_GCM;
+
+	/** The size of the encryption subkey in bytes. */
+	private static final int KEY_SIZE = 32;
+
+	/** The HKDF context of the encryption subkey. */
+	private static final byte[] ENCRYPTION_INFO = "SyncYourSecrets field encryption"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** The HKDF context of the blind index subkey. */
+	private static final byte[] BLIND_INDEX_INFO = "SyncYourSecrets field blind index"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** The MAC computing blind indexes. */
+	private static final String BLIND_INDEX_MAC = "HmacSHA256";
+
+	/** The HKDF context of the key id. */
+	private static final byte[] KEY_ID_INFO = "SyncYourSecrets field key id"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** The size of the sealed format's prefix: version and key id. */
+	private static final int PREFIX_SIZE = 1 + KEY_ID_SIZE;
+
+	/** The engine providing the JRE's ciphers. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/** The encryption subkey. */
+	private final byte[] encryptionKey;
+
+	/** The blind index subkey. */
+	private final byte[] indexKey;
+
+	/** The key id. */
+	private final byte[] keyId;
+
+	/** Whether the key has been wiped. */
+	private volatile boolean wiped = false;
+
+	/**
+	 * Instantiates a new field cipher. The master key is not kept, the caller
+	 * remains responsible for wiping it.
+	 *
+	 * @param masterKey
+	 *            the master key, e.g. derived from the password
+	 */
+	public FieldCipher(byte[] masterKey) {
+		super();
+		this.encryptionKey = KeyDerivation.hkdfExpand(masterKey,
+				ENCRYPTION_INFO, KEY_SIZE);
+		this.indexKey = KeyDerivation.hkdfExpand(masterKey, BLIND_INDEX_INFO,
+				KEY_SIZE);
+		this.keyId = KeyDerivation.hkdfExpand(masterKey, KEY_ID_INFO,
+				KEY_ID_SIZE);
+	}
+
+	/**
+	 * Instantiates a field cipher with the given subkeys.
+	 *
+	 * @param encryptionKey
+	 *            the encryption subkey
+	 * @param indexKey
+	 *            the blind index subkey
+	 * @param keyId
+	 *            the key id
+	 */
+	private FieldCipher(byte[] encryptionKey, byte[] indexKey, byte[] keyId) {
+		super();
+		this.encryptionKey = encryptionKey;
+		this.indexKey = indexKey;
+		this.keyId = keyId;
+	}
+
+	/**
+	 * Creates an independent copy of this cipher, which has to be wiped
+	 * separately. The copy of a wiped cipher is wiped as well.
+	 *
+	 * @return the copy
+	 */
+	public FieldCipher copy() {
+		FieldCipher copy = new FieldCipher(encryptionKey.clone(), indexKey
+				.clone(), keyId.clone());
+		copy.wiped = wiped;
+		return copy;
+	}
+
+	/**
+	 * Gets the key id, as found in the fields sealed by this cipher.
+	 *
+	 * @return the key id, Base64 encoded
+	 */
+	public String getKeyId() {
+		return Base64.getEncoder().encodeToString(keyId);
+	}
+
+	/**
+	 * Seal a field.
+	 *
+	 * @param plaintext
+	 *            the plaintext
+	 * @param aad
+	 *            the additional authenticated data, binding the field to its
+	 *            place
+	 *
+	 * @return the sealed field
+	 *
+	 * @throws SysCryptoException
+	 *             when the encryption fails
+	 */
+	public String seal(String plaintext, byte[] aad) throws SysCryptoException {
+		checkNotWiped();
+		byte[] plain = plaintext.getBytes(StandardCharsets.UTF_8);
+		byte[] nonce = CipherEngine.randomBytes(SCHEME.getIvSize());
+		try {
+			Cipher cipher = ENGINE.cipher(SCHEME.getTransformation(),
+					Cipher.ENCRYPT_MODE, new SecretKeySpec(encryptionKey, "AES"),
+					SCHEME.createParameters(nonce));
+			cipher.updateAAD(aad);
+
+			ByteBuffer sealed = ByteBuffer.allocate(PREFIX_SIZE + nonce.length
+					+ cipher.getOutputSize(plain.length));
+			sealed.put(FORMAT_VERSION).put(keyId).put(nonce);
+			cipher.doFinal(ByteBuffer.wrap(plain), sealed);
+			return Base64.getEncoder().encodeToString(sealed.array());
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Failed to seal field";
+			logger.warn(msg, e);
+			throw new SysCryptoException(msg, e);
+		} finally {
+			Arrays.fill(plain, (byte) 0);
+		}
+	}
+
+	/**
+	 * Open a sealed field.
+	 *
+	 * @param sealed
+	 *            the sealed field
+	 * @param aad
+	 *            the additional authenticated data, as given when sealing
+	 *
+	 * @return the plaintext
+	 *
+	 * @throws SysCryptoException
+	 *             when the field is malformed, was sealed with another key or
+	 *             has been tampered with
+	 */
+	public String open(String sealed, byte[] aad) throws SysCryptoException {
+		checkNotWiped();
+		byte[] raw = decode(sealed);
+		if (!Arrays.equals(keyId, Arrays.copyOfRange(raw, 1, PREFIX_SIZE))) {
+			String msg = "Field was sealed with another key";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+		int nonceSize = SCHEME.getIvSize();
+		try {
+			Cipher cipher = ENGINE.cipher(SCHEME.getTransformation(),
+					Cipher.DECRYPT_MODE, new SecretKeySpec(encryptionKey, "AES"),
+					SCHEME.createParameters(Arrays.copyOfRange(raw,
+							PREFIX_SIZE, PREFIX_SIZE + nonceSize)));
+			cipher.updateAAD(aad);
+			byte[] plain = cipher.doFinal(raw, PREFIX_SIZE + nonceSize,
+					raw.length - PREFIX_SIZE - nonceSize);
+			try {
+				return new String(plain, StandardCharsets.UTF_8);
+			} finally {
+				Arrays.fill(plain, (byte) 0);
+			}
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Failed to open field, it has been tampered with";
+			logger.warn(msg, e);
+			throw new SysCryptoException(msg, e);
+		}
+	}
+
+	/**
+	 * Compute the blind index of a field's value. The name of the field is
+	 * part of the index, so equal values of different fields cannot be told
+	 * apart as equal.
+	 *
+	 * @param name
+	 *            the name of the field
+	 * @param plaintext
+	 *            the value, compared exactly
+	 *
+	 * @return the blind index, Base64 encoded
+	 *
+	 * @throws SysCryptoException
+	 *             when the key has been wiped or the JRE lacks the MAC
+	 */
+	public String blindIndex(String name, String plaintext)
+			throws SysCryptoException {
+		checkNotWiped();
+		byte[] plain = plaintext.getBytes(StandardCharsets.UTF_8);
+		try {
+			Mac mac = ENGINE.mac(BLIND_INDEX_MAC, new SecretKeySpec(indexKey,
+					BLIND_INDEX_MAC));
+			mac.update(name.getBytes(StandardCharsets.UTF_8));
+			// the separator keeps name and value from running into each other
+			mac.update((byte) 0);
+			mac.update(plain);
+			return Base64.getEncoder().encodeToString(
+					Arrays.copyOf(mac.doFinal(), BLIND_INDEX_SIZE));
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Failed to compute blind index";
+			logger.warn(msg, e);
+			throw new SysCryptoException(msg, e);
+		} finally {
+			Arrays.fill(plain, (byte) 0);
+		}
+	}
+
+	/**
+	 * Gets the id of the key a field has been sealed with.
+	 *
+	 * @param sealed
+	 *            the sealed field
+	 *
+	 * @return the key id, Base64 encoded
+	 *
+	 * @throws SysCryptoException
+	 *             when the field is malformed
+	 */
+	public static String keyIdOf(String sealed) throws SysCryptoException {
+		byte[] raw = decode(sealed);
+		return Base64.getEncoder().encodeToString(
+				Arrays.copyOfRange(raw, 1, PREFIX_SIZE));
+	}
+
+	/**
+	 * Overwrite the key material with zeros. The cipher is unusable
+	 * afterwards.
+	 */
+	public void wipe() {
+		wiped = true;
+		Arrays.fill(encryptionKey, (byte) 0);
+		Arrays.fill(indexKey, (byte) 0);
+	}
+
+	/**
+	 * Checks if the key has been wiped.
+	 *
+	 * @return true, if wiped
+	 */
+	public boolean isWiped() {
+		return wiped;
+	}
+
+	/**
+	 * Make sure, the key has not been wiped.
+	 *
+	 * @throws SysCryptoException
+	 *             when the key has been wiped
+	 */
+	private void checkNotWiped() throws SysCryptoException {
+		if (wiped) {
+			String msg = "Field cipher has been wiped, unlock again";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+	}
+
+	/**
+	 * Decode a sealed field and check its format.
+	 *
+	 * @param sealed
+	 *            the sealed field
+	 *
+	 * @return the raw bytes
+	 *
+	 * @throws SysCryptoException
+	 *             when the field is malformed
+	 */
+	private static byte[] decode(String sealed) throws SysCryptoException {
+		byte[] raw;
+		try {
+			raw = Base64.getDecoder().decode(sealed.trim());
+		} catch (IllegalArgumentException e) {
+			String msg = "Sealed field is not Base64";
+			logger.warn(msg, e);
+			throw new SysCryptoException(msg, e);
+		}
+		if (raw.length < PREFIX_SIZE + SCHEME.getIvSize() + SCHEME.getTagSize()
+				|| raw[0] != FORMAT_VERSION) {
+			String msg = "Malformed sealed field";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+		return raw;
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+/**
+ * The Enumeration KdfAlgorithm lists the functions deriving keys from
+ * passwords. The id is written into the container header. WARNING: Never
+ * change or reuse an id, or existing files cannot be read any more!
+ *
+ * @author Jan Petranek
+ */
+public enum KdfAlgorithm {
+
+	/** PKCS#12 with SHA-256, as in PBEWITHSHA256AND256BITAES-CBC-BC. */
+	PKCS12_SHA256(1),
+
+	/** PBKDF2 with HMAC-SHA256, as provided by every JRE. */
+	PBKDF2_SHA256(2),
+
+	/** Scrypt (RFC 7914), memory-hard, with lanes computed in parallel. */
+	SCRYPT(3);
+
+	/** The id in the container header. */
+	private final int id;
+
+	/**
+	 * Instantiates a new key derivation algorithm.
+	 *
+	 * @param id
+	 *            the id in the container header
+	 */
+	private KdfAlgorithm(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Gets the id in the container header.
+	 *
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Find the algorithm for an id from a container header.
+	 *
+	 * @param id
+	 *            the id
+	 *
+	 * @return the algorithm or null, if the id is unknown
+	 */
+	public static KdfAlgorithm fromId(int id) {
+		for (KdfAlgorithm algorithm : values()) {
+			if (algorithm.id == id) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+}
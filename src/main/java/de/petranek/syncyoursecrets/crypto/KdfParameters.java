@@ -0,0 +1,307 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+/**
+ * The Class KdfParameters holds the key derivation algorithm together with
+ * its cost parameters, as written into the container header.
+ *
+ * PKCS#12 and PBKDF2 only know an iteration count. Scrypt is memory-hard: its
+ * cost N (stored as iterations) and block size r determine the memory each
+ * lane needs, 128 * r * N bytes. The lanes p are independent of each other,
+ * so they are computed in parallel. More lanes raise the attacker's cost
+ * without raising the unlock time, as long as there are cores to spare.
+ * As all lanes are allocated at once, their memory together is bounded by
+ * MAX_MEMORY.
+ *
+ * Instances are immutable.
+ *
+ * @author Jan Petranek
+ */
+public final class KdfParameters {
+
+	/** The largest memory a scrypt lane may use, 256 MiB. */
+	public static final long MAX_LANE_MEMORY = 256L * 1024 * 1024;
+
+	/** The largest number of scrypt lanes. */
+	public static final int MAX_LANES = 64;
+
+	/**
+	 * The largest memory of a scrypt derivation, all lanes together, 1 GiB.
+	 * The lanes run in parallel, so a crafted header must not ask for more.
+	 */
+	public static final long MAX_MEMORY = 1024L * 1024 * 1024;
+
+	/** The bound of lanes times block size, p * r < 2^30 by RFC 7914. */
+	public static final long MAX_LANE_BLOCKS = 1L << 30;
+
+	/**
+	 * The largest PBKDF2 or PKCS#12 iteration count, four times the largest
+	 * calibrated one. A crafted header cannot stall unlocking for longer.
+	 */
+	public static final int MAX_PBKDF2_ITERATIONS = 20000000;
+
+	/** The key derivation algorithm. */
+	private final KdfAlgorithm algorithm;
+
+	/** The iteration count, for scrypt the cost N. */
+	private final int iterations;
+
+	/** The scrypt block size r, 0 for other algorithms. */
+	private final int blockSize;
+
+	/** The scrypt lanes p, 0 for other algorithms. */
+	private final int lanes;
+
+	/**
+	 * Instantiates new parameters.
+	 *
+	 * @param algorithm
+	 *            the key derivation algorithm
+	 * @param iterations
+	 *            the iteration count, for scrypt the cost N
+	 * @param blockSize
+	 *            the scrypt block size r, 0 for other algorithms
+	 * @param lanes
+	 *            the scrypt lanes p, 0 for other algorithms
+	 */
+	private KdfParameters(KdfAlgorithm algorithm, int iterations,
+			int blockSize, int lanes) {
+		super();
+		this.algorithm = algorithm;
+		this.iterations = iterations;
+		this.blockSize = blockSize;
+		this.lanes = lanes;
+	}
+
+	/**
+	 * Create the parameters of the PKCS#12 key derivation.
+	 *
+	 * @param iterations
+	 *            the iteration count
+	 *
+	 * @return the parameters
+	 */
+	public static KdfParameters pkcs12(int iterations) {
+		checkIterations(iterations);
+		return new KdfParameters(KdfAlgorithm.PKCS12_SHA256, iterations, 0, 0);
+	}
+
+	/**
+	 * Create the parameters of PBKDF2.
+	 *
+	 * @param iterations
+	 *            the iteration count
+	 *
+	 * @return the parameters
+	 */
+	public static KdfParameters pbkdf2(int iterations) {
+		checkIterations(iterations);
+		return new KdfParameters(KdfAlgorithm.PBKDF2_SHA256, iterations, 0, 0);
+	}
+
+	/**
+	 * Create the parameters of scrypt.
+	 *
+	 * @param cost
+	 *            the cost N, a power of 2 greater than 1
+	 * @param blockSize
+	 *            the block size r
+	 * @param lanes
+	 *            the number of lanes p, computed in parallel
+	 *
+	 * @return the parameters
+	 */
+	public static KdfParameters scrypt(int cost, int blockSize, int lanes) {
+		if (cost < 2 || (cost & (cost - 1)) != 0) {
+			throw new IllegalArgumentException(
+					"Scrypt cost must be a power of 2 greater than 1");
+		}
+		checkPositive(blockSize, "Block size");
+		checkPositive(lanes, "Lanes");
+		if (128L * blockSize * cost > MAX_LANE_MEMORY) {
+			throw new IllegalArgumentException("Scrypt needs more than "
+					+ MAX_LANE_MEMORY + " bytes per lane");
+		}
+		if (lanes > MAX_LANES) {
+			throw new IllegalArgumentException("At most " + MAX_LANES
+					+ " lanes allowed");
+		}
+		checkScryptMemory(cost, blockSize, lanes);
+		return new KdfParameters(KdfAlgorithm.SCRYPT, cost, blockSize, lanes);
+	}
+
+	/**
+	 * Create the parameters for an algorithm, as read from a header.
+	 *
+	 * @param algorithm
+	 *            the key derivation algorithm
+	 * @param iterations
+	 *            the iteration count, for scrypt the cost N
+	 * @param blockSize
+	 *            the scrypt block size r, ignored for other algorithms
+	 * @param lanes
+	 *            the scrypt lanes p, ignored for other algorithms
+	 *
+	 * @return the parameters
+	 */
+	public static KdfParameters of(KdfAlgorithm algorithm, int iterations,
+			int blockSize, int lanes) {
+		switch (algorithm) {
+		case PKCS12_SHA256:
+			return pkcs12(iterations);
+		case PBKDF2_SHA256:
+			return pbkdf2(iterations);
+		case SCRYPT:
+			return scrypt(iterations, blockSize, lanes);
+		default:
+			throw new IllegalArgumentException("Unknown key derivation "
+					+ algorithm);
+		}
+	}
+
+	/**
+	 * Make sure, an iteration count is positive and at most
+	 * MAX_PBKDF2_ITERATIONS.
+	 *
+	 * @param iterations
+	 *            the iteration count
+	 */
+	private static void checkIterations(int iterations) {
+		checkPositive(iterations, "Iterations");
+		if (iterations > MAX_PBKDF2_ITERATIONS) {
+			throw new IllegalArgumentException("At most "
+					+ MAX_PBKDF2_ITERATIONS + " iterations allowed");
+		}
+	}
+
+	/**
+	 * Make sure, lanes times block size stay below MAX_LANE_BLOCKS and all
+	 * lanes together need at most MAX_MEMORY bytes.
+	 *
+	 * @param cost
+	 *            the cost N
+	 * @param blockSize
+	 *            the block size r
+	 * @param lanes
+	 *            the lanes p
+	 */
+	public static void checkScryptMemory(int cost, int blockSize, int lanes) {
+		if ((long) lanes * blockSize >= MAX_LANE_BLOCKS) {
+			throw new IllegalArgumentException(
+					"Scrypt lanes times block size too large");
+		}
+		if (128L * blockSize * cost * lanes > MAX_MEMORY) {
+			throw new IllegalArgumentException("Scrypt needs more than "
+					+ MAX_MEMORY + " bytes");
+		}
+	}
+
+	/**
+	 * Make sure, a parameter is positive.
+	 *
+	 * @param value
+	 *            the value
+	 * @param name
+	 *            the name of the parameter
+	 */
+	private static void checkPositive(int value, String name) {
+		if (value <= 0) {
+			throw new IllegalArgumentException(name + " must be positive");
+		}
+	}
+
+	/**
+	 * Gets the key derivation algorithm.
+	 *
+	 * @return the algorithm
+	 */
+	public KdfAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Gets the iteration count, for scrypt the cost N.
+	 *
+	 * @return the iterations
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Gets the scrypt block size r.
+	 *
+	 * @return the block size, 0 for other algorithms
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Gets the number of scrypt lanes p.
+	 *
+	 * @return the lanes, 0 for other algorithms
+	 */
+	public int getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * Gets the memory a derivation needs, if all lanes run in parallel.
+	 *
+	 * @return the memory in bytes, 0 for algorithms which are not memory-hard
+	 */
+	public long getMemory() {
+		return 128L * blockSize * iterations * lanes;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = algorithm.hashCode();
+		result = prime * result + iterations;
+		result = prime * result + blockSize;
+		result = prime * result + lanes;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof KdfParameters)) {
+			return false;
+		}
+		KdfParameters other = (KdfParameters) obj;
+		return algorithm == other.algorithm && iterations == other.iterations
+				&& blockSize == other.blockSize && lanes == other.lanes;
+	}
+
+	@Override
+	public String toString() {
+		if (algorithm == KdfAlgorithm.SCRYPT) {
+			return algorithm + "(N=" + iterations + ", r=" + blockSize
+					+ ", p=" + lanes + ")";
+		}
+		return algorithm + "(" + iterations + ")";
+	}
+
+}
@@ -0,0 +1,433 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * The Class KeyDerivation turns passwords into symmetric keys.
+ *
+ * The PKCS#12 derivation is delegated to Bouncycastle. It is the very same
+ * key derivation the Bouncycastle provider performs for
+ * PBEWITHSHA256AND256BITAES-CBC-BC, so keys derived here are compatible with
+ * files written by Jasypt's StandardPBEStringEncryptor. Doing it ourselves
+ * merely gives us access to the derived key, so it can be cached.
+ *
+ * PBKDF2 is taken from the JRE's default provider, which is considerably
+ * faster than the pure Java implementations. Scrypt is provided by neither,
+ * see Scrypt.
+ *
+ * @author Jan Petranek
+ */
+public final class KeyDerivation {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(KeyDerivation.class);
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private KeyDerivation() {
+		super();
+	}
+
+	/** The JCE name of PBKDF2 with HMAC-SHA256. */
+	private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+	/** The MAC used by HKDF. */
+	private static final String HKDF_MAC = "HmacSHA256";
+
+	/** The iterations of a calibration run. */
+	private static final int CALIBRATION_ITERATIONS = 20000;
+
+	/** The number of calibration runs, the fastest one counts. */
+	private static final int CALIBRATION_RUNS = 3;
+
+	/** The engine providing the JCE's MACs. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/**
+	 * Derive a key with the given algorithm and cost parameters.
+	 *
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt
+	 * @param keyBits
+	 *            the key size in bits
+	 * @param ivBits
+	 *            the initialization vector size in bits, only used by
+	 *            algorithms deriving an initialization vector
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	public static DerivedKey derive(KdfParameters parameters,
+			String password, byte[] salt, int keyBits, int ivBits) {
+		char[] chars = password.toCharArray();
+		try {
+			return derive(parameters, chars, salt, keyBits, ivBits);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Derive a key with the given algorithm and cost parameters from a
+	 * password held in a char array. The array is left untouched, the caller
+	 * wipes it.
+	 *
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt
+	 * @param keyBits
+	 *            the key size in bits
+	 * @param ivBits
+	 *            the initialization vector size in bits, only used by
+	 *            algorithms deriving an initialization vector
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	public static DerivedKey derive(KdfParameters parameters,
+			char[] password, byte[] salt, int keyBits, int ivBits) {
+		int iterations = parameters.getIterations();
+		switch (parameters.getAlgorithm()) {
+		case PKCS12_SHA256:
+			return derivePkcs12Sha256(password, salt, iterations, keyBits,
+					ivBits);
+		case PBKDF2_SHA256:
+			return derivePbkdf2Sha256(password, salt, iterations, keyBits);
+		case SCRYPT:
+			return deriveScrypt(password, salt, iterations, parameters
+					.getBlockSize(), parameters.getLanes(), keyBits);
+		default:
+			throw new IllegalArgumentException("Unknown key derivation "
+					+ parameters.getAlgorithm());
+		}
+	}
+
+	/**
+	 * Derive key and initialization vector with the PKCS#12 scheme using
+	 * SHA-256. Like Jasypt, the password is normalized to Unicode NFC first.
+	 *
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt
+	 * @param iterations
+	 *            the iteration count
+	 * @param keyBits
+	 *            the key size in bits
+	 * @param ivBits
+	 *            the initialization vector size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	public static DerivedKey derivePkcs12Sha256(String password, byte[] salt,
+			int iterations, int keyBits, int ivBits) {
+		char[] chars = password.toCharArray();
+		try {
+			return derivePkcs12Sha256(chars, salt, iterations,
+					keyBits, ivBits);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Derive key and initialization vector with the PKCS#12 scheme from a
+	 * password held in a char array.
+	 *
+	 * @param password
+	 *            the password, left untouched
+	 * @param salt
+	 *            the salt
+	 * @param iterations
+	 *            the iteration count
+	 * @param keyBits
+	 *            the key size in bits
+	 * @param ivBits
+	 *            the initialization vector size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	private static DerivedKey derivePkcs12Sha256(char[] password,
+			byte[] salt, int iterations, int keyBits, int ivBits) {
+		logger.debug("entering derivePkcs12Sha256");
+		char[] chars = normalize(password);
+		byte[] passwordBytes = PBEParametersGenerator
+				.PKCS12PasswordToBytes(chars);
+		try {
+			PKCS12ParametersGenerator generator = new PKCS12ParametersGenerator(
+					new SHA256Digest());
+			generator.init(passwordBytes, salt, iterations);
+			ParametersWithIV params = (ParametersWithIV) generator
+					.generateDerivedParameters(keyBits, ivBits);
+
+			byte[] key = ((KeyParameter) params.getParameters()).getKey();
+			logger.debug("exiting derivePkcs12Sha256");
+			return new DerivedKey(key, params.getIV());
+		} finally {
+			Arrays.fill(chars, '\0');
+			Arrays.fill(passwordBytes, (byte) 0);
+		}
+	}
+
+	/**
+	 * Derive a key with PBKDF2 using HMAC-SHA256. The password is normalized
+	 * to Unicode NFC first. No initialization vector is derived.
+	 *
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt
+	 * @param iterations
+	 *            the iteration count
+	 * @param keyBits
+	 *            the key size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	public static DerivedKey derivePbkdf2Sha256(String password, byte[] salt,
+			int iterations, int keyBits) {
+		char[] chars = password.toCharArray();
+		try {
+			return derivePbkdf2Sha256(chars, salt, iterations,
+					keyBits);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Derive a key with PBKDF2 from a password held in a char array.
+	 *
+	 * @param password
+	 *            the password, left untouched
+	 * @param salt
+	 *            the salt
+	 * @param iterations
+	 *            the iteration count
+	 * @param keyBits
+	 *            the key size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	private static DerivedKey derivePbkdf2Sha256(char[] password,
+			byte[] salt, int iterations, int keyBits) {
+		logger.debug("entering derivePbkdf2Sha256");
+		char[] chars = normalize(password);
+		PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, keyBits);
+		try {
+			byte[] key = SecretKeyFactory.getInstance(PBKDF2_ALGORITHM)
+					.generateSecret(spec).getEncoded();
+			logger.debug("exiting derivePbkdf2Sha256");
+			return new DerivedKey(key, null);
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Cannot derive key, the JRE lacks " + PBKDF2_ALGORITHM;
+			logger.fatal(msg, e);
+			throw new SysRuntimeException(msg, e);
+		} finally {
+			spec.clearPassword();
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Derive a key with scrypt (RFC 7914). The password is normalized to
+	 * Unicode NFC and encoded in UTF-8 first. The lanes are computed in
+	 * parallel. No initialization vector is derived.
+	 *
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt
+	 * @param cost
+	 *            the cost N, a power of 2
+	 * @param blockSize
+	 *            the block size r
+	 * @param lanes
+	 *            the lanes p
+	 * @param keyBits
+	 *            the key size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	public static DerivedKey deriveScrypt(String password, byte[] salt,
+			int cost, int blockSize, int lanes, int keyBits) {
+		char[] chars = password.toCharArray();
+		try {
+			return deriveScrypt(chars, salt, cost, blockSize,
+					lanes, keyBits);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Derive a key with scrypt from a password held in a char array.
+	 *
+	 * @param password
+	 *            the password, left untouched
+	 * @param salt
+	 *            the salt
+	 * @param cost
+	 *            the cost N, a power of 2
+	 * @param blockSize
+	 *            the block size r
+	 * @param lanes
+	 *            the lanes p
+	 * @param keyBits
+	 *            the key size in bits
+	 *
+	 * @return the derived key, to be wiped by the caller
+	 */
+	private static DerivedKey deriveScrypt(char[] password, byte[] salt,
+			int cost, int blockSize, int lanes, int keyBits) {
+		logger.debug("entering deriveScrypt");
+		char[] chars = normalize(password);
+		ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer
+				.wrap(chars));
+		Arrays.fill(chars, '\0');
+		byte[] passwordBytes = new byte[encoded.remaining()];
+		encoded.get(passwordBytes);
+		try {
+			byte[] key = Scrypt.derive(passwordBytes, salt, cost, blockSize,
+					lanes, keyBits / 8);
+			logger.debug("exiting deriveScrypt");
+			return new DerivedKey(key, null);
+		} finally {
+			Arrays.fill(passwordBytes, (byte) 0);
+			if (encoded.hasArray()) {
+				Arrays.fill(encoded.array(), (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Normalize a password to Unicode NFC. Passwords already normalized, as
+	 * most are, are merely copied; only the others pass through an immutable
+	 * String.
+	 *
+	 * @param password
+	 *            the password, left untouched
+	 *
+	 * @return the normalized password, to be wiped by the caller
+	 */
+	private static char[] normalize(char[] password) {
+		CharBuffer chars = CharBuffer.wrap(password);
+		if (Normalizer.isNormalized(chars, Normalizer.Form.NFC)) {
+			return password.clone();
+		}
+		return Normalizer.normalize(chars, Normalizer.Form.NFC).toCharArray();
+	}
+
+	/**
+	 * Estimate the number of PBKDF2 iterations this machine performs in the
+	 * given time. A few short derivations are timed; the fastest one counts,
+	 * so warm-up and hiccups do not lower the estimate. The cost grows
+	 * linearly with the iterations, hence the estimate is extrapolated.
+	 *
+	 * @param targetMillis
+	 *            the time a derivation shall take, in milliseconds
+	 *
+	 * @return the estimated number of iterations
+	 */
+	public static int calibratePbkdf2Sha256(long targetMillis) {
+		logger.debug("entering calibratePbkdf2Sha256");
+		byte[] salt = new byte[16];
+		long fastest = Long.MAX_VALUE;
+		for (int i = 0; i < CALIBRATION_RUNS; i++) {
+			long start = System.nanoTime();
+			derivePbkdf2Sha256("calibration", salt, CALIBRATION_ITERATIONS, 256)
+					.wipe();
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		long iterations = CALIBRATION_ITERATIONS * targetMillis * 1000000L
+				/ Math.max(fastest, 1);
+		logger.debug("exiting calibratePbkdf2Sha256");
+		return (int) Math.min(iterations, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Derive a subkey from a uniformly random key with HKDF-Expand (RFC 5869)
+	 * using HMAC-SHA256. The extract step is skipped, as the keys passed in
+	 * come from a key derivation function already.
+	 *
+	 * @param key
+	 *            the pseudorandom key
+	 * @param info
+	 *            the context, distinguishing subkeys
+	 * @param length
+	 *            the length of the subkey in bytes, at most 8160
+	 *
+	 * @return the subkey, to be wiped by the caller
+	 */
+	public static byte[] hkdfExpand(byte[] key, byte[] info, int length) {
+		try {
+			Mac mac = ENGINE.mac(HKDF_MAC, new SecretKeySpec(key, HKDF_MAC));
+			int macLength = mac.getMacLength();
+			if (length > 255 * macLength) {
+				throw new IllegalArgumentException("Subkey too long");
+			}
+			byte[] result = new byte[length];
+			byte[] block = new byte[0];
+			for (int i = 0; i * macLength < length; i++) {
+				mac.update(block);
+				mac.update(info);
+				mac.update((byte) (i + 1));
+				Arrays.fill(block, (byte) 0);
+				block = mac.doFinal();
+				System.arraycopy(block, 0, result, i * macLength, Math.min(
+						macLength, length - i * macLength));
+			}
+			Arrays.fill(block, (byte) 0);
+			return result;
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Cannot derive subkey, the JRE lacks " + HKDF_MAC;
+			logger.fatal(msg, e);
+			throw new SysRuntimeException(msg, e);
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * The Class KeySlot holds the data key of a container, wrapped with a key
+ * derived from one password.
+ *
+ * With key slots, the payload is encrypted with a random data key instead of
+ * a key derived from the password. Each password gets a slot: the key
+ * derivation parameters, the salt and the data key sealed with AES-GCM under
+ * the derived key. Changing or adding a password only replaces the slots, the
+ * payload is not re-encrypted.
+ *
+ * A slot is written as: algorithm id (1 byte), iterations, block size and
+ * lanes (4 bytes each), salt length (1 byte), salt, nonce (12 bytes) and the
+ * sealed data key. Everything before the nonce is authenticated along, so the
+ * key derivation parameters cannot be tampered with.
+ *
+ * Instances are immutable.
+ *
+ * @author Jan Petranek
+ */
+public final class KeySlot {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(KeySlot.class);
+
+	/** The size of a data key in bytes. */
+	public static final int DATA_KEY_SIZE = 32;
+
+	/** The JCE transformation wrapping the data key. */
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	/** The nonce size in bytes. */
+	private static final int NONCE_SIZE = 12;
+
+	/** The tag size in bits. */
+	private static final int TAG_BITS = 128;
+
+	/** The engine providing the JCE's ciphers. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/** The key derivation parameters. */
+	private final KdfParameters kdf;
+
+	/** The salt. */
+	private final byte[] salt;
+
+	/** The nonce. */
+	private final byte[] nonce;
+
+	/** The sealed data key. */
+	private final byte[] sealedKey;
+
+	/**
+	 * Instantiates a new key slot.
+	 *
+	 * @param kdf
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * @param nonce
+	 *            the nonce
+	 * @param sealedKey
+	 *            the sealed data key
+	 */
+	private KeySlot(KdfParameters kdf, byte[] salt, byte[] nonce,
+			byte[] sealedKey) {
+		super();
+		this.kdf = kdf;
+		this.salt = salt;
+		this.nonce = nonce;
+		this.sealedKey = sealedKey;
+	}
+
+	/**
+	 * Seal a data key into a new slot.
+	 *
+	 * @param dataKey
+	 *            the data key
+	 * @param kdf
+	 *            the parameters the key encryption key was derived with
+	 * @param salt
+	 *            the salt the key encryption key was derived with
+	 * @param keyEncryptionKey
+	 *            the key derived from the password
+	 *
+	 * @return the key slot
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	public static KeySlot seal(byte[] dataKey, KdfParameters kdf,
+			byte[] salt, byte[] keyEncryptionKey)
+			throws GeneralSecurityException {
+		byte[] nonce = CipherEngine.randomBytes(NONCE_SIZE);
+		KeySlot unsealed = new KeySlot(kdf, salt.clone(), nonce, null);
+		Cipher cipher = ENGINE.cipher(TRANSFORMATION, Cipher.ENCRYPT_MODE,
+				new SecretKeySpec(keyEncryptionKey, "AES"),
+				new GCMParameterSpec(TAG_BITS, nonce));
+		cipher.updateAAD(unsealed.parametersToByteArray());
+		return new KeySlot(kdf, unsealed.salt, nonce, cipher.doFinal(dataKey));
+	}
+
+	/**
+	 * Open the slot.
+	 *
+	 * @param keyEncryptionKey
+	 *            the key derived from the password
+	 *
+	 * @return the data key, to be wiped by the caller
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the key does not open the slot, an AEADBadTagException
+	 */
+	public byte[] open(byte[] keyEncryptionKey)
+			throws GeneralSecurityException {
+		Cipher cipher = ENGINE.cipher(TRANSFORMATION, Cipher.DECRYPT_MODE,
+				new SecretKeySpec(keyEncryptionKey, "AES"),
+				new GCMParameterSpec(TAG_BITS, nonce));
+		cipher.updateAAD(parametersToByteArray());
+		return cipher.doFinal(sealedKey);
+	}
+
+	/**
+	 * Serialize the slot.
+	 *
+	 * @return the bytes
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			bytes.write(parametersToByteArray());
+			bytes.write(nonce);
+			bytes.write(sealedKey);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Parse a serialized slot.
+	 *
+	 * @param bytes
+	 *            the bytes
+	 *
+	 * @return the key slot
+	 *
+	 * @throws SysCryptoException
+	 *             when the slot is malformed
+	 */
+	public static KeySlot fromByteArray(byte[] bytes)
+			throws SysCryptoException {
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			KdfAlgorithm algorithm = KdfAlgorithm.fromId(data
+					.readUnsignedByte());
+			if (algorithm == null) {
+				throw malformed("Unsupported key derivation in key slot");
+			}
+			int iterations = data.readInt();
+			int blockSize = data.readInt();
+			int lanes = data.readInt();
+			if (algorithm == KdfAlgorithm.SCRYPT) {
+				KdfParameters.checkScryptMemory(iterations, blockSize, lanes);
+			}
+			KdfParameters kdf = KdfParameters.of(algorithm, iterations,
+					blockSize, lanes);
+			byte[] salt = new byte[data.readUnsignedByte()];
+			data.readFully(salt);
+			byte[] nonce = new byte[NONCE_SIZE];
+			data.readFully(nonce);
+			byte[] sealedKey = new byte[data.available()];
+			data.readFully(sealedKey);
+			if (sealedKey.length != DATA_KEY_SIZE + TAG_BITS / 8) {
+				throw malformed("Wrong size of the sealed key in key slot");
+			}
+			return new KeySlot(kdf, salt, nonce, sealedKey);
+
+		} catch (IOException e) {
+			throw malformed("Truncated key slot");
+		} catch (IllegalArgumentException e) {
+			throw malformed(e.getMessage());
+		}
+	}
+
+	/**
+	 * Serialize the key derivation parameters and the salt.
+	 *
+	 * @return the bytes
+	 */
+	private byte[] parametersToByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			data.writeByte(kdf.getAlgorithm().getId());
+			data.writeInt(kdf.getIterations());
+			data.writeInt(kdf.getBlockSize());
+			data.writeInt(kdf.getLanes());
+			data.writeByte(salt.length);
+			data.write(salt);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Create the exception for a malformed slot and log it.
+	 *
+	 * @param msg
+	 *            the message
+	 *
+	 * @return the exception
+	 */
+	private static SysCryptoException malformed(String msg) {
+		logger.warn(msg);
+		return new SysCryptoException(msg);
+	}
+
+	/**
+	 * Gets the key derivation parameters.
+	 *
+	 * @return the key derivation parameters
+	 */
+	public KdfParameters getKdfParameters() {
+		return kdf;
+	}
+
+	/**
+	 * Gets the salt.
+	 *
+	 * @return a copy of the salt
+	 */
+	public byte[] getSalt() {
+		return salt.clone();
+	}
+
+}
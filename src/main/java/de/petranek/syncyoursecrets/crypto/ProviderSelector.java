@@ -0,0 +1,459 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class ProviderSelector picks the JCE provider for each cipher scheme.
+ *
+ * By default, every scheme uses its preferred provider: Bouncycastle for
+ * AES-CBC, which wrote the legacy files, and the JCE's preferred provider for
+ * AES-GCM. With benchmarking enabled, the first use of a scheme times all
+ * installed providers offering it and picks the fastest. This takes a few
+ * milliseconds once; the JRE's provider is often several times faster than
+ * Bouncycastle on hardware with AES instructions.
+ *
+ * Only compliant providers compete: a provider has to encrypt a known block
+ * exactly like the preferred provider and decrypt it back. So the choice
+ * never changes the bytes written or read.
+ *
+ * The choices, including the measured throughput, are available from
+ * getChoices() and are logged.
+ *
+ * @author Jan Petranek
+ */
+public final class ProviderSelector {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(ProviderSelector.class);
+
+	/** The size of the data encrypted per benchmark round, in bytes. */
+	private static final int BENCHMARK_SIZE = 64 * 1024;
+
+	/** The number of rounds before measuring, to let the JIT compile. */
+	private static final int WARMUP_ROUNDS = 8;
+
+	/** The number of measured rounds. */
+	private static final int BENCHMARK_ROUNDS = 16;
+
+	/** The size of the known answer plaintext, not a multiple of a block. */
+	private static final int KNOWN_ANSWER_SIZE = 100;
+
+	/** The additional authenticated data of the known answer test. */
+	private static final byte[] KNOWN_ANSWER_AAD = { 'S', 'Y', 'S' };
+
+	/** The preferred providers, null for the JCE's preferred provider. */
+	private final Map<CipherScheme, Provider> preferred = new EnumMap<CipherScheme, Provider>(
+			CipherScheme.class);
+
+	/** The choices made so far. */
+	private final Map<CipherScheme, Choice> choices = new EnumMap<CipherScheme, Choice>(
+			CipherScheme.class);
+
+	/** The engines, by provider name, shared among schemes. */
+	private final Map<String, CipherEngine> engines = new HashMap<String, CipherEngine>();
+
+	/** Whether the providers are benchmarked. */
+	private boolean benchmark = false;
+
+	/**
+	 * Instantiates a new provider selector with the default preferences.
+	 */
+	public ProviderSelector() {
+		super();
+		preferred.put(CipherScheme.AES_CBC, CipherEngine.bouncyCastle());
+	}
+
+	/**
+	 * Gets the engine for a cipher scheme, choosing its provider on first
+	 * use.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the engine
+	 */
+	public CipherEngine engine(CipherScheme scheme) {
+		return choose(scheme).engine;
+	}
+
+	/**
+	 * Gets the choice for a cipher scheme, choosing its provider on first
+	 * use.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the choice
+	 */
+	public synchronized Choice choose(CipherScheme scheme) {
+		Choice choice = choices.get(scheme);
+		if (choice == null) {
+			choice = benchmark ? benchmark(scheme) : preferredChoice(scheme);
+			logger.info("Provider for " + scheme + ": " + choice);
+			choices.put(scheme, choice);
+		}
+		return choice;
+	}
+
+	/**
+	 * Gets the choices made so far.
+	 *
+	 * @return the choices, by cipher scheme
+	 */
+	public synchronized Map<CipherScheme, Choice> getChoices() {
+		return Collections.unmodifiableMap(new EnumMap<CipherScheme, Choice>(
+				choices));
+	}
+
+	/**
+	 * Sets the preferred provider of a cipher scheme. It is used without
+	 * benchmark and is the reference of the known answer test. The choice
+	 * for the scheme is made anew.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 * @param provider
+	 *            the provider or null for the JCE's preferred provider
+	 */
+	public synchronized void prefer(CipherScheme scheme, Provider provider) {
+		preferred.put(scheme, provider);
+		choices.remove(scheme);
+	}
+
+	/**
+	 * Enable or disable benchmarking. All choices are made anew.
+	 *
+	 * @param benchmark
+	 *            true, to pick the fastest compliant provider
+	 */
+	public synchronized void setBenchmark(boolean benchmark) {
+		this.benchmark = benchmark;
+		choices.clear();
+	}
+
+	/**
+	 * Checks if the providers are benchmarked.
+	 *
+	 * @return true, if the fastest compliant provider is picked
+	 */
+	public synchronized boolean isBenchmark() {
+		return benchmark;
+	}
+
+	/**
+	 * Choose the preferred provider of a scheme.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the choice
+	 */
+	private Choice preferredChoice(CipherScheme scheme) {
+		Provider provider = preferred.get(scheme);
+		if (provider == null) {
+			provider = defaultProvider(scheme);
+		}
+		return new Choice(scheme, provider, engineOf(provider), Collections
+				.<String, Long> emptyMap());
+	}
+
+	/**
+	 * Time all compliant providers of a scheme and choose the fastest.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the choice
+	 */
+	private Choice benchmark(CipherScheme scheme) {
+		logger.debug("entering benchmark");
+		Choice fallback = preferredChoice(scheme);
+		byte[] reference;
+		try {
+			reference = knownAnswer(scheme, fallback.provider);
+		} catch (GeneralSecurityException e) {
+			logger.warn("Preferred provider fails the known answer test for "
+					+ scheme + ", skipping benchmark", e);
+			return fallback;
+		}
+
+		Map<String, Long> throughput = new LinkedHashMap<String, Long>();
+		Provider fastest = fallback.provider;
+		long fastestThroughput = -1;
+		for (Provider candidate : Security.getProviders()) {
+			try {
+				if (!Arrays.equals(reference, knownAnswer(scheme, candidate))) {
+					logger.debug(candidate.getName()
+							+ " is not compliant for " + scheme);
+					continue;
+				}
+				long measured = measure(scheme, candidate);
+				throughput.put(candidate.getName(), measured);
+				if (measured > fastestThroughput) {
+					fastest = candidate;
+					fastestThroughput = measured;
+				}
+			} catch (GeneralSecurityException e) {
+				logger.debug(candidate.getName() + " does not support "
+						+ scheme + ": " + e.getMessage());
+			}
+		}
+		logger.debug("exiting benchmark");
+		return new Choice(scheme, fastest, engineOf(fastest), Collections
+				.unmodifiableMap(throughput));
+	}
+
+	/**
+	 * Gets the engine of a provider, shared among schemes.
+	 *
+	 * @param provider
+	 *            the provider
+	 *
+	 * @return the engine
+	 */
+	private CipherEngine engineOf(Provider provider) {
+		CipherEngine engine = engines.get(provider.getName());
+		if (engine == null) {
+			engine = new CipherEngine(provider);
+			engines.put(provider.getName(), engine);
+		}
+		return engine;
+	}
+
+	/**
+	 * Find the provider the JCE prefers for a scheme.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the provider
+	 */
+	private static Provider defaultProvider(CipherScheme scheme) {
+		try {
+			return Cipher.getInstance(scheme.getTransformation())
+					.getProvider();
+		} catch (GeneralSecurityException e) {
+			String msg = "No provider offers " + scheme.getTransformation();
+			logger.fatal(msg, e);
+			throw new SysRuntimeException(msg, e);
+		}
+	}
+
+	/**
+	 * Encrypt a known plaintext with a known key and IV, and decrypt it back.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 * @param provider
+	 *            the provider
+	 *
+	 * @return the cyphertext
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the provider does not support the scheme or does not
+	 *             decrypt its own cyphertext
+	 */
+	private static byte[] knownAnswer(CipherScheme scheme, Provider provider)
+			throws GeneralSecurityException {
+		byte[] plain = pattern(KNOWN_ANSWER_SIZE, 1);
+		SecretKeySpec key = new SecretKeySpec(pattern(32, 2), "AES");
+		byte[] iv = pattern(scheme.getIvSize(), 3);
+
+		Cipher cipher = Cipher.getInstance(scheme.getTransformation(),
+				provider);
+		cipher.init(Cipher.ENCRYPT_MODE, key, scheme.createParameters(iv));
+		if (scheme.isAuthenticated()) {
+			cipher.updateAAD(KNOWN_ANSWER_AAD);
+		}
+		byte[] cypher = cipher.doFinal(plain);
+
+		cipher.init(Cipher.DECRYPT_MODE, key, scheme.createParameters(iv));
+		if (scheme.isAuthenticated()) {
+			cipher.updateAAD(KNOWN_ANSWER_AAD);
+		}
+		if (!Arrays.equals(plain, cipher.doFinal(cypher))) {
+			throw new GeneralSecurityException(provider.getName()
+					+ " does not decrypt its own cyphertext");
+		}
+		return cypher;
+	}
+
+	/**
+	 * Measure the encryption throughput of a provider.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 * @param provider
+	 *            the provider
+	 *
+	 * @return the throughput in bytes per second
+	 *
+	 * @throws GeneralSecurityException
+	 *             when the provider does not support the scheme
+	 */
+	private static long measure(CipherScheme scheme, Provider provider)
+			throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(scheme.getTransformation(),
+				provider);
+		SecretKeySpec key = new SecretKeySpec(pattern(32, 4), "AES");
+		byte[] data = new byte[BENCHMARK_SIZE];
+		byte[] iv = new byte[scheme.getIvSize()];
+		long start = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + BENCHMARK_ROUNDS; round++) {
+			if (round == WARMUP_ROUNDS) {
+				start = System.nanoTime();
+			}
+			// GCM must not reuse an IV with the same key
+			iv[0] = (byte) round;
+			cipher.init(Cipher.ENCRYPT_MODE, key, scheme.createParameters(iv));
+			if (scheme.isAuthenticated()) {
+				cipher.updateAAD(KNOWN_ANSWER_AAD);
+			}
+			cipher.doFinal(data);
+		}
+		long nanos = Math.max(1, System.nanoTime() - start);
+		return (long) BENCHMARK_SIZE * BENCHMARK_ROUNDS * 1000000000L / nanos;
+	}
+
+	/**
+	 * Create a deterministic byte pattern.
+	 *
+	 * @param size
+	 *            the size
+	 * @param seed
+	 *            the seed, to tell patterns apart
+	 *
+	 * @return the pattern
+	 */
+	private static byte[] pattern(int size, int seed) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i * 31 + seed);
+		}
+		return bytes;
+	}
+
+	/**
+	 * The Class Choice tells, which provider serves a cipher scheme and how
+	 * fast the candidates were.
+	 */
+	public static final class Choice {
+
+		/** The cipher scheme. */
+		private final CipherScheme scheme;
+
+		/** The chosen provider. */
+		private final Provider provider;
+
+		/** The engine of the chosen provider. */
+		private final CipherEngine engine;
+
+		/** The throughput of the compliant providers, by name. */
+		private final Map<String, Long> throughput;
+
+		/**
+		 * Instantiates a new choice.
+		 *
+		 * @param scheme
+		 *            the cipher scheme
+		 * @param provider
+		 *            the chosen provider
+		 * @param engine
+		 *            the engine of the chosen provider
+		 * @param throughput
+		 *            the throughput of the compliant providers, by name
+		 */
+		Choice(CipherScheme scheme, Provider provider, CipherEngine engine,
+				Map<String, Long> throughput) {
+			this.scheme = scheme;
+			this.provider = provider;
+			this.engine = engine;
+			this.throughput = throughput;
+		}
+
+		/**
+		 * Gets the cipher scheme.
+		 *
+		 * @return the cipher scheme
+		 */
+		public CipherScheme getScheme() {
+			return scheme;
+		}
+
+		/**
+		 * Gets the chosen provider.
+		 *
+		 * @return the provider
+		 */
+		public Provider getProvider() {
+			return provider;
+		}
+
+		/**
+		 * Gets the measured throughput of the compliant providers.
+		 *
+		 * @return the throughput in bytes per second, by provider name;
+		 *         empty, if not benchmarked
+		 */
+		public Map<String, Long> getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * Checks if the choice is the result of a benchmark.
+		 *
+		 * @return true, if benchmarked
+		 */
+		public boolean isBenchmarked() {
+			return !throughput.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			if (throughput.isEmpty()) {
+				return provider.getName() + " (preferred)";
+			}
+			List<String> rates = new ArrayList<String>();
+			for (Map.Entry<String, Long> entry : throughput.entrySet()) {
+				rates.add(entry.getKey() + " " + entry.getValue()
+						/ (1024 * 1024) + " MiB/s");
+			}
+			return provider.getName() + " (fastest of " + rates + ")";
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The Class Scrypt implements the scrypt key derivation of RFC 7914.
+ *
+ * Neither the JRE nor the Bouncycastle version we depend on provide scrypt.
+ * The implementation follows the RFC closely and is verified against its test
+ * vectors. Unlike the reference, the p lanes of ROMix run in parallel on the
+ * common ForkJoinPool; each lane needs its own 128 * r * N bytes of memory.
+ *
+ * @author Jan Petranek
+ */
+final class Scrypt {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(Scrypt.class);
+
+	/** The MAC of the PBKDF2 steps. */
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	/** The engine providing the JCE's MACs. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private Scrypt() {
+		super();
+	}
+
+	/**
+	 * Derive a key.
+	 *
+	 * @param password
+	 *            the password bytes
+	 * @param salt
+	 *            the salt
+	 * @param cost
+	 *            the cost N, a power of 2
+	 * @param blockSize
+	 *            the block size r
+	 * @param lanes
+	 *            the lanes p
+	 * @param length
+	 *            the key length in bytes
+	 *
+	 * @return the derived key
+	 */
+	static byte[] derive(byte[] password, byte[] salt, int cost,
+			int blockSize, int lanes, int length) {
+		KdfParameters.checkScryptMemory(cost, blockSize, lanes);
+		// bounded by MAX_MEMORY, so all sizes fit into an int
+		int laneSize = (int) (128L * blockSize);
+		byte[] blocks = pbkdf2(password, salt, (int) ((long) lanes
+				* laneSize));
+		try {
+			IntStream lanesStream = IntStream.range(0, lanes);
+			if (lanes > 1) {
+				lanesStream = lanesStream.parallel();
+			}
+			lanesStream.forEach(lane -> roMix(blocks, lane * laneSize,
+					blockSize, cost));
+			return pbkdf2(password, blocks, length);
+		} finally {
+			Arrays.fill(blocks, (byte) 0);
+		}
+	}
+
+	/**
+	 * PBKDF2 with HMAC-SHA256 and a single iteration, as scrypt uses it.
+	 *
+	 * @param password
+	 *            the password bytes
+	 * @param salt
+	 *            the salt
+	 * @param length
+	 *            the output length in bytes
+	 *
+	 * @return the output
+	 */
+	private static byte[] pbkdf2(byte[] password, byte[] salt, int length) {
+		// HMAC pads keys with zeros, so the empty key equals a single zero,
+		// which SecretKeySpec accepts
+		byte[] key = password.length == 0 ? new byte[1] : password;
+		try {
+			Mac mac = ENGINE.mac(MAC_ALGORITHM, new SecretKeySpec(key,
+					MAC_ALGORITHM));
+			int macLength = mac.getMacLength();
+			byte[] result = new byte[length];
+			for (int i = 0; i * macLength < length; i++) {
+				mac.update(salt);
+				int block = i + 1;
+				mac.update((byte) (block >>> 24));
+				mac.update((byte) (block >>> 16));
+				mac.update((byte) (block >>> 8));
+				mac.update((byte) block);
+				byte[] u = mac.doFinal();
+				System.arraycopy(u, 0, result, i * macLength, Math.min(
+						macLength, length - i * macLength));
+				Arrays.fill(u, (byte) 0);
+			}
+			return result;
+
+		} catch (GeneralSecurityException e) {
+			String msg = "Cannot derive key, the JRE lacks " + MAC_ALGORITHM;
+			logger.fatal(msg, e);
+			throw new SysRuntimeException(msg, e);
+		}
+	}
+
+	/**
+	 * The memory-hard ROMix function, applied to one lane in place.
+	 *
+	 * @param blocks
+	 *            the blocks of all lanes
+	 * @param offset
+	 *            the offset of the lane
+	 * @param blockSize
+	 *            the block size r
+	 * @param cost
+	 *            the cost N
+	 */
+	private static void roMix(byte[] blocks, int offset, int blockSize,
+			int cost) {
+		int laneInts = 32 * blockSize;
+		int[] x = new int[laneInts];
+		int[] y = new int[laneInts];
+		int[] scratch = new int[16];
+		int[] v = new int[cost * laneInts];
+
+		for (int i = 0; i < laneInts; i++) {
+			int pos = offset + 4 * i;
+			x[i] = (blocks[pos] & 0xff) | (blocks[pos + 1] & 0xff) << 8
+					| (blocks[pos + 2] & 0xff) << 16
+					| (blocks[pos + 3] & 0xff) << 24;
+		}
+		for (int i = 0; i < cost; i++) {
+			System.arraycopy(x, 0, v, i * laneInts, laneInts);
+			blockMix(x, y, scratch, blockSize);
+		}
+		for (int i = 0; i < cost; i++) {
+			// integerify: the first word of the last 64 byte block
+			int j = x[(2 * blockSize - 1) * 16] & (cost - 1);
+			int base = j * laneInts;
+			for (int k = 0; k < laneInts; k++) {
+				x[k] ^= v[base + k];
+			}
+			blockMix(x, y, scratch, blockSize);
+		}
+		for (int i = 0; i < laneInts; i++) {
+			int pos = offset + 4 * i;
+			blocks[pos] = (byte) x[i];
+			blocks[pos + 1] = (byte) (x[i] >>> 8);
+			blocks[pos + 2] = (byte) (x[i] >>> 16);
+			blocks[pos + 3] = (byte) (x[i] >>> 24);
+		}
+		Arrays.fill(v, 0);
+		Arrays.fill(x, 0);
+		Arrays.fill(y, 0);
+	}
+
+	/**
+	 * The BlockMix function, applied in place.
+	 *
+	 * @param b
+	 *            the 2 * r blocks of 16 words
+	 * @param y
+	 *            a buffer of the size of b
+	 * @param x
+	 *            a buffer of 16 words
+	 * @param blockSize
+	 *            the block size r
+	 */
+	private static void blockMix(int[] b, int[] y, int[] x, int blockSize) {
+		System.arraycopy(b, (2 * blockSize - 1) * 16, x, 0, 16);
+		for (int i = 0; i < 2 * blockSize; i++) {
+			for (int k = 0; k < 16; k++) {
+				x[k] ^= b[i * 16 + k];
+			}
+			salsa8(x);
+			// even blocks go to the first half, odd blocks to the second
+			System.arraycopy(x, 0, y, (i / 2 + (i % 2) * blockSize) * 16, 16);
+		}
+		System.arraycopy(y, 0, b, 0, 32 * blockSize);
+	}
+
+	/**
+	 * The Salsa20/8 core, applied in place.
+	 *
+	 * @param b
+	 *            the 16 words
+	 */
+	private static void salsa8(int[] b) {
+		int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3];
+		int x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+		int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11];
+		int x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+		for (int i = 0; i < 8; i += 2) {
+			// columns
+			x4 ^= Integer.rotateLeft(x0 + x12, 7);
+			x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13);
+			x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7);
+			x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13);
+			x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7);
+			x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13);
+			x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7);
+			x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13);
+			x15 ^= Integer.rotateLeft(x11 + x7, 18);
+			// rows
+			x1 ^= Integer.rotateLeft(x0 + x3, 7);
+			x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13);
+			x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7);
+			x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13);
+			x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7);
+			x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13);
+			x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7);
+			x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13);
+			x15 ^= Integer.rotateLeft(x14 + x13, 18);
+		}
+		b[0] += x0;
+		b[1] += x1;
+		b[2] += x2;
+		b[3] += x3;
+		b[4] += x4;
+		b[5] += x5;
+		b[6] += x6;
+		b[7] += x7;
+		b[8] += x8;
+		b[9] += x9;
+		b[10] += x10;
+		b[11] += x11;
+		b[12] += x12;
+		b[13] += x13;
+		b[14] += x14;
+		b[15] += x15;
+	}
+
+}
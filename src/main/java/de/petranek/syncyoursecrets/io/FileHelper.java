@@ -22,6 +22,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * The Class FileHelper contains basic methods to read and write content to or
@@ -113,6 +116,114 @@ public final class FileHelper {
 		logger.debug("exiting writeStringToFile");
 	}
 
+	/**
+	 * Open a buffered stream to write to the given file. The caller has to
+	 * close the stream.
+	 * 
+	 * @param destination
+	 *            the destination file
+	 * 
+	 * @return the output stream
+	 * 
+	 * @throws FileIOException
+	 *             when the file cannot be opened for writing.
+	 */
+	public static OutputStream openOutputStream(final File destination)
+			throws FileIOException {
+		logger.debug("entering openOutputStream");
+		if (destination.exists() && !destination.canWrite()) {
+			String msg = "Cannot write to file "
+					+ destination.getAbsolutePath()
+					+ " File already exists and cannot be overwritten";
+			logger.warn(msg);
+			throw new FileIOException(msg);
+		}
+
+		try {
+			logger.debug("Attempting to open file "
+					+ destination.getAbsolutePath());
+			return new BufferedOutputStream(new FileOutputStream(destination));
+		} catch (IOException e) {
+			String msg = "Error occured while opening file "
+					+ destination.getAbsolutePath();
+
+			logger.error(msg, e);
+			throw new FileIOException(msg, e);
+		}
+	}
+
+	/**
+	 * Open a buffered stream to read from the given file. The caller has to
+	 * close the stream.
+	 * 
+	 * @param file
+	 *            the file
+	 * 
+	 * @return the input stream
+	 * 
+	 * @throws FileIOException
+	 *             when the file is not readable.
+	 */
+	public static InputStream openInputStream(final File file)
+			throws FileIOException {
+		logger.debug("entering openInputStream");
+		checkFileForReadability(file);
+
+		try {
+			return new BufferedInputStream(new FileInputStream(file));
+		} catch (IOException e) {
+			String msg = "I/O-Error while opening file  "
+					+ file.getAbsolutePath();
+
+			logger.error(msg, e);
+			throw new FileIOException(msg, e);
+		}
+	}
+
+	/**
+	 * Replace the destination file by the replacement file. Where the file
+	 * system supports it, the replacement is atomic, so the destination is
+	 * never left half-written.
+	 * 
+	 * @param replacement
+	 *            the file with the new content, will be gone afterwards
+	 * @param destination
+	 *            the destination file
+	 * 
+	 * @throws FileIOException
+	 *             when the destination cannot be replaced.
+	 */
+	public static void replaceFile(final File replacement,
+			final File destination) throws FileIOException {
+		logger.debug("entering replaceFile");
+		if (destination.exists() && !destination.canWrite()) {
+			String msg = "Cannot write to file "
+					+ destination.getAbsolutePath()
+					+ " File already exists and cannot be overwritten";
+			logger.warn(msg);
+			throw new FileIOException(msg);
+		}
+
+		try {
+			try {
+				Files.move(replacement.toPath(), destination.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				logger.debug("Atomic move not supported, replacing file");
+				Files.move(replacement.toPath(), destination.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			String msg = "Error occured while replacing file "
+					+ destination.getAbsolutePath();
+
+			logger.error(msg, e);
+			throw new FileIOException(msg, e);
+		}
+		logger.debug("exiting replaceFile");
+	}
+
 	/**
 	 * Check file for readability. Returns normally, when the file is readable.
 	 * If not, a FileIOException is thrown.
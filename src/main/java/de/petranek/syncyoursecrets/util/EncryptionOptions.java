@@ -0,0 +1,323 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.util;
+
+import de.petranek.syncyoursecrets.crypto.CipherScheme;
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+import de.petranek.syncyoursecrets.crypto.Compression;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+
+/**
+ * The Class EncryptionOptions holds the choices for writing encrypted files:
+ * cipher scheme, key derivation, key slots, compression and the legacy
+ * format. Reading needs none of them, as containers name their scheme and
+ * parameters in the header.
+ *
+ * Options are passed along with the password, or held by a VaultSession for
+ * everything it writes. Instances are immutable: the with methods return a
+ * modified copy, so a set of options can be shared between threads and
+ * callers without one of them changing the files of another.
+ *
+ * @author Jan Petranek
+ */
+public final class EncryptionOptions {
+
+	/**
+	 * The defaults: AES-GCM with PBKDF2, no key slots, no compression,
+	 * containers instead of the legacy format.
+	 */
+	public static final EncryptionOptions DEFAULT = new EncryptionOptions(
+			CipherScheme.AES_GCM, EnryptionUtil.PBKDF2_ITERATIONS, null, false,
+			Compression.NONE, false);
+
+	/** The cipher scheme for new containers. */
+	private final CipherScheme cipherScheme;
+
+	/** The number of PBKDF2 iterations for new containers and fields. */
+	private final int kdfIterations;
+
+	/** The memory-hard key derivation for new containers, null for PBKDF2. */
+	private final KdfParameters memoryHardKdf;
+
+	/** Whether new containers keep their key in key slots. */
+	private final boolean envelopeEncryption;
+
+	/** The compression of new containers with authenticated schemes. */
+	private final Compression compression;
+
+	/** Whether streams are written in the legacy format. */
+	private final boolean legacyFormat;
+
+	/**
+	 * Instantiates new options.
+	 *
+	 * @param cipherScheme
+	 *            the cipher scheme
+	 * @param kdfIterations
+	 *            the number of PBKDF2 iterations
+	 * @param memoryHardKdf
+	 *            the memory-hard key derivation, null for PBKDF2
+	 * @param envelopeEncryption
+	 *            whether to write key slots
+	 * @param compression
+	 *            the compression
+	 * @param legacyFormat
+	 *            whether to write the legacy format
+	 */
+	private EncryptionOptions(CipherScheme cipherScheme, int kdfIterations,
+			KdfParameters memoryHardKdf, boolean envelopeEncryption,
+			Compression compression, boolean legacyFormat) {
+		super();
+		this.cipherScheme = cipherScheme;
+		this.kdfIterations = kdfIterations;
+		this.memoryHardKdf = memoryHardKdf;
+		this.envelopeEncryption = envelopeEncryption;
+		this.compression = compression;
+		this.legacyFormat = legacyFormat;
+	}
+
+	/**
+	 * Choose the cipher scheme for newly written containers. The key
+	 * derivation follows from the scheme: the configured one for
+	 * authenticated schemes, PKCS#12 for AES-CBC.
+	 *
+	 * @param scheme
+	 *            the cipher scheme
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withCipherScheme(CipherScheme scheme) {
+		if (scheme == null) {
+			throw new IllegalArgumentException("Cipher scheme must not be null");
+		}
+		return new EncryptionOptions(scheme, kdfIterations, memoryHardKdf,
+				envelopeEncryption, compression, legacyFormat);
+	}
+
+	/**
+	 * Gets the cipher scheme for newly written containers.
+	 *
+	 * @return the cipher scheme
+	 */
+	public CipherScheme getCipherScheme() {
+		return cipherScheme;
+	}
+
+	/**
+	 * Choose the number of PBKDF2 iterations for newly written containers and
+	 * field encryption. It is stored in the file, existing files are read with
+	 * their own iterations. Legacy AES-CBC files keep Jasypt's default.
+	 *
+	 * @param iterations
+	 *            the number of iterations, at least MIN_PBKDF2_ITERATIONS
+	 *            and at most KdfParameters.MAX_PBKDF2_ITERATIONS
+	 *
+	 * @return the modified options
+	 *
+	 * @see EnryptionUtil#calibrateKdf(long)
+	 */
+	public EncryptionOptions withKdfIterations(int iterations) {
+		if (iterations < EnryptionUtil.MIN_PBKDF2_ITERATIONS) {
+			throw new IllegalArgumentException("At least "
+					+ EnryptionUtil.MIN_PBKDF2_ITERATIONS
+					+ " iterations required");
+		}
+		if (iterations > KdfParameters.MAX_PBKDF2_ITERATIONS) {
+			throw new IllegalArgumentException("At most "
+					+ KdfParameters.MAX_PBKDF2_ITERATIONS
+					+ " iterations allowed");
+		}
+		return new EncryptionOptions(cipherScheme, iterations, memoryHardKdf,
+				envelopeEncryption, compression, legacyFormat);
+	}
+
+	/**
+	 * Gets the number of PBKDF2 iterations for newly written files.
+	 *
+	 * @return the number of iterations
+	 */
+	public int getKdfIterations() {
+		return kdfIterations;
+	}
+
+	/**
+	 * Choose the key derivation for newly written containers. PBKDF2 sets the
+	 * iterations, just like withKdfIterations(). Scrypt is memory-hard; its
+	 * lanes are derived in parallel, so more lanes raise the attacker's cost,
+	 * but not the unlock time on a machine with enough cores. Field encryption
+	 * keeps using PBKDF2.
+	 *
+	 * @param parameters
+	 *            the PBKDF2 or scrypt parameters
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withKdfParameters(KdfParameters parameters) {
+		switch (parameters.getAlgorithm()) {
+		case PBKDF2_SHA256:
+			return withKdfIterations(parameters.getIterations())
+					.withMemoryHardKdf(null);
+		case SCRYPT:
+			return withMemoryHardKdf(parameters);
+		default:
+			throw new IllegalArgumentException(parameters.getAlgorithm()
+					+ " is only supported for reading");
+		}
+	}
+
+	/**
+	 * Replace the memory-hard key derivation.
+	 *
+	 * @param parameters
+	 *            the scrypt parameters, null for PBKDF2
+	 *
+	 * @return the modified options
+	 */
+	private EncryptionOptions withMemoryHardKdf(KdfParameters parameters) {
+		return new EncryptionOptions(cipherScheme, kdfIterations, parameters,
+				envelopeEncryption, compression, legacyFormat);
+	}
+
+	/**
+	 * Gets the key derivation for newly written containers with an
+	 * authenticated cipher scheme.
+	 *
+	 * @return the key derivation parameters
+	 */
+	public KdfParameters getKdfParameters() {
+		return memoryHardKdf != null ? memoryHardKdf : KdfParameters
+				.pbkdf2(kdfIterations);
+	}
+
+	/**
+	 * Choose whether new containers keep their key in key slots. The payload
+	 * is then encrypted with a random data key, wrapped for each password.
+	 * Passwords can be added or changed without re-encrypting the payload, see
+	 * EnryptionUtil.addKeySlot() and replaceKeySlot().
+	 *
+	 * @param envelope
+	 *            true to write key slots, false to derive the key directly
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withEnvelopeEncryption(boolean envelope) {
+		return new EncryptionOptions(cipherScheme, kdfIterations,
+				memoryHardKdf, envelope, compression, legacyFormat);
+	}
+
+	/**
+	 * Checks, if new containers keep their key in key slots.
+	 *
+	 * @return true, if key slots are written
+	 */
+	public boolean isEnvelopeEncryption() {
+		return envelopeEncryption;
+	}
+
+	/**
+	 * Choose the compression of new containers. The payload is compressed
+	 * before it is encrypted. Only authenticated schemes compress: with them,
+	 * the decompressor never sees bytes that failed authentication.
+	 *
+	 * @param codec
+	 *            the compression, NONE to write uncompressed payloads
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withCompression(Compression codec) {
+		if (codec == null) {
+			throw new IllegalArgumentException("Compression must not be null");
+		}
+		return new EncryptionOptions(cipherScheme, kdfIterations,
+				memoryHardKdf, envelopeEncryption, codec, legacyFormat);
+	}
+
+	/**
+	 * Gets the compression of new containers.
+	 *
+	 * @return the compression
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Choose the format for encrypted streams. Use the legacy format, when
+	 * files must remain readable by versions up to 0.2.0.
+	 *
+	 * @param legacy
+	 *            true to write the legacy format, false to write containers
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withLegacyFormat(boolean legacy) {
+		return new EncryptionOptions(cipherScheme, kdfIterations,
+				memoryHardKdf, envelopeEncryption, compression, legacy);
+	}
+
+	/**
+	 * Checks, if encrypted streams are written in the legacy format.
+	 *
+	 * @return true, if the legacy format is written
+	 */
+	public boolean isLegacyFormat() {
+		return legacyFormat;
+	}
+
+	/**
+	 * Adopt the choices of an existing container: cipher scheme, key
+	 * derivation, key slots and compression. Re-saving a file with the result
+	 * keeps it as it was. Choices the header does not reveal, e.g. the key
+	 * derivation of AES-CBC, remain as they are.
+	 *
+	 * @param header
+	 *            the header of the container, null to keep all options
+	 *
+	 * @return the modified options
+	 */
+	public EncryptionOptions withHeader(ContainerHeader header) {
+		if (header == null) {
+			return this;
+		}
+		EncryptionOptions options = withCipherScheme(header.getCipherScheme())
+				.withEnvelopeEncryption(header.hasKeySlots()).withCompression(
+						header.getCompression()).withLegacyFormat(false);
+		KdfParameters kdf = header.hasKeySlots() ? header.getKeySlots().get(0)
+				.getKdfParameters() : header.getKdfParameters();
+		switch (kdf.getAlgorithm()) {
+		case PBKDF2_SHA256:
+			if (kdf.getIterations() < EnryptionUtil.MIN_PBKDF2_ITERATIONS) {
+				return options;
+			}
+			return options.withKdfParameters(kdf);
+		case SCRYPT:
+			return options.withKdfParameters(kdf);
+		default:
+			return options;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "EncryptionOptions [" + cipherScheme + ", "
+				+ getKdfParameters() + ", envelope=" + envelopeEncryption
+				+ ", " + compression + ", legacy=" + legacyFormat + "]";
+	}
+
+}
@@ -18,29 +18,109 @@
  */
 package de.petranek.syncyoursecrets.util;
 
+import de.petranek.syncyoursecrets.crypto.CipherEngine;
+import de.petranek.syncyoursecrets.crypto.ChunkedCipher;
+import de.petranek.syncyoursecrets.crypto.CipherScheme;
+import de.petranek.syncyoursecrets.crypto.Compression;
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+import de.petranek.syncyoursecrets.crypto.DerivedKey;
+import de.petranek.syncyoursecrets.crypto.DerivedKeyCache;
+import de.petranek.syncyoursecrets.crypto.FieldCipher;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.crypto.KeyDerivation;
+import de.petranek.syncyoursecrets.crypto.KeySlot;
+import de.petranek.syncyoursecrets.crypto.ProviderSelector;
+import de.petranek.syncyoursecrets.io.FileIOException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
-import org.jasypt.exceptions.EncryptionInitializationException;
-import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The EncryptionUtil handles encryption and decryption for SyncYourSecrets.
  * 
- * We use a symmetric, password based algorithm here. Thanks to Jasypt, the
- * password will be used with a random grain of salt ;-)
+ * We use a symmetric, password based algorithm here. The password will be
+ * used with a random grain of salt ;-)
  * 
  * All this is encapsulated in this class to provide a single entry point for
  * cryptographic operations.
  * 
  * This class is designed to delegate all the pesky cryptographic details to
- * Jasypt and Bouncycastle. There are three good reasons for this: - By using
- * existing, scrutinized packages, we can minimize the risk of making some
- * beginner's mistake at this crucial point. We don't want to compromise
- * security, because someone forgot how to add salt to his passwords, do we? -
- * Should weaknesses be found in the underlying algorithms, we can simply use a
- * fixed version of these. - Avoid to re-invent the wheel. (aka lazyness)
+ * Bouncycastle. There are three good reasons for this: - By using existing,
+ * scrutinized packages, we can minimize the risk of making some beginner's
+ * mistake at this crucial point. We don't want to compromise security,
+ * because someone forgot how to add salt to his passwords, do we? - Should
+ * weaknesses be found in the underlying algorithms, we can simply use a fixed
+ * version of these. - Avoid to re-invent the wheel. (aka lazyness)
+ * 
+ * Strings use the format of Jasypt's StandardPBEStringEncryptor, which we
+ * used in earlier versions: Base64(salt | AES-CBC(plaintext)). Key and IV are
+ * derived from password and salt. As we derive the key ourselves, we can keep
+ * recently derived keys in a DerivedKeyCache. Call lock() to wipe them.
+ * 
+ * Streams are written as binary containers (see ContainerHeader): no Base64
+ * overhead, and the key derivation parameters are stored along. As the IV is
+ * random and independent of the salt, the salt of a cached key may be reused
+ * and encryption gets along without key derivation. Reading detects the legacy
+ * format automatically.
+ * 
+ * How new files are written is chosen by EncryptionOptions, passed along
+ * with the password or held by a VaultSession; the methods without options
+ * use EncryptionOptions.DEFAULT. This class keeps no settings of its own.
+ * With envelope encryption, containers are encrypted with a random data key,
+ * kept in key slots for one or more passwords. Changing or adding a password
+ * then replaces the header, the payload is not re-encrypted.
+ * 
+ * Long-running applications unlock() a VaultSession once and pass it instead
+ * of the password: the key derivation runs once, the password is held as a
+ * char array only until then.
+ * 
+ * By default, containers are encrypted with AES-GCM and keys derived with
+ * PBKDF2, both from the JRE's default provider, which uses the processor's AES
+ * instructions. The authentication tag reveals a wrong password or a tampered
+ * file before any plaintext is handed out. AES-CBC with the PKCS#12 key
+ * derivation can still be chosen. The PBKDF2 iterations are stored in each
+ * file; calibrateKdf() finds iterations for new files, trading unlock time
+ * against brute-force resistance.
+ * 
+ * With Compression.DEFLATE, the payload is deflated before it is encrypted;
+ * the header names the codec, so reading needs no options.
+ * 
+ * For large vaults, AES_GCM_CHUNKED seals the payload in chunks, which are
+ * en- and decrypted in parallel by a ChunkedCipher.
+ * 
+ * decryptStreamAsync opens a vault without waiting for the whole file
+ * first: the key is derived as soon as the header is read, while the rest
+ * of the cyphertext is still being read.
+ * 
+ * All methods are safe to be called concurrently. Ciphers come from a
+ * CipherEngine, which reuses cipher objects. A ProviderSelector picks its
+ * provider per cipher scheme; see getProviderSelector() to let it benchmark
+ * the installed providers.
  * 
  * @author Jan Petranek
  */
@@ -50,11 +130,71 @@ public final class EnryptionUtil {
 	static final Logger logger = LogManager.getLogger(EnryptionUtil.class);
 
 	/**
-	 * The symmetric encryption algorithm for SyncYourSecrets. WARNING:
-	 * Modifications to this algorithm will break backwards compatibility with
-	 * previously encrypted SyncYourSecrets files !
+	 * The symmetric cipher for SyncYourSecrets. Together with the key
+	 * derivation, it implements the PBEWITHSHA256AND256BITAES-CBC-BC scheme.
+	 * WARNING: Modifications to this algorithm will break backwards
+	 * compatibility with previously encrypted SyncYourSecrets files !
+	 */
+	private static final String CRYPTO_ALGORITHM = "AES/CBC/PKCS5Padding";
+
+	/** The key size in bits. */
+	private static final int KEY_SIZE = 256;
+
+	/** The size of the initialization vector in bits. */
+	private static final int IV_SIZE = 128;
+
+	/** The salt size in bytes, as chosen by Jasypt (the AES block size). */
+	private static final int SALT_SIZE = 16;
+
+	/** The number of iterations of the key derivation, Jasypt's default. */
+	private static final int KEY_OBTENTION_ITERATIONS = 1000;
+
+	/** The key derivation of the legacy format. */
+	private static final KdfParameters LEGACY_KDF = KdfParameters
+			.pkcs12(KEY_OBTENTION_ITERATIONS);
+
+	/** The cache of recently derived keys. */
+	private static final DerivedKeyCache KEY_CACHE = new DerivedKeyCache();
+
+	/** The HKDF context of the key check value. */
+	private static final byte[] KEY_CHECK_INFO = "SyncYourSecrets key check"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The size of the key check value in bytes. A wrong password passes it
+	 * with a chance of 2^-32 only to fail at the authentication tag; fewer
+	 * bytes keep the header small and tell an attacker less.
 	 */
-	private static final String CRYPTO_ALGORITHM = "PBEWITHSHA256AND256BITAES-CBC-BC";
+	private static final int KEY_CHECK_SIZE = 4;
+
+	/** The size of the buffer when draining streams. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The default number of PBKDF2 iterations, as recommended by OWASP. */
+	public static final int PBKDF2_ITERATIONS = 600000;
+
+	/** The least number of PBKDF2 iterations accepted for new files. */
+	public static final int MIN_PBKDF2_ITERATIONS = 100000;
+
+	/** The default time unlocking shall take, in milliseconds. */
+	public static final long DEFAULT_UNLOCK_MILLIS = 250;
+
+	/** The largest number of PBKDF2 iterations calibrateKdf() chooses. */
+	public static final int MAX_CALIBRATED_ITERATIONS = KdfParameters.MAX_PBKDF2_ITERATIONS / 4;
+
+	/** The calibrated iterations are rounded down to multiples of this. */
+	private static final int ITERATIONS_STEP = 1000;
+
+	/** The selector of the provider for each cipher scheme. */
+	private static final ProviderSelector PROVIDERS = new ProviderSelector();
+
+	/** The threads opening vaults asynchronously, created on demand. */
+	private static final ExecutorService OPEN_EXECUTOR = Executors
+			.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "vault-open");
+				thread.setDaemon(true);
+				return thread;
+			});
 
 	/**
 	 * Utility class, shall not be instantiated.
@@ -81,24 +221,42 @@ public final class EnryptionUtil {
 			throws SysCryptoException {
 
 		logger.debug("entering decryptString");
+		if (cypher == null) {
+			return null;
+		}
+		checkPassword(password, "Failed to initialize decryption");
 
+		DerivedKey key = null;
 		try {
-			StandardPBEStringEncryptor encryptor = initCypher();
-			encryptor.setPassword(password);
-			String output = encryptor.decrypt(cypher);
+			byte[] raw = Base64.getMimeDecoder().decode(cypher);
+			if (raw.length <= SALT_SIZE) {
+				throw new IllegalArgumentException("Cyphertext too short");
+			}
+			byte[] salt = Arrays.copyOf(raw, SALT_SIZE);
+			key = obtainKey(password, LEGACY_KDF, salt);
+
+			Cipher cipher = initCypher(Cipher.DECRYPT_MODE, key);
+			byte[] plain = cipher.doFinal(raw, SALT_SIZE, raw.length
+					- SALT_SIZE);
+			KEY_CACHE.put(password, LEGACY_KDF, salt, key);
+			String output = new String(plain, StandardCharsets.UTF_8);
 
 			logger.debug("exiting decryptString");
 			return output;
 
-		} catch (EncryptionOperationNotPossibleException ex) {
+		} catch (GeneralSecurityException ex) {
 			String msg = "Decryption failed";
 			logger.warn(msg, ex);
 			throw new SysCryptoException(msg, ex);
 
-		} catch (EncryptionInitializationException ux) {
-			String msg = "Failed to initialize decryption";
-			logger.warn(msg, ux);
-			throw new SysCryptoException(msg, ux);
+		} catch (IllegalArgumentException ex) {
+			String msg = "Decryption failed, cyphertext is malformed";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} finally {
+			if (key != null) {
+				key.wipe();
+			}
 		}
 
 	}
@@ -120,39 +278,1800 @@ public final class EnryptionUtil {
 	public static String encryptString(String plaintext, String password)
 			throws SysCryptoException {
 		logger.debug("entering encryptString");
+		if (plaintext == null) {
+			return null;
+		}
+		checkPassword(password, "Failed to initialize encryption");
+
+		DerivedKey key = null;
 		try {
-			StandardPBEStringEncryptor encryptor = initCypher();
-			encryptor.setPassword(password);
-			String output = encryptor.encrypt(plaintext);
+			// the salt determines the IV as well, so it must never be reused
+			byte[] salt = CipherEngine.randomBytes(SALT_SIZE);
+			key = obtainKey(password, LEGACY_KDF, salt);
+			KEY_CACHE.put(password, LEGACY_KDF, salt, key);
+
+			Cipher cipher = initCypher(Cipher.ENCRYPT_MODE, key);
+			byte[] encrypted = cipher.doFinal(plaintext
+					.getBytes(StandardCharsets.UTF_8));
+
+			byte[] raw = new byte[SALT_SIZE + encrypted.length];
+			System.arraycopy(salt, 0, raw, 0, SALT_SIZE);
+			System.arraycopy(encrypted, 0, raw, SALT_SIZE, encrypted.length);
+			String output = Base64.getEncoder().encodeToString(raw);
 
 			logger.debug("exiting encryptString");
 			return output;
 
-		} catch (EncryptionOperationNotPossibleException ex) {
+		} catch (GeneralSecurityException ex) {
 			String msg = "Encryption failed";
 			logger.warn(msg, ex);
 			throw new SysCryptoException(msg, ex);
 
-		} catch (EncryptionInitializationException ux) {
+		} finally {
+			if (key != null) {
+				key.wipe();
+			}
+		}
+
+	}
+
+	/**
+	 * Decrypt a stream with the given password. The cyphertext is decrypted
+	 * while the returned stream is read, so the plaintext never has to be held
+	 * in memory as a whole. Both containers and the legacy format are
+	 * accepted.
+	 * 
+	 * Read the returned stream to its end: only then the padding is checked.
+	 * A wrong password will usually surface as an IOException caused by a
+	 * GeneralSecurityException. Closing the returned stream closes the
+	 * cyphertext stream.
+	 * 
+	 * @param cypher
+	 *            the cyphertext, as written by encryptString or encryptStream
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the plaintext stream, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the decryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be read
+	 */
+	public static InputStream decryptStream(InputStream cypher, String password)
+			throws SysCryptoException, FileIOException {
+		logger.debug("entering decryptStream");
+		checkPassword(password, "Failed to initialize decryption");
+
+		InputStream in = cypher.markSupported() ? cypher
+				: new BufferedInputStream(cypher);
+		try {
+			if (ContainerHeader.isContainer(in)) {
+				logger.debug("Decrypting container");
+				return decryptContainer(in, password);
+			}
+			logger.debug("Decrypting legacy format");
+			return decryptLegacy(in, password);
+
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to initialize decryption";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to read the header";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
+		}
+	}
+
+	/**
+	 * Encrypt a stream with the given password and the default options.
+	 * Plaintext written to the returned stream is encrypted right away.
+	 * 
+	 * The returned stream must be closed to write the final block; this closes
+	 * the cyphertext stream as well.
+	 * 
+	 * @param cypher
+	 *            the stream receiving the cyphertext
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the stream accepting the plaintext, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the encryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be written
+	 */
+	public static OutputStream encryptStream(OutputStream cypher,
+			String password) throws SysCryptoException, FileIOException {
+		return encryptStream(cypher, password, null);
+	}
+
+	/**
+	 * Encrypt a stream with the given password and the default options,
+	 * replacing a container with the given header.
+	 * 
+	 * @param cypher
+	 *            the stream receiving the cyphertext
+	 * @param password
+	 *            the password
+	 * @param previous
+	 *            the header of the container being replaced, may be null
+	 * 
+	 * @return the stream accepting the plaintext, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the encryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be written
+	 * 
+	 * @see #encryptStream(OutputStream, String, ContainerHeader,
+	 *      EncryptionOptions)
+	 */
+	public static OutputStream encryptStream(OutputStream cypher,
+			String password, ContainerHeader previous)
+			throws SysCryptoException, FileIOException {
+		return encryptStream(cypher, password, previous,
+				EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Encrypt a stream with the given password, replacing a container with
+	 * the given header. If the password opens one of its key slots, the data
+	 * key and all key slots are kept, so every password of the previous
+	 * container opens the new one. Unless the options choose the legacy
+	 * format, a container is written.
+	 * 
+	 * @param cypher
+	 *            the stream receiving the cyphertext
+	 * @param password
+	 *            the password
+	 * @param previous
+	 *            the header of the container being replaced, may be null
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the stream accepting the plaintext, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the encryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be written
+	 */
+	public static OutputStream encryptStream(OutputStream cypher,
+			String password, ContainerHeader previous,
+			EncryptionOptions options) throws SysCryptoException,
+			FileIOException {
+		logger.debug("entering encryptStream");
+		checkPassword(password, "Failed to initialize encryption");
+
+		try {
+			if (options.isLegacyFormat()) {
+				return encryptLegacy(cypher, password);
+			}
+			return encryptContainer(cypher, password, previous, options);
+
+		} catch (GeneralSecurityException ex) {
 			String msg = "Failed to initialize encryption";
-			logger.warn(msg, ux);
-			throw new SysCryptoException(msg, ux);
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to write the header";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
+		}
+	}
+
+	/**
+	 * Decrypt a stream with the keys of an unlocked session instead of a
+	 * password. No key derivation takes place. The session must hold the key
+	 * of the container, see VaultSession.
+	 * 
+	 * @param cypher
+	 *            the cyphertext, as written by encryptStream
+	 * @param session
+	 *            the session
+	 * 
+	 * @return the plaintext stream, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session does not hold the key or is closed
+	 * @throws FileIOException
+	 *             when the header cannot be read
+	 */
+	public static InputStream decryptStream(InputStream cypher,
+			VaultSession session) throws SysCryptoException, FileIOException {
+		logger.debug("entering decryptStream");
+
+		InputStream in = cypher.markSupported() ? cypher
+				: new BufferedInputStream(cypher);
+		try {
+			if (ContainerHeader.isContainer(in)) {
+				ContainerHeader header = ContainerHeader.read(in);
+				DerivedKey key = session.findContainerKey(header);
+				checkSessionKey(key);
+				if (!header.hasKeySlots()) {
+					checkKey(header, key);
+				}
+				return openPayload(in, header, key);
+			}
+			InputStream raw = Base64.getMimeDecoder().wrap(in);
+			DerivedKey key = session.findKey(LEGACY_KDF, readLegacySalt(raw));
+			checkSessionKey(key);
+			return openLegacy(raw, key);
+
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to initialize decryption";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to read the header";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
 		}
+	}
 
+	/**
+	 * Encrypt a stream with the keys of an unlocked session instead of a
+	 * password. No key derivation takes place.
+	 * 
+	 * @param cypher
+	 *            the stream receiving the cyphertext
+	 * @param session
+	 *            the session
+	 * 
+	 * @return the stream accepting the plaintext, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the encryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be written
+	 */
+	public static OutputStream encryptStream(OutputStream cypher,
+			VaultSession session) throws SysCryptoException, FileIOException {
+		return encryptStream(cypher, session, null);
 	}
 
 	/**
-	 * Inits the cypher, using the our CRYPTO_ALGORITM.
+	 * Encrypt a stream with the keys and options of an unlocked session,
+	 * replacing a container with the given header. If the session opens one
+	 * of its key slots, the key slots are kept. The legacy format cannot be
+	 * written this way, as each of its files needs a key of its own.
+	 * 
+	 * @param cypher
+	 *            the stream receiving the cyphertext
+	 * @param session
+	 *            the session
+	 * @param previous
+	 *            the header of the container being replaced, may be null
 	 * 
-	 * @return a standard password based string encryptor
+	 * @return the stream accepting the plaintext, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the encryption cannot be set up
+	 * @throws FileIOException
+	 *             when the header cannot be written
+	 */
+	public static OutputStream encryptStream(OutputStream cypher,
+			VaultSession session, ContainerHeader previous)
+			throws SysCryptoException, FileIOException {
+		logger.debug("entering encryptStream");
+		EncryptionOptions options = session.getOptions();
+		if (options.isLegacyFormat()) {
+			String msg = "Sessions cannot write the legacy format";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+
+		try {
+			ContainerHeader header = createHeader(options);
+			DerivedKey key = session.initHeader(header, previous);
+			return sealPayload(cypher, header, key);
+
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to initialize encryption";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to write the header";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
+		}
+	}
+
+	/**
+	 * Unlock a new vault with the default options. The password array is
+	 * wiped.
+	 * 
+	 * @param password
+	 *            the password, wiped afterwards
+	 * 
+	 * @return the session, to be closed by the caller
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty
+	 * 
+	 * @see #unlock(char[], EncryptionOptions)
+	 */
+	public static VaultSession unlock(char[] password)
+			throws SysCryptoException {
+		return unlock(password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Unlock a new vault: derive a key from the password with a fresh salt
+	 * and the key derivation of the options. With envelope encryption, a data
+	 * key is created and sealed in a key slot. The session writes with the
+	 * options. The password array is wiped.
+	 * 
+	 * @param password
+	 *            the password, wiped afterwards
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the session, to be closed by the caller
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty
+	 */
+	public static VaultSession unlock(char[] password,
+			EncryptionOptions options) throws SysCryptoException {
+		logger.debug("entering unlock");
+		try {
+			checkPassword(password, "Failed to unlock");
+			KdfParameters kdf = options.getKdfParameters();
+			byte[] salt = CipherEngine.randomBytes(SALT_SIZE);
+			DerivedKey key = KeyDerivation.derive(kdf, password, salt,
+					KEY_SIZE, IV_SIZE);
+			VaultSession session;
+			if (options.isEnvelopeEncryption()) {
+				byte[] dataKey = CipherEngine
+						.randomBytes(KeySlot.DATA_KEY_SIZE);
+				try {
+					session = new VaultSession(Collections
+							.singletonList(KeySlot.seal(dataKey, kdf, salt, key
+									.getKey())), dataKey, options);
+				} catch (GeneralSecurityException ex) {
+					key.wipe();
+					Arrays.fill(dataKey, (byte) 0);
+					String msg = "Failed to create key slot";
+					logger.warn(msg, ex);
+					throw new SysCryptoException(msg, ex);
+				}
+			} else {
+				session = new VaultSession(null, null, options);
+			}
+			session.addKey(kdf, salt, key);
+			logger.debug("exiting unlock");
+			return session;
+		} finally {
+			Arrays.fill(password, '\0');
+		}
+	}
+
+	/**
+	 * Unlock an existing vault with the default options. The password array
+	 * is wiped.
+	 * 
+	 * @param cypher
+	 *            the container, as written by encryptStream
+	 * @param password
+	 *            the password, wiped afterwards
+	 * 
+	 * @return the session, to be closed by the caller
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or wrong
+	 * @throws FileIOException
+	 *             when the header cannot be read
+	 * 
+	 * @see #unlock(InputStream, char[], EncryptionOptions)
+	 */
+	public static VaultSession unlock(InputStream cypher, char[] password)
+			throws SysCryptoException, FileIOException {
+		return unlock(cypher, password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Unlock an existing vault: derive the key of the given container from
+	 * the password, or the key of the key slot the password opens. Only the
+	 * header is read. The session writes with the cipher scheme and
+	 * compression of the options, but keeps the key of the vault. The
+	 * password array is wiped.
+	 * 
+	 * Containers written before key check values were introduced only reveal
+	 * a wrong password when their payload is read. Vaults in the legacy
+	 * format need a second key derivation, as they are saved as containers.
+	 * 
+	 * @param cypher
+	 *            the container, as written by encryptStream
+	 * @param password
+	 *            the password, wiped afterwards
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the session, to be closed by the caller
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or wrong
+	 * @throws FileIOException
+	 *             when the header cannot be read
+	 */
+	public static VaultSession unlock(InputStream cypher, char[] password,
+			EncryptionOptions options) throws SysCryptoException,
+			FileIOException {
+		logger.debug("entering unlock");
+		InputStream in = cypher.markSupported() ? cypher
+				: new BufferedInputStream(cypher);
+		VaultSession session = null;
+		boolean unlocked = false;
+		try {
+			checkPassword(password, "Failed to unlock");
+			if (!ContainerHeader.isContainer(in)) {
+				byte[] salt = readLegacySalt(Base64.getMimeDecoder().wrap(in));
+				// the first key is used for saving, legacy keys are not
+				session = unlock(password.clone(), options);
+				session.addKey(LEGACY_KDF, salt, KeyDerivation.derive(
+						LEGACY_KDF, password, salt, KEY_SIZE, IV_SIZE));
+				unlocked = true;
+				return session;
+			}
+
+			ContainerHeader header = ContainerHeader.read(in);
+			if (!header.hasKeySlots()) {
+				DerivedKey key = KeyDerivation.derive(header
+						.getKdfParameters(), password, header.getSalt(),
+						KEY_SIZE, IV_SIZE);
+				checkKey(header, key);
+				session = new VaultSession(null, null, options);
+				session.addKey(header.getKdfParameters(), header.getSalt(),
+						key);
+				unlocked = true;
+				return session;
+			}
+			for (KeySlot slot : header.getKeySlots()) {
+				DerivedKey key = KeyDerivation.derive(slot.getKdfParameters(),
+						password, slot.getSalt(), KEY_SIZE, IV_SIZE);
+				byte[] dataKey;
+				try {
+					dataKey = slot.open(key.getKey());
+				} catch (AEADBadTagException e) {
+					logger.trace("Key slot does not match the password");
+					key.wipe();
+					continue;
+				} catch (GeneralSecurityException e) {
+					key.wipe();
+					throw e;
+				}
+				session = new VaultSession(header.getKeySlots(), dataKey,
+						options);
+				session.addKey(slot.getKdfParameters(), slot.getSalt(), key);
+				unlocked = true;
+				return session;
+			}
+			String msg = "No key slot opens with the password";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to unlock";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to read the header";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
+		} finally {
+			if (!unlocked && session != null) {
+				session.close();
+			}
+			Arrays.fill(password, '\0');
+			logger.debug("exiting unlock");
+		}
+	}
+
+	/**
+	 * Check, whether the password opens the given container. For containers
+	 * with a key check value or key slots, only the header is read and the
+	 * cost is that of the key derivation. Other containers and the legacy
+	 * format are decrypted completely.
+	 * 
+	 * @param cypher
+	 *            the cyphertext, as written by encryptString or encryptStream
+	 * @param password
+	 *            the password
+	 * 
+	 * @return true, if the password is right
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or the header is malformed
+	 * @throws FileIOException
+	 *             when the cyphertext cannot be read
+	 */
+	public static boolean verifyPassword(InputStream cypher, String password)
+			throws SysCryptoException, FileIOException {
+		logger.debug("entering verifyPassword");
+		checkPassword(password, "Failed to verify password");
+
+		InputStream in = cypher.markSupported() ? cypher
+				: new BufferedInputStream(cypher);
+		try {
+			InputStream plain;
+			if (ContainerHeader.isContainer(in)) {
+				ContainerHeader header = ContainerHeader.read(in);
+				if (header.hasKeySlots()) {
+					byte[] dataKey = openKeySlots(header, password);
+					if (dataKey == null) {
+						return false;
+					}
+					Arrays.fill(dataKey, (byte) 0);
+					return true;
+				}
+				DerivedKey key = obtainKey(password, header
+						.getKdfParameters(), header.getSalt());
+				if (header.getKeyCheck() != null) {
+					try {
+						if (!MessageDigest.isEqual(header.getKeyCheck(),
+								computeKeyCheck(key.getKey()))) {
+							return false;
+						}
+						KEY_CACHE.put(password, header.getKdfParameters(),
+								header.getSalt(), key);
+						return true;
+					} finally {
+						key.wipe();
+					}
+				}
+				logger.debug("No key check value, decrypting the payload");
+				plain = openPayload(in, header, key);
+			} else {
+				plain = decryptLegacy(in, password);
+			}
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+			try {
+				while (plain.read(buffer) >= 0) {
+					// drain
+				}
+				return true;
+			} catch (IOException ex) {
+				if (ex.getCause() instanceof GeneralSecurityException) {
+					return false;
+				}
+				throw ex;
+			}
+
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to verify password";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} catch (IOException ex) {
+			String msg = "Failed to read the cyphertext";
+			logger.warn(msg, ex);
+			throw new FileIOException(msg, ex);
+		} finally {
+			logger.debug("exiting verifyPassword");
+		}
+	}
+
+	/**
+	 * Decrypt a stream asynchronously, on threads of our own.
+	 * 
+	 * @param cypher
+	 *            the cyphertext, as written by encryptString or encryptStream
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the future plaintext stream, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty
+	 * 
+	 * @see #decryptStreamAsync(InputStream, String, Executor)
+	 */
+	public static CompletableFuture<InputStream> decryptStreamAsync(
+			InputStream cypher, String password) throws SysCryptoException {
+		return decryptStreamAsync(cypher, password, OPEN_EXECUTOR);
+	}
+
+	/**
+	 * Decrypt a stream asynchronously. Once the header (or the salt of the
+	 * legacy format) is read, the key derivation runs alongside reading the
+	 * rest of the cyphertext, so opening takes about as long as the slower of
+	 * both instead of their sum. The cyphertext is buffered in memory and the
+	 * stream is closed.
+	 * 
+	 * The executor needs to run two tasks at a time for the overlap: a
+	 * single threaded executor works, but reads and derives one after the
+	 * other.
+	 * 
+	 * As with decryptStream, read the plaintext stream to its end to have it
+	 * authenticated. The future fails with a SysCryptoException or a
+	 * FileIOException, which join() and dependent stages wrap in a
+	 * CompletionException.
+	 * 
+	 * @param cypher
+	 *            the cyphertext, as written by encryptString or encryptStream
+	 * @param password
+	 *            the password
+	 * @param executor
+	 *            the executor reading and deriving the key
+	 * 
+	 * @return the future plaintext stream, UTF-8 encoded
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty
+	 */
+	public static CompletableFuture<InputStream> decryptStreamAsync(
+			InputStream cypher, String password, Executor executor)
+			throws SysCryptoException {
+		logger.debug("entering decryptStreamAsync");
+		checkPassword(password, "Failed to initialize decryption");
+
+		CompletableFuture<Opening> opening = CompletableFuture.supplyAsync(
+				() -> readOpening(cypher), executor);
+		CompletableFuture<DerivedKey> key = opening.thenApplyAsync(
+				started -> deriveOpeningKey(started, password), executor);
+		CompletableFuture<byte[]> payload = opening.thenApplyAsync(
+				EnryptionUtil::readPayload, executor);
+
+		CompletableFuture<InputStream> plain = opening.thenCombine(
+				key.thenCombine(payload, Keyed::new),
+				EnryptionUtil::openBuffered);
+		plain.whenComplete((result, ex) -> {
+			if (ex != null) {
+				// the key is not handed on, when the payload fails
+				key.thenAccept(DerivedKey::wipe);
+			}
+		});
+		logger.debug("exiting decryptStreamAsync");
+		return plain;
+	}
+
+	/**
+	 * Compute the key check value of a key: the first bytes of a subkey, so
+	 * the key itself cannot be recovered from it.
+	 * 
+	 * @param key
+	 *            the key
+	 * 
+	 * @return the key check value
+	 */
+	private static byte[] computeKeyCheck(byte[] key) {
+		return KeyDerivation.hkdfExpand(key, KEY_CHECK_INFO, KEY_CHECK_SIZE);
+	}
+
+	/**
+	 * Compare the key with the key check value of the header, if it has one.
+	 * A mismatching key is wiped.
+	 * 
+	 * @param header
+	 *            the header
+	 * @param key
+	 *            the key derived from the password
+	 * 
+	 * @throws AEADBadTagException
+	 *             when the key does not match, i.e. the password is wrong
 	 */
-	private static StandardPBEStringEncryptor initCypher() {
-		logger.debug("entering initCypher");
-		StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
-		encryptor.setProvider(new BouncyCastleProvider());
-		encryptor.setAlgorithm(CRYPTO_ALGORITHM);
-		logger.debug("exiting initCypher");
-		return encryptor;
+	private static void checkKey(ContainerHeader header, DerivedKey key)
+			throws AEADBadTagException {
+		byte[] keyCheck = header.getKeyCheck();
+		if (keyCheck != null
+				&& !MessageDigest.isEqual(keyCheck, computeKeyCheck(key
+						.getKey()))) {
+			key.wipe();
+			throw new AEADBadTagException("Wrong password, key check failed");
+		}
+	}
+
+	/**
+	 * Compare the key with the key check value of the header, and cache it
+	 * when it matches. Without a key check value the key is not cached, as it
+	 * is not verified before the payload is decrypted.
+	 * 
+	 * @param header
+	 *            the header
+	 * @param password
+	 *            the password the key is derived from
+	 * @param key
+	 *            the key derived from the password
+	 * 
+	 * @throws AEADBadTagException
+	 *             when the key does not match, i.e. the password is wrong
+	 */
+	private static void checkKey(ContainerHeader header, String password,
+			DerivedKey key) throws AEADBadTagException {
+		checkKey(header, key);
+		if (header.getKeyCheck() != null) {
+			KEY_CACHE.put(password, header.getKdfParameters(), header
+					.getSalt(), key);
+		}
+	}
+
+	/**
+	 * Read the container header and set up the decryption of the payload.
+	 * 
+	 * @param in
+	 *            the stream, positioned at the magic bytes
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the plaintext stream
+	 * 
+	 * @throws IOException
+	 *             when the header cannot be read
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 * @throws SysCryptoException
+	 *             when the header is malformed
+	 */
+	private static InputStream decryptContainer(InputStream in,
+			String password) throws IOException, GeneralSecurityException,
+			SysCryptoException {
+		ContainerHeader header = ContainerHeader.read(in);
+
+		DerivedKey key;
+		if (header.hasKeySlots()) {
+			byte[] dataKey = openKeySlots(header, password);
+			if (dataKey == null) {
+				throw new AEADBadTagException("No key slot opens");
+			}
+			key = new DerivedKey(dataKey, null);
+		} else {
+			key = obtainKey(password, header.getKdfParameters(), header
+					.getSalt());
+			checkKey(header, password, key);
+		}
+		return openPayload(in, header, key);
+	}
+
+	/**
+	 * Set up the decryption of a container's payload.
+	 * 
+	 * @param in
+	 *            the stream, positioned after the header
+	 * @param header
+	 *            the container header
+	 * @param key
+	 *            the key of the container, wiped afterwards
+	 * 
+	 * @return the plaintext stream
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 * @throws SysCryptoException
+	 *             when the header is malformed
+	 */
+	private static InputStream openPayload(InputStream in,
+			ContainerHeader header, DerivedKey key)
+			throws GeneralSecurityException, SysCryptoException {
+		CipherScheme scheme = header.getCipherScheme();
+		try {
+			byte[] aad = header.getAuthenticatedData();
+			Compression codec = header.getCompression();
+			if (scheme.isChunked()) {
+				return codec.decompress(new ChunkedCipher(engineFor(scheme), key
+						.getKey(), header.getIv(), aad, header.getChunkSize())
+						.decrypt(in));
+			}
+			Cipher cipher = engineFor(scheme).newCipher(
+					scheme.getTransformation(), Cipher.DECRYPT_MODE,
+					new SecretKeySpec(key.getKey(), "AES"),
+					scheme.createParameters(header.getIv()));
+			if (scheme.isAuthenticated()) {
+				cipher.updateAAD(aad);
+			}
+			return codec.decompress(new CipherInputStream(in, cipher));
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Write the container header and set up the encryption of the payload.
+	 * 
+	 * @param out
+	 *            the stream receiving the container
+	 * @param password
+	 *            the password
+	 * @param previous
+	 *            the header of the container being replaced, may be null
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the stream accepting the plaintext
+	 * 
+	 * @throws IOException
+	 *             when the header cannot be written
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	private static OutputStream encryptContainer(OutputStream out,
+			String password, ContainerHeader previous,
+			EncryptionOptions options) throws IOException,
+			GeneralSecurityException, SysCryptoException {
+		CipherScheme scheme = options.getCipherScheme();
+		ContainerHeader header = createHeader(options);
+
+		byte[] dataKey = null;
+		if (previous != null && previous.hasKeySlots()) {
+			dataKey = openKeySlots(previous, password);
+		}
+		DerivedKey key;
+		if (dataKey != null) {
+			header.setKeySlots(previous.getKeySlots());
+			key = new DerivedKey(dataKey, null);
+		} else if (options.isEnvelopeEncryption()) {
+			key = new DerivedKey(CipherEngine
+					.randomBytes(KeySlot.DATA_KEY_SIZE), null);
+			header.setKeySlots(Collections.singletonList(createKeySlot(key
+					.getKey(), password, options.getKdfParameters())));
+		} else {
+			KdfParameters kdf = scheme.isAuthenticated() ? options
+					.getKdfParameters() : LEGACY_KDF;
+			byte[] salt = KEY_CACHE.findSalt(password, kdf);
+			if (salt == null) {
+				salt = CipherEngine.randomBytes(SALT_SIZE);
+			}
+			header.setKdfParameters(kdf);
+			header.setSalt(salt);
+			key = obtainKey(password, kdf, salt);
+			KEY_CACHE.put(password, kdf, salt, key);
+		}
+		return sealPayload(out, header, key);
+	}
+
+	/**
+	 * Create the header of a new container, with cipher scheme, a fresh IV,
+	 * the chunk size and compression, if needed.
+	 * 
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the header, still lacking key slots or key derivation
+	 */
+	private static ContainerHeader createHeader(EncryptionOptions options) {
+		CipherScheme scheme = options.getCipherScheme();
+		ContainerHeader header = new ContainerHeader();
+		header.setCipherScheme(scheme);
+		header.setIv(CipherEngine.randomBytes(scheme.getIvSize()));
+		if (scheme.isChunked()) {
+			header.setChunkSize(ChunkedCipher.DEFAULT_CHUNK_SIZE);
+		}
+		if (scheme.isAuthenticated()) {
+			header.setCompression(options.getCompression());
+		}
+		return header;
+	}
+
+	/**
+	 * Write the container header and set up the encryption of the payload.
+	 * 
+	 * @param out
+	 *            the stream receiving the container
+	 * @param header
+	 *            the complete header
+	 * @param key
+	 *            the key of the container, wiped afterwards
+	 * 
+	 * @return the stream accepting the plaintext
+	 * 
+	 * @throws IOException
+	 *             when the header cannot be written
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 */
+	private static OutputStream sealPayload(OutputStream out,
+			ContainerHeader header, DerivedKey key) throws IOException,
+			GeneralSecurityException, SysCryptoException {
+		CipherScheme scheme = header.getCipherScheme();
+		try {
+			if (!header.hasKeySlots()) {
+				header.setKeyCheck(computeKeyCheck(key.getKey()));
+			}
+			byte[] headerBytes = header.toByteArray();
+			byte[] aad = header.getAuthenticatedData();
+			Compression codec = header.getCompression();
+			if (scheme.isChunked()) {
+				out.write(headerBytes);
+				return codec.compress(new ChunkedCipher(engineFor(scheme), key
+						.getKey(), header.getIv(), aad, header.getChunkSize())
+						.encrypt(out));
+			}
+			Cipher cipher = engineFor(scheme).newCipher(
+					scheme.getTransformation(), Cipher.ENCRYPT_MODE,
+					new SecretKeySpec(key.getKey(), "AES"),
+					scheme.createParameters(header.getIv()));
+			if (scheme.isAuthenticated()) {
+				cipher.updateAAD(aad);
+			}
+			out.write(headerBytes);
+			return codec.compress(new CipherOutputStream(out, cipher));
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Read the salt of the legacy format and set up the decryption.
+	 * 
+	 * @param in
+	 *            the stream, holding Base64 text
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the plaintext stream
+	 * 
+	 * @throws IOException
+	 *             when the salt cannot be read
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 * @throws SysCryptoException
+	 *             when the cyphertext is too short
+	 */
+	private static InputStream decryptLegacy(InputStream in, String password)
+			throws IOException, GeneralSecurityException, SysCryptoException {
+		InputStream raw = Base64.getMimeDecoder().wrap(in);
+		byte[] salt = readLegacySalt(raw);
+		return openLegacy(raw, obtainKey(password, LEGACY_KDF, salt));
+	}
+
+	/**
+	 * Read the salt of the legacy format.
+	 * 
+	 * @param raw
+	 *            the Base64 decoded stream
+	 * 
+	 * @return the salt
+	 * 
+	 * @throws IOException
+	 *             when the salt cannot be read
+	 * @throws SysCryptoException
+	 *             when the cyphertext is too short
+	 */
+	private static byte[] readLegacySalt(InputStream raw) throws IOException,
+			SysCryptoException {
+		byte[] salt = new byte[SALT_SIZE];
+		int read = 0;
+		while (read < SALT_SIZE) {
+			int count = raw.read(salt, read, SALT_SIZE - read);
+			if (count < 0) {
+				String msg = "Decryption failed, cyphertext is too short";
+				logger.warn(msg);
+				throw new SysCryptoException(msg);
+			}
+			read += count;
+		}
+		return salt;
+	}
+
+	/**
+	 * Set up the decryption of the legacy format.
+	 * 
+	 * @param raw
+	 *            the Base64 decoded stream, positioned after the salt
+	 * @param key
+	 *            the key and IV derived from the salt, wiped afterwards
+	 * 
+	 * @return the plaintext stream
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 */
+	private static InputStream openLegacy(InputStream raw, DerivedKey key)
+			throws GeneralSecurityException {
+		try {
+			Cipher cipher = engineFor(CipherScheme.AES_CBC).newCipher(
+					CRYPTO_ALGORITHM, Cipher.DECRYPT_MODE,
+					new SecretKeySpec(key.getKey(), "AES"),
+					new IvParameterSpec(key.getIv()));
+			return new CipherInputStream(raw, cipher);
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Write the salt of the legacy format and set up the encryption. The
+	 * result is the same as the one of encryptString.
+	 * 
+	 * @param out
+	 *            the stream receiving Base64 text
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the stream accepting the plaintext
+	 * 
+	 * @throws IOException
+	 *             when the salt cannot be written
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 */
+	private static OutputStream encryptLegacy(OutputStream out,
+			String password) throws IOException, GeneralSecurityException {
+		OutputStream raw = Base64.getEncoder().wrap(out);
+
+		// the salt determines the IV as well, so it must never be reused
+		byte[] salt = CipherEngine.randomBytes(SALT_SIZE);
+		DerivedKey key = obtainKey(password, LEGACY_KDF, salt);
+		KEY_CACHE.put(password, LEGACY_KDF, salt, key);
+		try {
+			Cipher cipher = engineFor(CipherScheme.AES_CBC).newCipher(
+					CRYPTO_ALGORITHM, Cipher.ENCRYPT_MODE,
+					new SecretKeySpec(key.getKey(), "AES"),
+					new IvParameterSpec(key.getIv()));
+			raw.write(salt);
+			return new CipherOutputStream(raw, cipher);
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Find the PBKDF2 iterations, so that deriving a key takes about the
+	 * target time on this machine. A longer time makes brute-forcing the
+	 * password more expensive, but delays unlocking by the same amount. The
+	 * result never falls below MIN_PBKDF2_ITERATIONS nor exceeds
+	 * MAX_CALIBRATED_ITERATIONS; pass it to
+	 * EncryptionOptions.withKdfIterations().
+	 * 
+	 * @param targetMillis
+	 *            the time unlocking shall take, e.g. DEFAULT_UNLOCK_MILLIS
+	 * 
+	 * @return the number of iterations found
+	 */
+	public static int calibrateKdf(long targetMillis) {
+		if (targetMillis <= 0) {
+			throw new IllegalArgumentException("Target time must be positive");
+		}
+		int iterations = KeyDerivation.calibratePbkdf2Sha256(targetMillis);
+		iterations = Math.max(MIN_PBKDF2_ITERATIONS, Math.min(
+				MAX_CALIBRATED_ITERATIONS, iterations) / ITERATIONS_STEP
+				* ITERATIONS_STEP);
+		logger.debug("Calibrated " + iterations + " PBKDF2 iterations for "
+				+ targetMillis + " ms");
+		return iterations;
+	}
+
+	/**
+	 * Create a header with a single key slot for the password, holding a new
+	 * data key, with the default options.
+	 * 
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the header
+	 * 
+	 * @throws SysCryptoException
+	 *             when the key slot cannot be created
+	 * 
+	 * @see #createEnvelope(String, EncryptionOptions)
+	 */
+	public static ContainerHeader createEnvelope(String password)
+			throws SysCryptoException {
+		return createEnvelope(password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Create a header with a single key slot for the password, holding a new
+	 * data key. Pass it to encryptStream() to write a container with key
+	 * slots, regardless of the envelope encryption of the options.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param options
+	 *            the cipher scheme and key derivation to use
+	 * 
+	 * @return the header
+	 * 
+	 * @throws SysCryptoException
+	 *             when the key slot cannot be created
+	 */
+	public static ContainerHeader createEnvelope(String password,
+			EncryptionOptions options) throws SysCryptoException {
+		checkPassword(password, "Failed to create key slot");
+		byte[] dataKey = CipherEngine.randomBytes(KeySlot.DATA_KEY_SIZE);
+		try {
+			CipherScheme scheme = options.getCipherScheme();
+			ContainerHeader header = new ContainerHeader();
+			header.setCipherScheme(scheme);
+			header.setIv(CipherEngine.randomBytes(scheme.getIvSize()));
+			header.setKeySlots(Collections.singletonList(createKeySlot(
+					dataKey, password, options.getKdfParameters())));
+			return header;
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to create key slot";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} finally {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Add a key slot for another password to the header, with the key
+	 * derivation of the default options.
+	 * 
+	 * @param header
+	 *            the header, with key slots
+	 * @param password
+	 *            a password opening one of the key slots
+	 * @param newPassword
+	 *            the password to add
+	 * 
+	 * @throws SysCryptoException
+	 *             when the header has no key slots or the password opens none
+	 * 
+	 * @see #addKeySlot(ContainerHeader, String, String, EncryptionOptions)
+	 */
+	public static void addKeySlot(ContainerHeader header, String password,
+			String newPassword) throws SysCryptoException {
+		addKeySlot(header, password, newPassword, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Add a key slot for another password to the header. The payload remains
+	 * valid; only the header has to be written again.
+	 * 
+	 * @param header
+	 *            the header, with key slots
+	 * @param password
+	 *            a password opening one of the key slots
+	 * @param newPassword
+	 *            the password to add
+	 * @param options
+	 *            the key derivation of the new key slot
+	 * 
+	 * @throws SysCryptoException
+	 *             when the header has no key slots or the password opens none
+	 */
+	public static void addKeySlot(ContainerHeader header, String password,
+			String newPassword, EncryptionOptions options)
+			throws SysCryptoException {
+		logger.debug("entering addKeySlot");
+		List<KeySlot> slots = new ArrayList<KeySlot>(header.getKeySlots());
+		int index = findKeySlot(header, password);
+		slots.add(rewrapKeySlot(slots.get(index), password, newPassword,
+				options.getKdfParameters()));
+		header.setKeySlots(slots);
+		logger.debug("exiting addKeySlot");
+	}
+
+	/**
+	 * Replace the key slot of a password by one for the new password, with
+	 * the key derivation of the default options.
+	 * 
+	 * @param header
+	 *            the header, with key slots
+	 * @param oldPassword
+	 *            the password to replace
+	 * @param newPassword
+	 *            the new password
+	 * 
+	 * @throws SysCryptoException
+	 *             when the header has no key slots or the password opens none
+	 * 
+	 * @see #replaceKeySlot(ContainerHeader, String, String,
+	 *      EncryptionOptions)
+	 */
+	public static void replaceKeySlot(ContainerHeader header,
+			String oldPassword, String newPassword) throws SysCryptoException {
+		replaceKeySlot(header, oldPassword, newPassword,
+				EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Replace the key slot of a password by one for the new password. The
+	 * payload remains valid; only the header has to be written again.
+	 * 
+	 * @param header
+	 *            the header, with key slots
+	 * @param oldPassword
+	 *            the password to replace
+	 * @param newPassword
+	 *            the new password
+	 * @param options
+	 *            the key derivation of the new key slot
+	 * 
+	 * @throws SysCryptoException
+	 *             when the header has no key slots or the password opens none
+	 */
+	public static void replaceKeySlot(ContainerHeader header,
+			String oldPassword, String newPassword, EncryptionOptions options)
+			throws SysCryptoException {
+		logger.debug("entering replaceKeySlot");
+		List<KeySlot> slots = new ArrayList<KeySlot>(header.getKeySlots());
+		int index = findKeySlot(header, oldPassword);
+		slots.set(index, rewrapKeySlot(slots.get(index), oldPassword,
+				newPassword, options.getKdfParameters()));
+		header.setKeySlots(slots);
+		logger.debug("exiting replaceKeySlot");
+	}
+
+	/**
+	 * Find the key slot opened by the password.
+	 * 
+	 * @param header
+	 *            the header
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the index of the key slot
+	 * 
+	 * @throws SysCryptoException
+	 *             when the header has no key slots or the password opens none
+	 */
+	private static int findKeySlot(ContainerHeader header, String password)
+			throws SysCryptoException {
+		checkPassword(password, "Failed to open key slot");
+		List<KeySlot> slots = header.getKeySlots();
+		if (slots.isEmpty()) {
+			String msg = "Container has no key slots";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+		try {
+			for (int i = 0; i < slots.size(); i++) {
+				byte[] dataKey = openKeySlot(slots.get(i), password);
+				if (dataKey != null) {
+					Arrays.fill(dataKey, (byte) 0);
+					return i;
+				}
+			}
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to open key slot";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		}
+		String msg = "No key slot opens with the password";
+		logger.warn(msg);
+		throw new SysCryptoException(msg);
+	}
+
+	/**
+	 * Wrap the data key of a key slot for another password.
+	 * 
+	 * @param slot
+	 *            the key slot, opened by the password
+	 * @param password
+	 *            the password
+	 * @param newPassword
+	 *            the new password
+	 * @param kdf
+	 *            the key derivation of the new key slot
+	 * 
+	 * @return the key slot for the new password
+	 * 
+	 * @throws SysCryptoException
+	 *             when the key slot cannot be created
+	 */
+	private static KeySlot rewrapKeySlot(KeySlot slot, String password,
+			String newPassword, KdfParameters kdf) throws SysCryptoException {
+		checkPassword(newPassword, "Failed to create key slot");
+		byte[] dataKey = null;
+		try {
+			dataKey = openKeySlot(slot, password);
+			return createKeySlot(dataKey, newPassword, kdf);
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to create key slot";
+			logger.warn(msg, ex);
+			throw new SysCryptoException(msg, ex);
+		} finally {
+			if (dataKey != null) {
+				Arrays.fill(dataKey, (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Open the first key slot of the header matching the password.
+	 * 
+	 * @param header
+	 *            the header
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the data key, to be wiped by the caller, or null if no key slot
+	 *         opens
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	private static byte[] openKeySlots(ContainerHeader header,
+			String password) throws GeneralSecurityException {
+		for (KeySlot slot : header.getKeySlots()) {
+			byte[] dataKey = openKeySlot(slot, password);
+			if (dataKey != null) {
+				return dataKey;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Open a key slot with the password.
+	 * 
+	 * @param slot
+	 *            the key slot
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the data key, to be wiped by the caller, or null if the
+	 *         password does not open the key slot
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	private static byte[] openKeySlot(KeySlot slot, String password)
+			throws GeneralSecurityException {
+		DerivedKey key = obtainKey(password, slot.getKdfParameters(), slot
+				.getSalt());
+		try {
+			byte[] dataKey = slot.open(key.getKey());
+			KEY_CACHE.put(password, slot.getKdfParameters(), slot.getSalt(),
+					key);
+			return dataKey;
+		} catch (AEADBadTagException e) {
+			logger.trace("Key slot does not match the password");
+			return null;
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Create a key slot for the password.
+	 * 
+	 * @param dataKey
+	 *            the data key
+	 * @param password
+	 *            the password
+	 * @param kdf
+	 *            the key derivation
+	 * 
+	 * @return the key slot
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	private static KeySlot createKeySlot(byte[] dataKey, String password,
+			KdfParameters kdf) throws GeneralSecurityException {
+		byte[] salt = KEY_CACHE.findSalt(password, kdf);
+		if (salt == null) {
+			salt = CipherEngine.randomBytes(SALT_SIZE);
+		}
+		DerivedKey key = obtainKey(password, kdf, salt);
+		try {
+			KeySlot slot = KeySlot.seal(dataKey, kdf, salt, key.getKey());
+			KEY_CACHE.put(password, kdf, salt, key);
+			return slot;
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Wipe all cached keys. Call this, when the application is locked; the
+	 * next operation will derive the key from the password again. The field
+	 * ciphers of open documents are kept by their roots, lock them with
+	 * MappingElement.lockFields().
+	 */
+	public static void lock() {
+		logger.debug("entering lock");
+		KEY_CACHE.invalidateAll();
+	}
+
+	/**
+	 * Create the cipher for field level encryption. The master key is derived
+	 * with PBKDF2 and kept in the key cache. The caller keeps the cipher,
+	 * usually the root of the document it belongs to.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt, as stored in the document
+	 * @param iterations
+	 *            the iteration count, as stored in the document
+	 * 
+	 * @return the field cipher
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty
+	 */
+	public static FieldCipher createFieldCipher(String password, byte[] salt,
+			int iterations) throws SysCryptoException {
+		checkPassword(password, "Failed to unlock fields");
+		KdfParameters kdf = KdfParameters.pbkdf2(iterations);
+		DerivedKey key = obtainKey(password, kdf, salt);
+		try {
+			FieldCipher cipher = new FieldCipher(key.getKey());
+			KEY_CACHE.put(password, kdf, salt, key);
+			return cipher;
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Create the cipher for field level encryption of an existing document
+	 * and verify the password with the field check value stored in the
+	 * document. The master key is cached only if the check value opens.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param salt
+	 *            the salt, as stored in the document
+	 * @param iterations
+	 *            the iteration count, as stored in the document
+	 * @param fieldCheck
+	 *            the sealed check value, as stored in the document
+	 * @param aad
+	 *            the associated data of the check value
+	 * 
+	 * @return the field cipher
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or the check value does not
+	 *             open, i.e. the password is wrong
+	 */
+	public static FieldCipher openFieldCipher(String password, byte[] salt,
+			int iterations, String fieldCheck, byte[] aad)
+			throws SysCryptoException {
+		checkPassword(password, "Failed to unlock fields");
+		KdfParameters kdf = KdfParameters.pbkdf2(iterations);
+		DerivedKey key = obtainKey(password, kdf, salt);
+		try {
+			FieldCipher cipher = new FieldCipher(key.getKey());
+			try {
+				cipher.open(fieldCheck, aad);
+			} catch (SysCryptoException e) {
+				cipher.wipe();
+				throw e;
+			}
+			KEY_CACHE.put(password, kdf, salt, key);
+			return cipher;
+		} finally {
+			key.wipe();
+		}
+	}
+
+	/**
+	 * Gets the cache of derived keys, e.g. to adjust its bounds.
+	 * 
+	 * @return the key cache
+	 */
+	public static DerivedKeyCache getKeyCache() {
+		return KEY_CACHE;
+	}
+
+	/**
+	 * Obtain the key for the password and salt, either from the cache or by
+	 * running the key derivation. A derived key is not cached, the caller puts
+	 * it into the cache once the key is verified, so wrong passwords never
+	 * evict valid keys.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * 
+	 * @return the derived key, to be wiped by the caller
+	 */
+	private static DerivedKey obtainKey(String password,
+			KdfParameters parameters, byte[] salt) {
+		DerivedKey key = KEY_CACHE.get(password, parameters, salt);
+		if (key == null) {
+			key = KeyDerivation.derive(parameters, password, salt, KEY_SIZE,
+					IV_SIZE);
+		}
+		return key;
+	}
+
+	/**
+	 * Gets the selector of the provider for each cipher scheme, e.g. to
+	 * enable benchmarking or to read the choices made.
+	 * 
+	 * @return the provider selector
+	 */
+	public static ProviderSelector getProviderSelector() {
+		return PROVIDERS;
+	}
+
+	/**
+	 * Gets the engine for a cipher scheme. The legacy format uses the engine
+	 * of AES_CBC.
+	 * 
+	 * @param scheme
+	 *            the cipher scheme
+	 * 
+	 * @return the engine
+	 */
+	private static CipherEngine engineFor(CipherScheme scheme) {
+		return PROVIDERS.engine(scheme);
+	}
+
+	/**
+	 * Make sure, the password can be used for en- or decryption.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param msg
+	 *            the message in case it cannot
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is null or empty
+	 */
+	private static void checkPassword(String password, String msg)
+			throws SysCryptoException {
+		if (password == null || password.isEmpty()) {
+			logger.warn(msg + ", password is empty");
+			throw new SysCryptoException(msg);
+		}
+	}
+
+	/**
+	 * Make sure, the password can be used for en- or decryption.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param msg
+	 *            the message in case it cannot
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is null or empty
+	 */
+	private static void checkPassword(char[] password, String msg)
+			throws SysCryptoException {
+		if (password == null || password.length == 0) {
+			logger.warn(msg + ", password is empty");
+			throw new SysCryptoException(msg);
+		}
+	}
+
+	/**
+	 * Make sure, a session holds the key it was asked for.
+	 * 
+	 * @param key
+	 *            the key found by the session, may be null
+	 * 
+	 * @throws SysCryptoException
+	 *             when the key is null
+	 */
+	private static void checkSessionKey(DerivedKey key)
+			throws SysCryptoException {
+		if (key == null) {
+			String msg = "The session does not hold the key of this container";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+	}
+
+	/**
+	 * Read the header of a container or the salt of the legacy format. The
+	 * stream is closed, if this fails.
+	 * 
+	 * @param cypher
+	 *            the cyphertext
+	 * 
+	 * @return the opening, positioned after header or salt
+	 * 
+	 * @throws CompletionException
+	 *             caused by a SysCryptoException or FileIOException
+	 */
+	private static Opening readOpening(InputStream cypher) {
+		InputStream in = cypher.markSupported() ? cypher
+				: new BufferedInputStream(cypher);
+		try {
+			if (ContainerHeader.isContainer(in)) {
+				return new Opening(in, ContainerHeader.read(in), null);
+			}
+			InputStream raw = Base64.getMimeDecoder().wrap(in);
+			return new Opening(raw, null, readLegacySalt(raw));
+		} catch (IOException ex) {
+			closeQuietly(in);
+			String msg = "Failed to read the header";
+			logger.warn(msg, ex);
+			throw new CompletionException(new FileIOException(msg, ex));
+		} catch (SysCryptoException ex) {
+			closeQuietly(in);
+			throw new CompletionException(ex);
+		}
+	}
+
+	/**
+	 * Derive the key of an opening, from the password or a key slot, and
+	 * check it against the key check value.
+	 * 
+	 * @param opening
+	 *            the opening
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the key, to be wiped by the caller
+	 * 
+	 * @throws CompletionException
+	 *             caused by a SysCryptoException, e.g. for a wrong password
+	 */
+	private static DerivedKey deriveOpeningKey(Opening opening,
+			String password) {
+		ContainerHeader header = opening.header;
+		try {
+			if (header == null) {
+				return obtainKey(password, LEGACY_KDF, opening.legacySalt);
+			}
+			if (header.hasKeySlots()) {
+				byte[] dataKey = openKeySlots(header, password);
+				if (dataKey == null) {
+					throw new AEADBadTagException("No key slot opens");
+				}
+				return new DerivedKey(dataKey, null);
+			}
+			DerivedKey key = obtainKey(password, header.getKdfParameters(),
+					header.getSalt());
+			checkKey(header, password, key);
+			return key;
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to initialize decryption";
+			logger.warn(msg, ex);
+			throw new CompletionException(new SysCryptoException(msg, ex));
+		}
+	}
+
+	/**
+	 * Read the rest of an opening's cyphertext into memory and close the
+	 * stream.
+	 * 
+	 * @param opening
+	 *            the opening
+	 * 
+	 * @return the payload
+	 * 
+	 * @throws CompletionException
+	 *             caused by a FileIOException
+	 */
+	private static byte[] readPayload(Opening opening) {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			int count;
+			while ((count = opening.in.read(buffer)) >= 0) {
+				payload.write(buffer, 0, count);
+			}
+			return payload.toByteArray();
+		} catch (IOException ex) {
+			String msg = "Failed to read the cyphertext";
+			logger.warn(msg, ex);
+			throw new CompletionException(new FileIOException(msg, ex));
+		} finally {
+			closeQuietly(opening.in);
+		}
+	}
+
+	/**
+	 * Set up the decryption of a buffered payload.
+	 * 
+	 * @param opening
+	 *            the opening
+	 * @param keyed
+	 *            the key and the payload, the key is wiped afterwards
+	 * 
+	 * @return the plaintext stream
+	 * 
+	 * @throws CompletionException
+	 *             caused by a SysCryptoException
+	 */
+	private static InputStream openBuffered(Opening opening, Keyed keyed) {
+		InputStream in = new ByteArrayInputStream(keyed.payload);
+		try {
+			if (opening.header == null) {
+				return openLegacy(in, keyed.key);
+			}
+			return openPayload(in, opening.header, keyed.key);
+		} catch (GeneralSecurityException ex) {
+			String msg = "Failed to initialize decryption";
+			logger.warn(msg, ex);
+			throw new CompletionException(new SysCryptoException(msg, ex));
+		} catch (SysCryptoException ex) {
+			throw new CompletionException(ex);
+		}
+	}
+
+	/**
+	 * Close a stream, logging failures.
+	 * 
+	 * @param stream
+	 *            the stream
+	 */
+	private static void closeQuietly(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close stream", e);
+		}
+	}
+
+	/**
+	 * Inits the cypher, using the our CRYPTO_ALGORITM.
+	 * 
+	 * @param mode
+	 *            the cipher mode
+	 * @param key
+	 *            the derived key
+	 * 
+	 * @return the initialized cipher, owned by the calling thread
+	 * 
+	 * @throws GeneralSecurityException
+	 *             when the cipher cannot be initialized
+	 */
+	private static Cipher initCypher(int mode, DerivedKey key)
+			throws GeneralSecurityException {
+		return engineFor(CipherScheme.AES_CBC).cipher(CRYPTO_ALGORITHM, mode,
+				new SecretKeySpec(key.getKey(), "AES"), new IvParameterSpec(key
+						.getIv()));
+	}
+
+	/**
+	 * The start of an asynchronous decryption: the header or legacy salt has
+	 * been read, the payload has not.
+	 */
+	private static final class Opening {
+
+		/** The stream, positioned after the header or salt. */
+		private final InputStream in;
+
+		/** The container header, null for the legacy format. */
+		private final ContainerHeader header;
+
+		/** The salt of the legacy format, null for containers. */
+		private final byte[] legacySalt;
+
+		/**
+		 * Instantiates a new opening.
+		 * 
+		 * @param in
+		 *            the stream, positioned after the header or salt
+		 * @param header
+		 *            the container header, null for the legacy format
+		 * @param legacySalt
+		 *            the salt of the legacy format, null for containers
+		 */
+		Opening(InputStream in, ContainerHeader header, byte[] legacySalt) {
+			this.in = in;
+			this.header = header;
+			this.legacySalt = legacySalt;
+		}
+	}
+
+	/**
+	 * A derived key together with the payload it decrypts.
+	 */
+	private static final class Keyed {
+
+		/** The key. */
+		private final DerivedKey key;
+
+		/** The payload. */
+		private final byte[] payload;
+
+		/**
+		 * Instantiates a new pair of key and payload.
+		 * 
+		 * @param key
+		 *            the key
+		 * @param payload
+		 *            the payload
+		 */
+		Keyed(DerivedKey key, byte[] payload) {
+			this.key = key;
+			this.payload = payload;
+		}
 	}
 
 }
@@ -0,0 +1,325 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.util;
+
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+import de.petranek.syncyoursecrets.crypto.DerivedKey;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.crypto.KeySlot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.AEADBadTagException;
+import java.io.Closeable;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Class VaultSession holds the keys of an unlocked vault, so the vault
+ * can be read and written again and again without the password.
+ * 
+ * A session is obtained from EnryptionUtil.unlock() or XmlSerializeTool.unlock()
+ * with the password as char array. The key derivation runs once, the password
+ * array is wiped right after. Each read and write afterwards only costs the
+ * cipher itself. Containers written by a session reuse the salt and key
+ * derivation parameters (or the key slots) of the session with a fresh IV, so
+ * the session can read them back. The cipher scheme and compression of new
+ * containers are taken from the EncryptionOptions the session was unlocked
+ * with.
+ * 
+ * A session can only open containers whose key it holds: the vault it was
+ * unlocked from and the containers it has written. Others are rejected with a
+ * SysCryptoException.
+ * 
+ * The keys are kept in byte arrays and wiped by close(). Close the session,
+ * when the application locks. A session is safe to be used concurrently.
+ * 
+ * @author Jan Petranek
+ */
+public final class VaultSession implements Closeable {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(VaultSession.class);
+
+	/** The derived keys, the first one is used for writing. */
+	private final List<SessionKey> keys = new ArrayList<SessionKey>();
+
+	/** The key slots for writing or null, to write key derivation parameters. */
+	private final List<KeySlot> keySlots;
+
+	/** The data key sealed in the key slots, may be null. */
+	private final byte[] dataKey;
+
+	/** The options for writing. */
+	private final EncryptionOptions options;
+
+	/** True, once the keys have been wiped. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new session. The data key is taken over, not copied.
+	 * 
+	 * @param keySlots
+	 *            the key slots for writing or null, to write key derivation
+	 *            parameters
+	 * @param dataKey
+	 *            the data key sealed in the key slots or null
+	 * @param options
+	 *            the options for writing
+	 */
+	VaultSession(List<KeySlot> keySlots, byte[] dataKey,
+			EncryptionOptions options) {
+		super();
+		this.keySlots = keySlots == null ? null : Collections
+				.unmodifiableList(new ArrayList<KeySlot>(keySlots));
+		this.dataKey = dataKey;
+		this.options = options;
+	}
+
+	/**
+	 * Gets the options for writing.
+	 * 
+	 * @return the options
+	 */
+	public EncryptionOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Add a derived key. The first key added is used for writing containers
+	 * without key slots. The key is taken over, not copied.
+	 * 
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * @param key
+	 *            the derived key
+	 */
+	synchronized void addKey(KdfParameters parameters, byte[] salt,
+			DerivedKey key) {
+		keys.add(new SessionKey(parameters, salt.clone(), key));
+	}
+
+	/**
+	 * Find the key for the key derivation parameters and salt.
+	 * 
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * 
+	 * @return a copy of the key, which the caller has to wipe, or null if the
+	 *         session does not hold it
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session is closed
+	 */
+	synchronized DerivedKey findKey(KdfParameters parameters, byte[] salt)
+			throws SysCryptoException {
+		checkOpen();
+		SessionKey sessionKey = find(parameters, salt);
+		return sessionKey == null ? null : sessionKey.key.copy();
+	}
+
+	/**
+	 * Find the key of a container.
+	 * 
+	 * @param header
+	 *            the container header
+	 * 
+	 * @return the key, to be wiped by the caller, or null if the session does
+	 *         not hold it
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session is closed
+	 * @throws GeneralSecurityException
+	 *             when a key slot cannot be opened
+	 */
+	synchronized DerivedKey findContainerKey(ContainerHeader header)
+			throws SysCryptoException, GeneralSecurityException {
+		if (!header.hasKeySlots()) {
+			return findKey(header.getKdfParameters(), header.getSalt());
+		}
+		byte[] key = openKeySlots(header.getKeySlots());
+		return key == null ? null : new DerivedKey(key, null);
+	}
+
+	/**
+	 * Complete the header of a new container with the session's key slots or
+	 * key derivation parameters. Key slots of the replaced container are kept,
+	 * if the session opens one of them.
+	 * 
+	 * @param header
+	 *            the new header, with cipher scheme and IV
+	 * @param previous
+	 *            the header of the replaced container, may be null
+	 * 
+	 * @return the key of the container, to be wiped by the caller
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session is closed
+	 * @throws GeneralSecurityException
+	 *             when a key slot cannot be opened
+	 */
+	synchronized DerivedKey initHeader(ContainerHeader header,
+			ContainerHeader previous) throws SysCryptoException,
+			GeneralSecurityException {
+		checkOpen();
+		if (previous != null && previous.hasKeySlots()) {
+			byte[] key = openKeySlots(previous.getKeySlots());
+			if (key != null) {
+				header.setKeySlots(previous.getKeySlots());
+				return new DerivedKey(key, null);
+			}
+		}
+		if (keySlots != null) {
+			header.setKeySlots(keySlots);
+			return new DerivedKey(dataKey.clone(), null);
+		}
+		SessionKey writeKey = keys.get(0);
+		header.setKdfParameters(writeKey.parameters);
+		header.setSalt(writeKey.salt.clone());
+		return writeKey.key.copy();
+	}
+
+	/**
+	 * Checks if the session is closed.
+	 * 
+	 * @return true, if closed
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Wipe the keys. The session is unusable afterwards.
+	 */
+	@Override
+	public synchronized void close() {
+		logger.debug("entering close");
+		for (SessionKey sessionKey : keys) {
+			sessionKey.key.wipe();
+		}
+		keys.clear();
+		if (dataKey != null) {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+		closed = true;
+	}
+
+	/**
+	 * Open the first of the key slots the session holds the key for.
+	 * 
+	 * @param slots
+	 *            the key slots
+	 * 
+	 * @return the data key, to be wiped by the caller, or null
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session is closed
+	 * @throws GeneralSecurityException
+	 *             when the cipher is not available
+	 */
+	private byte[] openKeySlots(List<KeySlot> slots)
+			throws SysCryptoException, GeneralSecurityException {
+		checkOpen();
+		for (KeySlot slot : slots) {
+			SessionKey sessionKey = find(slot.getKdfParameters(), slot
+					.getSalt());
+			if (sessionKey != null) {
+				try {
+					return slot.open(sessionKey.key.getKey());
+				} catch (AEADBadTagException e) {
+					logger.trace("Key slot does not match the session");
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the key for the key derivation parameters and salt.
+	 * 
+	 * @param parameters
+	 *            the key derivation parameters
+	 * @param salt
+	 *            the salt
+	 * 
+	 * @return the key or null
+	 */
+	private SessionKey find(KdfParameters parameters, byte[] salt) {
+		for (SessionKey sessionKey : keys) {
+			if (sessionKey.parameters.equals(parameters)
+					&& Arrays.equals(sessionKey.salt, salt)) {
+				return sessionKey;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Make sure, the session has not been closed.
+	 * 
+	 * @throws SysCryptoException
+	 *             when the session is closed
+	 */
+	private void checkOpen() throws SysCryptoException {
+		if (closed) {
+			String msg = "Vault session is closed";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+	}
+
+	/**
+	 * A derived key together with its key derivation parameters and salt.
+	 */
+	private static final class SessionKey {
+
+		/** The key derivation parameters. */
+		private final KdfParameters parameters;
+
+		/** The salt. */
+		private final byte[] salt;
+
+		/** The derived key. */
+		private final DerivedKey key;
+
+		/**
+		 * Instantiates a new session key.
+		 * 
+		 * @param parameters
+		 *            the key derivation parameters
+		 * @param salt
+		 *            the salt
+		 * @param key
+		 *            the derived key
+		 */
+		SessionKey(KdfParameters parameters, byte[] salt, DerivedKey key) {
+			this.parameters = parameters;
+			this.salt = salt;
+			this.key = key;
+		}
+	}
+
+}
@@ -18,6 +18,7 @@
  */
 package de.petranek.syncyoursecrets.util;
 
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
 import de.petranek.syncyoursecrets.io.FileHelper;
 import de.petranek.syncyoursecrets.io.FileIOException;
 import org.apache.logging.log4j.LogManager;
@@ -26,16 +27,27 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * The Class XmlSerializeTool handles serialization and de-serialization between
@@ -44,6 +56,16 @@ import java.io.StringWriter;
  * The XML-Documents can be simple Strings, XML-Files or XML-Files encrypted
  * with our EncryptionUtil.
  *
+ * Encrypted documents are streamed: the decrypted bytes are fed to the parser
+ * and the serializer's output is encrypted as it is written, so the plaintext
+ * never sits in memory as a whole. Files are written as binary containers;
+ * files in the legacy Base64 format are still read.
+ *
+ * The parser and transformer factories are configured once. Each thread
+ * reuses its own document builder and transformer, which are reset before
+ * every use. The parser neither validates nor loads external entities or
+ * DTDs.
+ *
  * @author Jan Petranek
  */
 public final class XmlSerializeTool {
@@ -51,93 +73,1164 @@ public final class XmlSerializeTool {
 	/** The Constant logger. */
 	static final Logger logger = LogManager.getLogger(XmlSerializeTool.class);
 
+	/** The suffix of the file written aside before replacing a file. */
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/** The size of the buffer when draining streams. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The factory of the document builders, configured once. */
+	private static final DocumentBuilderFactory BUILDER_FACTORY = createBuilderFactory();
+
+	/** The factory of the transformers, configured once. */
+	private static final TransformerFactory TRANSFORMER_FACTORY = createTransformerFactory();
+
+	/** The document builders, one per thread. */
+	private static final ThreadLocal<DocumentBuilder> BUILDERS = new ThreadLocal<DocumentBuilder>();
+
+	/** The transformers, one per thread. */
+	private static final ThreadLocal<Transformer> TRANSFORMERS = new ThreadLocal<Transformer>();
+
+	/**
+	 * Writes plaintext into a stream, which encrypts it on the fly.
+	 */
+	public interface PlaintextWriter {
+
+		/**
+		 * Write the plaintext. Do not close the stream.
+		 *
+		 * @param plain
+		 *            the encrypting stream
+		 *
+		 * @throws SysXmlBaseException
+		 *             when the plaintext cannot be written
+		 */
+		void write(OutputStream plain) throws SysXmlBaseException;
+	}
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private XmlSerializeTool() {
+		super();
+	}
+
+	/**
+	 * Read an encrypted file and parse the contained XML document.
+	 *
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 *
+	 * @return the decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static Document readEncryptedFile(String password, File file)
+			throws SysXmlBaseException {
+
+		logger.debug("entering readEncryptedFile");
+
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			Document doc = readEncryptedStream(password, in);
+			logger.debug("exiting readEncryptedFile");
+			return doc;
+		} finally {
+			closeQuietly(in);
+		}
+
+	}
+
+	/**
+	 * Read an encrypted stream and parse the contained XML document. The
+	 * stream is decrypted while it is parsed. It will be closed.
+	 *
+	 * @param password
+	 *            the password
+	 * @param in
+	 *            the encrypted stream
+	 *
+	 * @return the decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static Document readEncryptedStream(String password, InputStream in)
+			throws SysXmlBaseException {
+		logger.debug("entering readEncryptedStream");
+		Document doc = parseDecrypted(EnryptionUtil.decryptStream(in, password));
+		logger.debug("exiting readEncryptedStream");
+		return doc;
+	}
+
+	/**
+	 * Read an encrypted file asynchronously and parse the contained XML
+	 * document. The key derivation overlaps with reading the file.
+	 *
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 *
+	 * @return the future decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the file cannot be opened or the password is empty
+	 *
+	 * @see EnryptionUtil#decryptStreamAsync(InputStream, String, Executor)
+	 */
+	public static CompletableFuture<Document> readEncryptedFileAsync(
+			String password, File file) throws SysXmlBaseException {
+		logger.debug("entering readEncryptedFileAsync");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			return parseAsync(EnryptionUtil.decryptStreamAsync(in, password));
+		} catch (SysCryptoException e) {
+			closeQuietly(in);
+			throw e;
+		}
+	}
+
+	/**
+	 * Read an encrypted file asynchronously on the given executor and parse
+	 * the contained XML document. The key derivation overlaps with reading
+	 * the file, if the executor runs two tasks at a time.
+	 *
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 * @param executor
+	 *            the executor
+	 *
+	 * @return the future decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the file cannot be opened or the password is empty
+	 */
+	public static CompletableFuture<Document> readEncryptedFileAsync(
+			String password, File file, Executor executor)
+			throws SysXmlBaseException {
+		logger.debug("entering readEncryptedFileAsync");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			return parseAsync(EnryptionUtil.decryptStreamAsync(in, password,
+					executor));
+		} catch (SysCryptoException e) {
+			closeQuietly(in);
+			throw e;
+		}
+	}
+
+	/**
+	 * Parse the XML document, once the decrypting stream is available. The
+	 * future completes exceptionally with a CompletionException caused by a
+	 * SysXmlBaseException.
+	 *
+	 * @param plain
+	 *            the future decrypting stream
+	 *
+	 * @return the future document
+	 */
+	private static CompletableFuture<Document> parseAsync(
+			CompletableFuture<InputStream> plain) {
+		return plain.thenApply(in -> {
+			try {
+				return parseDecrypted(in);
+			} catch (SysXmlBaseException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Read an encrypted file with the keys of an unlocked session and parse
+	 * the contained XML document.
+	 *
+	 * @param session
+	 *            the session
+	 * @param file
+	 *            the file
+	 *
+	 * @return the decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static Document readEncryptedFile(VaultSession session, File file)
+			throws SysXmlBaseException {
+		logger.debug("entering readEncryptedFile");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			Document doc = readEncryptedStream(session, in);
+			logger.debug("exiting readEncryptedFile");
+			return doc;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Read an encrypted stream with the keys of an unlocked session and parse
+	 * the contained XML document. It will be closed.
+	 *
+	 * @param session
+	 *            the session
+	 * @param in
+	 *            the encrypted stream
+	 *
+	 * @return the decrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static Document readEncryptedStream(VaultSession session,
+			InputStream in) throws SysXmlBaseException {
+		logger.debug("entering readEncryptedStream");
+		Document doc = parseDecrypted(EnryptionUtil.decryptStream(in, session));
+		logger.debug("exiting readEncryptedStream");
+		return doc;
+	}
+
+	/**
+	 * Parse the XML document from a decrypting stream. It will be closed.
+	 *
+	 * @param plain
+	 *            the decrypting stream
+	 *
+	 * @return the document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the decryption or parsing fails
+	 */
+	private static Document parseDecrypted(InputStream plain)
+			throws SysXmlBaseException {
+		try {
+			return documentBuilder().parse(new InputSource(plain));
+
+		} catch (SAXException e) {
+			// garbage from a wrong password usually breaks the parser before
+			// the padding is checked - read on to tell both cases apart.
+			checkDecryption(plain, e);
+			String msg = "Failed to parse XML within encrypted file";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		} catch (IOException e) {
+			if (e.getCause() instanceof GeneralSecurityException) {
+				String msg = "Decryption failed";
+				logger.warn(msg, e);
+				throw new SysCryptoException(msg, e);
+			}
+			String msg = "Failed to read encrypted stream";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		} catch (ParserConfigurationException e) {
+			String msg = "XML parser is ill-configured, this is a serious issue";
+			logger.error(msg, e);
+			throw new SysParseException(msg, e);
+		} finally {
+			closeQuietly(plain);
+		}
+	}
+
+	/**
+	 * Read the remaining plaintext to find out, whether it decrypts properly.
+	 *
+	 * @param plain
+	 *            the decrypting stream
+	 * @param cause
+	 *            the reason, why parsing stopped
+	 *
+	 * @throws SysCryptoException
+	 *             when the decryption fails
+	 */
+	private static void checkDecryption(InputStream plain, Exception cause)
+			throws SysCryptoException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			while (plain.read(buffer) >= 0) {
+				// drain
+			}
+		} catch (IOException e) {
+			String msg = "Decryption failed, wrong password or corrupted file";
+			logger.warn(msg, cause);
+			throw new SysCryptoException(msg, e);
+		}
+	}
+
+	/**
+	 * Close a stream after use, logging failures.
+	 *
+	 * @param stream
+	 *            the stream
+	 */
+	private static void closeQuietly(Closeable stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close stream", e);
+		}
+	}
+
+	/**
+	 * Read an encrypted file and return the content as String.
+	 *
+	 * @param password the password for decryption
+	 * @param file the file to read
+	 * @return the decrypted content
+	 * @throws FileIOException
+	 *             when the file cannot be read
+	 * @throws SysCryptoException
+	 *             when the operation fails
+	 */
+	public static String readEncryptedFileContent(String password, File file)
+			throws FileIOException, SysCryptoException {
+		logger.debug("entering readEncryptedFileContent");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			String content = readDecrypted(EnryptionUtil.decryptStream(in,
+					password), file);
+			logger.debug("exiting readEncryptedFileContent");
+			return content;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Read an encrypted file with the keys of an unlocked session and return
+	 * the content as String.
+	 *
+	 * @param session the session
+	 * @param file the file to read
+	 * @return the decrypted content
+	 * @throws FileIOException
+	 *             when the file cannot be read
+	 * @throws SysCryptoException
+	 *             when the operation fails
+	 */
+	public static String readEncryptedFileContent(VaultSession session,
+			File file) throws FileIOException, SysCryptoException {
+		logger.debug("entering readEncryptedFileContent");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			String content = readDecrypted(EnryptionUtil.decryptStream(in,
+					session), file);
+			logger.debug("exiting readEncryptedFileContent");
+			return content;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Read a decrypting stream to its end.
+	 *
+	 * @param plain the decrypting stream
+	 * @param file the file being read
+	 * @return the decrypted content
+	 * @throws FileIOException
+	 *             when the file cannot be read
+	 * @throws SysCryptoException
+	 *             when the decryption fails
+	 */
+	private static String readDecrypted(InputStream plain, File file)
+			throws FileIOException, SysCryptoException {
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = plain.read(buffer)) >= 0) {
+				content.write(buffer, 0, count);
+			}
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+
+		} catch (IOException e) {
+			if (e.getCause() instanceof GeneralSecurityException) {
+				String msg = "Decryption failed";
+				logger.warn(msg, e);
+				throw new SysCryptoException(msg, e);
+			}
+			String msg = "I/O-Error while reading file " + file.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
+	}
+
+	/**
+	 * Write encrypted document to a file. An existing container keeps its
+	 * cipher scheme, key derivation, key slots and compression.
+	 *
+	 * @param password
+	 *            the password
+	 * @param doc
+	 *            the document
+	 * @param file
+	 *            the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(String password, Document doc,
+			File file) throws SysXmlBaseException {
+		logger.debug("entering writeEncryptedDocument");
+		writeEncrypted(password, file, documentWriter(doc));
+		logger.debug("exiting writeEncryptedDocument");
+	}
+
+	/**
+	 * Write encrypted document to a file with the given options. The key
+	 * slots of an existing container are kept, if the password opens them.
+	 *
+	 * @param password
+	 *            the password
+	 * @param doc
+	 *            the document
+	 * @param file
+	 *            the file
+	 * @param options
+	 *            the options for writing
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(String password, Document doc,
+			File file, EncryptionOptions options) throws SysXmlBaseException {
+		logger.debug("entering writeEncryptedDocument");
+		writeEncrypted(password, file, documentWriter(doc), options);
+		logger.debug("exiting writeEncryptedDocument");
+	}
+
+	/**
+	 * Write encrypted document to a stream. The document is encrypted while it
+	 * is serialized. The stream will be closed.
+	 *
+	 * @param password
+	 *            the password
+	 * @param doc
+	 *            the document
+	 * @param out
+	 *            the stream receiving the encrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(String password, Document doc,
+			OutputStream out) throws SysXmlBaseException {
+		writeEncryptedDocument(password, doc, out, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Write encrypted document to a stream with the given options, e.g. in
+	 * the legacy format. The stream will be closed.
+	 *
+	 * @param password
+	 *            the password
+	 * @param doc
+	 *            the document
+	 * @param out
+	 *            the stream receiving the encrypted document
+	 * @param options
+	 *            the options for writing
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(String password, Document doc,
+			OutputStream out, EncryptionOptions options)
+			throws SysXmlBaseException {
+		writeEncrypted(password, out, null, options, documentWriter(doc));
+	}
+
+	/**
+	 * Write encrypted document to a file with the keys of an unlocked session.
+	 * The key slots of the file are kept, if the session opens them.
+	 *
+	 * @param session
+	 *            the session
+	 * @param doc
+	 *            the document
+	 * @param file
+	 *            the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(VaultSession session,
+			Document doc, File file) throws SysXmlBaseException {
+		logger.debug("entering writeEncryptedDocument");
+		writeEncrypted(session, file, documentWriter(doc));
+		logger.debug("exiting writeEncryptedDocument");
+	}
+
+	/**
+	 * Write encrypted document to a stream with the keys of an unlocked
+	 * session. The stream will be closed.
+	 *
+	 * @param session
+	 *            the session
+	 * @param doc
+	 *            the document
+	 * @param out
+	 *            the stream receiving the encrypted document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncryptedDocument(VaultSession session,
+			Document doc, OutputStream out) throws SysXmlBaseException {
+		writeEncrypted(session, out, null, documentWriter(doc));
+	}
+
+	/**
+	 * Write the plaintext produced by a writer encrypted to a file. The
+	 * plaintext is encrypted while it is written. The file is written aside
+	 * first and keeps its options and key slots, like with
+	 * writeEncryptedDocument().
+	 *
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 * @param writer
+	 *            writes the plaintext
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncrypted(String password, File file,
+			PlaintextWriter writer) throws SysXmlBaseException {
+		writeEncrypted(password, file, writer, null);
+	}
+
+	/**
+	 * Write the plaintext produced by a writer encrypted to a file with the
+	 * given options. The file is written aside first and keeps its key slots,
+	 * if the password opens them.
+	 *
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 * @param writer
+	 *            writes the plaintext
+	 * @param options
+	 *            the options for writing, null to keep those of the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncrypted(String password, File file,
+			PlaintextWriter writer, EncryptionOptions options)
+			throws SysXmlBaseException {
+		logger.debug("entering writeEncrypted");
+
+		if (file == null) {
+			String msg = ("File may not be null");
+			throw new SysXmlBaseException(msg);
+		}
+
+		// write aside, so a failure does not destroy the existing file
+		ContainerHeader previous = readPreviousHeader(file);
+		File tmpFile = getTmpFile(file);
+		try {
+			writeEncrypted(password, FileHelper.openOutputStream(tmpFile),
+					previous, options != null ? options
+							: EncryptionOptions.DEFAULT.withHeader(previous),
+					writer);
+			FileHelper.replaceFile(tmpFile, file);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+
+		logger.debug("exiting writeEncrypted");
+	}
+
+	/**
+	 * Write the plaintext produced by a writer encrypted to a file with the
+	 * keys of an unlocked session. The key slots of the file are kept, if the
+	 * session opens them.
+	 *
+	 * @param session
+	 *            the session
+	 * @param file
+	 *            the file
+	 * @param writer
+	 *            writes the plaintext
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void writeEncrypted(VaultSession session, File file,
+			PlaintextWriter writer) throws SysXmlBaseException {
+		logger.debug("entering writeEncrypted");
+
+		if (file == null) {
+			String msg = ("File may not be null");
+			throw new SysXmlBaseException(msg);
+		}
+
+		// write aside, so a failure does not destroy the existing file
+		ContainerHeader previous = readPreviousHeader(file);
+		File tmpFile = getTmpFile(file);
+		try {
+			writeEncrypted(session, FileHelper.openOutputStream(tmpFile),
+					previous, writer);
+			FileHelper.replaceFile(tmpFile, file);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+
+		logger.debug("exiting writeEncrypted");
+	}
+
+	/**
+	 * Write encrypted plaintext to a stream, keeping the key slots of the
+	 * container it replaces. The stream will be closed.
+	 *
+	 * @param password
+	 *            the password
+	 * @param out
+	 *            the stream receiving the encrypted plaintext
+	 * @param previous
+	 *            the header of the replaced container, may be null
+	 * @param options
+	 *            the options for writing
+	 * @param writer
+	 *            writes the plaintext
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	private static void writeEncrypted(String password, OutputStream out,
+			ContainerHeader previous, EncryptionOptions options,
+			PlaintextWriter writer) throws SysXmlBaseException {
+		OutputStream plain;
+		try {
+			plain = EnryptionUtil.encryptStream(out, password, previous,
+					options);
+		} catch (SysXmlBaseException e) {
+			closeQuietly(out);
+			throw e;
+		}
+		writeEncrypting(writer, plain);
+	}
+
 	/**
-	 * Utility class, shall not be instantiated.
+	 * Write encrypted plaintext to a stream with the keys of an unlocked
+	 * session, keeping the key slots of the container it replaces. The stream
+	 * will be closed.
+	 *
+	 * @param session
+	 *            the session
+	 * @param out
+	 *            the stream receiving the encrypted plaintext
+	 * @param previous
+	 *            the header of the replaced container, may be null
+	 * @param writer
+	 *            writes the plaintext
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
 	 */
-	private XmlSerializeTool() {
-		super();
+	private static void writeEncrypted(VaultSession session, OutputStream out,
+			ContainerHeader previous, PlaintextWriter writer)
+			throws SysXmlBaseException {
+		OutputStream plain;
+		try {
+			plain = EnryptionUtil.encryptStream(out, session, previous);
+		} catch (SysXmlBaseException e) {
+			closeQuietly(out);
+			throw e;
+		}
+		writeEncrypting(writer, plain);
 	}
 
 	/**
-	 * Read an encrypted file and parse the contained XML document.
+	 * Create a writer serializing the document.
 	 *
-	 * @param password
-	 *            the password
-	 * @param file
-	 *            the file
+	 * @param doc
+	 *            the document
 	 *
-	 * @return the decrypted document
+	 * @return the writer
+	 */
+	private static PlaintextWriter documentWriter(Document doc) {
+		return plain -> writeDocument(doc, new StreamResult(plain));
+	}
+
+	/**
+	 * Write the plaintext into an encrypting stream and close it.
+	 *
+	 * @param writer
+	 *            writes the plaintext
+	 * @param plain
+	 *            the encrypting stream
 	 *
 	 * @throws SysXmlBaseException
 	 *             when the operation fails
 	 */
-	public static Document readEncryptedFile(String password, File file)
-			throws SysXmlBaseException {
+	private static void writeEncrypting(PlaintextWriter writer,
+			OutputStream plain) throws SysXmlBaseException {
+		boolean closed = false;
+		try {
+			writer.write(plain);
+			// closing writes the final block
+			plain.close();
+			closed = true;
+		} catch (IOException e) {
+			String msg = "Failed to write encrypted document";
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		} finally {
+			if (!closed) {
+				closeQuietly(plain);
+			}
+		}
+	}
 
-		logger.debug("entering readEncryptedFile");
+	/**
+	 * Encrypt the given plaintext and write it into the given file. An
+	 * existing container keeps its options and key slots.
+	 *
+	 * @param password the password for encryption
+	 * @param file the file to write to
+	 * @param plaintext the plaintext to encrypt and save
+	 * @throws SysCryptoException when the encryption fails
+	 * @throws FileIOException when the file access fails
+	 */
+	public static void writeEncryptedString(String password, File file,
+			String plaintext) throws SysCryptoException, FileIOException {
+		ContainerHeader previous = readPreviousHeader(file);
+		writeEncryptedString(password, file, plaintext, previous,
+				EncryptionOptions.DEFAULT.withHeader(previous));
+	}
+
+	/**
+	 * Encrypt the given plaintext with the given options and write it into
+	 * the given file. Key slots of an existing container are kept, if the
+	 * password opens them.
+	 *
+	 * @param password the password for encryption
+	 * @param file the file to write to
+	 * @param plaintext the plaintext to encrypt and save
+	 * @param options the options for writing
+	 * @throws SysCryptoException when the encryption fails
+	 * @throws FileIOException when the file access fails
+	 */
+	public static void writeEncryptedString(String password, File file,
+			String plaintext, EncryptionOptions options)
+			throws SysCryptoException, FileIOException {
+		writeEncryptedString(password, file, plaintext,
+				readPreviousHeader(file), options);
+	}
 
-		String plaintext = readEncryptedFileContent(password, file);
+	/**
+	 * Encrypt the given plaintext and write it into the given file, keeping
+	 * the key slots of the given header.
+	 *
+	 * @param password the password for encryption
+	 * @param file the file to write to
+	 * @param plaintext the plaintext to encrypt and save
+	 * @param previous the header whose key slots to keep, may be null
+	 * @param options the options for writing
+	 * @throws SysCryptoException when the encryption fails
+	 * @throws FileIOException when the file access fails
+	 */
+	private static void writeEncryptedString(String password, File file,
+			String plaintext, ContainerHeader previous,
+			EncryptionOptions options) throws SysCryptoException,
+			FileIOException {
+		logger.debug("entering writeEncryptedString");
+		File tmpFile = getTmpFile(file);
+		try {
+			OutputStream out = FileHelper.openOutputStream(tmpFile);
+			OutputStream plain;
+			try {
+				plain = EnryptionUtil.encryptStream(out, password, previous,
+						options);
+			} catch (SysXmlBaseException e) {
+				closeQuietly(out);
+				throw e;
+			}
+			writeEncrypting(plaintext, plain, tmpFile);
+			FileHelper.replaceFile(tmpFile, file);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+		logger.debug("exiting writeEncryptedString");
+	}
 
-		return readString(plaintext);
+	/**
+	 * Encrypt the given plaintext with the keys of an unlocked session and
+	 * write it into the given file. The key slots of the file are kept, if
+	 * the session opens them.
+	 *
+	 * @param session the session
+	 * @param file the file to write to
+	 * @param plaintext the plaintext to encrypt and save
+	 * @throws SysCryptoException when the encryption fails
+	 * @throws FileIOException when the file access fails
+	 */
+	public static void writeEncryptedString(VaultSession session, File file,
+			String plaintext) throws SysCryptoException, FileIOException {
+		logger.debug("entering writeEncryptedString");
+		ContainerHeader previous = readPreviousHeader(file);
+		File tmpFile = getTmpFile(file);
+		try {
+			OutputStream out = FileHelper.openOutputStream(tmpFile);
+			OutputStream plain;
+			try {
+				plain = EnryptionUtil.encryptStream(out, session, previous);
+			} catch (SysXmlBaseException e) {
+				closeQuietly(out);
+				throw e;
+			}
+			writeEncrypting(plaintext, plain, tmpFile);
+			FileHelper.replaceFile(tmpFile, file);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+		logger.debug("exiting writeEncryptedString");
+	}
 
+	/**
+	 * Write the plaintext into an encrypting stream and close it.
+	 *
+	 * @param plaintext the plaintext
+	 * @param plain the encrypting stream
+	 * @param tmpFile the file being written
+	 * @throws FileIOException when the file access fails
+	 */
+	private static void writeEncrypting(String plaintext, OutputStream plain,
+			File tmpFile) throws FileIOException {
+		try {
+			plain.write(plaintext.getBytes(StandardCharsets.UTF_8));
+			plain.close();
+		} catch (IOException e) {
+			closeQuietly(plain);
+			String msg = "Error occured while writing to file "
+					+ tmpFile.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
 	}
 
 	/**
-	 * Read an encrypted file and return the content as String.
+	 * Unlock a vault file once, so it can be read and saved repeatedly without
+	 * key derivation. If the file does not exist yet, a new vault is
+	 * unlocked. The password array is wiped.
 	 *
-	 * @param password the password for decryption
-	 * @param file the file to read
-	 * @return the decrypted content
+	 * @param file
+	 *            the vault file, need not exist
+	 * @param password
+	 *            the password, wiped afterwards
+	 *
+	 * @return the session, to be closed by the caller
+	 *
+	 * @throws SysCryptoException
+	 *             when the password is empty or opens no key slot
 	 * @throws FileIOException
 	 *             when the file cannot be read
+	 */
+	public static VaultSession unlock(File file, char[] password)
+			throws SysCryptoException, FileIOException {
+		return unlock(file, password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Unlock a vault file once, so it can be read and saved repeatedly without
+	 * key derivation. The session saves with the given options. If the file
+	 * does not exist yet, a new vault is unlocked. The password array is
+	 * wiped.
+	 *
+	 * @param file
+	 *            the vault file, need not exist
+	 * @param password
+	 *            the password, wiped afterwards
+	 * @param options
+	 *            the options for writing
+	 *
+	 * @return the session, to be closed by the caller
+	 *
 	 * @throws SysCryptoException
-	 *             when the operation fails
+	 *             when the password is empty or opens no key slot
+	 * @throws FileIOException
+	 *             when the file cannot be read
 	 */
-	public static String readEncryptedFileContent(String password, File file)
-			throws FileIOException, SysCryptoException {
-		logger.debug("entering readEncryptedFile");
-		String cypher = FileHelper.readStringFromFile(file);
-		String plaintext = EnryptionUtil.decryptString(cypher, password);
-		logger.debug("exiting readEncryptedFile");
-		return plaintext;
+	public static VaultSession unlock(File file, char[] password,
+			EncryptionOptions options) throws SysCryptoException,
+			FileIOException {
+		logger.debug("entering unlock");
+		if (!file.exists()) {
+			return EnryptionUtil.unlock(password, options);
+		}
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			return EnryptionUtil.unlock(in, password, options);
+		} finally {
+			closeQuietly(in);
+		}
 	}
 
 	/**
-	 * Write encrypted document to a file.
+	 * Check, whether the password opens an encrypted file. For current files,
+	 * this reads the header only and costs one key derivation; the payload is
+	 * not decrypted.
 	 *
+	 * @param file
+	 *            the encrypted file
 	 * @param password
 	 *            the password
-	 * @param doc
-	 *            the document
+	 *
+	 * @return true, if the password is right
+	 *
+	 * @throws SysCryptoException
+	 *             when the password is empty or the file is no valid container
+	 * @throws FileIOException
+	 *             when the file cannot be read
+	 */
+	public static boolean verifyPassword(File file, String password)
+			throws SysCryptoException, FileIOException {
+		logger.debug("entering verifyPassword");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			return EnryptionUtil.verifyPassword(in, password);
+		} finally {
+			closeQuietly(in);
+			logger.debug("exiting verifyPassword");
+		}
+	}
+
+	/**
+	 * Add another password to an encrypted file. For files with key slots,
+	 * only the header is replaced; the payload is copied as it is. Other
+	 * files are re-encrypted into a container with key slots once.
+	 *
+	 * @param password
+	 *            a password of the file
 	 * @param file
 	 *            the file
+	 * @param newPassword
+	 *            the password to add
 	 *
-	 * @throws SysXmlBaseException
-	 *             when the operation fails
+	 * @throws SysCryptoException
+	 *             when the password is wrong
+	 * @throws FileIOException
+	 *             when the file access fails
 	 */
-	public static void writeEncryptedDocument(String password, Document doc,
-			File file) throws SysXmlBaseException {
-		logger.debug("entering writeEncryptedDocument");
+	public static void addPassword(String password, File file,
+			String newPassword) throws SysCryptoException, FileIOException {
+		logger.debug("entering addPassword");
+		ContainerHeader header = readEnvelopeHeader(password, file);
+		int length = header.getEncoded().length;
+		EnryptionUtil.addKeySlot(header, password, newPassword);
+		rewriteHeader(file, header, length);
+		logger.debug("exiting addPassword");
+	}
 
-		String plaintext = writeString(doc);
-		writeEncryptedString(password, file, plaintext);
+	/**
+	 * Change a password of an encrypted file. Other passwords of the file
+	 * remain valid. For files with key slots, only the header is rewritten.
+	 * Other files are re-encrypted into a container with key slots once.
+	 *
+	 * @param oldPassword
+	 *            the password to change
+	 * @param file
+	 *            the file
+	 * @param newPassword
+	 *            the new password
+	 *
+	 * @throws SysCryptoException
+	 *             when the old password is wrong
+	 * @throws FileIOException
+	 *             when the file access fails
+	 */
+	public static void changePassword(String oldPassword, File file,
+			String newPassword) throws SysCryptoException, FileIOException {
+		logger.debug("entering changePassword");
+		ContainerHeader header = readEnvelopeHeader(oldPassword, file);
+		int length = header.getEncoded().length;
+		EnryptionUtil.replaceKeySlot(header, oldPassword, newPassword);
+		rewriteHeader(file, header, length);
+		logger.debug("exiting changePassword");
+	}
 
-		logger.debug("exiting writeEncryptedDocument");
+	/**
+	 * Read the header of a container with key slots. Files without key slots
+	 * are converted first. Unless the password was verified by an
+	 * authenticated scheme or a key check value, the content must parse as
+	 * XML: a wrong password passes the CBC padding check about 1 in 256
+	 * times, and converting the garbage would lose the file.
+	 *
+	 * @param password
+	 *            a password of the file
+	 * @param file
+	 *            the file
+	 *
+	 * @return the header
+	 *
+	 * @throws SysCryptoException
+	 *             when the password is wrong
+	 * @throws FileIOException
+	 *             when the file access fails
+	 */
+	private static ContainerHeader readEnvelopeHeader(String password,
+			File file) throws SysCryptoException, FileIOException {
+		ContainerHeader header = readHeader(file);
+		if (header == null || !header.hasKeySlots()) {
+			logger.debug("Converting to a container with key slots");
+			String content = readEncryptedFileContent(password, file);
+			if (header == null || (!header.getCipherScheme().isAuthenticated()
+					&& header.getKeyCheck() == null)) {
+				try {
+					readString(content);
+				} catch (SysXmlBaseException e) {
+					String msg = "Cannot convert " + file.getAbsolutePath()
+							+ ", wrong password";
+					logger.warn(msg, e);
+					throw new SysCryptoException(msg, e);
+				}
+			}
+			EncryptionOptions options = EncryptionOptions.DEFAULT.withHeader(
+					header).withEnvelopeEncryption(true);
+			writeEncryptedString(password, file, content, EnryptionUtil
+					.createEnvelope(password, options), options);
+			header = readHeader(file);
+		}
+		return header;
 	}
 
 	/**
-	 * Encrypt the given plaintext and write it into the given file.
+	 * Read the container header of a file.
 	 *
-	 * @param password the password for encryption
-	 * @param file the file to write to
-	 * @param plaintext the plaintext to encrypt and save
-	 * @throws SysCryptoException when the encryption fails
-	 * @throws FileIOException when the file access fails
+	 * @param file
+	 *            the file
+	 *
+	 * @return the header or null, if the file is not a container
+	 *
+	 * @throws SysCryptoException
+	 *             when the header is malformed
+	 * @throws FileIOException
+	 *             when the file cannot be read
 	 */
-	public static void writeEncryptedString(String password, File file,
-			String plaintext) throws SysCryptoException, FileIOException {
-		String cypher = EnryptionUtil.encryptString(plaintext, password);
-		FileHelper.writeStringToFile(cypher, file);
+	private static ContainerHeader readHeader(File file)
+			throws SysCryptoException, FileIOException {
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			if (!ContainerHeader.isContainer(in)) {
+				return null;
+			}
+			return ContainerHeader.read(in);
+		} catch (IOException e) {
+			String msg = "Failed to read the header of "
+					+ file.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Read the container header of a file about to be replaced, so its key
+	 * slots can be kept.
+	 *
+	 * @param file
+	 *            the file
+	 *
+	 * @return the header or null, if there is none to keep
+	 */
+	private static ContainerHeader readPreviousHeader(File file) {
+		if (file == null || !file.exists()) {
+			return null;
+		}
+		try {
+			return readHeader(file);
+		} catch (SysXmlBaseException e) {
+			logger.debug("Not keeping the header of " + file.getName(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Replace the header of a container file, keeping the payload. The file
+	 * is copied aside and replaced, so a failure leaves the old header and
+	 * its key slots intact.
+	 *
+	 * @param file
+	 *            the file
+	 * @param header
+	 *            the new header
+	 * @param length
+	 *            the length of the current header
+	 *
+	 * @throws SysCryptoException
+	 *             when the header is incomplete
+	 * @throws FileIOException
+	 *             when the file cannot be written
+	 */
+	private static void rewriteHeader(File file, ContainerHeader header,
+			int length) throws SysCryptoException, FileIOException {
+		byte[] bytes = header.toByteArray();
+		logger.debug("Rewriting header, copying payload");
+		File tmpFile = getTmpFile(file);
+		try {
+			InputStream in = FileHelper.openInputStream(file);
+			OutputStream out = FileHelper.openOutputStream(tmpFile);
+			boolean closed = false;
+			try {
+				out.write(bytes);
+				new DataInputStream(in).readFully(new byte[length]);
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, count);
+				}
+				// a failing close must not replace the file
+				out.close();
+				closed = true;
+			} catch (IOException e) {
+				String msg = "Failed to copy " + file.getAbsolutePath();
+				logger.warn(msg, e);
+				throw new FileIOException(msg, e);
+			} finally {
+				closeQuietly(in);
+				if (!closed) {
+					closeQuietly(out);
+				}
+			}
+			FileHelper.replaceFile(tmpFile, file);
+		} finally {
+			deleteTmpFile(tmpFile);
+		}
+	}
+
+	/**
+	 * Gets the file to write aside, before the given file is replaced.
+	 *
+	 * @param file
+	 *            the file to be replaced
+	 *
+	 * @return the temporary file in the same directory
+	 */
+	private static File getTmpFile(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), file.getName()
+				+ TMP_SUFFIX);
+	}
+
+	/**
+	 * Delete a temporary file left over by a failed write.
+	 *
+	 * @param tmpFile
+	 *            the temporary file
+	 */
+	private static void deleteTmpFile(File tmpFile) {
+		if (tmpFile.exists() && !tmpFile.delete()) {
+			logger.warn("Cannot delete " + tmpFile.getAbsolutePath());
+		}
 	}
 
 	/**
@@ -159,8 +1252,7 @@ public final class XmlSerializeTool {
 		Document doc;
 		try {
 
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-					.parse(source);
+			doc = documentBuilder().parse(source);
 
 			logger.debug("exiting readString");
 			return doc;
@@ -202,8 +1294,7 @@ public final class XmlSerializeTool {
 
 		try {
 			Document doc;
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-					.parse(file);
+			doc = documentBuilder().parse(file);
 			logger.debug("exiting readFile");
 			return doc;
 
@@ -272,8 +1363,7 @@ public final class XmlSerializeTool {
 
 		try {
 			// Use a Transformer for output
-			TransformerFactory tFactory = TransformerFactory.newInstance();
-			Transformer transformer = tFactory.newTransformer();
+			Transformer transformer = transformer();
 
 			DOMSource source = new DOMSource(doc);
 
@@ -286,11 +1376,6 @@ public final class XmlSerializeTool {
 			logger.warn(msg, e);
 			throw new SysParseException(msg, e);
 
-		} catch (TransformerFactoryConfigurationError e) {
-			String msg = "Writing XML failed";
-			logger.warn(msg, e);
-			throw new SysParseException(msg, e);
-
 		} catch (TransformerException e) {
 			String msg = "Writing XML failed";
 			logger.warn(msg, e);
@@ -333,11 +1418,7 @@ public final class XmlSerializeTool {
 	public static Document createDocument() throws SysXmlBaseException {
 		logger.debug("entering createDocument");
 		try {
-			DocumentBuilderFactory docBFac;
-			DocumentBuilder docBuild;
-			docBFac = DocumentBuilderFactory.newInstance();
-			docBuild = docBFac.newDocumentBuilder();
-			Document doc = docBuild.newDocument();
+			Document doc = documentBuilder().newDocument();
 			logger.debug("exiting createDocument");
 			return doc;
 
@@ -347,4 +1428,121 @@ public final class XmlSerializeTool {
 			throw new SysParseException(msg, e);
 		}
 	}
+
+	/**
+	 * Gets the document builder of the current thread, reset for reuse.
+	 *
+	 * @return the document builder, owned by the calling thread
+	 *
+	 * @throws ParserConfigurationException
+	 *             when the parser cannot be configured
+	 */
+	private static DocumentBuilder documentBuilder()
+			throws ParserConfigurationException {
+		DocumentBuilder builder = BUILDERS.get();
+		if (builder == null) {
+			// factories are not guaranteed to be thread-safe
+			synchronized (BUILDER_FACTORY) {
+				builder = BUILDER_FACTORY.newDocumentBuilder();
+			}
+			BUILDERS.set(builder);
+		} else {
+			builder.reset();
+		}
+		return builder;
+	}
+
+	/**
+	 * Gets the transformer of the current thread, reset for reuse.
+	 *
+	 * @return the transformer, owned by the calling thread
+	 *
+	 * @throws TransformerConfigurationException
+	 *             when the transformer cannot be configured
+	 */
+	private static Transformer transformer()
+			throws TransformerConfigurationException {
+		Transformer transformer = TRANSFORMERS.get();
+		if (transformer == null) {
+			synchronized (TRANSFORMER_FACTORY) {
+				transformer = TRANSFORMER_FACTORY.newTransformer();
+			}
+			TRANSFORMERS.set(transformer);
+		} else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+
+	/**
+	 * Create the factory of the document builders: non-validating,
+	 * namespace-unaware and without loading external entities or DTDs.
+	 *
+	 * @return the factory
+	 */
+	private static DocumentBuilderFactory createBuilderFactory() {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setValidating(false);
+		factory.setNamespaceAware(false);
+		factory.setXIncludeAware(false);
+		factory.setExpandEntityReferences(false);
+		setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		setFeature(factory,
+				"http://xml.org/sax/features/external-general-entities", false);
+		setFeature(factory,
+				"http://xml.org/sax/features/external-parameter-entities",
+				false);
+		setFeature(factory,
+				"http://apache.org/xml/features/nonvalidating/load-external-dtd",
+				false);
+		try {
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+		} catch (IllegalArgumentException e) {
+			logger.warn("XML parser does not restrict external access", e);
+		}
+		return factory;
+	}
+
+	/**
+	 * Set a feature of the document builder factory, if the parser supports
+	 * it.
+	 *
+	 * @param factory
+	 *            the factory
+	 * @param feature
+	 *            the feature
+	 * @param value
+	 *            the value
+	 */
+	private static void setFeature(DocumentBuilderFactory factory,
+			String feature, boolean value) {
+		try {
+			factory.setFeature(feature, value);
+		} catch (ParserConfigurationException e) {
+			logger.warn("XML parser does not support " + feature, e);
+		}
+	}
+
+	/**
+	 * Create the factory of the transformers, without access to external
+	 * DTDs or stylesheets.
+	 *
+	 * @return the factory
+	 */
+	private static TransformerFactory createTransformerFactory() {
+		TransformerFactory factory = TransformerFactory.newInstance();
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (TransformerConfigurationException e) {
+			logger.warn("Transformer does not support secure processing", e);
+		}
+		try {
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+		} catch (IllegalArgumentException e) {
+			logger.warn("Transformer does not restrict external access", e);
+		}
+		return factory;
+	}
 }
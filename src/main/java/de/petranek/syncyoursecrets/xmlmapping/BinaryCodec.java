@@ -0,0 +1,115 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The Class BinaryCodec reads and writes the MappingElement tree in a compact
+ * binary format. It carries exactly the elements, attributes and texts of the
+ * XML format, so a tree survives any number of conversions between both.
+ * 
+ * The format starts with the signature SYSB and a version byte, followed by
+ * tokens: start element, text, end element and end of document. Element and
+ * attribute names are interned: a name is written once, then referenced by
+ * its number. Numbers are written as variable length integers. Attribute
+ * values are typed, where this does not change their text: ids as integers,
+ * timestamps as epoch seconds, nanoseconds and offset, actions as a byte;
+ * other values and texts as length-prefixed UTF-8.
+ * 
+ * @author Jan Petranek
+ */
+public final class BinaryCodec implements ModelCodec {
+
+	/** The name of the codec. */
+	public static final String NAME = "binary";
+
+	/** The signature at the start of the stream. */
+	static final byte[] SIGNATURE = { 'S', 'Y', 'S', 'B' };
+
+	/** The version of the format. */
+	static final int FORMAT_VERSION = 1;
+
+	/** The token ending the document. */
+	static final int TOKEN_END_DOCUMENT = 0;
+
+	/** The token starting an element. */
+	static final int TOKEN_START_ELEMENT = 1;
+
+	/** The token of a text. */
+	static final int TOKEN_TEXT = 2;
+
+	/** The token ending an element. */
+	static final int TOKEN_END_ELEMENT = 3;
+
+	/** The type of an attribute value written as text. */
+	static final int VALUE_STRING = 0;
+
+	/** The type of an attribute value written as integer. */
+	static final int VALUE_LONG = 1;
+
+	/** The type of an attribute value written as timestamp. */
+	static final int VALUE_TIMESTAMP = 2;
+
+	/** The type of an attribute value written as action. */
+	static final int VALUE_ACTION = 3;
+
+	/** The timestamp has a zone offset only. */
+	static final int ZONE_OFFSET = 0;
+
+	/** The timestamp has a zone id, written as name after the offset. */
+	static final int ZONE_ID = 1;
+
+	/**
+	 * Instantiates the codec. Use ModelCodecs.BINARY.
+	 */
+	BinaryCodec() {
+		super();
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean accepts(byte[] head, int length) {
+		return length >= SIGNATURE.length
+				&& Arrays.equals(Arrays.copyOf(head, SIGNATURE.length),
+						SIGNATURE);
+	}
+
+	@Override
+	public XMLStreamReader createReader(InputStream in)
+			throws XMLStreamException {
+		return new BinaryStreamReader(in);
+	}
+
+	@Override
+	public XMLStreamWriter createWriter(OutputStream out)
+			throws XMLStreamException {
+		return new BinaryStreamWriter(out);
+	}
+
+}
@@ -0,0 +1,716 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.util.DateTimeUtil;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * The Class BinaryStreamReader reads the format of the BinaryCodec as StAX
+ * events. Typed attribute values are returned as the text they had when
+ * written.
+ * 
+ * @author Jan Petranek
+ */
+final class BinaryStreamReader implements XMLStreamReader {
+
+	/** The namespace context of documents without namespaces. */
+	static final NamespaceContext NO_NAMESPACES = new NamespaceContext() {
+
+		@Override
+		public String getNamespaceURI(String prefix) {
+			return XMLConstants.NULL_NS_URI;
+		}
+
+		@Override
+		public String getPrefix(String namespaceURI) {
+			return null;
+		}
+
+		@Override
+		public Iterator<String> getPrefixes(String namespaceURI) {
+			return Collections.<String> emptyList().iterator();
+		}
+	};
+
+	/** The size of the buffer. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The stream. */
+	private final InputStream in;
+
+	/** The buffer. */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/** The position of the next byte in the buffer. */
+	private int position;
+
+	/** The number of bytes in the buffer. */
+	private int limit;
+
+	/** The number of bytes consumed before the buffer. */
+	private long offset;
+
+	/** The names read so far, by number. */
+	private final List<String> names = new ArrayList<String>();
+
+	/** The names of the open elements. */
+	private final Deque<String> open = new ArrayDeque<String>();
+
+	/** The current event. */
+	private int event = XMLStreamConstants.START_DOCUMENT;
+
+	/** The name of the current element. */
+	private String localName;
+
+	/** The attribute names and values of the current start element. */
+	private final List<String> attributes = new ArrayList<String>();
+
+	/** The current text. */
+	private String text;
+
+	/** The last timestamp read as seconds, nanoseconds, offset and zone. */
+	private final long[] lastTimestamp = new long[3];
+
+	/** The zone of the last timestamp read. */
+	private String lastZoneId;
+
+	/** The text of the last timestamp read, elements mostly repeat it. */
+	private String lastTimestampText;
+
+	/**
+	 * Instantiates a new reader and checks the signature.
+	 * 
+	 * @param in
+	 *            the stream
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream is not in the binary format
+	 */
+	BinaryStreamReader(InputStream in) throws XMLStreamException {
+		super();
+		this.in = in;
+		for (byte b : BinaryCodec.SIGNATURE) {
+			if (readByte() != b) {
+				throw new XMLStreamException("Not a binary model",
+						getLocation());
+			}
+		}
+		int version = readByte();
+		if (version != BinaryCodec.FORMAT_VERSION) {
+			throw new XMLStreamException("Unsupported version " + version
+					+ " of the binary model", getLocation());
+		}
+	}
+
+	@Override
+	public int next() throws XMLStreamException {
+		if (event == XMLStreamConstants.END_DOCUMENT) {
+			throw new NoSuchElementException("Already at the end");
+		}
+		if (event == XMLStreamConstants.END_ELEMENT) {
+			open.pop();
+		}
+		attributes.clear();
+		text = null;
+		localName = null;
+
+		int token = readByte();
+		switch (token) {
+		case BinaryCodec.TOKEN_START_ELEMENT:
+			localName = readName();
+			long count = readVarLong();
+			for (long i = 0; i < count; i++) {
+				attributes.add(readName());
+				attributes.add(readValue());
+			}
+			open.push(localName);
+			event = XMLStreamConstants.START_ELEMENT;
+			break;
+		case BinaryCodec.TOKEN_TEXT:
+			text = readString();
+			event = XMLStreamConstants.CHARACTERS;
+			break;
+		case BinaryCodec.TOKEN_END_ELEMENT:
+			if (open.isEmpty()) {
+				throw new XMLStreamException("End without element",
+						getLocation());
+			}
+			localName = open.peek();
+			event = XMLStreamConstants.END_ELEMENT;
+			break;
+		case BinaryCodec.TOKEN_END_DOCUMENT:
+			if (!open.isEmpty()) {
+				throw new XMLStreamException("Element " + open.peek()
+						+ " not ended", getLocation());
+			}
+			event = XMLStreamConstants.END_DOCUMENT;
+			break;
+		default:
+			throw new XMLStreamException("Unknown token " + token,
+					getLocation());
+		}
+		return event;
+	}
+
+	@Override
+	public int nextTag() throws XMLStreamException {
+		int next = next();
+		while (next == XMLStreamConstants.CHARACTERS && isWhiteSpace()) {
+			next = next();
+		}
+		if (next != XMLStreamConstants.START_ELEMENT
+				&& next != XMLStreamConstants.END_ELEMENT) {
+			throw new XMLStreamException("Expected a tag", getLocation());
+		}
+		return next;
+	}
+
+	@Override
+	public String getElementText() throws XMLStreamException {
+		require(XMLStreamConstants.START_ELEMENT, null, null);
+		StringBuilder content = new StringBuilder();
+		while (next() != XMLStreamConstants.END_ELEMENT) {
+			if (event != XMLStreamConstants.CHARACTERS) {
+				throw new XMLStreamException("Element text contains "
+						+ "an element", getLocation());
+			}
+			content.append(text);
+		}
+		return content.toString();
+	}
+
+	@Override
+	public void require(int type, String namespaceURI, String localName)
+			throws XMLStreamException {
+		if (type != event
+				|| (localName != null && !localName.equals(this.localName))) {
+			throw new XMLStreamException("Expected event " + type + " "
+					+ localName + ", but was " + event + " " + this.localName,
+					getLocation());
+		}
+	}
+
+	@Override
+	public boolean hasNext() throws XMLStreamException {
+		return event != XMLStreamConstants.END_DOCUMENT;
+	}
+
+	/**
+	 * Nothing to release, the stream is not closed.
+	 * 
+	 * @see javax.xml.stream.XMLStreamReader#close()
+	 */
+	@Override
+	public void close() throws XMLStreamException {
+		// the stream belongs to the caller
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		return null;
+	}
+
+	@Override
+	public String getNamespaceURI(String prefix) {
+		return null;
+	}
+
+	@Override
+	public boolean isStartElement() {
+		return event == XMLStreamConstants.START_ELEMENT;
+	}
+
+	@Override
+	public boolean isEndElement() {
+		return event == XMLStreamConstants.END_ELEMENT;
+	}
+
+	@Override
+	public boolean isCharacters() {
+		return event == XMLStreamConstants.CHARACTERS;
+	}
+
+	@Override
+	public boolean isWhiteSpace() {
+		if (!isCharacters()) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String getAttributeValue(String namespaceURI, String localName) {
+		checkStartElement();
+		for (int i = 0; i < attributes.size(); i += 2) {
+			if (attributes.get(i).equals(localName)) {
+				return attributes.get(i + 1);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int getAttributeCount() {
+		checkStartElement();
+		return attributes.size() / 2;
+	}
+
+	@Override
+	public QName getAttributeName(int index) {
+		return new QName(getAttributeLocalName(index));
+	}
+
+	@Override
+	public String getAttributeNamespace(int index) {
+		return null;
+	}
+
+	@Override
+	public String getAttributeLocalName(int index) {
+		checkStartElement();
+		return attributes.get(2 * index);
+	}
+
+	@Override
+	public String getAttributePrefix(int index) {
+		return XMLConstants.DEFAULT_NS_PREFIX;
+	}
+
+	@Override
+	public String getAttributeType(int index) {
+		return "CDATA";
+	}
+
+	@Override
+	public String getAttributeValue(int index) {
+		checkStartElement();
+		return attributes.get(2 * index + 1);
+	}
+
+	@Override
+	public boolean isAttributeSpecified(int index) {
+		return true;
+	}
+
+	@Override
+	public int getNamespaceCount() {
+		return 0;
+	}
+
+	@Override
+	public String getNamespacePrefix(int index) {
+		throw new IndexOutOfBoundsException("No namespaces");
+	}
+
+	@Override
+	public String getNamespaceURI(int index) {
+		throw new IndexOutOfBoundsException("No namespaces");
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return NO_NAMESPACES;
+	}
+
+	@Override
+	public int getEventType() {
+		return event;
+	}
+
+	@Override
+	public String getText() {
+		if (!isCharacters()) {
+			throw new IllegalStateException("Not at a text");
+		}
+		return text;
+	}
+
+	@Override
+	public char[] getTextCharacters() {
+		return getText().toCharArray();
+	}
+
+	@Override
+	public int getTextCharacters(int sourceStart, char[] target,
+			int targetStart, int length) throws XMLStreamException {
+		String current = getText();
+		int copied = Math.min(length, current.length() - sourceStart);
+		current.getChars(sourceStart, sourceStart + copied, target,
+				targetStart);
+		return copied;
+	}
+
+	@Override
+	public int getTextStart() {
+		return 0;
+	}
+
+	@Override
+	public int getTextLength() {
+		return getText().length();
+	}
+
+	@Override
+	public String getEncoding() {
+		return null;
+	}
+
+	@Override
+	public boolean hasText() {
+		return isCharacters();
+	}
+
+	@Override
+	public Location getLocation() {
+		final long consumed = offset + position;
+		return new Location() {
+
+			@Override
+			public int getLineNumber() {
+				return -1;
+			}
+
+			@Override
+			public int getColumnNumber() {
+				return -1;
+			}
+
+			@Override
+			public int getCharacterOffset() {
+				return consumed > Integer.MAX_VALUE ? -1 : (int) consumed;
+			}
+
+			@Override
+			public String getPublicId() {
+				return null;
+			}
+
+			@Override
+			public String getSystemId() {
+				return null;
+			}
+		};
+	}
+
+	@Override
+	public QName getName() {
+		return new QName(getLocalName());
+	}
+
+	@Override
+	public String getLocalName() {
+		if (localName == null) {
+			throw new IllegalStateException("Not at an element");
+		}
+		return localName;
+	}
+
+	@Override
+	public boolean hasName() {
+		return localName != null;
+	}
+
+	@Override
+	public String getNamespaceURI() {
+		return null;
+	}
+
+	@Override
+	public String getPrefix() {
+		return XMLConstants.DEFAULT_NS_PREFIX;
+	}
+
+	@Override
+	public String getVersion() {
+		return null;
+	}
+
+	@Override
+	public boolean isStandalone() {
+		return false;
+	}
+
+	@Override
+	public boolean standaloneSet() {
+		return false;
+	}
+
+	@Override
+	public String getCharacterEncodingScheme() {
+		return null;
+	}
+
+	@Override
+	public String getPITarget() {
+		return null;
+	}
+
+	@Override
+	public String getPIData() {
+		return null;
+	}
+
+	/**
+	 * Restore a timestamp from its binary form.
+	 * 
+	 * @param epochSecond
+	 *            the seconds since the epoch
+	 * @param nano
+	 *            the nanoseconds
+	 * @param offsetSeconds
+	 *            the zone offset in seconds
+	 * @param zoneId
+	 *            the zone id or null, if it is just the offset
+	 * 
+	 * @return the timestamp
+	 * 
+	 * @throws DateTimeException
+	 *             when the timestamp is invalid
+	 */
+	static ZonedDateTime toTimestamp(long epochSecond, long nano,
+			int offsetSeconds, String zoneId) {
+		Instant instant = Instant.ofEpochSecond(epochSecond, nano);
+		ZoneOffset offset = ZoneOffset.ofTotalSeconds(offsetSeconds);
+		if (zoneId == null) {
+			return ZonedDateTime.ofInstant(instant, offset);
+		}
+		return ZonedDateTime.ofStrict(instant.atOffset(offset)
+				.toLocalDateTime(), offset, ZoneId.of(zoneId));
+	}
+
+	/**
+	 * Make sure, the reader is at a start element.
+	 */
+	private void checkStartElement() {
+		if (!isStartElement()) {
+			throw new IllegalStateException("Not at a start element");
+		}
+	}
+
+	/**
+	 * Read an attribute value and return its text.
+	 * 
+	 * @return the value
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or is corrupt
+	 */
+	private String readValue() throws XMLStreamException {
+		int type = readByte();
+		switch (type) {
+		case BinaryCodec.VALUE_STRING:
+			return readString();
+		case BinaryCodec.VALUE_LONG:
+			return Long.toString(unZigZag(readVarLong()));
+		case BinaryCodec.VALUE_ACTION:
+			int ordinal = readByte();
+			MappingElement.ACTIONS[] actions = MappingElement.ACTIONS.values();
+			if (ordinal >= actions.length) {
+				throw new XMLStreamException("Unknown action " + ordinal,
+						getLocation());
+			}
+			return actions[ordinal].name();
+		case BinaryCodec.VALUE_TIMESTAMP:
+			long epochSecond = unZigZag(readVarLong());
+			long nano = readVarLong();
+			long offsetSeconds = unZigZag(readVarLong());
+			int zone = readByte();
+			String zoneId = zone == BinaryCodec.ZONE_ID ? readName() : null;
+			if (lastTimestampText != null && lastTimestamp[0] == epochSecond
+					&& lastTimestamp[1] == nano
+					&& lastTimestamp[2] == offsetSeconds
+					&& Objects.equals(lastZoneId, zoneId)) {
+				return lastTimestampText;
+			}
+			try {
+				lastTimestampText = DateTimeUtil.dateTime2String(toTimestamp(
+						epochSecond, nano, (int) offsetSeconds, zoneId));
+				lastTimestamp[0] = epochSecond;
+				lastTimestamp[1] = nano;
+				lastTimestamp[2] = offsetSeconds;
+				lastZoneId = zoneId;
+				return lastTimestampText;
+			} catch (DateTimeException e) {
+				throw new XMLStreamException("Invalid timestamp",
+						getLocation(), e);
+			}
+		default:
+			throw new XMLStreamException("Unknown value type " + type,
+					getLocation());
+		}
+	}
+
+	/**
+	 * Read a name: a new one or the number of one read before.
+	 * 
+	 * @return the name
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or is corrupt
+	 */
+	private String readName() throws XMLStreamException {
+		long number = readVarLong();
+		if (number == 0) {
+			String name = readString();
+			names.add(name);
+			return name;
+		}
+		if (number > names.size()) {
+			throw new XMLStreamException("Unknown name " + number,
+					getLocation());
+		}
+		return names.get((int) number - 1);
+	}
+
+	/**
+	 * Read a length-prefixed UTF-8 string.
+	 * 
+	 * @return the string
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or is corrupt
+	 */
+	private String readString() throws XMLStreamException {
+		long length = readVarLong();
+		if (length > Integer.MAX_VALUE) {
+			throw new XMLStreamException("String too long", getLocation());
+		}
+		int size = (int) length;
+		if (size <= limit - position) {
+			String result = new String(buffer, position, size,
+					StandardCharsets.UTF_8);
+			position += size;
+			return result;
+		}
+		byte[] bytes = new byte[size];
+		int copied = 0;
+		while (copied < size) {
+			if (position == limit) {
+				fill();
+			}
+			int chunk = Math.min(size - copied, limit - position);
+			System.arraycopy(buffer, position, bytes, copied, chunk);
+			position += chunk;
+			copied += chunk;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Map unsigned back to signed integers.
+	 * 
+	 * @param value
+	 *            the unsigned value
+	 * 
+	 * @return the signed value
+	 */
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Read an unsigned variable length integer.
+	 * 
+	 * @return the value
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or is corrupt
+	 */
+	private long readVarLong() throws XMLStreamException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new XMLStreamException("Integer too long", getLocation());
+	}
+
+	/**
+	 * Read a byte.
+	 * 
+	 * @return the byte, unsigned
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or ends
+	 */
+	private int readByte() throws XMLStreamException {
+		if (position == limit) {
+			fill();
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * Fill the buffer from the stream.
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read or ends
+	 */
+	private void fill() throws XMLStreamException {
+		offset += limit;
+		position = 0;
+		limit = 0;
+		try {
+			int read;
+			do {
+				read = in.read(buffer);
+			} while (read == 0);
+			if (read < 0) {
+				throw new XMLStreamException("Unexpected end of the binary "
+						+ "model", getLocation());
+			}
+			limit = read;
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to read", getLocation(), e);
+		}
+	}
+
+}
@@ -0,0 +1,594 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.util.DateTimeUtil;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class BinaryStreamWriter writes StAX events in the format of the
+ * BinaryCodec. Namespaces, comments and processing instructions are not part
+ * of the format: namespaces are rejected, the others dropped.
+ * 
+ * @author Jan Petranek
+ */
+final class BinaryStreamWriter implements XMLStreamWriter {
+
+	/** The size of the buffer. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The stream. */
+	private final OutputStream out;
+
+	/** The buffer, written to the stream when full or flushed. */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/** The number of bytes in the buffer. */
+	private int count;
+
+	/** The numbers of the names written, by name. */
+	private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+	/** The names of the open elements. */
+	private final Deque<String> open = new ArrayDeque<String>();
+
+	/** The name of the start tag not written yet, or null. */
+	private String startName;
+
+	/** Whether the pending start tag is an empty element. */
+	private boolean startEmpty;
+
+	/** The attribute names and values of the pending start tag. */
+	private final List<String> attributes = new ArrayList<String>();
+
+	/** Whether the signature has been written. */
+	private boolean started;
+
+	/** The last timestamp checked, elements mostly repeat it. */
+	private String lastTimestampText;
+
+	/** The last timestamp checked, parsed or null, if kept as text. */
+	private ZonedDateTime lastTimestamp;
+
+	/**
+	 * Instantiates a new writer.
+	 * 
+	 * @param out
+	 *            the stream
+	 */
+	BinaryStreamWriter(OutputStream out) {
+		super();
+		this.out = out;
+	}
+
+	@Override
+	public void writeStartDocument() throws XMLStreamException {
+		writeSignature();
+	}
+
+	@Override
+	public void writeStartDocument(String version) throws XMLStreamException {
+		writeSignature();
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version)
+			throws XMLStreamException {
+		writeSignature();
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		writeStart();
+		startName = localName;
+		startEmpty = false;
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		writeStartElement(localName);
+		startEmpty = true;
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value)
+			throws XMLStreamException {
+		if (startName == null) {
+			throw new XMLStreamException("Attribute " + localName
+					+ " outside of a start tag");
+		}
+		attributes.add(localName);
+		attributes.add(value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI,
+			String localName, String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		writeStart();
+		if (text.isEmpty()) {
+			return;
+		}
+		writeByte(BinaryCodec.TOKEN_TEXT);
+		writeString(text);
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len)
+			throws XMLStreamException {
+		writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		writeCharacters(data);
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		writeStart();
+		if (open.isEmpty()) {
+			throw new XMLStreamException("No element to end");
+		}
+		open.pop();
+		writeByte(BinaryCodec.TOKEN_END_ELEMENT);
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		writeStart();
+		while (!open.isEmpty()) {
+			writeEndElement();
+		}
+		writeByte(BinaryCodec.TOKEN_END_DOCUMENT);
+	}
+
+	@Override
+	public void writeComment(String data) throws XMLStreamException {
+		writeStart();
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target)
+			throws XMLStreamException {
+		writeStart();
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data)
+			throws XMLStreamException {
+		writeStart();
+	}
+
+	@Override
+	public void writeDTD(String dtd) throws XMLStreamException {
+		throw new XMLStreamException("DTDs are not supported");
+	}
+
+	@Override
+	public void writeEntityRef(String name) throws XMLStreamException {
+		throw new XMLStreamException("Entity references are not supported");
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public String getPrefix(String uri) throws XMLStreamException {
+		return null;
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context)
+			throws XMLStreamException {
+		throw new XMLStreamException("Namespaces are not supported");
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return BinaryStreamReader.NO_NAMESPACES;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		throw new IllegalArgumentException("Property " + name
+				+ " is not supported");
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		writeStart();
+		try {
+			out.write(buffer, 0, count);
+			count = 0;
+			out.flush();
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+	/**
+	 * Flushes the buffer, the stream is not closed.
+	 * 
+	 * @see javax.xml.stream.XMLStreamWriter#close()
+	 */
+	@Override
+	public void close() throws XMLStreamException {
+		flush();
+	}
+
+	/**
+	 * Reject namespaces, they are not part of the format.
+	 * 
+	 * @param namespaceURI
+	 *            the namespace, may be null or empty
+	 * 
+	 * @throws XMLStreamException
+	 *             when a namespace is given
+	 */
+	private static void checkNoNamespace(String namespaceURI)
+			throws XMLStreamException {
+		if (namespaceURI != null && !namespaceURI.isEmpty()) {
+			throw new XMLStreamException("Namespaces are not supported");
+		}
+	}
+
+	/**
+	 * Write the signature, once.
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeSignature() throws XMLStreamException {
+		if (!started) {
+			started = true;
+			for (byte b : BinaryCodec.SIGNATURE) {
+				writeByte(b);
+			}
+			writeByte(BinaryCodec.FORMAT_VERSION);
+		}
+	}
+
+	/**
+	 * Write the pending start tag, if any.
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeStart() throws XMLStreamException {
+		writeSignature();
+		if (startName == null) {
+			return;
+		}
+		String name = startName;
+		startName = null;
+		writeByte(BinaryCodec.TOKEN_START_ELEMENT);
+		writeName(name);
+		writeVarLong(attributes.size() / 2);
+		for (int i = 0; i < attributes.size(); i += 2) {
+			writeName(attributes.get(i));
+			writeValue(attributes.get(i + 1));
+		}
+		attributes.clear();
+		open.push(name);
+		if (startEmpty) {
+			writeEndElement();
+		}
+	}
+
+	/**
+	 * Write an attribute value, typed if its text survives.
+	 * 
+	 * @param value
+	 *            the value
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeValue(String value) throws XMLStreamException {
+		Long number = asLong(value);
+		if (number != null) {
+			writeByte(BinaryCodec.VALUE_LONG);
+			writeVarLong(zigZag(number));
+			return;
+		}
+		MappingElement.ACTIONS action = asAction(value);
+		if (action != null) {
+			writeByte(BinaryCodec.VALUE_ACTION);
+			writeByte(action.ordinal());
+			return;
+		}
+		if (!value.equals(lastTimestampText)) {
+			lastTimestamp = asTimestamp(value);
+			lastTimestampText = value;
+		}
+		ZonedDateTime timestamp = lastTimestamp;
+		if (timestamp != null) {
+			writeByte(BinaryCodec.VALUE_TIMESTAMP);
+			writeVarLong(zigZag(timestamp.toEpochSecond()));
+			writeVarLong(timestamp.getNano());
+			writeVarLong(zigZag(timestamp.getOffset().getTotalSeconds()));
+			if (timestamp.getZone() instanceof ZoneOffset) {
+				writeByte(BinaryCodec.ZONE_OFFSET);
+			} else {
+				writeByte(BinaryCodec.ZONE_ID);
+				writeName(timestamp.getZone().getId());
+			}
+			return;
+		}
+		writeByte(BinaryCodec.VALUE_STRING);
+		writeString(value);
+	}
+
+	/**
+	 * Parse a value as integer, if it is written canonically.
+	 * 
+	 * @param value
+	 *            the value
+	 * 
+	 * @return the integer or null
+	 */
+	private static Long asLong(String value) {
+		int length = value.length();
+		if (length == 0 || length > 20) {
+			return null;
+		}
+		char first = value.charAt(0);
+		if (first != '-' && (first < '0' || first > '9')) {
+			return null;
+		}
+		try {
+			long number = Long.parseLong(value);
+			return Long.toString(number).equals(value) ? number : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a value as action.
+	 * 
+	 * @param value
+	 *            the value
+	 * 
+	 * @return the action or null
+	 */
+	private static MappingElement.ACTIONS asAction(String value) {
+		for (MappingElement.ACTIONS action : MappingElement.ACTIONS.values()) {
+			if (action.name().equals(value)) {
+				return action;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parse a value as timestamp, if it is written the way the
+	 * MappingElements write it and the binary form restores it.
+	 * 
+	 * @param value
+	 *            the value
+	 * 
+	 * @return the timestamp or null
+	 */
+	private static ZonedDateTime asTimestamp(String value) {
+		if (value.length() < 20 || value.charAt(4) != '-'
+				|| value.charAt(10) != 'T') {
+			return null;
+		}
+		try {
+			ZonedDateTime timestamp = ZonedDateTime
+					.from(DateTimeFormatter.ISO_DATE_TIME.parse(value));
+			ZonedDateTime restored = BinaryStreamReader.toTimestamp(timestamp
+					.toEpochSecond(), timestamp.getNano(), timestamp
+					.getOffset().getTotalSeconds(),
+					timestamp.getZone() instanceof ZoneOffset ? null
+							: timestamp.getZone().getId());
+			return DateTimeUtil.dateTime2String(restored).equals(value) ? timestamp
+					: null;
+		} catch (DateTimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write a name: its number, if written before; the name itself
+	 * otherwise.
+	 * 
+	 * @param name
+	 *            the name
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeName(String name) throws XMLStreamException {
+		Integer number = names.get(name);
+		if (number != null) {
+			writeVarLong(number + 1);
+		} else {
+			names.put(name, names.size());
+			writeVarLong(0);
+			writeString(name);
+		}
+	}
+
+	/**
+	 * Write a length-prefixed UTF-8 string.
+	 * 
+	 * @param text
+	 *            the text
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeString(String text) throws XMLStreamException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length);
+		if (bytes.length > buffer.length - count) {
+			flushBuffer();
+		}
+		if (bytes.length > buffer.length) {
+			try {
+				out.write(bytes);
+			} catch (IOException e) {
+				throw new XMLStreamException("Failed to write", e);
+			}
+		} else {
+			System.arraycopy(bytes, 0, buffer, count, bytes.length);
+			count += bytes.length;
+		}
+	}
+
+	/**
+	 * Map signed to unsigned integers, so small negative numbers stay short.
+	 * 
+	 * @param value
+	 *            the signed value
+	 * 
+	 * @return the unsigned value
+	 */
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Write an unsigned variable length integer, 7 bits per byte.
+	 * 
+	 * @param value
+	 *            the value
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeVarLong(long value) throws XMLStreamException {
+		long rest = value;
+		while ((rest & ~0x7FL) != 0) {
+			writeByte((int) ((rest & 0x7F) | 0x80));
+			rest >>>= 7;
+		}
+		writeByte((int) rest);
+	}
+
+	/**
+	 * Write a byte.
+	 * 
+	 * @param b
+	 *            the byte
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void writeByte(int b) throws XMLStreamException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	/**
+	 * Write the buffer to the stream.
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void flushBuffer() throws XMLStreamException {
+		try {
+			out.write(buffer, 0, count);
+			count = 0;
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+}
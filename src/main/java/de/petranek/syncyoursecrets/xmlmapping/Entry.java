@@ -26,8 +26,13 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -35,6 +40,10 @@ import java.util.Set;
  * The Class Entry is composed of a set of StringElements. This is suitable for
  * an entry with several data fields. It should be subclassed in a model class.
  * 
+ * Properties added as indexed carry a blind index once field level encryption
+ * is enabled, so a ListElement finds entries by their value with
+ * findByIndex(), e.g. an entry by its username.
+ * 
  * @author Jan Petranek
  */
 public class Entry extends NamedElement {
@@ -106,6 +115,26 @@ public class Entry extends NamedElement {
 		StringElement stringElement = new StringElement(property, this);
 
 		stringElements.put(property, stringElement);
+		invalidate();
+	}
+
+	/**
+	 * Adds a string property, like addStringProperty(property). If indexed,
+	 * the property carries a blind index, so entries can be found by its
+	 * value without opening every field.
+	 * 
+	 * @param property
+	 *            the property, also the XML-name of the StringElement
+	 * @param indexed
+	 *            true, to write the blind index of the property
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	protected void addStringProperty(String property, boolean indexed)
+			throws SysInvalidArgumentException {
+		addStringProperty(property);
+		stringElements.get(property).setIndexed(indexed);
 	}
 
 	/**
@@ -147,6 +176,8 @@ public class Entry extends NamedElement {
 
 					Element elem = (Element) current;
 					StringElement property = new StringElement(elem, this);
+					property.setIndexed(stringElements.get(
+							current.getNodeName()).isIndexed());
 					stringElements.put(current.getNodeName(), property);
 				}
 			}
@@ -155,6 +186,52 @@ public class Entry extends NamedElement {
 		logger.debug("exiting constructor from XML");
 	}
 
+	/**
+	 * Reads an Entry from an XML stream, like the constructor from a node. The
+	 * reader must be positioned at the start of the element; afterwards it is
+	 * at its end.
+	 * 
+	 * This constructor first calls initChildren(), so place any code for your
+	 * properties there.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * @param parent
+	 *            the parent in the object structure, or null if this is the
+	 *            root element
+	 * 
+	 * @throws SysParseException
+	 *             when the XML could not be parsed
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	public Entry(XMLStreamReader reader, MappingElement parent)
+			throws SysParseException, SysInvalidArgumentException {
+		super(reader, parent);
+		logger.debug("entering constructor from XML stream");
+
+		if (!this.isDeleted()) {
+			initChildren();
+		}
+
+		while (nextChild(reader)) {
+			if (parseNameChild(reader)) {
+				continue;
+			}
+			String childName = reader.getLocalName();
+			if (!this.isDeleted() && stringElements.containsKey(childName)) {
+				logger.debug("Adding child element for node " + childName);
+
+				StringElement property = new StringElement(reader, this);
+				property.setIndexed(stringElements.get(childName).isIndexed());
+				stringElements.put(childName, property);
+			} else {
+				skipElement(reader);
+			}
+		}
+		logger.debug("exiting constructor from XML stream");
+	}
+
 	/**
 	 * Gets the child by name.
 	 * 
@@ -176,6 +253,36 @@ public class Entry extends NamedElement {
 
 	}
 
+	/**
+	 * Gets the blind indexes of the indexed properties.
+	 * 
+	 * @return the blind indexes, empty if deleted or the fields are locked
+	 */
+	List<String> getBlindIndexes() {
+		List<String> indexes = new ArrayList<String>();
+		for (StringElement child : stringElements.values()) {
+			String index = child.getBlindIndex();
+			if (index != null) {
+				indexes.add(index);
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Gets the blind index of a property.
+	 * 
+	 * @param property
+	 *            the property
+	 * 
+	 * @return the blind index or null, if the property is unknown or not
+	 *         indexed, deleted or the fields are locked
+	 */
+	String getBlindIndex(String property) {
+		StringElement child = stringElements.get(property);
+		return child == null ? null : child.getBlindIndex();
+	}
+
 	/**
 	 * Serializes this Entry to XML. The resulting XML-Element must still be
 	 * added to the appropriate place in the DOM-Tree.
@@ -215,6 +322,31 @@ public class Entry extends NamedElement {
 		return elem;
 	}
 
+	/**
+	 * Write the name and the string properties to an XML stream.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             when the XML of a child cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#writeChildren(javax.xml.stream.XMLStreamWriter)
+	 */
+	@Override
+	protected void writeChildren(XMLStreamWriter writer)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		super.writeChildren(writer);
+		for (StringElement child : stringElements.values()) {
+			child.writeTo(writer);
+		}
+	}
+
 	/**
 	 * Merge this Entry with another Entry. The other Entry must be of the same
 	 * type. Both MappingElements should have the same Id, so we can expect to
@@ -266,6 +398,7 @@ public class Entry extends NamedElement {
 					mergedChild.setParent(merged);
 					merged.stringElements.put(key, mergedChild);
 				}
+				merged.invalidate();
 
 			} else if (logger.isTraceEnabled()) {
 				logger.trace("Merged object already deleted, no further merge");
@@ -365,4 +498,37 @@ public class Entry extends NamedElement {
 		this.stringElements.clear();
 	}
 
+	/**
+	 * Gets the children: the name and the string properties.
+	 * 
+	 * @return the children
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.NamedElement#getChildren()
+	 */
+	@Override
+	protected List<MappingElement> getChildren() {
+		List<MappingElement> children = super.getChildren();
+		children.addAll(stringElements.values());
+		return children;
+	}
+
+	/**
+	 * Invalidate this, if the name or a string property has changed.
+	 * 
+	 * @param child
+	 *            the child
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.NamedElement#childChanged(de.petranek.syncyoursecrets.xmlmapping.MappingElement)
+	 */
+	@Override
+	protected void childChanged(MappingElement child) {
+		// called from the super constructor, before the properties exist
+		if (stringElements != null
+				&& stringElements.get(child.getElementName()) == child) {
+			invalidate();
+		} else {
+			super.childChanged(child);
+		}
+	}
+
 }
@@ -0,0 +1,402 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * The Class Fragment records the StAX events an element writes, so an
+ * unchanged element can be written again without computing its attributes,
+ * sealing its fields or walking its children.
+ * 
+ * The events are kept, not the bytes of a particular codec: a fragment can be
+ * replayed to any XMLStreamWriter and turned into DOM nodes as well. Like the
+ * BinaryCodec, a fragment rejects namespaces and drops comments and
+ * processing instructions; the MappingElements write neither.
+ * 
+ * @author Jan Petranek
+ */
+final class Fragment implements XMLStreamWriter {
+
+	/** The event of a start tag, its value is the name. */
+	private static final byte START = 1;
+
+	/** The event of an empty element, its value is the name. */
+	private static final byte EMPTY = 2;
+
+	/** The event of an attribute, its values are name and value. */
+	private static final byte ATTRIBUTE = 3;
+
+	/** The event of text, its value is the text. */
+	private static final byte TEXT = 4;
+
+	/** The event of an end tag, it has no value. */
+	private static final byte END = 5;
+
+	/** The initial capacity of the event and value arrays. */
+	private static final int INITIAL_SIZE = 16;
+
+	/** The events. */
+	private byte[] events = new byte[INITIAL_SIZE];
+
+	/** The number of events. */
+	private int eventCount;
+
+	/** The values of the events, in order. */
+	private String[] values = new String[INITIAL_SIZE];
+
+	/** The number of values. */
+	private int valueCount;
+
+	/**
+	 * Instantiates a new, empty fragment.
+	 */
+	Fragment() {
+		super();
+	}
+
+	/**
+	 * Release the spare capacity, once recording is done. Fragments are kept
+	 * for every unchanged element, they should not waste memory.
+	 */
+	void trim() {
+		events = Arrays.copyOf(events, eventCount);
+		values = Arrays.copyOf(values, valueCount);
+	}
+
+	/**
+	 * Write the recorded events to another writer.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the writer fails
+	 */
+	void replay(XMLStreamWriter writer) throws XMLStreamException {
+		int value = 0;
+		for (int i = 0; i < eventCount; i++) {
+			switch (events[i]) {
+			case START:
+				writer.writeStartElement(values[value++]);
+				break;
+			case EMPTY:
+				writer.writeEmptyElement(values[value++]);
+				break;
+			case ATTRIBUTE:
+				writer.writeAttribute(values[value], values[value + 1]);
+				value += 2;
+				break;
+			case TEXT:
+				writer.writeCharacters(values[value++]);
+				break;
+			default:
+				writer.writeEndElement();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Create the DOM nodes of the recorded events. The resulting XML-Element
+	 * must still be added to the appropriate place in the DOM-Tree.
+	 * 
+	 * @param doc
+	 *            the XML document
+	 * 
+	 * @return the element recorded first, with its children
+	 */
+	Element toXml(Document doc) {
+		Deque<Element> open = new ArrayDeque<Element>();
+		Element first = null;
+		Element current = null;
+		int value = 0;
+		for (int i = 0; i < eventCount; i++) {
+			switch (events[i]) {
+			case START:
+			case EMPTY:
+				current = doc.createElement(values[value++]);
+				if (first == null) {
+					first = current;
+				} else {
+					open.peek().appendChild(current);
+				}
+				if (events[i] == START) {
+					open.push(current);
+				}
+				break;
+			case ATTRIBUTE:
+				current.setAttribute(values[value], values[value + 1]);
+				value += 2;
+				break;
+			case TEXT:
+				open.peek().appendChild(doc.createTextNode(values[value++]));
+				break;
+			default:
+				open.pop();
+				current = open.peek();
+				break;
+			}
+		}
+		return first;
+	}
+
+	@Override
+	public void writeStartDocument() throws XMLStreamException {
+		// a fragment is part of a document
+	}
+
+	@Override
+	public void writeStartDocument(String version) throws XMLStreamException {
+		// a fragment is part of a document
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version)
+			throws XMLStreamException {
+		// a fragment is part of a document
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		addEvent(START);
+		addValue(localName);
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		addEvent(EMPTY);
+		addValue(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value)
+			throws XMLStreamException {
+		if (eventCount == 0) {
+			throw new XMLStreamException("Attribute " + localName
+					+ " outside of a start tag");
+		}
+		addEvent(ATTRIBUTE);
+		addValue(localName);
+		addValue(value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI,
+			String localName, String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		addEvent(TEXT);
+		addValue(text);
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len)
+			throws XMLStreamException {
+		writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		writeCharacters(data);
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		addEvent(END);
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		// a fragment is part of a document
+	}
+
+	@Override
+	public void writeComment(String data) throws XMLStreamException {
+		// not recorded
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target)
+			throws XMLStreamException {
+		// not recorded
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data)
+			throws XMLStreamException {
+		// not recorded
+	}
+
+	@Override
+	public void writeDTD(String dtd) throws XMLStreamException {
+		throw new XMLStreamException("DTDs are not supported");
+	}
+
+	@Override
+	public void writeEntityRef(String name) throws XMLStreamException {
+		throw new XMLStreamException("Entity references are not supported");
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public String getPrefix(String uri) throws XMLStreamException {
+		return null;
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context)
+			throws XMLStreamException {
+		throw new XMLStreamException("Namespaces are not supported");
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return BinaryStreamReader.NO_NAMESPACES;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		throw new IllegalArgumentException("Property " + name
+				+ " is not supported");
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		// nothing buffered
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+		// nothing to close
+	}
+
+	/**
+	 * Reject namespaces, fragments do not record them.
+	 * 
+	 * @param namespaceURI
+	 *            the namespace, may be null or empty
+	 * 
+	 * @throws XMLStreamException
+	 *             when a namespace is given
+	 */
+	private static void checkNoNamespace(String namespaceURI)
+			throws XMLStreamException {
+		if (namespaceURI != null && !namespaceURI.isEmpty()) {
+			throw new XMLStreamException("Namespaces are not supported");
+		}
+	}
+
+	/**
+	 * Record an event, its values follow.
+	 * 
+	 * @param event
+	 *            the event
+	 */
+	private void addEvent(byte event) {
+		if (eventCount == events.length) {
+			events = Arrays.copyOf(events, Math.max(INITIAL_SIZE,
+					eventCount * 2));
+		}
+		events[eventCount++] = event;
+	}
+
+	/**
+	 * Record a value of the last event.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	private void addValue(String value) {
+		if (valueCount == values.length) {
+			values = Arrays.copyOf(values, Math.max(INITIAL_SIZE,
+					valueCount * 2));
+		}
+		values[valueCount++] = value;
+	}
+
+}
@@ -0,0 +1,429 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.io.FileHelper;
+import de.petranek.syncyoursecrets.io.FileIOException;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysXmlBaseException;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoader.RootFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * The Class Journal saves an encrypted vault by appending its changes to a
+ * journal file next to it, instead of rewriting the whole vault each time.
+ * 
+ * Each save appends one record: the root list with only those children,
+ * which have been created, updated or deleted since the last save, as the
+ * dirty marks of the model tell. Nothing is written for a clean root. Deleted
+ * children are kept as such by the model, so a record carries ids, actions,
+ * timestamps and content of all changes. A record is encrypted on its own
+ * with the keys of the session and synced to disk before save() returns.
+ * 
+ * Opening the vault replays the records by merging them into the root, in
+ * the order written. As merging keeps the newest version of each child,
+ * replaying a record twice does no harm. A record cut off by a crash is
+ * discarded, so the vault is opened as of the last complete save.
+ * 
+ * Once the journal exceeds the checkpoint size, the vault is rewritten in
+ * full and the journal deleted. The journal is bound to the keys of the
+ * vault: checkpoint before changing the password.
+ * 
+ * @param <T>
+ *            the type of the root list
+ * 
+ * @author Jan Petranek
+ */
+public final class Journal<T extends ListElement> {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(Journal.class);
+
+	/** The suffix of the journal file, appended to the vault's name. */
+	public static final String SUFFIX = ".journal";
+
+	/** The default journal size triggering a checkpoint, in bytes. */
+	public static final long DEFAULT_CHECKPOINT_SIZE = 1024 * 1024;
+
+	/** The size of the length in front of each record. */
+	private static final int LENGTH_SIZE = 4;
+
+	/** The session holding the keys of the vault. */
+	private final VaultSession session;
+
+	/** The vault file. */
+	private final File file;
+
+	/** The journal file. */
+	private final File journalFile;
+
+	/** The factory of the root list. */
+	private final RootFactory<T> factory;
+
+	/** The root list. */
+	private T root;
+
+	/** The codec of vault and records. */
+	private ModelCodec codec = ModelCodecs.XML;
+
+	/** The journal size triggering a checkpoint, in bytes. */
+	private long checkpointSize = DEFAULT_CHECKPOINT_SIZE;
+
+	/** The size of the journal's complete records, in bytes. */
+	private long journalLength;
+
+	/** Whether field encryption was enabled, as of the last save. */
+	private boolean savedFieldEncrypted;
+
+	/**
+	 * Instantiates a new journal.
+	 * 
+	 * @param session
+	 *            the session
+	 * @param file
+	 *            the vault file
+	 * @param factory
+	 *            the factory of the root list
+	 * @param root
+	 *            the root list
+	 */
+	private Journal(VaultSession session, File file, RootFactory<T> factory,
+			T root) {
+		super();
+		this.session = session;
+		this.file = file;
+		this.journalFile = new File(file.getPath() + SUFFIX);
+		this.factory = factory;
+		this.root = root;
+	}
+
+	/**
+	 * Open an encrypted vault and replay its journal.
+	 * 
+	 * @param <T>
+	 *            the type of the root list
+	 * @param session
+	 *            the session, unlocked from the vault
+	 * @param file
+	 *            the vault file
+	 * @param factory
+	 *            the factory of the root list
+	 * 
+	 * @return the journal
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends ListElement> Journal<T> open(
+			VaultSession session, File file, RootFactory<T> factory)
+			throws SysXmlBaseException {
+		logger.debug("entering open");
+		T root = StreamLoader.loadEncryptedFile(session, file, factory);
+		Journal<T> journal = new Journal<T>(session, file, factory, root);
+		journal.replay();
+		journal.markSaved();
+		logger.debug("exiting open");
+		return journal;
+	}
+
+	/**
+	 * Create an encrypted vault, replacing an existing one and its journal.
+	 * 
+	 * @param <T>
+	 *            the type of the root list
+	 * @param session
+	 *            the session
+	 * @param file
+	 *            the vault file
+	 * @param root
+	 *            the root list
+	 * @param factory
+	 *            the factory of the root list, to replay the journal
+	 * 
+	 * @return the journal
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends ListElement> Journal<T> create(
+			VaultSession session, File file, T root, RootFactory<T> factory)
+			throws SysXmlBaseException {
+		logger.debug("entering create");
+		Journal<T> journal = new Journal<T>(session, file, factory, root);
+		journal.checkpoint();
+		logger.debug("exiting create");
+		return journal;
+	}
+
+	/**
+	 * Save the changes since the last save by appending them to the journal.
+	 * Nothing is written, if nothing has changed. Once the journal exceeds
+	 * the checkpoint size, the vault is rewritten instead.
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public void save() throws SysXmlBaseException {
+		logger.debug("entering save");
+		if (!root.isDirty()) {
+			logger.debug("exiting save, nothing changed");
+			return;
+		}
+		if (root.isFieldEncrypted() != savedFieldEncrypted) {
+			// every field has to be sealed
+			logger.debug("Changes cannot be journaled, checkpointing");
+			checkpoint();
+		} else {
+			append(root.getDirtyElements());
+			root.markClean();
+			if (journalLength > checkpointSize) {
+				checkpoint();
+			}
+		}
+		logger.debug("exiting save");
+	}
+
+	/**
+	 * Rewrite the vault in full and delete the journal.
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public void checkpoint() throws SysXmlBaseException {
+		logger.debug("entering checkpoint");
+		StreamSaver.saveEncryptedFile(session, root, file, codec);
+		// the vault holds all records now, replaying them would be harmless
+		if (journalFile.exists() && !journalFile.delete()) {
+			String msg = "Cannot delete journal "
+					+ journalFile.getAbsolutePath();
+			logger.warn(msg);
+			throw new FileIOException(msg);
+		}
+		journalLength = 0;
+		markSaved();
+		logger.debug("exiting checkpoint");
+	}
+
+	/**
+	 * Gets the root list.
+	 * 
+	 * @return the root list
+	 */
+	public T getRoot() {
+		return root;
+	}
+
+	/**
+	 * Gets the journal file.
+	 * 
+	 * @return the journal file
+	 */
+	public File getJournalFile() {
+		return journalFile;
+	}
+
+	/**
+	 * Gets the codec of vault and records.
+	 * 
+	 * @return the codec
+	 */
+	public ModelCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the codec of vault and records. Both are read in any codec.
+	 * 
+	 * @param codec
+	 *            the codec
+	 */
+	public void setCodec(ModelCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Gets the journal size triggering a checkpoint.
+	 * 
+	 * @return the size, in bytes
+	 */
+	public long getCheckpointSize() {
+		return checkpointSize;
+	}
+
+	/**
+	 * Sets the journal size triggering a checkpoint.
+	 * 
+	 * @param checkpointSize
+	 *            the size, in bytes; 0 checkpoints on every save
+	 */
+	public void setCheckpointSize(long checkpointSize) {
+		if (checkpointSize < 0) {
+			throw new IllegalArgumentException(
+					"Checkpoint size must not be negative");
+		}
+		this.checkpointSize = checkpointSize;
+	}
+
+	/**
+	 * Remember the state of the root as saved.
+	 */
+	private void markSaved() {
+		root.markClean();
+		savedFieldEncrypted = root.isFieldEncrypted();
+	}
+
+	/**
+	 * Append a record of the changed children to the journal and sync it to
+	 * disk. A record written in part is cut off again.
+	 * 
+	 * @param changed
+	 *            the changed children
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	private void append(List<MappingElement> changed)
+			throws SysXmlBaseException {
+		logger.debug("Journaling " + changed.size() + " changed children");
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		OutputStream plain = EnryptionUtil.encryptStream(record, session);
+		try {
+			StreamSaver.saveChildren(root, changed, plain, codec);
+			plain.close();
+		} catch (IOException e) {
+			String msg = "Failed to encrypt journal record";
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
+
+		int length = record.size();
+		try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+			byte[] prefix = { (byte) (length >>> 24), (byte) (length >>> 16),
+					(byte) (length >>> 8), (byte) length };
+			out.write(prefix);
+			record.writeTo(out);
+			out.getFD().sync();
+		} catch (IOException e) {
+			String msg = "Failed to append to journal "
+					+ journalFile.getAbsolutePath();
+			logger.warn(msg, e);
+			truncate(journalLength);
+			throw new FileIOException(msg, e);
+		}
+		journalLength += LENGTH_SIZE + length;
+	}
+
+	/**
+	 * Merge the records of the journal into the root. A record cut off at the
+	 * end of the journal is discarded.
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when a record cannot be read, decrypted or parsed
+	 */
+	private void replay() throws SysXmlBaseException {
+		if (!journalFile.exists()) {
+			return;
+		}
+		logger.debug("entering replay");
+		long fileLength = journalFile.length();
+		long complete = 0;
+		int records = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				FileHelper.openInputStream(journalFile)))) {
+			while (complete + LENGTH_SIZE <= fileLength) {
+				int length = in.readInt();
+				if (length < 0
+						|| length > fileLength - complete - LENGTH_SIZE) {
+					break;
+				}
+				byte[] record = new byte[length];
+				in.readFully(record);
+				merge(StreamLoader.load(EnryptionUtil.decryptStream(
+						new ByteArrayInputStream(record), session), factory));
+				complete += LENGTH_SIZE + length;
+				records++;
+			}
+		} catch (EOFException e) {
+			logger.debug("Journal ends within a record", e);
+		} catch (IOException e) {
+			String msg = "Failed to read journal "
+					+ journalFile.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
+		if (complete < fileLength) {
+			logger.warn("Discarding incomplete record at the end of journal "
+					+ journalFile.getAbsolutePath());
+			truncate(complete);
+		}
+		journalLength = complete;
+		logger.debug("exiting replay, " + records + " records");
+	}
+
+	/**
+	 * Merge a record into the root. The newest version of the root wins, so
+	 * the root may be replaced.
+	 * 
+	 * @param record
+	 *            the root list of the record
+	 * 
+	 * @throws SysXmlBaseException
+	 *             when the record cannot be merged
+	 */
+	@SuppressWarnings("unchecked")
+	private void merge(T record) throws SysXmlBaseException {
+		// the result is either of both, hence a T
+		root = (T) root.merge(record);
+	}
+
+	/**
+	 * Cut the journal off after its complete records.
+	 * 
+	 * @param length
+	 *            the length of the complete records
+	 * 
+	 * @throws FileIOException
+	 *             when the journal cannot be truncated
+	 */
+	private void truncate(long length) throws FileIOException {
+		try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+			raf.setLength(length);
+		} catch (IOException e) {
+			String msg = "Failed to truncate journal "
+					+ journalFile.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
+	}
+
+}
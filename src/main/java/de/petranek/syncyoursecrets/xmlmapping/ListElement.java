@@ -18,7 +18,9 @@
  */
 package de.petranek.syncyoursecrets.xmlmapping;
 
+import de.petranek.syncyoursecrets.crypto.FieldCipher;
 import de.petranek.syncyoursecrets.util.SetIntersection;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
 import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
 import de.petranek.syncyoursecrets.util.SysParseException;
 import de.petranek.syncyoursecrets.util.SysRuntimeException;
@@ -28,16 +30,48 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The Class ListElement represents a list of MappingElements. Each
  * MappingElement is uniquely identified by its id. When merging two
  * ListElements, the children of both lists are recursively merged.
  * 
+ * Entries with indexed properties are found by value with findByIndex(). The
+ * list keeps a map from blind index to entries, built on the first lookup
+ * from the indexes read along with the sealed fields, and dropped whenever
+ * the list or one of its children is modified.
+ * 
+ * A subclass returning true from loadsLazily() does not load its children,
+ * when it is parsed. It records their ids and plain names only, so a list of
+ * names is at hand right away with getNames(). Each child is loaded on first
+ * access through get(), iterator() or toArray(); merging, searching and
+ * serializing load all of them.
+ * 
+ * The list keeps the ids of its children changed since it was marked clean,
+ * so the changes are found without visiting every child. Children other than
+ * lists are written from their recording, as long as they are unchanged.
+ * Nested lists are written afresh and reuse the recordings of their own
+ * children, so each element is recorded once.
+ * 
+ * Large lists record their children in parallel, in batches on a
+ * ForkJoinPool, and write the recordings one after the other in the order of
+ * the ids. Hence, the output is the same as when recording them one by one.
+ * 
  * @author Jan Petranek
  */
 public class ListElement extends NamedElement {
@@ -45,9 +79,30 @@ public class ListElement extends NamedElement {
 	/** The Constant logger. */
 	static final Logger logger = LogManager.getLogger(ListElement.class);
 
+	/**
+	 * The number of children to record, from which on they are recorded in
+	 * parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1024;
+
+	/** The number of batches per thread, when recording in parallel. */
+	private static final int BATCHES_PER_THREAD = 4;
+
 	/** The elements, identified by their id. */
 	private TreeMap<Long, MappingElement> elements = new TreeMap<Long, MappingElement>();
 
+	/** The children not loaded yet, identified by their id. */
+	private TreeMap<Long, PendingElement> pending = new TreeMap<Long, PendingElement>();
+
+	/** The ids of the entries, by blind index, or null if not built yet. */
+	private Map<String, List<Long>> blindIndexes;
+
+	/** The children to write or null, to write all of them. */
+	private Collection<MappingElement> childrenToWrite;
+
+	/** The ids of the children changed since this list was marked clean. */
+	private TreeSet<Long> dirtyIds = new TreeSet<Long>();
+
 	/**
 	 * Gets the elements.
 	 * 
@@ -60,6 +115,7 @@ public class ListElement extends NamedElement {
 	protected TreeMap<Long, MappingElement> getElements() {
 		logger.warn("Call to getElements detected; this shall not occur in"
 				+ "normal use!");
+		loadPending();
 
 		return elements;
 	}
@@ -114,6 +170,63 @@ public class ListElement extends NamedElement {
 		logger.debug("exiting constructor from Xml");
 	}
 
+	/**
+	 * Reads a ListElement and its children from an XML stream. The reader must
+	 * be positioned at the start of the element; afterwards it is at its end.
+	 * 
+	 * Note: The processing of the particular child elements is delegated to the
+	 * method loadElement(String, XMLStreamReader). Overwrite it along with
+	 * loadElement(String, Element) in a subclass.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * @param parent
+	 *            the parent in the object structure, or null if this is the
+	 *            root element
+	 * 
+	 * @throws SysParseException
+	 *             when the XML could not be parsed.
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	public ListElement(XMLStreamReader reader, MappingElement parent)
+			throws SysParseException, SysInvalidArgumentException {
+		super(reader, parent);
+
+		logger.debug("entering constructor from Xml stream");
+		while (nextChild(reader)) {
+			if (parseNameChild(reader)) {
+				continue;
+			}
+			if (this.isDeleted()) {
+				logger.debug("List already deleted, not parsing children");
+				skipElement(reader);
+				continue;
+			}
+			if (loadsLazily()) {
+				recordPending(PendingElement.capture(reader));
+				continue;
+			}
+			String childName = reader.getLocalName();
+			MappingElement me = loadElement(childName, reader);
+			if (me != null) {
+				this.elements.put(me.getId(), me);
+				this.dirtyIds.add(me.getId());
+
+				if (logger.isTraceEnabled()) {
+					logger.trace("Adding child element "
+							+ MappingElement.log(me) + " to "
+							+ MappingElement.log(this));
+				}
+			} else {
+				logger.warn("Child element: " + childName
+						+ " could not be converted to child");
+				skipElement(reader);
+			}
+		}
+		logger.debug("exiting constructor from Xml stream");
+	}
+
 	/**
 	 * Parses the child nodes.
 	 * 
@@ -135,6 +248,8 @@ public class ListElement extends NamedElement {
 				if (NamedElement.NAME.equals(elem.getNodeName())) {
 					// already handled in the NamedElement constructor
 					logger.debug("Skipping name node, already handled in super constructor");
+				} else if (loadsLazily()) {
+					recordPending(PendingElement.fromNode(elem));
 				} else {
 					resolveChild(current, elem);
 				}
@@ -156,6 +271,7 @@ public class ListElement extends NamedElement {
 		if (me != null) {
 
 			this.elements.put(me.getId(), me);
+			this.dirtyIds.add(me.getId());
 
 			if (logger.isTraceEnabled()) {
 				logger.trace("Adding child element " + MappingElement.log(me)
@@ -186,19 +302,213 @@ public class ListElement extends NamedElement {
 	public Element toXml(Document doc) throws SysInvalidArgumentException {
 		logger.debug("entering serialize to XML for " + this);
 		Element node = super.toXml(doc);
+		loadPending();
+		recordChildren(elements.values());
 
 		if (logger.isTraceEnabled()) {
 			logger.trace("Serializing " + elements.size() + " children");
 		}
 
 		for (MappingElement element : elements.values()) {
-			Element elem = element.toXml(doc);
+			Element elem;
+			if (element instanceof ListElement || !element.supportsRecording()) {
+				elem = element.toXml(doc);
+			} else {
+				try {
+					elem = element.getFragment().toXml(doc);
+				} catch (SysParseException e) {
+					String msg = "Cannot record " + MappingElement.log(element);
+					logger.error(msg, e);
+					throw new SysInvalidArgumentException(msg, e);
+				}
+			}
 			node.appendChild(elem);
 		}
 		logger.debug("exiting serialize to XML");
 		return node;
 	}
 
+	/**
+	 * Writes the name and all children of this ListElement to an XML stream.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             when the XML of a child cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#writeChildren(javax.xml.stream.XMLStreamWriter)
+	 */
+	@Override
+	protected void writeChildren(XMLStreamWriter writer)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		super.writeChildren(writer);
+		if (childrenToWrite != null) {
+			recordChildren(childrenToWrite);
+			for (MappingElement element : childrenToWrite) {
+				writeChild(writer, element);
+			}
+			return;
+		}
+		loadPending();
+		recordChildren(elements.values());
+		for (MappingElement element : elements.values()) {
+			writeChild(writer, element);
+		}
+	}
+
+	/**
+	 * Record the children not recorded yet in parallel, if there are enough
+	 * of them. The others are recorded when they are written.
+	 * 
+	 * Recording reads the parents and the field cipher only, and changes
+	 * nothing but the recorded child itself. Thus, children can be recorded
+	 * concurrently, as long as the tree is not modified meanwhile.
+	 * 
+	 * @param children
+	 *            the children to be written
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when a child cannot be serialized
+	 */
+	private void recordChildren(Collection<MappingElement> children)
+			throws SysInvalidArgumentException {
+		ForkJoinPool pool = getSerializationPool();
+		if (children.size() < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+			return;
+		}
+		final List<MappingElement> unrecorded = new ArrayList<MappingElement>();
+		for (MappingElement element : children) {
+			if (!(element instanceof ListElement) && !element.isRecorded()) {
+				unrecorded.add(element);
+			}
+		}
+		if (unrecorded.size() < PARALLEL_THRESHOLD) {
+			return;
+		}
+
+		int batches = pool.getParallelism() * BATCHES_PER_THREAD;
+		int batchSize = (unrecorded.size() + batches - 1) / batches;
+		if (logger.isDebugEnabled()) {
+			logger.debug("Recording " + unrecorded.size()
+					+ " children in batches of " + batchSize);
+		}
+		List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>(
+				batches);
+		for (int start = 0; start < unrecorded.size(); start += batchSize) {
+			final List<MappingElement> batch = unrecorded.subList(start, Math
+					.min(start + batchSize, unrecorded.size()));
+			tasks.add(pool.submit(() -> {
+				for (MappingElement element : batch) {
+					element.getFragment();
+				}
+				return null;
+			}));
+		}
+		try {
+			for (ForkJoinTask<Void> task : tasks) {
+				task.get();
+			}
+		} catch (ExecutionException e) {
+			// the pool wraps the exceptions of the tasks
+			Throwable cause = e.getCause();
+			String msg = "Cannot record children of "
+					+ MappingElement.log(this);
+			logger.error(msg, cause);
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SysInvalidArgumentException(msg, cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			String msg = "Interrupted while recording children of "
+					+ MappingElement.log(this);
+			logger.warn(msg, e);
+			throw new SysRuntimeException(msg, e);
+		}
+	}
+
+	/**
+	 * Gets the pool recording the children of large lists. Override this to
+	 * use a pool of your own.
+	 * 
+	 * @return the pool, by default the common pool
+	 */
+	protected ForkJoinPool getSerializationPool() {
+		return ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Write a child, from its recording unless it is a list.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @param element
+	 *            the child
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             when the XML of the child cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the child cannot be serialized
+	 */
+	private static void writeChild(XMLStreamWriter writer,
+			MappingElement element) throws XMLStreamException,
+			SysParseException, SysInvalidArgumentException {
+		if (element instanceof ListElement) {
+			element.writeTo(writer);
+		} else {
+			element.getFragment().replay(writer);
+		}
+	}
+
+	/**
+	 * Write this list with some of its children only, e.g. those changed
+	 * since the last save. Children not loaded yet are not loaded.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * @param children
+	 *            the children to write
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	void writeTo(XMLStreamWriter writer, Collection<MappingElement> children)
+			throws SysParseException, SysInvalidArgumentException {
+		childrenToWrite = children;
+		try {
+			writeTo(writer);
+		} finally {
+			childrenToWrite = null;
+		}
+	}
+
+	/**
+	 * Gets the loaded children changed since this list was marked clean.
+	 * 
+	 * @return the changed children
+	 */
+	List<MappingElement> getDirtyElements() {
+		List<MappingElement> dirty = new ArrayList<MappingElement>(dirtyIds
+				.size());
+		for (Long id : dirtyIds) {
+			MappingElement element = elements.get(id);
+			if (element != null) {
+				dirty.add(element);
+			}
+		}
+		return dirty;
+	}
+
 	/**
 	 * Merge this ListElement with another ListElement. After the most recent
 	 * ListElement has been selected, the child elements are recursively merged.
@@ -233,6 +543,8 @@ public class ListElement extends NamedElement {
 		if (other instanceof ListElement) {
 
 			ListElement otherList = (ListElement) other;
+			this.loadPending();
+			otherList.loadPending();
 			ListElement target = (ListElement) super.merge(other);
 			if (!target.isDeleted()) {
 
@@ -324,6 +636,93 @@ public class ListElement extends NamedElement {
 
 	}
 
+	/**
+	 * Find the entries, whose indexed property has exactly the given value.
+	 * Only the value is indexed, not the fields: this costs one HMAC per
+	 * lookup, no matter how many entries the list holds.
+	 * 
+	 * @param property
+	 *            the indexed property
+	 * @param value
+	 *            the value
+	 * 
+	 * @return the matching (non-deleted) entries
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when field encryption is not enabled or the fields are
+	 *             locked
+	 */
+	public List<Entry> findByIndex(String property, String value)
+			throws SysInvalidArgumentException {
+		FieldCipher cipher = getFieldCipher();
+		if (cipher == null) {
+			String msg = "Fields are locked, cannot search "
+					+ MappingElement.log(this);
+			logger.error(msg);
+			throw new SysInvalidArgumentException(msg);
+		}
+		String probe;
+		try {
+			probe = cipher.blindIndex(property, value);
+		} catch (SysCryptoException ex) {
+			String msg = "Cannot search " + MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysInvalidArgumentException(msg, ex);
+		}
+		if (blindIndexes == null) {
+			loadPending();
+			buildBlindIndexes();
+		}
+
+		List<Entry> found = new ArrayList<Entry>();
+		List<Long> ids = blindIndexes.get(probe);
+		if (ids != null) {
+			for (Long id : ids) {
+				Entry entry = (Entry) elements.get(id);
+				// the index of another property may share the value
+				if (probe.equals(entry.getBlindIndex(property))) {
+					found.add(entry);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Build the map from blind index to the ids of the entries.
+	 */
+	private void buildBlindIndexes() {
+		logger.debug("entering buildBlindIndexes");
+		blindIndexes = new HashMap<String, List<Long>>();
+		for (MappingElement element : elements.values()) {
+			if (element instanceof Entry && !element.isDeleted()) {
+				for (String index : ((Entry) element).getBlindIndexes()) {
+					List<Long> ids = blindIndexes.get(index);
+					if (ids == null) {
+						ids = new ArrayList<Long>(1);
+						blindIndexes.put(index, ids);
+					}
+					ids.add(element.getId());
+				}
+			}
+		}
+		logger.debug("exiting buildBlindIndexes");
+	}
+
+	/**
+	 * Drop the map of blind indexes, when this list or a child is modified.
+	 * 
+	 * @throws ElementDeletedException
+	 *             when the element was already deleted
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#modify()
+	 */
+	@Override
+	protected void modify() throws ElementDeletedException {
+		this.blindIndexes = null;
+		super.modify();
+	}
+
 	/**
 	 * Mark this ListElement as deleted and delete all child nodes.
 	 * 
@@ -335,7 +734,74 @@ public class ListElement extends NamedElement {
 		logger.debug("Deleting " + this);
 		// remove all elements
 		this.elements.clear();
+		this.pending.clear();
+		this.dirtyIds.clear();
+		this.blindIndexes = null;
+
+	}
+
+	/**
+	 * Gets the children: the name and the loaded elements.
+	 * 
+	 * @return the children
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.NamedElement#getChildren()
+	 */
+	@Override
+	protected List<MappingElement> getChildren() {
+		List<MappingElement> children = super.getChildren();
+		children.addAll(elements.values());
+		return children;
+	}
+
+	/**
+	 * Remember a changed child and invalidate this, if the child belongs to
+	 * this list. The map of blind indexes is dropped as well, since content
+	 * set without a modify event or a changed index flag reaches only this.
+	 * 
+	 * @param child
+	 *            the child
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.NamedElement#childChanged(de.petranek.syncyoursecrets.xmlmapping.MappingElement)
+	 */
+	@Override
+	protected void childChanged(MappingElement child) {
+		// called from the super constructor, before the elements exist
+		if (elements != null && elements.get(child.getId()) == child) {
+			dirtyIds.add(child.getId());
+			this.blindIndexes = null;
+			invalidate();
+		} else {
+			super.childChanged(child);
+		}
+	}
+
+	/**
+	 * Mark the name and the changed children clean, without visiting the
+	 * others.
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#markChildrenClean()
+	 */
+	@Override
+	protected void markChildrenClean() {
+		if (getNameProperty() != null) {
+			getNameProperty().markClean();
+		}
+		for (MappingElement element : getDirtyElements()) {
+			element.markClean();
+		}
+		dirtyIds.clear();
+	}
 
+	/**
+	 * Drop the recordings of this list and all loaded children.
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#invalidateTree()
+	 */
+	@Override
+	protected void invalidateTree() {
+		super.invalidateTree();
+		dirtyIds.addAll(elements.keySet());
 	}
 
 	/**
@@ -367,6 +833,158 @@ public class ListElement extends NamedElement {
 		return sElement;
 	}
 
+	/**
+	 * Load a child element from an XML stream, the counterpart of
+	 * loadElement(String, Element). The element must be read completely, up to
+	 * its end; return null without reading to have it skipped.
+	 * 
+	 * By default, we assume all child nodes to be StringElements.
+	 * 
+	 * @param name
+	 *            the name of the XML-element
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * 
+	 * @return a mapping element or null, if it cannot be converted
+	 * @throws SysParseException
+	 *             when the XML could not be parsed
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	protected MappingElement loadElement(String name, XMLStreamReader reader)
+			throws SysParseException, SysInvalidArgumentException {
+		return new StringElement(reader, this);
+	}
+
+	/**
+	 * Whether the children are loaded lazily, on first access. Override this
+	 * in a subclass to enable it, it is called while parsing.
+	 * 
+	 * @return true, to load the children lazily; false by default
+	 */
+	protected boolean loadsLazily() {
+		return false;
+	}
+
+	/**
+	 * Gets the (non-deleted) child with the given id. A child not loaded yet
+	 * is loaded, the other children are not.
+	 * 
+	 * @param id
+	 *            the id
+	 * 
+	 * @return the child or null, if there is no such child or it is deleted
+	 */
+	public MappingElement get(long id) {
+		loadPending(id);
+		MappingElement element = elements.get(id);
+		if (element == null || element.isDeleted()) {
+			return null;
+		}
+		return element;
+	}
+
+	/**
+	 * Gets the names of the (non-deleted) children, ordered by id. Children
+	 * not loaded yet are only loaded, if their name is sealed.
+	 * 
+	 * @return the names, by id; null for children without a name
+	 */
+	public Map<Long, String> getNames() {
+		TreeMap<Long, String> names = new TreeMap<Long, String>();
+		for (PendingElement child : new ArrayList<PendingElement>(pending
+				.values())) {
+			if (child.isDeleted()) {
+				continue;
+			}
+			if (child.isNameKnown()) {
+				names.put(child.getId(), child.getName());
+			} else {
+				loadPending(child.getId());
+			}
+		}
+		for (MappingElement element : elements.values()) {
+			if (!element.isDeleted()) {
+				names.put(element.getId(), element.getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Record a child to be loaded later.
+	 * 
+	 * @param child
+	 *            the child
+	 */
+	private void recordPending(PendingElement child) {
+		if (logger.isTraceEnabled()) {
+			logger.trace("Recording child " + child.getId() + " of "
+					+ MappingElement.log(this));
+		}
+		this.pending.put(child.getId(), child);
+	}
+
+	/**
+	 * Load all children not loaded yet.
+	 */
+	private void loadPending() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		logger.debug("Loading " + pending.size() + " pending children");
+		for (Long id : new ArrayList<Long>(pending.keySet())) {
+			loadPending(id);
+		}
+	}
+
+	/**
+	 * Load the non-deleted children not loaded yet. Deleted ones are only
+	 * needed for merging and serializing.
+	 */
+	private void loadVisiblePending() {
+		for (PendingElement child : new ArrayList<PendingElement>(pending
+				.values())) {
+			if (!child.isDeleted()) {
+				loadPending(child.getId());
+			}
+		}
+	}
+
+	/**
+	 * Load the child with the given id, if it has not been loaded yet.
+	 * 
+	 * @param id
+	 *            the id
+	 */
+	private void loadPending(long id) {
+		PendingElement child = pending.remove(id);
+		if (child == null) {
+			return;
+		}
+		try {
+			MappingElement me = child.load(this);
+			if (me != null) {
+				this.elements.put(me.getId(), me);
+				// as read, loading does not change the list
+				me.markClean();
+			} else {
+				logger.warn("Child element: " + child.getId()
+						+ " could not be converted to child");
+			}
+		} catch (SysParseException ex) {
+			String msg = "Cannot load child " + id + " of "
+					+ MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysRuntimeException(msg, ex);
+		} catch (SysInvalidArgumentException ex) {
+			String msg = "Cannot load child " + id + " of "
+					+ MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysRuntimeException(msg, ex);
+		}
+	}
+
 	/**
 	 * Adds a child element.
 	 * 
@@ -388,8 +1006,13 @@ public class ListElement extends NamedElement {
 	 */
 	protected void add(MappingElement element, boolean suppressUpdate) {
 		logger.debug("Adding " + MappingElement.log(element));
-		this.elements.put(element.getId(), element);
+		MappingElement previous = this.elements.put(element.getId(), element);
+		this.pending.remove(element.getId());
+		this.blindIndexes = null;
 		element.setParent(this);
+		if (previous != element || element.isDirty()) {
+			childChanged(element);
+		}
 
 		if (!suppressUpdate) {
 			try {
@@ -414,6 +1037,7 @@ public class ListElement extends NamedElement {
 	public void remove(MappingElement element) {
 		logger.debug("Deleting " + MappingElement.log(element));
 
+		loadPending(element.getId());
 		MappingElement toDelete = this.elements.get(element.getId());
 		toDelete.delete();
 
@@ -450,6 +1074,7 @@ public class ListElement extends NamedElement {
 	private ArrayList<MappingElement> createVisibleList() {
 		// create a cloned list:
 		ArrayList<MappingElement> visibleList = new ArrayList<MappingElement>();
+		loadVisiblePending();
 
 		for (MappingElement current : this.elements.values()) {
 			if (!current.isDeleted()) {
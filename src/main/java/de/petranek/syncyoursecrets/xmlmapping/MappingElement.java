@@ -18,12 +18,30 @@
  */
 package de.petranek.syncyoursecrets.xmlmapping;
 
+import de.petranek.syncyoursecrets.crypto.CipherEngine;
+import de.petranek.syncyoursecrets.crypto.FieldCipher;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
 import de.petranek.syncyoursecrets.util.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.*;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
 
 /**
  * The Class MappingElement is the basic class for objects in SyncYourSecrets.
@@ -47,6 +65,16 @@ import java.time.ZonedDateTime;
  * node will be the result of the merge. This ensures that the latest action
  * will not be lost.
  * 
+ * Field level encryption is opt-in: once enableFieldEncryption() has been
+ * called on the root, the content of all StringElements is sealed one by one,
+ * while ids, timestamps and actions remain readable. Merging does not need to
+ * open any field. The root keeps the parameters of the field key and, once
+ * unlocked, the field cipher; lockFields() wipes it.
+ * 
+ * Every change marks the element and its parents dirty. An element records
+ * its serialization once and writes the recording again, as long as it stays
+ * unchanged; any change drops the recording of the element and its parents.
+ * 
  * @author Jan Petranek
  */
 public class MappingElement implements Comparable<MappingElement> {
@@ -64,10 +92,10 @@ public class MappingElement implements Comparable<MappingElement> {
 	private static final String VERSION = "version";
 
 	/** The Constant LAST_ACTION denotes the corresponding XML-Attribute. */
-	private static final String LAST_ACTION = "lastAction";
+	static final String LAST_ACTION = "lastAction";
 
 	/** The Constant ID denotes the corresponding XML-Attribute. */
-	private static final String ID = "id";
+	static final String ID = "id";
 
 	/** The Constant LAST_MODIFIED denotes the corresponding XML-Attribute. */
 	private static final String LAST_MODIFIED = "lastModified";
@@ -76,7 +104,41 @@ public class MappingElement implements Comparable<MappingElement> {
 	private static final String CREATED = "created";
 
 	/** The Constant NAME denotes the corresponding XML-Attribute. */
-	private static final String NAME = "name";
+	static final String NAME = "name";
+
+	/** The Constant FIELD_SALT denotes the corresponding XML-Attribute. */
+	private static final String FIELD_SALT = "fieldSalt";
+
+	/** The Constant FIELD_ITERATIONS denotes the corresponding XML-Attribute. */
+	private static final String FIELD_ITERATIONS = "fieldIterations";
+
+	/** The Constant FIELD_CHECK denotes the corresponding XML-Attribute. */
+	private static final String FIELD_CHECK = "fieldCheck";
+
+	/** The additional authenticated data of the field check value. */
+	private static final byte[] FIELD_CHECK_AAD = FIELD_CHECK
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** The size of the field key salt in bytes. */
+	private static final int FIELD_SALT_SIZE = 16;
+
+	/** The classes of this library, whose toXml() writes what writeTo() does. */
+	private static final List<Class<?>> RECORDING_CLASSES = Arrays
+			.<Class<?>> asList(MappingElement.class, NamedElement.class,
+					Entry.class, StringElement.class, ListElement.class);
+
+	/** Whether a class serializes by the toXml() of this library. */
+	private static final ClassValue<Boolean> RECORDABLE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return RECORDING_CLASSES.contains(type.getMethod("toXml",
+						Document.class).getDeclaringClass());
+			} catch (NoSuchMethodException e) {
+				return Boolean.FALSE;
+			}
+		}
+	};
 
 	/**
 	 * The parent node in the object tree. If this is null, we are the root of
@@ -151,6 +213,27 @@ public class MappingElement implements Comparable<MappingElement> {
 	/** The attribute name. This attribute is optional and may be null. */
 	private String name;
 
+	/** The salt of the field key, only set at the root, if enabled. */
+	private byte[] fieldSalt;
+
+	/** The iteration count of the field key derivation. */
+	private int fieldIterations;
+
+	/** The sealed empty String, to check the password on unlock. */
+	private String fieldCheck;
+
+	/** The unlocked field cipher, only set at the root. */
+	private FieldCipher fieldCipher;
+
+	/** The roots merged into this root, their field keys open merged fields. */
+	private List<MappingElement> mergedRoots;
+
+	/** The recorded serialization, while this element is unchanged. */
+	private Fragment fragment;
+
+	/** Whether this or a child has changed since it was marked clean. */
+	private boolean dirty = true;
+
 	/**
 	 * Instantiates a new, empty mapping element.
 	 * 
@@ -200,23 +283,96 @@ public class MappingElement implements Comparable<MappingElement> {
 		logger.debug("entering Constructor from XML Element");
 
 		try {
-
 			NamedNodeMap attributes = node.getAttributes();
+			parseAttributes(attribName -> {
+				Node attribute = attributes.getNamedItem(attribName);
+				return attribute == null ? null : attribute.getNodeValue();
+			});
+		} catch (DOMException domex) {
+			String msg = "Failed to traverse XML";
+			logger.error(msg, domex);
+			throw new SysParseException(msg, domex);
+		}
+		logger.debug("exiting Constructor from XML Element");
+
+	}
+
+	/**
+	 * Reads the attributes of an element from a stream and fills a
+	 * MappingElement from them. The reader must be positioned at the start
+	 * of the element and stays there: the subclass reads the content, up to
+	 * the end of the element.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * @param parent
+	 *            the parent in the object structure, or null if this is the
+	 *            root element
+	 * 
+	 * @throws SysParseException
+	 *             when the XML could not be processed
+	 * @throws SysInvalidArgumentException
+	 *             when the argument was invalid
+	 */
+	protected MappingElement(XMLStreamReader reader, MappingElement parent)
+			throws SysParseException, SysInvalidArgumentException {
+		this(startElementName(reader), parent);
+
+		version = LEGACY_VERSION_1; // default to this, when no version is
+		// found.
+		logger.debug("entering Constructor from XML stream");
+		parseAttributes(attribName -> reader.getAttributeValue(null,
+				attribName));
+		logger.debug("exiting Constructor from XML stream");
+	}
+
+	/**
+	 * Gets the name of the element the reader is positioned at.
+	 * 
+	 * @param reader
+	 *            the reader
+	 * 
+	 * @return the element name
+	 * 
+	 * @throws SysParseException
+	 *             when the reader is not at the start of an element
+	 */
+	private static String startElementName(XMLStreamReader reader)
+			throws SysParseException {
+		if (!reader.isStartElement()) {
+			String msg = "Reader is not positioned at the start of an element";
+			logger.error(msg);
+			throw new SysParseException(msg);
+		}
+		return reader.getLocalName();
+	}
 
-			this.setCreated(DateTimeUtil.parseDateTime(attributes.getNamedItem(
-					CREATED).getNodeValue()));
-			this.setLastModified(DateTimeUtil.parseDateTime(attributes
-					.getNamedItem(LAST_MODIFIED).getNodeValue()));
-			this.setId(Long.parseLong(attributes.getNamedItem(ID)
-					.getNodeValue()));
-			this.setLastAction(ACTIONS.valueOf(attributes.getNamedItem(
-					LAST_ACTION).getNodeValue()));
+	/**
+	 * Parses the attributes, common to all MappingElements.
+	 * 
+	 * @param attributes
+	 *            looks up an attribute value by name, null if not present
+	 * 
+	 * @throws SysParseException
+	 *             when a mandatory attribute is missing or malformed
+	 * @throws SysInvalidArgumentException
+	 *             when the argument was invalid
+	 */
+	private void parseAttributes(UnaryOperator<String> attributes)
+			throws SysParseException, SysInvalidArgumentException {
+		try {
+			this.setCreated(DateTimeUtil.parseDateTime(requireAttribute(
+					attributes, CREATED)));
+			this.setLastModified(DateTimeUtil.parseDateTime(requireAttribute(
+					attributes, LAST_MODIFIED)));
+			this.setId(Long.parseLong(requireAttribute(attributes, ID)));
+			this.setLastAction(ACTIONS.valueOf(requireAttribute(attributes,
+					LAST_ACTION)));
 
 			// check for a version > 1
-			Node versionAttribute = attributes.getNamedItem(VERSION);
+			String versionAttribute = attributes.apply(VERSION);
 			if (versionAttribute != null) {
-				this.version = Integer
-						.parseInt(versionAttribute.getNodeValue());
+				this.version = Integer.parseInt(versionAttribute);
 				logger.debug("Version is " + this.version);
 			}
 
@@ -225,17 +381,38 @@ public class MappingElement implements Comparable<MappingElement> {
 				parseLegacyName(attributes);
 			}
 
-		} catch (DOMException domex) {
-			String msg = "Failed to traverse XML";
-			logger.error(msg, domex);
-			throw new SysParseException(msg, domex);
+			parseFieldEncryption(attributes);
+
 		} catch (NumberFormatException nfe) {
 			String msg = "Version cannot be parsed as number";
 			logger.error(msg, nfe);
 			throw new SysParseException(msg, nfe);
 		}
-		logger.debug("exiting Constructor from XML Element");
+	}
 
+	/**
+	 * Gets a mandatory attribute.
+	 * 
+	 * @param attributes
+	 *            looks up an attribute value by name, null if not present
+	 * @param attribName
+	 *            the name of the attribute
+	 * 
+	 * @return the value
+	 * 
+	 * @throws SysParseException
+	 *             when the attribute is missing
+	 */
+	private String requireAttribute(UnaryOperator<String> attributes,
+			String attribName) throws SysParseException {
+		String value = attributes.apply(attribName);
+		if (value == null) {
+			String msg = "Attribute " + attribName + " missing on "
+					+ getElementName();
+			logger.error(msg);
+			throw new SysParseException(msg);
+		}
+		return value;
 	}
 
 	/**
@@ -245,15 +422,15 @@ public class MappingElement implements Comparable<MappingElement> {
 	 * 
 	 * 
 	 * @param attributes
-	 *            the XML attributes
+	 *            looks up an attribute value by name, null if not present
 	 */
-	private void parseLegacyName(NamedNodeMap attributes) {
-		Node nameAttribute = attributes.getNamedItem(NAME);
+	private void parseLegacyName(UnaryOperator<String> attributes) {
+		String nameAttribute = attributes.apply(NAME);
 		// name attribute is optional, even in version 1
 		if (nameAttribute != null) {
 			logger.trace("Version 1 Name attribute found for node "
 					+ MappingElement.log(this));
-			this.name = nameAttribute.getNodeValue();
+			this.name = nameAttribute;
 		} else {
 
 			this.name = null;
@@ -262,11 +439,111 @@ public class MappingElement implements Comparable<MappingElement> {
 		}
 	}
 
+	/**
+	 * Parses the parameters of the field key, present at the root of
+	 * documents with field level encryption.
+	 * 
+	 * @param attributes
+	 *            looks up an attribute value by name, null if not present
+	 * 
+	 * @throws SysParseException
+	 *             when the salt cannot be decoded or the iterations are not
+	 *             a number within the PBKDF2 bounds
+	 */
+	private void parseFieldEncryption(UnaryOperator<String> attributes)
+			throws SysParseException {
+		String saltAttribute = attributes.apply(FIELD_SALT);
+		if (saltAttribute != null) {
+			logger.debug("Field encryption enabled");
+			try {
+				this.fieldSalt = Base64.getDecoder().decode(saltAttribute);
+			} catch (IllegalArgumentException iae) {
+				String msg = "Field salt cannot be decoded";
+				logger.error(msg, iae);
+				throw new SysParseException(msg, iae);
+			}
+			String iterationsAttribute = requireAttribute(attributes,
+					FIELD_ITERATIONS);
+			try {
+				this.fieldIterations = Integer.parseInt(iterationsAttribute);
+			} catch (NumberFormatException nfe) {
+				String msg = "Field iterations cannot be parsed as number";
+				logger.error(msg, nfe);
+				throw new SysParseException(msg, nfe);
+			}
+			if (fieldIterations <= 0
+					|| fieldIterations > KdfParameters.MAX_PBKDF2_ITERATIONS) {
+				String msg = "Field iterations out of range " + fieldIterations;
+				logger.error(msg);
+				throw new SysParseException(msg);
+			}
+			this.fieldCheck = requireAttribute(attributes, FIELD_CHECK);
+		}
+	}
+
+	/**
+	 * Move the reader to the next child element or to the end of the current
+	 * element, skipping whitespace and comments.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the current element or at the
+	 *            end of a child
+	 * 
+	 * @return true, if at the start of a child element; false at the end of
+	 *         the current element
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be read or contains text among the
+	 *             child elements
+	 */
+	protected static boolean nextChild(XMLStreamReader reader)
+			throws SysParseException {
+		try {
+			return reader.nextTag() == XMLStreamConstants.START_ELEMENT;
+		} catch (XMLStreamException e) {
+			String msg = "Failed to read XML";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+	}
+
+	/**
+	 * Skip an element with all its content.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element; afterwards at its
+	 *            end
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be read
+	 */
+	protected static void skipElement(XMLStreamReader reader)
+			throws SysParseException {
+		try {
+			int depth = 1;
+			while (depth > 0) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+		} catch (XMLStreamException e) {
+			String msg = "Failed to read XML";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+	}
+
 	/**
 	 * Merge this MappingElement with another MappingElement. The other
 	 * MappingElement must be of the same type. Both MappingElements should have
 	 * the same Id, so we can expect to merge the same MappingElement.
 	 * 
+	 * When two roots are merged, field level encryption is kept, if any of
+	 * them has it enabled.
+	 * 
 	 * @param other
 	 *            the other MappingElement
 	 * 
@@ -277,7 +554,231 @@ public class MappingElement implements Comparable<MappingElement> {
 	 */
 	public MappingElement merge(MappingElement other)
 			throws SysInvalidArgumentException {
-		return getNewest(other);
+		MappingElement newest = getNewest(other);
+		if (this.isRootElement() && other.isRootElement()) {
+			MappingElement oldest = (newest == this ? other : this);
+			newest.addMergedRoot(oldest);
+			if (newest.fieldSalt == null && oldest.fieldSalt != null) {
+				logger.debug("Keeping field encryption of merged root");
+				newest.fieldSalt = oldest.fieldSalt;
+				newest.fieldIterations = oldest.fieldIterations;
+				newest.fieldCheck = oldest.fieldCheck;
+				// a copy, locking either root must not wipe the other's key
+				if (oldest.fieldCipher != null) {
+					newest.fieldCipher = oldest.fieldCipher.copy();
+				}
+				newest.invalidateTree();
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * Enable field level encryption for the whole document, with the PBKDF2
+	 * iterations of the default options.
+	 * 
+	 * @param password
+	 *            the password
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or wrong
+	 * 
+	 * @see #enableFieldEncryption(String, EncryptionOptions)
+	 */
+	public void enableFieldEncryption(String password)
+			throws SysCryptoException {
+		enableFieldEncryption(password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Enable field level encryption for the whole document. A new field key is
+	 * derived from the password with the PBKDF2 iterations of the options. If
+	 * field encryption is enabled already, the fields are merely unlocked.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param options
+	 *            the options, giving the PBKDF2 iterations
+	 * 
+	 * @throws SysCryptoException
+	 *             when the password is empty or wrong
+	 */
+	public void enableFieldEncryption(String password,
+			EncryptionOptions options) throws SysCryptoException {
+		if (this.parent != null) {
+			parent.enableFieldEncryption(password, options);
+			return;
+		}
+		if (fieldSalt != null) {
+			unlockFields(password);
+			return;
+		}
+		logger.debug("entering enableFieldEncryption");
+		byte[] salt = CipherEngine.randomBytes(FIELD_SALT_SIZE);
+		int iterations = options.getKdfIterations();
+		FieldCipher cipher = EnryptionUtil.createFieldCipher(password, salt,
+				iterations);
+		this.fieldCheck = cipher.seal("", FIELD_CHECK_AAD);
+		this.fieldSalt = salt;
+		this.fieldIterations = iterations;
+		this.fieldCipher = cipher;
+		// all fields are sealed from now on
+		invalidateTree();
+		logger.debug("exiting enableFieldEncryption");
+	}
+
+	/**
+	 * Unlock the fields of a document with field level encryption. The
+	 * password is checked right away.
+	 * 
+	 * @param password
+	 *            the password
+	 * 
+	 * @throws SysCryptoException
+	 *             when field encryption is not enabled or the password is
+	 *             wrong
+	 */
+	public void unlockFields(String password) throws SysCryptoException {
+		if (this.parent != null) {
+			parent.unlockFields(password);
+			return;
+		}
+		logger.debug("entering unlockFields");
+		if (fieldSalt == null) {
+			String msg = "Field encryption is not enabled";
+			logger.warn(msg);
+			throw new SysCryptoException(msg);
+		}
+		FieldCipher cipher;
+		try {
+			cipher = EnryptionUtil.openFieldCipher(password, fieldSalt,
+					fieldIterations, fieldCheck, FIELD_CHECK_AAD);
+		} catch (SysCryptoException e) {
+			String msg = "Cannot unlock fields, wrong password";
+			logger.warn(msg, e);
+			throw new SysCryptoException(msg, e);
+		}
+		FieldCipher unlocked = getFieldCipher();
+		if (unlocked != null && unlocked.getKeyId().equals(cipher.getKeyId())) {
+			// unlocked already
+			cipher.wipe();
+		} else {
+			this.fieldCipher = cipher;
+		}
+		logger.debug("exiting unlockFields");
+	}
+
+	/**
+	 * Lock the fields of the document: the field cipher is wiped, sealed
+	 * contents not opened yet cannot be opened until unlockFields() is called
+	 * again. Other documents keep their field ciphers.
+	 */
+	public void lockFields() {
+		if (this.parent != null) {
+			parent.lockFields();
+			return;
+		}
+		if (fieldCipher != null) {
+			logger.debug("Locking fields");
+			fieldCipher.wipe();
+			fieldCipher = null;
+		}
+	}
+
+	/**
+	 * Checks if field level encryption is enabled for the document.
+	 * 
+	 * @return true, if enabled
+	 */
+	public boolean isFieldEncrypted() {
+		if (this.parent != null) {
+			return parent.isFieldEncrypted();
+		}
+		return fieldSalt != null;
+	}
+
+	/**
+	 * Gets the cipher sealing the fields of this document.
+	 * 
+	 * @return the field cipher or null, if not enabled or not unlocked
+	 */
+	public FieldCipher getFieldCipher() {
+		if (this.parent != null) {
+			return parent.getFieldCipher();
+		}
+		if (fieldCipher != null && fieldCipher.isWiped()) {
+			// locked in the meantime
+			return null;
+		}
+		return fieldCipher;
+	}
+
+	/**
+	 * Find the field cipher for a key id: the one of this document or of a
+	 * document merged into it. Fields merged from another replica are sealed
+	 * with its key, until they are written again.
+	 * 
+	 * @param keyId
+	 *            the key id of a seal
+	 * 
+	 * @return the field cipher or null, if no such key is unlocked
+	 */
+	FieldCipher findFieldCipher(String keyId) {
+		if (this.parent != null) {
+			return parent.findFieldCipher(keyId);
+		}
+		return findFieldCipher(keyId, Collections
+				.newSetFromMap(new IdentityHashMap<MappingElement, Boolean>()));
+	}
+
+	/**
+	 * Find the field cipher for a key id among this root and the roots merged
+	 * into it.
+	 * 
+	 * @param keyId
+	 *            the key id of a seal
+	 * @param visited
+	 *            the roots searched already, as roots may be merged mutually
+	 * 
+	 * @return the field cipher or null, if no such key is unlocked
+	 */
+	private FieldCipher findFieldCipher(String keyId,
+			Set<MappingElement> visited) {
+		if (!visited.add(this)) {
+			return null;
+		}
+		FieldCipher cipher = getFieldCipher();
+		if (cipher != null && cipher.getKeyId().equals(keyId)) {
+			return cipher;
+		}
+		if (mergedRoots != null) {
+			for (MappingElement root : mergedRoots) {
+				cipher = root.findFieldCipher(keyId, visited);
+				if (cipher != null) {
+					return cipher;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remember a root merged into this one, so its field key opens the fields
+	 * it contributed.
+	 * 
+	 * @param root
+	 *            the merged root
+	 */
+	private void addMergedRoot(MappingElement root) {
+		if (root == this) {
+			return;
+		}
+		if (mergedRoots == null) {
+			mergedRoots = new ArrayList<MappingElement>(1);
+		}
+		if (!mergedRoots.contains(root)) {
+			mergedRoots.add(root);
+		}
 	}
 
 	/**
@@ -439,6 +940,7 @@ public class MappingElement implements Comparable<MappingElement> {
 			throw new SysInvalidArgumentException(msg);
 		}
 		this.created = created;
+		invalidate();
 	}
 
 	/**
@@ -458,6 +960,7 @@ public class MappingElement implements Comparable<MappingElement> {
 	 */
 	public void setId(long id) {
 		this.id = id;
+		invalidate();
 	}
 
 	/**
@@ -486,6 +989,7 @@ public class MappingElement implements Comparable<MappingElement> {
 			throw new SysInvalidArgumentException(msg);
 		}
 		this.lastAction = lastAction;
+		invalidate();
 	}
 
 	/**
@@ -514,6 +1018,7 @@ public class MappingElement implements Comparable<MappingElement> {
 			throw new SysInvalidArgumentException(msg);
 		}
 		this.lastModified = lastModified;
+		invalidate();
 	}
 
 	/**
@@ -542,6 +1047,7 @@ public class MappingElement implements Comparable<MappingElement> {
 		}
 
 		this.elementName = name;
+		invalidate();
 	}
 
 	/**
@@ -566,26 +1072,236 @@ public class MappingElement implements Comparable<MappingElement> {
 		}
 		Element node = doc.createElement(this.getElementName());
 
-		String created = DateTimeUtil.dateTime2String(this.getCreated());
-		property2Attribute(CREATED, created, node);
+		for (Map.Entry<String, String> attribute : attributes().entrySet()) {
+			property2Attribute(attribute.getKey(), attribute.getValue(), node);
+		}
+
+		logger.debug("exiting toXml at " + MappingElement.log(this));
+		return node;
+	}
+
+	/**
+	 * Writes this MappingElement and its children to an XML stream, without
+	 * building a DOM. The output is equivalent to the one of toXml().
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the element cannot be serialized
+	 */
+	public void writeTo(XMLStreamWriter writer) throws SysParseException,
+			SysInvalidArgumentException {
+		logger.debug("entering writeTo at " + MappingElement.log(this));
+		Map<String, String> attributes = attributes();
+		try {
+			writer.writeStartElement(this.getElementName());
+			for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+				writer.writeAttribute(attribute.getKey(), attribute.getValue());
+			}
+			writeChildren(writer);
+			writer.writeEndElement();
+		} catch (XMLStreamException e) {
+			String msg = "Writing XML failed at " + MappingElement.log(this);
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+		logger.debug("exiting writeTo at " + MappingElement.log(this));
+	}
+
+	/**
+	 * Writes the content of this element to an XML stream, between its start
+	 * and end tag. Override this along with toXml() in subclasses having
+	 * children or text.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             when the XML of a child cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the element cannot be serialized
+	 */
+	protected void writeChildren(XMLStreamWriter writer)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		// no children
+	}
+
+	/**
+	 * Checks if this element or one of its children has changed since it
+	 * was marked clean. New elements are dirty.
+	 * 
+	 * @return true, if dirty
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Mark this element and its children clean, e.g. after they have been
+	 * loaded or saved. Clean children are skipped: a change always marks the
+	 * parents dirty as well.
+	 */
+	public void markClean() {
+		if (dirty) {
+			dirty = false;
+			markChildrenClean();
+		}
+	}
+
+	/**
+	 * Mark the children clean. Override this, if the dirty children can be
+	 * found without visiting all children.
+	 */
+	protected void markChildrenClean() {
+		for (MappingElement child : getChildren()) {
+			child.markClean();
+		}
+	}
+
+	/**
+	 * Gets the children, which have been loaded. Override this in subclasses
+	 * having children.
+	 * 
+	 * @return the children
+	 */
+	protected List<MappingElement> getChildren() {
+		return new ArrayList<MappingElement>();
+	}
+
+	/**
+	 * Call this method, when the serialization of this element has changed.
+	 * The recording is dropped and the change is passed on to the parent.
+	 */
+	protected void invalidate() {
+		this.fragment = null;
+		this.dirty = true;
+		if (this.parent != null) {
+			this.parent.childChanged(this);
+		}
+	}
+
+	/**
+	 * Drop the recordings of this element and all its children, e.g. when
+	 * field encryption has been enabled. The parent is not notified.
+	 */
+	protected void invalidateTree() {
+		this.fragment = null;
+		this.dirty = true;
+		for (MappingElement child : getChildren()) {
+			child.invalidateTree();
+		}
+	}
+
+	/**
+	 * Called by a child, whose serialization has changed. Elements still
+	 * under construction call this as well, hence only a child actually
+	 * attached to this element invalidates it. Override this in subclasses
+	 * having children.
+	 * 
+	 * @param child
+	 *            the child
+	 */
+	protected void childChanged(MappingElement child) {
+		// no children
+	}
+
+	/**
+	 * Checks if the serialization of this element is recorded.
+	 * 
+	 * @return true, if recorded
+	 */
+	boolean isRecorded() {
+		return fragment != null;
+	}
+
+	/**
+	 * Checks if the recording of this element may stand in for toXml(). This
+	 * holds, unless a subclass overrides toXml(), as the recording is made by
+	 * writeTo(). A subclass overriding both consistently may return true.
+	 * 
+	 * @return true, if the recording equals the output of toXml()
+	 */
+	protected boolean supportsRecording() {
+		return RECORDABLE.get(getClass());
+	}
 
-		String lastModified = DateTimeUtil.dateTime2String(this
-				.getLastModified());
-		property2Attribute(LAST_MODIFIED, lastModified, node);
+	/**
+	 * Gets the recorded serialization of this element, recording it first,
+	 * if it has changed.
+	 * 
+	 * @return the recording
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be recorded
+	 * @throws SysInvalidArgumentException
+	 *             when the element cannot be serialized
+	 */
+	Fragment getFragment() throws SysParseException,
+			SysInvalidArgumentException {
+		if (fragment == null) {
+			Fragment recorded = new Fragment();
+			writeTo(recorded);
+			recorded.trim();
+			fragment = recorded;
+		}
+		return fragment;
+	}
 
-		property2Attribute(ID, Long.toString(this.getId()), node);
+	/**
+	 * Gets the attributes of this element, sorted by name. Both toXml() and
+	 * writeTo() write them.
+	 * 
+	 * @return the attributes, by name
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when an attribute cannot be computed
+	 */
+	private Map<String, String> attributes()
+			throws SysInvalidArgumentException {
+		Map<String, String> attributes = new TreeMap<String, String>();
+		addAttributes(attributes);
+		return attributes;
+	}
 
-		property2Attribute(LAST_ACTION, this.getLastAction().name(), node);
+	/**
+	 * Adds the attributes of this element. Subclasses with attributes of their
+	 * own override this and call the super method.
+	 * 
+	 * @param attributes
+	 *            the attributes, by name
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when an attribute cannot be computed
+	 */
+	protected void addAttributes(Map<String, String> attributes)
+			throws SysInvalidArgumentException {
+		attributes.put(CREATED, DateTimeUtil.dateTime2String(this
+				.getCreated()));
+		attributes.put(LAST_MODIFIED, DateTimeUtil.dateTime2String(this
+				.getLastModified()));
+		attributes.put(ID, Long.toString(this.getId()));
+		attributes.put(LAST_ACTION, this.getLastAction().name());
 
 		// only write version at top element
 		if (isRootElement()) {
 			// we always write the current version, no regards to the parsed
 			// version.
-			property2Attribute(VERSION, String.valueOf(CURRENT_VERSION), node);
+			attributes.put(VERSION, String.valueOf(CURRENT_VERSION));
+
+			if (fieldSalt != null) {
+				attributes.put(FIELD_SALT, Base64.getEncoder().encodeToString(
+						fieldSalt));
+				attributes.put(FIELD_ITERATIONS, String
+						.valueOf(fieldIterations));
+				attributes.put(FIELD_CHECK, fieldCheck);
+			}
 		}
-
-		logger.debug("exiting toXml at " + MappingElement.log(this));
-		return node;
 	}
 
 	/**
@@ -747,7 +1463,11 @@ public class MappingElement implements Comparable<MappingElement> {
 	 *            the parent to set or null, if this is the root element.
 	 */
 	public void setParent(MappingElement parent) {
-		this.parent = parent;
+		if (this.parent != parent) {
+			this.parent = parent;
+			// the root and its field encryption may have changed
+			invalidateTree();
+		}
 	}
 
 	public static String log(MappingElement element) {
@@ -0,0 +1,89 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The Interface ModelCodec is the service provider interface of the file
+ * formats of the MappingElement tree. The elements read and write themselves
+ * as StAX events, so a codec only translates between those events and bytes:
+ * it creates a reader and a writer for a stream.
+ * 
+ * Codecs are registered with ModelCodecs, either explicitly or by the
+ * ServiceLoader. When a file is loaded, the codec is detected from the first
+ * bytes, so each file can have its own format.
+ * 
+ * @author Jan Petranek
+ */
+public interface ModelCodec {
+
+	/**
+	 * Gets the unique name of the codec, e.g. xml.
+	 * 
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Checks if the codec recognizes its format in the first bytes of a
+	 * stream.
+	 * 
+	 * @param head
+	 *            the first bytes of the stream
+	 * @param length
+	 *            the number of bytes available, may be less than the array
+	 * 
+	 * @return true, if the stream has the format of this codec
+	 */
+	boolean accepts(byte[] head, int length);
+
+	/**
+	 * Create a reader of a stream in the format of this codec. Closing the
+	 * reader does not close the stream.
+	 * 
+	 * @param in
+	 *            the stream
+	 * 
+	 * @return the reader, at the start of the document
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be read
+	 */
+	XMLStreamReader createReader(InputStream in) throws XMLStreamException;
+
+	/**
+	 * Create a writer to a stream in the format of this codec. Closing the
+	 * writer does not close the stream.
+	 * 
+	 * @param out
+	 *            the stream
+	 * 
+	 * @return the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the writer cannot be created
+	 */
+	XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException;
+
+}
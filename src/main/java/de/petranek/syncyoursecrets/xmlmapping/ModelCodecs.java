@@ -0,0 +1,161 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The Class ModelCodecs keeps the known codecs of the MappingElement tree: the
+ * built-in XML and binary codecs, codecs found by the ServiceLoader and codecs
+ * registered explicitly.
+ * 
+ * @author Jan Petranek
+ */
+public final class ModelCodecs {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(ModelCodecs.class);
+
+	/** The XML codec, the default. */
+	public static final ModelCodec XML = new XmlCodec();
+
+	/** The compact binary codec. */
+	public static final ModelCodec BINARY = new BinaryCodec();
+
+	/** The number of bytes looked at to detect the codec. */
+	static final int HEAD_SIZE = 16;
+
+	/** The codecs, XML last as it is the fallback. */
+	private static final List<ModelCodec> CODECS = createCodecs();
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private ModelCodecs() {
+		super();
+	}
+
+	/**
+	 * Register a codec. It takes precedence over the codecs registered before.
+	 * 
+	 * @param codec
+	 *            the codec
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when a codec with the same name is registered
+	 */
+	public static synchronized void register(ModelCodec codec)
+			throws SysInvalidArgumentException {
+		if (forName(codec.getName()) != null) {
+			String msg = "Codec " + codec.getName() + " is already registered";
+			logger.error(msg);
+			throw new SysInvalidArgumentException(msg);
+		}
+		logger.debug("Registering codec " + codec.getName());
+		CODECS.add(0, codec);
+	}
+
+	/**
+	 * Gets the codec with the given name.
+	 * 
+	 * @param name
+	 *            the name
+	 * 
+	 * @return the codec or null, if not registered
+	 */
+	public static ModelCodec forName(String name) {
+		for (ModelCodec codec : CODECS) {
+			if (codec.getName().equals(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the registered codecs.
+	 * 
+	 * @return the codecs
+	 */
+	public static List<ModelCodec> getCodecs() {
+		return Collections.unmodifiableList(CODECS);
+	}
+
+	/**
+	 * Detect the codec of a stream from its first bytes. The stream must
+	 * support mark and reset; it is reset to its start afterwards.
+	 * 
+	 * @param in
+	 *            the stream
+	 * 
+	 * @return the codec; the XML codec, if no codec recognizes the stream
+	 * 
+	 * @throws IOException
+	 *             when the stream cannot be read
+	 */
+	static ModelCodec detect(InputStream in) throws IOException {
+		byte[] head = new byte[HEAD_SIZE];
+		in.mark(HEAD_SIZE);
+		int length = 0;
+		try {
+			int read;
+			while (length < HEAD_SIZE
+					&& (read = in.read(head, length, HEAD_SIZE - length)) >= 0) {
+				length += read;
+			}
+		} finally {
+			in.reset();
+		}
+		for (ModelCodec codec : CODECS) {
+			if (codec.accepts(head, length)) {
+				logger.debug("Detected codec " + codec.getName());
+				return codec;
+			}
+		}
+		return XML;
+	}
+
+	/**
+	 * Create the list of codecs: those of the ServiceLoader first, then the
+	 * built-in ones.
+	 * 
+	 * @return the codecs
+	 */
+	private static List<ModelCodec> createCodecs() {
+		List<ModelCodec> codecs = new ArrayList<ModelCodec>();
+		for (ModelCodec codec : ServiceLoader.load(ModelCodec.class)) {
+			logger.debug("Found codec " + codec.getName());
+			codecs.add(codec);
+		}
+		codecs.add(BINARY);
+		codecs.add(XML);
+		return new CopyOnWriteArrayList<ModelCodec>(codecs);
+	}
+
+}
@@ -28,6 +28,11 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.List;
+
 /**
  * The Class NamedElement is an XML Mapping Element, that has a name property.
  * The name is stored as a child node. This allows us to modify the name
@@ -73,6 +78,60 @@ public class NamedElement extends MappingElement {
 
 	}
 
+	/**
+	 * Creates a NamedElement from an XML stream. The reader must be positioned
+	 * at the start of the element. Only the attributes are read, subclasses
+	 * read the child elements and pass them to parseNameChild() first.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * @param parent
+	 *            the parent in the object structure, or null if this is the
+	 *            root element
+	 * 
+	 * @throws SysParseException
+	 *             the sys parse exception
+	 * @throws SysInvalidArgumentException
+	 *             the sys invalid argument exception
+	 */
+	protected NamedElement(XMLStreamReader reader, MappingElement parent)
+			throws SysParseException, SysInvalidArgumentException {
+		super(reader, parent);
+
+		if (getLegacyName() != null) {
+			parseLegacyName();
+		}
+	}
+
+	/**
+	 * Parse the name property, if the reader is at the start of it. A name
+	 * element next to a legacy name is skipped, the legacy name wins just like
+	 * when parsing a DOM.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of a child element
+	 * 
+	 * @return true, if the child was the name and has been consumed
+	 * 
+	 * @throws SysParseException
+	 *             the sys parse exception
+	 * @throws SysInvalidArgumentException
+	 *             the sys invalid argument exception
+	 */
+	protected boolean parseNameChild(XMLStreamReader reader)
+			throws SysParseException, SysInvalidArgumentException {
+		if (!NAME.equals(reader.getLocalName())) {
+			return false;
+		}
+		if (getLegacyName() != null) {
+			skipElement(reader);
+		} else {
+			logger.debug("Found name property");
+			nameProperty = new StringElement(reader, this);
+		}
+		return true;
+	}
+
 	/**
 	 * Parse the name as a child Element, this is the default since Version 2.
 	 * 
@@ -174,6 +233,31 @@ public class NamedElement extends MappingElement {
 		return elem;
 	}
 
+	/**
+	 * Write the name property to an XML stream.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             the sys parse exception
+	 * @throws SysInvalidArgumentException
+	 *             the sys invalid argument exception
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#writeChildren(javax.xml.stream.XMLStreamWriter)
+	 */
+	@Override
+	protected void writeChildren(XMLStreamWriter writer)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		super.writeChildren(writer);
+		if (nameProperty != null) {
+			nameProperty.writeTo(writer);
+		}
+	}
+
 	/**
 	 * Get this node's name.
 	 * 
@@ -246,6 +330,42 @@ public class NamedElement extends MappingElement {
 	 */
 	protected void setNameProperty(StringElement nameProperty) {
 		this.nameProperty = nameProperty;
+		if (nameProperty != null) {
+			// a merged name may come from the other element
+			nameProperty.setParent(this);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Gets the children: the name property.
+	 * 
+	 * @return the children
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#getChildren()
+	 */
+	@Override
+	protected List<MappingElement> getChildren() {
+		List<MappingElement> children = super.getChildren();
+		if (nameProperty != null) {
+			children.add(nameProperty);
+		}
+		return children;
+	}
+
+	/**
+	 * Invalidate this, if the name property has changed.
+	 * 
+	 * @param child
+	 *            the child
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#childChanged(de.petranek.syncyoursecrets.xmlmapping.MappingElement)
+	 */
+	@Override
+	protected void childChanged(MappingElement child) {
+		if (child == nameProperty) {
+			invalidate();
+		}
 	}
 
 	/**
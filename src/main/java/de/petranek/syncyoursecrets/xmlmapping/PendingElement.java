@@ -0,0 +1,375 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The Class PendingElement is the child of a lazily loading ListElement, as
+ * long as it has not been loaded. It only knows the id, whether the child is
+ * deleted and its plain name; the child itself is loaded on first access,
+ * either from its DOM node or from a copy of its XML, taken while streaming.
+ * 
+ * @author Jan Petranek
+ */
+final class PendingElement {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(PendingElement.class);
+
+	/** The XML element name. */
+	private final String elementName;
+
+	/** The id. */
+	private final long id;
+
+	/** Whether the child is deleted. */
+	private final boolean deleted;
+
+	/** Whether the name is known without loading the child. */
+	private final boolean nameKnown;
+
+	/** The name or null, if the child has none. */
+	private final String name;
+
+	/** The DOM node or null, if the XML has been copied. */
+	private final Element node;
+
+	/** The copy of the XML or null, if the DOM node is kept. */
+	private final String xml;
+
+	/**
+	 * Instantiates a new pending element.
+	 * 
+	 * @param elementName
+	 *            the XML element name
+	 * @param id
+	 *            the id
+	 * @param lastAction
+	 *            the last action
+	 * @param name
+	 *            the name or null
+	 * @param nameKnown
+	 *            whether the name is known
+	 * @param node
+	 *            the DOM node or null
+	 * @param xml
+	 *            the copy of the XML or null
+	 * 
+	 * @throws SysParseException
+	 *             when the id is missing or not a number
+	 */
+	private PendingElement(String elementName, String id, String lastAction,
+			String name, boolean nameKnown, Element node, String xml)
+			throws SysParseException {
+		this.elementName = elementName;
+		try {
+			this.id = Long.parseLong(id);
+		} catch (NumberFormatException nfe) {
+			String msg = "Id of " + elementName + " cannot be parsed";
+			logger.error(msg, nfe);
+			throw new SysParseException(msg, nfe);
+		}
+		this.deleted = MappingElement.ACTIONS.DELETE.name().equals(lastAction);
+		this.name = name;
+		this.nameKnown = nameKnown;
+		this.node = node;
+		this.xml = xml;
+	}
+
+	/**
+	 * Record a child from its DOM node.
+	 * 
+	 * @param node
+	 *            the node
+	 * 
+	 * @return the pending element
+	 * 
+	 * @throws SysParseException
+	 *             when the id is missing or not a number
+	 */
+	static PendingElement fromNode(Element node) throws SysParseException {
+		String name = attribute(node, MappingElement.NAME);
+		boolean nameKnown = true;
+		if (name == null) {
+			Node current = node.getFirstChild();
+			while (current != null) {
+				if (current.getNodeType() == Node.ELEMENT_NODE
+						&& NamedElement.NAME.equals(current.getNodeName())) {
+					Element nameNode = (Element) current;
+					nameKnown = !isSealed(attribute(nameNode,
+							StringElement.ENCRYPTED));
+					name = nameKnown ? nameNode.getTextContent() : null;
+				}
+				current = current.getNextSibling();
+			}
+		}
+		return new PendingElement(node.getNodeName(), attribute(node,
+				MappingElement.ID), attribute(node, MappingElement.LAST_ACTION),
+				name, nameKnown, node, null);
+	}
+
+	/**
+	 * Record a child from an XML stream by copying its XML. The reader must
+	 * be positioned at the start of the child; afterwards it is at its end.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the child
+	 * 
+	 * @return the pending element
+	 * 
+	 * @throws SysParseException
+	 *             when the XML cannot be read or the id is missing
+	 */
+	static PendingElement capture(XMLStreamReader reader)
+			throws SysParseException {
+		String elementName = reader.getLocalName();
+		String id = reader.getAttributeValue(null, MappingElement.ID);
+		String lastAction = reader.getAttributeValue(null,
+				MappingElement.LAST_ACTION);
+		String legacyName = reader.getAttributeValue(null,
+				MappingElement.NAME);
+
+		StringBuilder copy = new StringBuilder();
+		StringBuilder name = null;
+		boolean nameKnown = true;
+		boolean inName = false;
+		try {
+			int depth = 0;
+			int event = XMLStreamConstants.START_ELEMENT;
+			do {
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					copyStartElement(reader, copy);
+					if (depth == 2 && legacyName == null
+							&& NamedElement.NAME.equals(reader.getLocalName())) {
+						inName = true;
+						nameKnown = !isSealed(reader.getAttributeValue(null,
+								StringElement.ENCRYPTED));
+						name = new StringBuilder();
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					copy.append("</").append(reader.getLocalName()).append('>');
+					inName = false;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					escape(reader.getText(), false, copy);
+					if (inName) {
+						name.append(reader.getText());
+					}
+					break;
+				default:
+					// comments and processing instructions are dropped
+				}
+				if (depth > 0) {
+					event = reader.next();
+				}
+			} while (depth > 0);
+		} catch (XMLStreamException e) {
+			String msg = "Failed to read XML";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+
+		String plainName = legacyName;
+		if (plainName == null && name != null && nameKnown) {
+			plainName = name.toString();
+		}
+		return new PendingElement(elementName, id, lastAction, plainName,
+				nameKnown, null, copy.toString());
+	}
+
+	/**
+	 * Load the child.
+	 * 
+	 * @param list
+	 *            the list, loading its children
+	 * 
+	 * @return the child or null, if the list does not convert it
+	 * 
+	 * @throws SysParseException
+	 *             when the XML could not be parsed
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	MappingElement load(ListElement list) throws SysParseException,
+			SysInvalidArgumentException {
+		if (logger.isTraceEnabled()) {
+			logger.trace("Loading pending child " + elementName + ": " + id);
+		}
+		if (node != null) {
+			return list.loadElement(elementName, node);
+		}
+		try {
+			XMLStreamReader reader = XmlCodec.createReader(xml);
+			try {
+				reader.nextTag();
+				return list.loadElement(elementName, reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			String msg = "Failed to read XML of " + elementName + ": " + id;
+			logger.error(msg, e);
+			throw new SysParseException(msg, e);
+		}
+	}
+
+	/**
+	 * Gets the id.
+	 * 
+	 * @return the id
+	 */
+	long getId() {
+		return id;
+	}
+
+	/**
+	 * Checks if the child is deleted.
+	 * 
+	 * @return true, if deleted
+	 */
+	boolean isDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * Checks if the name is known without loading the child. It is not, when
+	 * the name is sealed.
+	 * 
+	 * @return true, if known
+	 */
+	boolean isNameKnown() {
+		return nameKnown;
+	}
+
+	/**
+	 * Gets the name.
+	 * 
+	 * @return the name or null, if the child has none or it is not known
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets an attribute of a node.
+	 * 
+	 * @param node
+	 *            the node
+	 * @param attribName
+	 *            the name of the attribute
+	 * 
+	 * @return the value or null, if not present
+	 */
+	private static String attribute(Element node, String attribName) {
+		return node.hasAttribute(attribName) ? node.getAttribute(attribName)
+				: null;
+	}
+
+	/**
+	 * Checks if the value of the attribute encrypted marks a sealed content.
+	 * 
+	 * @param encrypted
+	 *            the value of the attribute encrypted, may be null
+	 * 
+	 * @return true, if sealed
+	 */
+	private static boolean isSealed(String encrypted) {
+		return Boolean.parseBoolean(encrypted);
+	}
+
+	/**
+	 * Copy the start tag with its attributes.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of an element
+	 * @param copy
+	 *            the copy to append to
+	 */
+	private static void copyStartElement(XMLStreamReader reader,
+			StringBuilder copy) {
+		copy.append('<').append(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			copy.append(' ').append(reader.getAttributeLocalName(i)).append(
+					"=\"");
+			escape(reader.getAttributeValue(i), true, copy);
+			copy.append('"');
+		}
+		copy.append('>');
+	}
+
+	/**
+	 * Escape text for the copy. Line breaks and tabs in attributes are
+	 * escaped, so the parser does not normalize them.
+	 * 
+	 * @param text
+	 *            the text
+	 * @param attribute
+	 *            true, if the text is an attribute value
+	 * @param copy
+	 *            the copy to append to
+	 */
+	private static void escape(String text, boolean attribute,
+			StringBuilder copy) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				copy.append("&amp;");
+				break;
+			case '<':
+				copy.append("&lt;");
+				break;
+			case '>':
+				copy.append("&gt;");
+				break;
+			case '"':
+				copy.append(attribute ? "&quot;" : "\"");
+				break;
+			case '\r':
+				copy.append("&#13;");
+				break;
+			case '\n':
+				copy.append(attribute ? "&#10;" : "\n");
+				break;
+			case '\t':
+				copy.append(attribute ? "&#9;" : "\t");
+				break;
+			default:
+				copy.append(c);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,346 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.io.FileHelper;
+import de.petranek.syncyoursecrets.io.FileIOException;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.SysXmlBaseException;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class StreamLoader builds the MappingElement tree straight from a StAX
+ * stream, without the detour through a DOM. Each element reads itself from
+ * the reader, so the document is never held in memory twice.
+ *
+ * The element classes offer constructors from an XMLStreamReader next to
+ * those from a DOM Element. A model class supplies the root element through a
+ * RootFactory, typically a reference to such a constructor, and overrides
+ * ListElement.loadElement(String, XMLStreamReader) for its children.
+ *
+ * Like the DOM parser, the reader neither supports DTDs nor resolves external
+ * entities. Encrypted streams are read to their end, so the decryption is
+ * verified even when the document ends early.
+ *
+ * Streams and files may be in any registered ModelCodec's format; the codec
+ * is detected from the first bytes, so XML and binary files load alike.
+ *
+ * The elements loaded are marked clean, see MappingElement.isDirty().
+ *
+ * @author Jan Petranek
+ */
+public final class StreamLoader {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(StreamLoader.class);
+
+	/** The size of the buffer when draining streams. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Creates the root element of a document from the reader.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 */
+	public interface RootFactory<T extends MappingElement> {
+
+		/**
+		 * Create the root element. The reader is positioned at its start and
+		 * must be at its end afterwards.
+		 *
+		 * @param reader
+		 *            the reader, at the start of the root element
+		 *
+		 * @return the root element
+		 *
+		 * @throws SysParseException
+		 *             when the XML could not be parsed
+		 * @throws SysInvalidArgumentException
+		 *             when the input was invalid
+		 */
+		T create(XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException;
+	}
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private StreamLoader() {
+		super();
+	}
+
+	/**
+	 * Load the root element from a stream in the format of any registered
+	 * codec. The stream will be closed.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param in
+	 *            the stream
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends MappingElement> T load(InputStream in,
+			RootFactory<T> factory) throws SysXmlBaseException {
+		logger.debug("entering load");
+		InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		try {
+			ModelCodec codec = ModelCodecs.detect(buffered);
+			T root = loadRoot(codec.createReader(buffered), factory);
+			logger.debug("exiting load");
+			return root;
+		} catch (IOException e) {
+			drain(buffered, e);
+			String msg = "Failed to read stream";
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		} catch (XMLStreamException e) {
+			// garbage from a wrong password usually breaks the parser before
+			// the padding is checked - read on to tell both cases apart.
+			drain(buffered, e);
+			String msg = "Failed to parse model";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		} finally {
+			closeQuietly(buffered);
+		}
+	}
+
+	/**
+	 * Load the root element from a String.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param xmlString
+	 *            the XML document
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends MappingElement> T loadString(String xmlString,
+			RootFactory<T> factory) throws SysXmlBaseException {
+		logger.debug("entering loadString");
+		try {
+			XMLStreamReader reader = XmlCodec.createReader(xmlString);
+			T root = loadRoot(reader, factory);
+			logger.debug("exiting loadString");
+			return root;
+		} catch (XMLStreamException e) {
+			String msg = "Failed to parse XML";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+	}
+
+	/**
+	 * Load the root element from a file in the format of any registered
+	 * codec.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param file
+	 *            the file
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends MappingElement> T loadFile(File file,
+			RootFactory<T> factory) throws SysXmlBaseException {
+		return load(FileHelper.openInputStream(file), factory);
+	}
+
+	/**
+	 * Load the root element from an encrypted file. The file is decrypted
+	 * while it is parsed.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param password
+	 *            the password
+	 * @param file
+	 *            the file
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends MappingElement> T loadEncryptedFile(
+			String password, File file, RootFactory<T> factory)
+			throws SysXmlBaseException {
+		logger.debug("entering loadEncryptedFile");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			T root = load(EnryptionUtil.decryptStream(in, password), factory);
+			logger.debug("exiting loadEncryptedFile");
+			return root;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Load the root element from an encrypted file with the keys of an
+	 * unlocked session.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param session
+	 *            the session
+	 * @param file
+	 *            the file
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static <T extends MappingElement> T loadEncryptedFile(
+			VaultSession session, File file, RootFactory<T> factory)
+			throws SysXmlBaseException {
+		logger.debug("entering loadEncryptedFile");
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			T root = load(EnryptionUtil.decryptStream(in, session), factory);
+			logger.debug("exiting loadEncryptedFile");
+			return root;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Move to the root element, have it created and read to the end of the
+	 * document. Reading up to the end of the document makes a decrypting
+	 * stream check its padding or authentication tag.
+	 *
+	 * @param <T>
+	 *            the type of the root element
+	 * @param reader
+	 *            the reader, at the start of the document
+	 * @param factory
+	 *            the factory of the root element
+	 *
+	 * @return the root element
+	 *
+	 * @throws XMLStreamException
+	 *             when the XML cannot be read
+	 * @throws SysParseException
+	 *             when the XML could not be parsed
+	 * @throws SysInvalidArgumentException
+	 *             when the input was invalid
+	 */
+	private static <T extends MappingElement> T loadRoot(
+			XMLStreamReader reader, RootFactory<T> factory)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		try {
+			while (!reader.isStartElement()) {
+				reader.next();
+			}
+			T root = factory.create(reader);
+			while (reader.next() != XMLStreamConstants.END_DOCUMENT) {
+				// only whitespace, comments and processing instructions
+			}
+			// unchanged as read
+			root.markClean();
+			return root;
+		} catch (SysParseException e) {
+			// a reading error below the root element may be a decryption
+			// error, let the caller find out
+			if (e.getCause() instanceof XMLStreamException) {
+				throw (XMLStreamException) e.getCause();
+			}
+			throw e;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read the remaining bytes to find out, whether they decrypt properly.
+	 *
+	 * @param in
+	 *            the stream
+	 * @param cause
+	 *            the reason, why parsing stopped
+	 *
+	 * @throws SysCryptoException
+	 *             when the decryption fails
+	 */
+	private static void drain(InputStream in, Exception cause)
+			throws SysCryptoException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			while (in.read(buffer) >= 0) {
+				// drain
+			}
+		} catch (IOException e) {
+			String msg = "Decryption failed, wrong password or corrupted file";
+			logger.warn(msg, cause);
+			throw new SysCryptoException(msg, e);
+		}
+	}
+
+	/**
+	 * Close a stream after use, logging failures.
+	 *
+	 * @param in
+	 *            the stream
+	 */
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close stream", e);
+		}
+	}
+
+}
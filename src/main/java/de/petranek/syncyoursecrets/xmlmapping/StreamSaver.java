@@ -0,0 +1,381 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import de.petranek.syncyoursecrets.io.FileHelper;
+import de.petranek.syncyoursecrets.io.FileIOException;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.SysXmlBaseException;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Collection;
+
+/**
+ * The Class StreamSaver writes the MappingElement tree straight to a StAX
+ * stream, the counterpart of the StreamLoader. No DOM is built: each element
+ * writes itself with writeTo(), so saving needs no more memory than the tree
+ * itself, and encrypted files are encrypted as the XML is written.
+ *
+ * The XML written is equivalent to the one of toXml() and can be read by
+ * both the DOM parser and the StreamLoader.
+ *
+ * Streams and files are written as XML unless another ModelCodec is given,
+ * e.g. ModelCodecs.BINARY for the compact binary format.
+ *
+ * @author Jan Petranek
+ */
+public final class StreamSaver {
+
+	/** The Constant logger. */
+	static final Logger logger = LogManager.getLogger(StreamSaver.class);
+
+	/** The encoding of the documents. */
+	private static final String ENCODING = XmlCodec.ENCODING;
+
+	/** The XML version of the documents. */
+	private static final String XML_VERSION = "1.0";
+
+	/** The size of the buffer in front of the stream. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Utility class, shall not be instantiated.
+	 */
+	private StreamSaver() {
+		super();
+	}
+
+	/**
+	 * Write the root element and its children as XML document to a stream.
+	 * The stream is flushed, but not closed.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param out
+	 *            the stream
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void save(MappingElement root, OutputStream out)
+			throws SysXmlBaseException {
+		save(root, out, ModelCodecs.XML);
+	}
+
+	/**
+	 * Write the root element and its children to a stream in the format of
+	 * the codec. The stream is flushed, but not closed.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param out
+	 *            the stream
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void save(MappingElement root, OutputStream out,
+			ModelCodec codec) throws SysXmlBaseException {
+		logger.debug("entering save");
+		write(root, null, out, codec);
+		logger.debug("exiting save");
+	}
+
+	/**
+	 * Write the root list with some of its children only to a stream in the
+	 * format of the codec. The stream is flushed, but not closed.
+	 *
+	 * @param root
+	 *            the root list
+	 * @param children
+	 *            the children to write
+	 * @param out
+	 *            the stream
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	static void saveChildren(ListElement root,
+			Collection<MappingElement> children, OutputStream out,
+			ModelCodec codec) throws SysXmlBaseException {
+		logger.debug("entering saveChildren");
+		write(root, children, out, codec);
+		logger.debug("exiting saveChildren");
+	}
+
+	/**
+	 * Write the root element to a stream in the format of the codec.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param children
+	 *            the children to write or null, to write all of them
+	 * @param out
+	 *            the stream
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	private static void write(MappingElement root,
+			Collection<MappingElement> children, OutputStream out,
+			ModelCodec codec) throws SysXmlBaseException {
+		// the writer encodes char by char, do not pass that on to a cipher
+		OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+		try {
+			writeDocument(root, children, codec.createWriter(buffered));
+			buffered.flush();
+		} catch (XMLStreamException e) {
+			String msg = "Writing " + codec.getName() + " failed";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		} catch (IOException e) {
+			String msg = "Failed to write " + codec.getName();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		}
+	}
+
+	/**
+	 * Write the root element and its children as XML document to a String.
+	 *
+	 * @param root
+	 *            the root element
+	 *
+	 * @return the XML document
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static String saveString(MappingElement root)
+			throws SysXmlBaseException {
+		logger.debug("entering saveString");
+		StringWriter out = new StringWriter();
+		try {
+			writeDocument(root, null, XmlCodec.createWriter(out));
+		} catch (XMLStreamException e) {
+			String msg = "Writing XML failed";
+			logger.warn(msg, e);
+			throw new SysParseException(msg, e);
+		}
+		logger.debug("exiting saveString");
+		return out.toString();
+	}
+
+	/**
+	 * Write the root element and its children as XML document to a file.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveFile(MappingElement root, File file)
+			throws SysXmlBaseException {
+		saveFile(root, file, ModelCodecs.XML);
+	}
+
+	/**
+	 * Write the root element and its children to a file in the format of the
+	 * codec.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveFile(MappingElement root, File file,
+			ModelCodec codec) throws SysXmlBaseException {
+		logger.debug("entering saveFile");
+		if (file == null) {
+			String msg = ("File may not be null");
+			throw new SysXmlBaseException(msg);
+		}
+		OutputStream out = FileHelper.openOutputStream(file);
+		boolean closed = false;
+		try {
+			save(root, out, codec);
+			out.close();
+			closed = true;
+		} catch (IOException e) {
+			String msg = "Failed to write file " + file.getAbsolutePath();
+			logger.warn(msg, e);
+			throw new FileIOException(msg, e);
+		} finally {
+			if (!closed) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					logger.warn("Failed to close stream", e);
+				}
+			}
+		}
+		logger.debug("exiting saveFile");
+	}
+
+	/**
+	 * Write the root element and its children as encrypted XML document to a
+	 * file. The XML is encrypted while it is written; the file is replaced
+	 * only, once it has been written completely.
+	 *
+	 * @param password
+	 *            the password
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveEncryptedFile(String password, MappingElement root,
+			File file) throws SysXmlBaseException {
+		saveEncryptedFile(password, root, file, ModelCodecs.XML);
+	}
+
+	/**
+	 * Write the root element and its children encrypted to a file in the
+	 * format of the codec.
+	 *
+	 * @param password
+	 *            the password
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveEncryptedFile(String password, MappingElement root,
+			File file, ModelCodec codec) throws SysXmlBaseException {
+		logger.debug("entering saveEncryptedFile");
+		XmlSerializeTool.writeEncrypted(password, file, plain -> save(root,
+				plain, codec));
+		logger.debug("exiting saveEncryptedFile");
+	}
+
+	/**
+	 * Write the root element and its children as encrypted XML document to a
+	 * file with the keys of an unlocked session.
+	 *
+	 * @param session
+	 *            the session
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveEncryptedFile(VaultSession session,
+			MappingElement root, File file) throws SysXmlBaseException {
+		saveEncryptedFile(session, root, file, ModelCodecs.XML);
+	}
+
+	/**
+	 * Write the root element and its children encrypted to a file in the
+	 * format of the codec, with the keys of an unlocked session.
+	 *
+	 * @param session
+	 *            the session
+	 * @param root
+	 *            the root element
+	 * @param file
+	 *            the file
+	 * @param codec
+	 *            the codec
+	 *
+	 * @throws SysXmlBaseException
+	 *             when the operation fails
+	 */
+	public static void saveEncryptedFile(VaultSession session,
+			MappingElement root, File file, ModelCodec codec)
+			throws SysXmlBaseException {
+		logger.debug("entering saveEncryptedFile");
+		XmlSerializeTool.writeEncrypted(session, file, plain -> save(root,
+				plain, codec));
+		logger.debug("exiting saveEncryptedFile");
+	}
+
+	/**
+	 * Write the document: declaration, root element and children.
+	 *
+	 * @param root
+	 *            the root element
+	 * @param children
+	 *            the children of the root list to write or null, to write
+	 *            all of them
+	 * @param writer
+	 *            the writer, closed afterwards
+	 *
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysParseException
+	 *             when the XML of an element cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when an element cannot be serialized
+	 */
+	private static void writeDocument(MappingElement root,
+			Collection<MappingElement> children, XMLStreamWriter writer)
+			throws XMLStreamException, SysParseException,
+			SysInvalidArgumentException {
+		try {
+			writer.writeStartDocument(ENCODING, XML_VERSION);
+			if (children == null) {
+				root.writeTo(writer);
+			} else {
+				((ListElement) root).writeTo(writer, children);
+			}
+			writer.writeEndDocument();
+			writer.flush();
+		} finally {
+			// does not close the underlying stream
+			writer.close();
+		}
+	}
+
+}
@@ -18,18 +18,37 @@
  */
 package de.petranek.syncyoursecrets.xmlmapping;
 
+import de.petranek.syncyoursecrets.crypto.FieldCipher;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
 import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
 import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
 /**
  * The Class StringElement is a simple MappingElement. Its content is a String
  * (or a textnode in XML-terms).
  * 
+ * With field level encryption enabled on the root, the content is written
+ * sealed and marked by the attribute encrypted="true". A parsed sealed content
+ * is only opened, when it is accessed; an unchanged one is written back as it
+ * was read. The seal is bound to the id and the element name.
+ * 
+ * An indexed StringElement writes the blind index of its content along with
+ * the seal, in the attribute index. Lists find elements by this index without
+ * opening their seals.
+ * 
  * @author Jan Petranek
  */
 public class StringElement extends MappingElement {
@@ -37,9 +56,24 @@ public class StringElement extends MappingElement {
 	/** The Constant logger. */
 	static final Logger logger = LogManager.getLogger(StringElement.class);
 
-	/** The content. */
+	/** The Constant ENCRYPTED denotes the corresponding XML-Attribute. */
+	static final String ENCRYPTED = "encrypted";
+
+	/** The Constant BLIND_INDEX denotes the corresponding XML-Attribute. */
+	private static final String BLIND_INDEX = "index";
+
+	/** The content or null, if the sealed content has not been opened yet. */
 	private String content = "";
 
+	/** The sealed content or null, if not sealed (yet). */
+	private String sealed;
+
+	/** Whether the blind index of the content is written. */
+	private boolean indexed = false;
+
+	/** The blind index of the content or null, if not computed (yet). */
+	private String blindIndex;
+
 	/**
 	 * Instantiates a new (empty) string element.
 	 * 
@@ -81,10 +115,56 @@ public class StringElement extends MappingElement {
 
 			logger.debug("No content set");
 			this.content = "";
+		} else if (Boolean.parseBoolean(node.getAttribute(ENCRYPTED))) {
+			logger.trace("Content is sealed");
+			this.sealed = this.content;
+			this.content = null;
+			if (node.hasAttribute(BLIND_INDEX)) {
+				this.blindIndex = node.getAttribute(BLIND_INDEX);
+			}
 		}
 		logger.debug("exiting constructor from Xml");
 	}
 
+	/**
+	 * Reads a string element from an XML stream. The reader must be positioned
+	 * at the start of the element; afterwards it is at its end.
+	 * 
+	 * @param reader
+	 *            the reader, at the start of the element
+	 * @param parent
+	 *            the parent in the object structure, or null if this is the
+	 *            root element
+	 * @throws SysParseException
+	 *             when the XML could not be parsed
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when the argument was invalid
+	 */
+	public StringElement(XMLStreamReader reader, MappingElement parent)
+			throws SysParseException, SysInvalidArgumentException {
+		super(reader, parent);
+
+		logger.debug("entering constructor from Xml stream");
+		boolean encrypted = Boolean.parseBoolean(reader.getAttributeValue(
+				null, ENCRYPTED));
+		String index = reader.getAttributeValue(null, BLIND_INDEX);
+		try {
+			this.content = reader.getElementText();
+		} catch (XMLStreamException ex) {
+			String msg = "Cannot read content of " + MappingElement.log(this);
+			logger.warn(msg, ex);
+			throw new SysParseException(msg, ex);
+		}
+		if (encrypted) {
+			logger.trace("Content is sealed");
+			this.sealed = this.content;
+			this.content = null;
+			this.blindIndex = index;
+		}
+		logger.debug("exiting constructor from Xml stream");
+	}
+
 	/**
 	 * Merge with another StringElement. StringElements have only one property
 	 * (the content) and are thus considered atomic. The merge will simply
@@ -108,14 +188,131 @@ public class StringElement extends MappingElement {
 	}
 
 	/**
-	 * Gets the content.
+	 * Gets the content. A sealed content is opened on first access; this
+	 * requires the fields to be unlocked.
 	 * 
 	 * @return the content or an empty String
 	 */
 	public String getContent() {
+		if (content == null && sealed != null) {
+			openContent();
+		}
 		return (content != null ? content : "");
 	}
 
+	/**
+	 * Open the sealed content. The key is looked up by the key id of the seal
+	 * in the document, so content merged from another document can be opened
+	 * as well.
+	 */
+	private void openContent() {
+		try {
+			FieldCipher cipher = findFieldCipher(FieldCipher.keyIdOf(sealed));
+			if (cipher == null) {
+				String msg = "Fields are locked, cannot open "
+						+ MappingElement.log(this);
+				logger.error(msg);
+				throw new SysRuntimeException(msg);
+			}
+			this.content = cipher.open(sealed, createAad());
+		} catch (SysCryptoException ex) {
+			String msg = "Cannot open content of " + MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysRuntimeException(msg, ex);
+		}
+	}
+
+	/**
+	 * Gets the sealed content for the document's field cipher. An existing
+	 * seal is reused, if it has been made with the same key.
+	 * 
+	 * @return the sealed content
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when the fields are locked or sealing fails
+	 */
+	private String sealContent() throws SysInvalidArgumentException {
+		FieldCipher cipher = getFieldCipher();
+		if (cipher == null) {
+			String msg = "Fields are locked, cannot seal "
+					+ MappingElement.log(this);
+			logger.error(msg);
+			throw new SysInvalidArgumentException(msg);
+		}
+		try {
+			if (sealed == null
+					|| !cipher.getKeyId().equals(FieldCipher.keyIdOf(sealed))) {
+				sealed = cipher.seal(getContent(), createAad());
+				blindIndex = null;
+			}
+			return sealed;
+		} catch (SysCryptoException ex) {
+			String msg = "Cannot seal content of " + MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysInvalidArgumentException(msg, ex);
+		}
+	}
+
+	/**
+	 * Checks if the blind index of the content is written.
+	 * 
+	 * @return true, if indexed
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Sets whether the blind index of the content is written, along with the
+	 * sealed content.
+	 * 
+	 * @param indexed
+	 *            true, to write the blind index
+	 */
+	public void setIndexed(boolean indexed) {
+		if (this.indexed != indexed) {
+			this.indexed = indexed;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Gets the blind index of the content. An index read along with the seal
+	 * is returned as it is, without opening the seal.
+	 * 
+	 * @return the blind index or null, if not indexed, deleted or the fields
+	 *         are locked
+	 */
+	public String getBlindIndex() {
+		FieldCipher cipher = getFieldCipher();
+		if (!indexed || isDeleted() || cipher == null) {
+			return null;
+		}
+		try {
+			if (blindIndex == null || sealed != null
+					&& !cipher.getKeyId().equals(FieldCipher.keyIdOf(sealed))) {
+				blindIndex = cipher.blindIndex(getElementName(), getContent());
+			}
+			return blindIndex;
+		} catch (SysCryptoException ex) {
+			String msg = "Cannot index content of " + MappingElement.log(this);
+			logger.error(msg, ex);
+			throw new SysRuntimeException(msg, ex);
+		}
+	}
+
+	/**
+	 * Create the additional authenticated data of the seal: id and element
+	 * name. This prevents sealed contents from being swapped.
+	 * 
+	 * @return the additional authenticated data
+	 */
+	private byte[] createAad() {
+		byte[] name = getElementName().getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(8 + name.length).putLong(getId()).put(name)
+				.array();
+	}
+
 	/**
 	 * Sets the content.
 	 * 
@@ -149,12 +346,15 @@ public class StringElement extends MappingElement {
 		}
 
 		// suppress modify of unchanged content
-		if (!this.content.equals(content)) {
+		if (!this.getContent().equals(content)) {
 			logger.trace("Content modified");
 			this.content = content;
+			this.sealed = null;
+			this.blindIndex = null;
 			if (this.content == null) {
 				this.content = "";
 			}
+			invalidate();
 
 			if (skipUpdate) {
 				logger.trace("Skip firing modify event");
@@ -185,13 +385,73 @@ public class StringElement extends MappingElement {
 		logger.debug("Entering serialize to XML for "
 				+ MappingElement.log(this));
 		Element node = super.toXml(doc);
-		Node textNode = doc.createTextNode(this.getContent());
+		Node textNode = doc.createTextNode(getText());
 		node.appendChild(textNode);
 
 		logger.debug("Exiting serialize to XML");
 		return node;
 	}
 
+	/**
+	 * Writes the content, sealed if field level encryption is enabled.
+	 * 
+	 * @param writer
+	 *            the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the XML cannot be written
+	 * @throws SysInvalidArgumentException
+	 *             when the fields are locked or sealing fails
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#writeChildren(javax.xml.stream.XMLStreamWriter)
+	 */
+	@Override
+	protected void writeChildren(XMLStreamWriter writer)
+			throws XMLStreamException, SysInvalidArgumentException {
+		writer.writeCharacters(getText());
+	}
+
+	/**
+	 * Adds the marker of a sealed content and its blind index.
+	 * 
+	 * @param attributes
+	 *            the attributes, by name
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when the fields are locked or sealing fails
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.MappingElement#addAttributes(java.util.Map)
+	 */
+	@Override
+	protected void addAttributes(Map<String, String> attributes)
+			throws SysInvalidArgumentException {
+		super.addAttributes(attributes);
+		if (isFieldEncrypted() && !isDeleted()) {
+			attributes.put(ENCRYPTED, Boolean.TRUE.toString());
+			// seal first, a new seal drops the blind index
+			sealContent();
+			if (indexed) {
+				attributes.put(BLIND_INDEX, getBlindIndex());
+			}
+		}
+	}
+
+	/**
+	 * Gets the text to write: the sealed content, if field level encryption
+	 * is enabled, the content otherwise.
+	 * 
+	 * @return the text
+	 * 
+	 * @throws SysInvalidArgumentException
+	 *             when the fields are locked or sealing fails
+	 */
+	private String getText() throws SysInvalidArgumentException {
+		if (isFieldEncrypted() && !isDeleted()) {
+			return sealContent();
+		}
+		return this.getContent();
+	}
+
 	/**
 	 * Mark this as deleted. The content will be deleted.
 	 * 
@@ -200,6 +460,8 @@ public class StringElement extends MappingElement {
 	@Override
 	public void delete() {
 		this.content = "";
+		this.sealed = null;
+		this.blindIndex = null;
 
 		// must go last, otherwise the update action will be triggered.
 		super.delete();
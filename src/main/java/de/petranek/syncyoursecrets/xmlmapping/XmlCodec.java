@@ -0,0 +1,153 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Class XmlCodec reads and writes the MappingElement tree as XML, the
+ * default format.
+ * 
+ * Like the DOM parser, the reader neither supports DTDs nor resolves external
+ * entities. Adjacent text is coalesced, so element content comes in one piece.
+ * The writer escapes carriage returns, and line breaks and tabs in attribute
+ * values, so all of them read back unchanged.
+ * 
+ * @author Jan Petranek
+ */
+public final class XmlCodec implements ModelCodec {
+
+	/** The name of the codec. */
+	public static final String NAME = "xml";
+
+	/** The encoding of the documents. */
+	static final String ENCODING = StandardCharsets.UTF_8.name();
+
+	/** The byte order mark of UTF-8. */
+	private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+	/** The factory of the stream readers, configured once. */
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	/**
+	 * Instantiates the codec. Use ModelCodecs.XML.
+	 */
+	XmlCodec() {
+		super();
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Accepts a stream starting with a tag, after an optional byte order mark
+	 * and whitespace.
+	 * 
+	 * @see de.petranek.syncyoursecrets.xmlmapping.ModelCodec#accepts(byte[],
+	 *      int)
+	 */
+	@Override
+	public boolean accepts(byte[] head, int length) {
+		int i = 0;
+		if (length >= BOM.length && head[0] == BOM[0] && head[1] == BOM[1]
+				&& head[2] == BOM[2]) {
+			i = BOM.length;
+		}
+		while (i < length && Character.isWhitespace(head[i])) {
+			i++;
+		}
+		return i < length && head[i] == '<';
+	}
+
+	@Override
+	public XMLStreamReader createReader(InputStream in)
+			throws XMLStreamException {
+		synchronized (INPUT_FACTORY) {
+			return INPUT_FACTORY.createXMLStreamReader(in);
+		}
+	}
+
+	@Override
+	public XMLStreamWriter createWriter(OutputStream out)
+			throws XMLStreamException {
+		return new XmlWriter(new OutputStreamWriter(out,
+				StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Create a reader of an XML String.
+	 * 
+	 * @param xmlString
+	 *            the XML
+	 * 
+	 * @return the reader, at the start of the document
+	 * 
+	 * @throws XMLStreamException
+	 *             when the reader cannot be created
+	 */
+	static XMLStreamReader createReader(String xmlString)
+			throws XMLStreamException {
+		synchronized (INPUT_FACTORY) {
+			return INPUT_FACTORY.createXMLStreamReader(new StringReader(
+					xmlString));
+		}
+	}
+
+	/**
+	 * Create a writer of XML characters.
+	 * 
+	 * @param out
+	 *            the character stream
+	 * 
+	 * @return the writer
+	 * 
+	 * @throws XMLStreamException
+	 *             when the writer cannot be created
+	 */
+	static XMLStreamWriter createWriter(Writer out) throws XMLStreamException {
+		return new XmlWriter(out);
+	}
+
+	/**
+	 * Create the factory of the stream readers.
+	 * 
+	 * @return the factory
+	 */
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+
+}
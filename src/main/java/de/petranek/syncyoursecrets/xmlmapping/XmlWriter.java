@@ -0,0 +1,416 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The Class XmlWriter writes StAX events as XML text. Unlike the JDK's
+ * writer, it escapes carriage returns in text and line breaks and tabs in
+ * attribute values, which a parser would otherwise normalize: the content of
+ * a field reads back exactly as written. Namespaces are not supported, as
+ * with the other writers of the model.
+ * 
+ * @author Jan Petranek
+ */
+final class XmlWriter implements XMLStreamWriter {
+
+	/** The character stream. */
+	private final Writer out;
+
+	/** The names of the open elements. */
+	private final Deque<String> open = new ArrayDeque<String>();
+
+	/** Whether a start tag has been begun, but not closed yet. */
+	private boolean startOpen;
+
+	/** Whether the open start tag is an empty element. */
+	private boolean startEmpty;
+
+	/**
+	 * Instantiates a new writer.
+	 * 
+	 * @param out
+	 *            the character stream, not closed by the writer
+	 */
+	XmlWriter(Writer out) {
+		super();
+		this.out = out;
+	}
+
+	@Override
+	public void writeStartDocument() throws XMLStreamException {
+		writeStartDocument(XmlCodec.ENCODING, "1.0");
+	}
+
+	@Override
+	public void writeStartDocument(String version) throws XMLStreamException {
+		writeStartDocument(XmlCodec.ENCODING, version);
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version)
+			throws XMLStreamException {
+		write("<?xml version=\"" + version + "\" encoding=\"" + encoding
+				+ "\"?>");
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		closeStart();
+		write('<');
+		write(localName);
+		open.push(localName);
+		startOpen = true;
+		startEmpty = false;
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeStartElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		closeStart();
+		write('<');
+		write(localName);
+		startOpen = true;
+		startEmpty = true;
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value)
+			throws XMLStreamException {
+		if (!startOpen) {
+			throw new XMLStreamException("Attribute " + localName
+					+ " outside of a start tag");
+		}
+		write(' ');
+		write(localName);
+		write("=\"");
+		escape(value, true);
+		write('"');
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI,
+			String localName, String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+		writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		closeStart();
+		escape(text, false);
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len)
+			throws XMLStreamException {
+		writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		writeCharacters(data);
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		closeStart();
+		if (open.isEmpty()) {
+			throw new XMLStreamException("No element to end");
+		}
+		write("</");
+		write(open.pop());
+		write('>');
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		while (!open.isEmpty()) {
+			writeEndElement();
+		}
+		closeStart();
+	}
+
+	@Override
+	public void writeComment(String data) throws XMLStreamException {
+		closeStart();
+		write("<!--");
+		write(data);
+		write("-->");
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target)
+			throws XMLStreamException {
+		writeProcessingInstruction(target, null);
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data)
+			throws XMLStreamException {
+		closeStart();
+		write("<?");
+		write(target);
+		if (data != null) {
+			write(' ');
+			write(data);
+		}
+		write("?>");
+	}
+
+	@Override
+	public void writeDTD(String dtd) throws XMLStreamException {
+		throw new XMLStreamException("DTDs are not supported");
+	}
+
+	@Override
+	public void writeEntityRef(String name) throws XMLStreamException {
+		throw new XMLStreamException("Entity references are not supported");
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI)
+			throws XMLStreamException {
+		checkNoNamespace(namespaceURI);
+	}
+
+	@Override
+	public String getPrefix(String uri) throws XMLStreamException {
+		return null;
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		checkNoNamespace(uri);
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context)
+			throws XMLStreamException {
+		throw new XMLStreamException("Namespaces are not supported");
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return BinaryStreamReader.NO_NAMESPACES;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		throw new IllegalArgumentException("Property " + name
+				+ " is not supported");
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+	/**
+	 * Flushes the writer, the character stream is not closed.
+	 * 
+	 * @see javax.xml.stream.XMLStreamWriter#close()
+	 */
+	@Override
+	public void close() throws XMLStreamException {
+		flush();
+	}
+
+	/**
+	 * Reject namespaces, the model does not use them.
+	 * 
+	 * @param namespaceURI
+	 *            the namespace, may be null or empty
+	 * 
+	 * @throws XMLStreamException
+	 *             when a namespace is given
+	 */
+	private static void checkNoNamespace(String namespaceURI)
+			throws XMLStreamException {
+		if (namespaceURI != null && !namespaceURI.isEmpty()) {
+			throw new XMLStreamException("Namespaces are not supported");
+		}
+	}
+
+	/**
+	 * Close the open start tag, if any.
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void closeStart() throws XMLStreamException {
+		if (startOpen) {
+			startOpen = false;
+			write(startEmpty ? "/>" : ">");
+		}
+	}
+
+	/**
+	 * Write text or an attribute value with the markup characters escaped.
+	 * Carriage returns are escaped everywhere, line breaks and tabs in
+	 * attribute values only, so the parser does not normalize them.
+	 * 
+	 * @param text
+	 *            the text
+	 * @param attribute
+	 *            true, if the text is an attribute value
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void escape(String text, boolean attribute)
+			throws XMLStreamException {
+		try {
+			int start = 0;
+			for (int i = 0; i < text.length(); i++) {
+				String replacement = replacement(text.charAt(i), attribute);
+				if (replacement != null) {
+					out.write(text, start, i - start);
+					out.write(replacement);
+					start = i + 1;
+				}
+			}
+			out.write(text, start, text.length() - start);
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+	/**
+	 * Gets the escaped form of a character.
+	 * 
+	 * @param c
+	 *            the character
+	 * @param attribute
+	 *            true, if the character is part of an attribute value
+	 * 
+	 * @return the replacement or null, if it is written as it is
+	 */
+	private static String replacement(char c, boolean attribute) {
+		switch (c) {
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		case '\r':
+			return "&#13;";
+		case '"':
+			return attribute ? "&quot;" : null;
+		case '\n':
+			return attribute ? "&#10;" : null;
+		case '\t':
+			return attribute ? "&#9;" : null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Write markup.
+	 * 
+	 * @param text
+	 *            the markup
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void write(String text) throws XMLStreamException {
+		try {
+			out.write(text);
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+	/**
+	 * Write a markup character.
+	 * 
+	 * @param c
+	 *            the character
+	 * 
+	 * @throws XMLStreamException
+	 *             when the stream cannot be written
+	 */
+	private void write(char c) throws XMLStreamException {
+		try {
+			out.write(c);
+		} catch (IOException e) {
+			throw new XMLStreamException("Failed to write", e);
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.AEADBadTagException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class ChunkedCipherTest tests the chunked encryption, with chunks small
+ * enough to get many of them.
+ * 
+ * @author Jan Petranek
+ */
+public class ChunkedCipherTest {
+
+	/** The chunk size. */
+	private static final int CHUNK_SIZE = 64;
+
+	/** The sealed size of a full chunk. */
+	private static final int SEALED_SIZE = CHUNK_SIZE + 16;
+
+	/** The pool, its 2 threads make small batches. */
+	private ForkJoinPool pool;
+
+	/** The nonce prefix of the last encryption. */
+	private byte[] prefix;
+
+	/** The cipher of the last encryption. */
+	private ChunkedCipher cipher;
+
+	/** The engine. */
+	private static final CipherEngine ENGINE = new CipherEngine(null);
+
+	/** The key. */
+	private static final byte[] KEY = new byte[32];
+
+	/** The additional authenticated data. */
+	private static final byte[] AAD = "header".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Sets the testcase up.
+	 */
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(2);
+	}
+
+	/**
+	 * Shut the pool down.
+	 */
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Create some plaintext.
+	 * 
+	 * @param length
+	 *            the length
+	 * 
+	 * @return the plaintext
+	 */
+	private static byte[] plaintext(int length) {
+		byte[] plain = new byte[length];
+		new Random(length).nextBytes(plain);
+		return plain;
+	}
+
+	/**
+	 * Encrypt the plaintext, written in pieces of odd sizes. Each encryption
+	 * gets a fresh nonce prefix, as a nonce must never be reused.
+	 * 
+	 * @param plain
+	 *            the plaintext
+	 * 
+	 * @return the chunks
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private byte[] encrypt(byte[] plain) throws IOException {
+		prefix = CipherEngine.randomBytes(ChunkedCipher.NONCE_PREFIX_SIZE);
+		cipher = new ChunkedCipher(ENGINE, KEY, prefix, AAD, CHUNK_SIZE, pool);
+		ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+		OutputStream out = cipher.encrypt(sealed);
+		int offset = 0;
+		int piece = 1;
+		while (offset < plain.length) {
+			int length = Math.min(piece, plain.length - offset);
+			out.write(plain, offset, length);
+			offset += length;
+			piece = piece * 3 % 101 + 1;
+		}
+		out.close();
+		return sealed.toByteArray();
+	}
+
+	/**
+	 * Decrypt the chunks with the cipher of the last encryption.
+	 * 
+	 * @param sealed
+	 *            the chunks
+	 * 
+	 * @return the plaintext
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private byte[] decrypt(byte[] sealed) throws IOException {
+		InputStream in = cipher.decrypt(
+				new ByteArrayInputStream(sealed));
+		try {
+			ByteArrayOutputStream plain = new ByteArrayOutputStream();
+			byte[] buffer = new byte[100];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				plain.write(buffer, 0, count);
+			}
+			return plain.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Assert that decryption fails authentication.
+	 * 
+	 * @param sealed
+	 *            the chunks
+	 */
+	private void assertRejected(byte[] sealed) {
+		try {
+			decrypt(sealed);
+			fail("Decryption should fail");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof AEADBadTagException);
+		}
+	}
+
+	/**
+	 * Payloads around the chunk boundaries and spanning several batches are
+	 * restored.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		for (int length : new int[] { 0, 1, CHUNK_SIZE - 1, CHUNK_SIZE,
+				CHUNK_SIZE + 1, 2 * CHUNK_SIZE, 1000, 10000 }) {
+			byte[] plain = plaintext(length);
+			byte[] sealed = encrypt(plain);
+			int chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			assertEquals("Size for " + length, chunks * 16 + length,
+					sealed.length);
+			assertArrayEquals("Length " + length, plain, decrypt(sealed));
+		}
+	}
+
+	/**
+	 * Dropping the final chunk is detected, even at a chunk boundary.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testTruncated() throws Exception {
+		byte[] sealed = encrypt(plaintext(3 * CHUNK_SIZE + 10));
+		assertRejected(Arrays.copyOf(sealed, 3 * SEALED_SIZE));
+		assertRejected(Arrays.copyOf(sealed, 3 * SEALED_SIZE + 5));
+		assertRejected(new byte[0]);
+	}
+
+	/**
+	 * Swapped chunks are detected.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSwapped() throws Exception {
+		byte[] sealed = encrypt(plaintext(3 * CHUNK_SIZE + 10));
+		byte[] swapped = sealed.clone();
+		System.arraycopy(sealed, 0, swapped, SEALED_SIZE, SEALED_SIZE);
+		System.arraycopy(sealed, SEALED_SIZE, swapped, 0, SEALED_SIZE);
+		assertRejected(swapped);
+	}
+
+	/**
+	 * A modified chunk is detected.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testTampered() throws Exception {
+		byte[] sealed = encrypt(plaintext(1000));
+		sealed[SEALED_SIZE * 5 + 3] ^= 1;
+		assertRejected(sealed);
+	}
+
+	/**
+	 * Chunks sealed with other additional data are rejected.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testOtherAad() throws Exception {
+		byte[] sealed = encrypt(plaintext(100));
+		cipher = new ChunkedCipher(ENGINE, KEY, prefix, "other"
+				.getBytes(StandardCharsets.UTF_8), CHUNK_SIZE, pool);
+		assertRejected(sealed);
+	}
+
+}
@@ -0,0 +1,370 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+
+/**
+ * The Class ContainerHeaderTest tests serialization and detection of the
+ * container header.
+ * 
+ * @author Jan Petranek
+ */
+public class ContainerHeaderTest {
+
+	/**
+	 * Create a complete header.
+	 * 
+	 * @return the header
+	 */
+	private ContainerHeader createHeader() {
+		ContainerHeader header = new ContainerHeader();
+		header.setCipherScheme(CipherScheme.AES_CBC);
+		header.setKdfAlgorithm(KdfAlgorithm.PKCS12_SHA256);
+		header.setIterations(1000);
+		header.setSalt(new byte[] { 1, 2, 3, 4 });
+		header.setIv(new byte[16]);
+		return header;
+	}
+
+	/**
+	 * A header is read back as written, the payload follows.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		byte[] container = new byte[bytes.length + 1];
+		System.arraycopy(bytes, 0, container, 0, bytes.length);
+		container[bytes.length] = 42;
+
+		ByteArrayInputStream in = new ByteArrayInputStream(container);
+		ContainerHeader header = ContainerHeader.read(in);
+		assertEquals(CipherScheme.AES_CBC, header.getCipherScheme());
+		assertEquals(KdfAlgorithm.PKCS12_SHA256, header.getKdfAlgorithm());
+		assertEquals(1000, header.getIterations());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, header.getSalt());
+		assertArrayEquals(new byte[16], header.getIv());
+		assertEquals("Payload follows", 42, in.read());
+	}
+
+	/**
+	 * The scrypt parameters are read back as written.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testScryptParameters() throws Exception {
+		ContainerHeader header = createHeader();
+		KdfParameters scrypt = KdfParameters.scrypt(1 << 15, 8, 4);
+		header.setKdfParameters(scrypt);
+		ContainerHeader read = ContainerHeader.read(new ByteArrayInputStream(
+				header.toByteArray()));
+		assertEquals(scrypt, read.getKdfParameters());
+	}
+
+	/**
+	 * The compression is read back as written, uncompressed headers do not
+	 * mention it.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCompression() throws Exception {
+		ContainerHeader header = createHeader();
+		header.setCipherScheme(CipherScheme.AES_GCM);
+		header.setIv(new byte[12]);
+		int length = header.toByteArray().length;
+		header.setCompression(Compression.DEFLATE);
+		byte[] bytes = header.toByteArray();
+		assertEquals("Compression field", length + 4, bytes.length);
+		assertEquals(Compression.DEFLATE, ContainerHeader.read(
+				new ByteArrayInputStream(bytes)).getCompression());
+		assertEquals(Compression.NONE, ContainerHeader.read(
+				new ByteArrayInputStream(createHeader().toByteArray()))
+				.getCompression());
+	}
+
+	/**
+	 * Compression is not written along with an unauthenticated cipher.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testCompressionUnauthenticated() throws Exception {
+		ContainerHeader header = createHeader();
+		header.setCompression(Compression.DEFLATE);
+		header.toByteArray();
+	}
+
+	/**
+	 * Compression is not read along with an unauthenticated cipher.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testReadCompressionUnauthenticated() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		// replace the END field by the compression and END
+		byte[] forged = Arrays.copyOf(bytes, bytes.length + 4);
+		System.arraycopy(new byte[] { ContainerHeader.COMPRESSION, 0, 1,
+				(byte) Compression.DEFLATE.getId(), ContainerHeader.END, 0,
+				0 }, 0, forged, bytes.length - 3, 7);
+		ContainerHeader.read(new ByteArrayInputStream(forged));
+	}
+
+	/**
+	 * Invalid key derivation parameters are rejected, e.g. a scrypt cost
+	 * which is no power of 2.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testInvalidKdfParameters() throws Exception {
+		ContainerHeader header = createHeader();
+		header.setKdfAlgorithm(KdfAlgorithm.SCRYPT);
+		header.toByteArray();
+	}
+
+	/**
+	 * An iteration count beyond MAX_PBKDF2_ITERATIONS is rejected on reading,
+	 * so a crafted file cannot stall unlocking.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testReadTooManyIterations() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		replaceIntField(bytes, ContainerHeader.KDF_ITERATIONS, 1000,
+				KdfParameters.MAX_PBKDF2_ITERATIONS + 1);
+		ContainerHeader.read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Scrypt parameters, whose lanes together would need more than
+	 * MAX_MEMORY, are rejected on reading. Each lane stays below
+	 * MAX_LANE_MEMORY, but the size of all lanes overflows an int.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testReadScryptOverflow() throws Exception {
+		ContainerHeader header = createHeader();
+		header.setKdfParameters(KdfParameters.scrypt(1 << 15, 8, 4));
+		byte[] bytes = header.toByteArray();
+		replaceIntField(bytes, ContainerHeader.KDF_ITERATIONS, 1 << 15, 2);
+		replaceIntField(bytes, ContainerHeader.KDF_BLOCK_SIZE, 8, 1 << 20);
+		replaceIntField(bytes, ContainerHeader.KDF_LANES, 4,
+				KdfParameters.MAX_LANES);
+		ContainerHeader.read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * A key slot with scrypt parameters overflowing the memory bound is
+	 * rejected on parsing.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testKeySlotScryptOverflow() throws Exception {
+		byte[] bytes = KeySlot.seal(new byte[KeySlot.DATA_KEY_SIZE],
+				KdfParameters.scrypt(2, 8, 1), new byte[16], new byte[32])
+				.toByteArray();
+		// algorithm id, followed by cost, block size and lanes
+		writeInt(bytes, 5, 1 << 20);
+		writeInt(bytes, 9, KdfParameters.MAX_LANES);
+		KeySlot.fromByteArray(bytes);
+	}
+
+	/**
+	 * Replace the value of a 4 byte header field.
+	 * 
+	 * @param bytes
+	 *            the serialized header
+	 * @param tag
+	 *            the tag of the field
+	 * @param oldValue
+	 *            the value to replace
+	 * @param newValue
+	 *            the new value
+	 */
+	private static void replaceIntField(byte[] bytes, int tag, int oldValue,
+			int newValue) {
+		byte[] field = new byte[7];
+		field[0] = (byte) tag;
+		field[2] = 4;
+		writeInt(field, 3, oldValue);
+		int offset = 0;
+		while (!Arrays.equals(field, Arrays.copyOfRange(bytes, offset, offset
+				+ field.length))) {
+			offset++;
+		}
+		writeInt(bytes, offset + 3, newValue);
+	}
+
+	/**
+	 * Write an int in 4 bytes, big endian.
+	 * 
+	 * @param bytes
+	 *            the bytes to write to
+	 * @param offset
+	 *            the offset
+	 * @param value
+	 *            the value
+	 */
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+
+	/**
+	 * Headers with key slots are read back as written and authenticate the
+	 * same data regardless of their key slots.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testKeySlots() throws Exception {
+		ContainerHeader header = new ContainerHeader();
+		header.setCipherScheme(CipherScheme.AES_GCM);
+		header.setIv(new byte[12]);
+		KeySlot slot = KeySlot.seal(new byte[KeySlot.DATA_KEY_SIZE],
+				KdfParameters.pbkdf2(1000), new byte[16], new byte[32]);
+		header.setKeySlots(Arrays.asList(slot));
+		byte[] aad = header.getAuthenticatedData();
+
+		byte[] bytes = header.toByteArray();
+
+		ContainerHeader read = ContainerHeader.read(new ByteArrayInputStream(
+				bytes));
+		assertEquals(1, read.getKeySlots().size());
+		assertArrayEquals(new byte[KeySlot.DATA_KEY_SIZE], read.getKeySlots()
+				.get(0).open(new byte[32]));
+
+		header.setKeySlots(Arrays.asList(slot, slot));
+		assertArrayEquals("Slots not authenticated", aad, header
+				.getAuthenticatedData());
+	}
+
+	/**
+	 * Padding, as written by earlier versions, is read and ignored.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testReadPadding() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		// insert an empty padding field of 2 bytes before the END field
+		byte[] padded = new byte[bytes.length + 5];
+		System.arraycopy(bytes, 0, padded, 0, bytes.length - 3);
+		padded[bytes.length - 3] = ContainerHeader.PADDING;
+		padded[bytes.length - 1] = 2;
+		System.arraycopy(bytes, bytes.length - 3, padded, bytes.length + 2, 3);
+		ContainerHeader header = ContainerHeader.read(new ByteArrayInputStream(
+				padded));
+		assertEquals(1000, header.getIterations());
+		assertEquals("Whole header read", padded.length,
+				header.getEncoded().length);
+	}
+
+	/**
+	 * Containers are detected, Base64 text is not. Detection does not consume
+	 * the stream.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testIsContainer() throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(createHeader()
+				.toByteArray());
+		assertTrue(ContainerHeader.isContainer(in));
+		assertEquals(0x89, in.read());
+
+		assertFalse(ContainerHeader.isContainer(new ByteArrayInputStream(
+				"U1lT".getBytes(StandardCharsets.US_ASCII))));
+		assertFalse(ContainerHeader.isContainer(new ByteArrayInputStream(
+				new byte[2])));
+	}
+
+	/**
+	 * Unknown header fields are rejected.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testUnknownField() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		// the first field starts after magic and version
+		bytes[ContainerHeader.MAGIC.length + 1] = 99;
+		ContainerHeader.read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Incomplete headers cannot be written.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testIncomplete() throws Exception {
+		ContainerHeader header = createHeader();
+		header.setIv(null);
+		header.toByteArray();
+	}
+
+	/**
+	 * A truncated header is an I/O error.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = IOException.class)
+	public void testTruncated() throws Exception {
+		byte[] bytes = createHeader().toByteArray();
+		ContainerHeader.read(new ByteArrayInputStream(bytes, 0, 10));
+	}
+
+}
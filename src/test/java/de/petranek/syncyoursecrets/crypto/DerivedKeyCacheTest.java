@@ -0,0 +1,151 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class DerivedKeyCacheTest tests bounds, expiry and invalidation of the
+ * DerivedKeyCache.
+ * 
+ * @author Jan Petranek
+ */
+public class DerivedKeyCacheTest {
+
+	/** The time to live in milliseconds. */
+	private static final long TTL = 1000;
+
+	/** The key derivation parameters. */
+	private static final KdfParameters KDF = KdfParameters.pkcs12(1000);
+
+	/** The salt. */
+	private static final byte[] SALT = { 1, 2, 3, 4 };
+
+	/** The simulated time, in nanoseconds. */
+	private AtomicLong now = new AtomicLong();
+
+	/** The cache under test. */
+	private DerivedKeyCache cache;
+
+	/**
+	 * Sets the testcase up.
+	 */
+	@Before
+	public void setUp() {
+		cache = new DerivedKeyCache(2, TTL, now::get);
+	}
+
+	/**
+	 * Creates a key.
+	 * 
+	 * @param value
+	 *            the value of every key byte
+	 * @return the key
+	 */
+	private static DerivedKey createKey(int value) {
+		return new DerivedKey(new byte[] { (byte) value, (byte) value },
+				new byte[] { (byte) value });
+	}
+
+	/**
+	 * A key is only found for the same password, salt and parameters.
+	 */
+	@Test
+	public void testLookup() {
+		cache.put("secret", KDF, SALT, createKey(7));
+
+		DerivedKey key = cache.get("secret", KDF, SALT);
+		assertNotNull("Cached key", key);
+		assertArrayEquals("Key", new byte[] { 7, 7 }, key.getKey());
+
+		assertNull("Other password", cache.get("Secret", KDF, SALT));
+		assertNull("Other salt", cache.get("secret", KDF, new byte[] { 1 }));
+		assertNull("Other iterations", cache.get("secret", KdfParameters
+				.pkcs12(1001), SALT));
+		assertNull("Other algorithm", cache.get("secret", KdfParameters
+				.pbkdf2(1000), SALT));
+	}
+
+	/**
+	 * The caller may wipe the keys it got without affecting the cache.
+	 */
+	@Test
+	public void testCopies() {
+		DerivedKey key = createKey(7);
+		cache.put("secret", KDF, SALT, key);
+		key.wipe();
+		cache.get("secret", KDF, SALT).wipe();
+
+		assertArrayEquals("Key", new byte[] { 7, 7 }, cache.get("secret", KDF,
+				SALT).getKey());
+	}
+
+	/**
+	 * Keys expire after the time to live.
+	 */
+	@Test
+	public void testExpiry() {
+		cache.put("secret", KDF, SALT, createKey(7));
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL - 1));
+		assertNotNull("Still valid", cache.get("secret", KDF, SALT));
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		assertNull("Expired", cache.get("secret", KDF, SALT));
+		assertEquals("Expired key removed", 0, cache.size());
+	}
+
+	/**
+	 * The least recently used key is evicted first.
+	 */
+	@Test
+	public void testBound() {
+		cache.put("first", KDF, SALT, createKey(1));
+		cache.put("second", KDF, SALT, createKey(2));
+		cache.get("first", KDF, SALT);
+		cache.put("third", KDF, SALT, createKey(3));
+
+		assertEquals("Bounded size", 2, cache.size());
+		assertNull("Evicted", cache.get("second", KDF, SALT));
+		assertNotNull("Recently used", cache.get("first", KDF, SALT));
+		assertNotNull("Recently added", cache.get("third", KDF, SALT));
+	}
+
+	/**
+	 * Invalidation removes all keys.
+	 */
+	@Test
+	public void testInvalidateAll() {
+		cache.put("first", KDF, SALT, createKey(1));
+		cache.put("second", KDF, SALT, createKey(2));
+		cache.invalidateAll();
+
+		assertEquals("Empty cache", 0, cache.size());
+		assertNull("Invalidated", cache.get("first", KDF, SALT));
+	}
+
+}
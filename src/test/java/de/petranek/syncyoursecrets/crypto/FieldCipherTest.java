@@ -0,0 +1,152 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+
+/**
+ * The Class FieldCipherTest tests sealing and opening single fields.
+ * 
+ * @author Jan Petranek
+ */
+public class FieldCipherTest {
+
+	/** The additional authenticated data. */
+	private static final byte[] AAD = "field".getBytes(StandardCharsets.UTF_8);
+
+	/** The cipher under test. */
+	private FieldCipher cipher;
+
+	/**
+	 * Sets the testcase up.
+	 */
+	@Before
+	public void setUp() {
+		cipher = new FieldCipher(new byte[32]);
+	}
+
+	/**
+	 * Wipe the key.
+	 */
+	@After
+	public void tearDown() {
+		cipher.wipe();
+	}
+
+	/**
+	 * A sealed field is opened again and carries the key id.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		String sealed = cipher.seal("Hello, Wörld!", AAD);
+		assertEquals("Hello, Wörld!", cipher.open(sealed, AAD));
+		assertEquals(cipher.getKeyId(), FieldCipher.keyIdOf(sealed));
+		assertNotEquals("Fresh nonce", sealed, cipher.seal("Hello, Wörld!",
+				AAD));
+	}
+
+	/**
+	 * A field sealed for another place cannot be opened.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testOtherAad() throws Exception {
+		String sealed = cipher.seal("secret", AAD);
+		cipher.open(sealed, "other".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * A modified field cannot be opened.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testTampered() throws Exception {
+		byte[] raw = Base64.getDecoder().decode(cipher.seal("secret", AAD));
+		raw[raw.length - 1] ^= 1;
+		cipher.open(Base64.getEncoder().encodeToString(raw), AAD);
+	}
+
+	/**
+	 * A field sealed with another key is rejected.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testOtherKey() throws Exception {
+		byte[] masterKey = new byte[32];
+		masterKey[0] = 1;
+		FieldCipher other = new FieldCipher(masterKey);
+		cipher.open(other.seal("secret", AAD), AAD);
+	}
+
+	/**
+	 * Blind indexes are deterministic, but depend on the field name and the
+	 * key.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testBlindIndex() throws Exception {
+		String index = cipher.blindIndex("username", "alice");
+		assertEquals("Deterministic", index, cipher.blindIndex("username",
+				"alice"));
+		assertEquals("Size", FieldCipher.BLIND_INDEX_SIZE, Base64
+				.getDecoder().decode(index).length);
+		assertNotEquals("Value", index, cipher.blindIndex("username", "bob"));
+		assertNotEquals("Field name", index, cipher.blindIndex("url", "alice"));
+
+		byte[] masterKey = new byte[32];
+		masterKey[0] = 1;
+		FieldCipher other = new FieldCipher(masterKey);
+		assertNotEquals("Key", index, other.blindIndex("username", "alice"));
+		other.wipe();
+	}
+
+	/**
+	 * A wiped cipher refuses to work.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testWiped() throws Exception {
+		cipher.wipe();
+		cipher.seal("secret", AAD);
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * The Class KeyDerivationTest checks the key derivation against published
+ * test vectors.
+ * 
+ * @author Jan Petranek
+ */
+public class KeyDerivationTest {
+
+	/**
+	 * PBKDF2-HMAC-SHA256 test vector from RFC 7914, section 11.
+	 */
+	@Test
+	public void testPbkdf2Sha256() {
+		DerivedKey key = KeyDerivation.derivePbkdf2Sha256("passwd", "salt"
+				.getBytes(StandardCharsets.US_ASCII), 1, 512);
+		assertArrayEquals(hex("55ac046e56e3089fec1691c22544b605"
+				+ "f94185216dde0465e68b9d57c20dacbc"
+				+ "49ca9cccf179b645991664b39d77ef31"
+				+ "7c71b845b1e30bd509112041d3a19783"), key.getKey());
+		assertNull("No IV", key.getIv());
+	}
+
+	/**
+	 * Scrypt test vectors from RFC 7914, section 12, including the empty
+	 * password and multiple lanes.
+	 */
+	@Test
+	public void testScrypt() {
+		assertArrayEquals(hex("77d6576238657b203b19ca42c18a0497"
+				+ "f16b4844e3074ae8dfdffa3fede21442"
+				+ "fcd0069ded0948f8326a753a0fc81f17"
+				+ "e8d3e0fb2e0d3628cf35e20c38d18906"), KeyDerivation
+				.deriveScrypt("", new byte[0], 16, 1, 1, 512).getKey());
+		assertArrayEquals(hex("fdbabe1c9d3472007856e7190d01e9fe"
+				+ "7c6ad7cbc8237830e77376634b373162"
+				+ "2eaf30d92e22a3886ff109279d9830da"
+				+ "c727afb94a83ee6d8360cbdfa2cc0640"), KeyDerivation
+				.deriveScrypt("password", "NaCl"
+						.getBytes(StandardCharsets.US_ASCII), 1024, 8, 16, 512)
+				.getKey());
+		assertArrayEquals(hex("7023bdcb3afd7348461c06cd81fd38eb"
+				+ "fda8fbba904f8e3ea9b543f6545da1f2"
+				+ "d5432955613f0fcf62d49705242a9af9"
+				+ "e61e85dc0d651e40dfcf017b45575887"), KeyDerivation
+				.deriveScrypt("pleaseletmein", "SodiumChloride"
+						.getBytes(StandardCharsets.US_ASCII), 16384, 8, 1, 512)
+				.getKey());
+	}
+
+	/**
+	 * HKDF-Expand test vector from RFC 5869, test case 1.
+	 */
+	@Test
+	public void testHkdfExpand() {
+		byte[] okm = KeyDerivation.hkdfExpand(
+				hex("077709362c2e32df0ddc3f0dc47bba63"
+						+ "90b6c73bb50f9c3122ec844ad7c2b3e5"),
+				hex("f0f1f2f3f4f5f6f7f8f9"), 42);
+		assertArrayEquals(hex("3cb25f25faacd57a90434f64d0362f2a"
+				+ "2d2d0a90cf1a5a4c5db02d56ecc4c5bf" + "34007208d5b887185865"),
+				okm);
+	}
+
+	/**
+	 * Decode a hex string.
+	 * 
+	 * @param hex
+	 *            the hex string
+	 * 
+	 * @return the bytes
+	 */
+	static byte[] hex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2),
+					16);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+/**
+ * The Class ProviderSelectorTest tests the choice of providers, with and
+ * without benchmark.
+ * 
+ * @author Jan Petranek
+ */
+public class ProviderSelectorTest {
+
+	/** The key. */
+	private static final SecretKeySpec KEY = new SecretKeySpec(new byte[32],
+			"AES");
+
+	/** The plaintext. */
+	private static final byte[] PLAINTEXT = "<list>Hello, Wörld!</list>"
+			.getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Without benchmark, AES-CBC stays with Bouncycastle.
+	 */
+	@Test
+	public void testPreferred() {
+		ProviderSelector selector = new ProviderSelector();
+		ProviderSelector.Choice choice = selector.choose(CipherScheme.AES_CBC);
+		assertEquals("Provider", BouncyCastleProvider.PROVIDER_NAME, choice
+				.getProvider().getName());
+		assertFalse("Benchmarked", choice.isBenchmarked());
+		assertTrue("Reported", selector.getChoices().containsKey(
+				CipherScheme.AES_CBC));
+	}
+
+	/**
+	 * The benchmark picks the fastest compliant provider, which encrypts
+	 * exactly like Bouncycastle.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testBenchmark() throws Exception {
+		ProviderSelector selector = new ProviderSelector();
+		selector.setBenchmark(true);
+		for (CipherScheme scheme : CipherScheme.values()) {
+			ProviderSelector.Choice choice = selector.choose(scheme);
+			assertTrue("Benchmarked", choice.isBenchmarked());
+			assertTrue("Fastest measured", choice.getThroughput().containsKey(
+					choice.getProvider().getName()));
+			for (long throughput : choice.getThroughput().values()) {
+				assertTrue("Throughput", throughput <= choice.getThroughput()
+						.get(choice.getProvider().getName()));
+			}
+		}
+
+		IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+		byte[] expected = new CipherEngine(CipherEngine.bouncyCastle())
+				.cipher(CipherScheme.AES_CBC.getTransformation(),
+						Cipher.ENCRYPT_MODE, KEY, iv).doFinal(PLAINTEXT);
+		byte[] actual = selector.engine(CipherScheme.AES_CBC).cipher(
+				CipherScheme.AES_CBC.getTransformation(), Cipher.ENCRYPT_MODE,
+				KEY, iv).doFinal(PLAINTEXT);
+		assertArrayEquals("Byte compatible", expected, actual);
+	}
+
+	/**
+	 * Changing the preference makes the choice anew.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testPrefer() throws Exception {
+		ProviderSelector selector = new ProviderSelector();
+		selector.choose(CipherScheme.AES_CBC);
+		selector.prefer(CipherScheme.AES_CBC, null);
+		assertFalse("Choice dropped", selector.getChoices().containsKey(
+				CipherScheme.AES_CBC));
+		assertEquals("JCE's preferred provider", Cipher.getInstance(
+				CipherScheme.AES_CBC.getTransformation()).getProvider()
+				.getName(), selector.choose(CipherScheme.AES_CBC)
+				.getProvider().getName());
+	}
+
+}
@@ -0,0 +1,661 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.junit.After;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.crypto.ChunkedCipher;
+import de.petranek.syncyoursecrets.crypto.CipherScheme;
+import de.petranek.syncyoursecrets.crypto.Compression;
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+import de.petranek.syncyoursecrets.crypto.DerivedKey;
+import de.petranek.syncyoursecrets.crypto.KdfAlgorithm;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.crypto.KeyDerivation;
+
+/**
+ * The Class EnryptionUtilTest makes sure, the EnryptionUtil stays compatible
+ * with files encrypted by Jasypt, as done by earlier versions.
+ * 
+ * @author Jan Petranek
+ */
+public class EnryptionUtilTest {
+
+	/** The password. */
+	private static final String PASSWORD = "sécret";
+
+	/** The plaintext, with some non-ASCII characters. */
+	private static final String PLAINTEXT = "<list>Hello, Wörld!</list>";
+
+	/**
+	 * Wipe the cached keys after each test.
+	 */
+	@After
+	public void tearDown() {
+		EnryptionUtil.lock();
+		EnryptionUtil.getProviderSelector().setBenchmark(false);
+	}
+
+	/**
+	 * Encrypt the plaintext into a container.
+	 * 
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the container
+	 * 
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private static byte[] encryptContainer(String password) throws Exception {
+		return encryptContainer(password, EncryptionOptions.DEFAULT);
+	}
+
+	/**
+	 * Encrypt the plaintext into a container with the given options.
+	 * 
+	 * @param password
+	 *            the password
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the container
+	 * 
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private static byte[] encryptContainer(String password,
+			EncryptionOptions options) throws Exception {
+		ByteArrayOutputStream cypher = new ByteArrayOutputStream();
+		OutputStream out = EnryptionUtil.encryptStream(cypher, password, null,
+				options);
+		out.write(PLAINTEXT.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		return cypher.toByteArray();
+	}
+
+	/**
+	 * Decrypt a container.
+	 * 
+	 * @param cypher
+	 *            the container
+	 * @param password
+	 *            the password
+	 * 
+	 * @return the plaintext
+	 * 
+	 * @throws Exception
+	 *             when the decryption fails
+	 */
+	private static String decryptContainer(byte[] cypher, String password)
+			throws Exception {
+		InputStream in = EnryptionUtil.decryptStream(new ByteArrayInputStream(
+				cypher), password);
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0) {
+			plain.write(b);
+		}
+		in.close();
+		return new String(plain.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates the reference encryptor, as used up to version 0.2.0.
+	 * 
+	 * @return the Jasypt encryptor
+	 */
+	private static StandardPBEStringEncryptor createJasyptEncryptor() {
+		StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+		encryptor.setProvider(new BouncyCastleProvider());
+		encryptor.setAlgorithm("PBEWITHSHA256AND256BITAES-CBC-BC");
+		encryptor.setPassword(PASSWORD);
+		return encryptor;
+	}
+
+	/**
+	 * Cyphertexts created by Jasypt can be decrypted.
+	 * 
+	 * @throws SysCryptoException
+	 *             when the test fails
+	 */
+	@Test
+	public void testDecryptJasypt() throws SysCryptoException {
+		String cypher = createJasyptEncryptor().encrypt(PLAINTEXT);
+		assertEquals("Decrypted text", PLAINTEXT, EnryptionUtil
+				.decryptString(cypher, PASSWORD));
+	}
+
+	/**
+	 * Cyphertexts can be decrypted by Jasypt.
+	 * 
+	 * @throws SysCryptoException
+	 *             when the test fails
+	 */
+	@Test
+	public void testEncryptForJasypt() throws SysCryptoException {
+		String cypher = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD);
+		assertEquals("Decrypted text", PLAINTEXT, createJasyptEncryptor()
+				.decrypt(cypher));
+	}
+
+	/**
+	 * Every encryption uses a fresh salt, even if the key is cached.
+	 * 
+	 * @throws SysCryptoException
+	 *             when the test fails
+	 */
+	@Test
+	public void testFreshSalt() throws SysCryptoException {
+		String first = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD);
+		String second = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD);
+		assertNotEquals("Cyphertexts differ", first, second);
+		assertEquals("Decrypted text", PLAINTEXT, EnryptionUtil
+				.decryptString(second, PASSWORD));
+	}
+
+	/**
+	 * Decryption with a cached key for another password must fail.
+	 * 
+	 * @throws SysCryptoException
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testWrongPassword() throws SysCryptoException {
+		String cypher = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD);
+		EnryptionUtil.decryptString(cypher, "wrong");
+	}
+
+	/**
+	 * Decryption still works after the keys have been wiped.
+	 * 
+	 * @throws SysCryptoException
+	 *             when the test fails
+	 */
+	@Test
+	public void testLock() throws SysCryptoException {
+		String cypher = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD);
+		EnryptionUtil.lock();
+		assertEquals("No cached keys", 0, EnryptionUtil.getKeyCache().size());
+		assertEquals("Decrypted text", PLAINTEXT, EnryptionUtil
+				.decryptString(cypher, PASSWORD));
+	}
+
+	/**
+	 * Many threads en- and decrypt at the same time, with different
+	 * passwords.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testConcurrentUse() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 64; i++) {
+				final String password = PASSWORD + (i % 4);
+				final String plaintext = PLAINTEXT + i;
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws SysCryptoException {
+						String cypher = EnryptionUtil.encryptString(plaintext,
+								password);
+						return EnryptionUtil.decryptString(cypher, password);
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals("Decrypted text", PLAINTEXT + i, results.get(i)
+						.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * By default, containers use AES-GCM with PBKDF2.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testGcmContainer() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD);
+		ContainerHeader header = ContainerHeader
+				.read(new ByteArrayInputStream(cypher));
+		assertEquals(CipherScheme.AES_GCM, header.getCipherScheme());
+		assertEquals(KdfAlgorithm.PBKDF2_SHA256, header.getKdfAlgorithm());
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+	}
+
+	/**
+	 * Containers with AES-CBC can still be chosen, both schemes are read.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testCbcContainer() throws Exception {
+		byte[] gcm = encryptContainer(PASSWORD);
+		byte[] cbc = encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withCipherScheme(CipherScheme.AES_CBC));
+		assertEquals(CipherScheme.AES_CBC, ContainerHeader.read(
+				new ByteArrayInputStream(cbc)).getCipherScheme());
+
+		assertEquals("Decrypted CBC", PLAINTEXT, decryptContainer(cbc,
+				PASSWORD));
+		assertEquals("Decrypted GCM", PLAINTEXT, decryptContainer(gcm,
+				PASSWORD));
+	}
+
+	/**
+	 * Chunked containers store their chunk size and are read like any other.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testChunkedContainer() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withCipherScheme(CipherScheme.AES_GCM_CHUNKED));
+		ContainerHeader header = ContainerHeader
+				.read(new ByteArrayInputStream(cypher));
+		assertEquals(CipherScheme.AES_GCM_CHUNKED, header.getCipherScheme());
+		assertEquals(ChunkedCipher.DEFAULT_CHUNK_SIZE, header.getChunkSize());
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+	}
+
+	/**
+	 * Compressed containers shrink redundant text and are read like any
+	 * other; the CBC scheme is never compressed.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testCompressedContainer() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("<entry name=\"account").append(i).append(
+					"\" modified=\"2026-10-17T12:00:00Z\">secret</entry>");
+		}
+		byte[] plaintext = text.toString().getBytes(StandardCharsets.UTF_8);
+		EncryptionOptions options = EncryptionOptions.DEFAULT
+				.withCompression(Compression.DEFLATE);
+		ByteArrayOutputStream cypher = new ByteArrayOutputStream();
+		OutputStream out = EnryptionUtil.encryptStream(cypher, PASSWORD, null,
+				options);
+		out.write(plaintext);
+		out.close();
+
+		assertEquals(Compression.DEFLATE, ContainerHeader.read(
+				new ByteArrayInputStream(cypher.toByteArray()))
+				.getCompression());
+		assertTrue("Compressed", cypher.size() < plaintext.length / 4);
+		assertEquals("Decrypted text", text.toString(), decryptContainer(
+				cypher.toByteArray(), PASSWORD));
+
+		assertEquals(Compression.NONE, ContainerHeader.read(
+				new ByteArrayInputStream(encryptContainer(PASSWORD, options
+						.withCipherScheme(CipherScheme.AES_CBC))))
+				.getCompression());
+	}
+
+	/**
+	 * The configured iterations are stored in the header and used to read.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testKdfIterations() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withKdfIterations(EnryptionUtil.MIN_PBKDF2_ITERATIONS));
+		assertEquals(EnryptionUtil.MIN_PBKDF2_ITERATIONS, ContainerHeader
+				.read(new ByteArrayInputStream(cypher)).getIterations());
+
+		EnryptionUtil.lock();
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+	}
+
+	/**
+	 * Containers can use scrypt, its parameters are stored in the header.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testScryptContainer() throws Exception {
+		KdfParameters scrypt = KdfParameters.scrypt(1 << 12, 8, 2);
+		byte[] cypher = encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withKdfParameters(scrypt));
+		assertEquals(scrypt, ContainerHeader.read(
+				new ByteArrayInputStream(cypher)).getKdfParameters());
+
+		EnryptionUtil.lock();
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+	}
+
+	/**
+	 * With key slots, another password is added by rewriting the header;
+	 * the payload stays valid.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testKeySlots() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withEnvelopeEncryption(true));
+		ByteArrayInputStream in = new ByteArrayInputStream(cypher);
+		ContainerHeader header = ContainerHeader.read(in);
+		assertTrue(header.hasKeySlots());
+		int length = header.getEncoded().length;
+
+		EnryptionUtil.addKeySlot(header, PASSWORD, "other");
+		byte[] rewritten = header.toByteArray();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(rewritten);
+		out.write(cypher, length, cypher.length - length);
+		cypher = out.toByteArray();
+
+		assertEquals("First password", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+		assertEquals("Added password", PLAINTEXT, decryptContainer(cypher,
+				"other"));
+	}
+
+	/**
+	 * A password opening no key slot is rejected right away.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testKeySlotsWrongPassword() throws Exception {
+		decryptContainer(encryptContainer(PASSWORD, EncryptionOptions.DEFAULT
+				.withEnvelopeEncryption(true)), "wrong");
+	}
+
+	/**
+	 * Too few iterations are refused.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooFewIterations() {
+		EncryptionOptions.DEFAULT
+				.withKdfIterations(EnryptionUtil.MIN_PBKDF2_ITERATIONS - 1);
+	}
+
+	/**
+	 * Calibration finds iterations the options accept.
+	 */
+	@Test
+	public void testCalibrateKdf() {
+		int iterations = EnryptionUtil.calibrateKdf(10);
+		assertTrue(iterations >= EnryptionUtil.MIN_PBKDF2_ITERATIONS);
+		assertEquals(iterations, EncryptionOptions.DEFAULT.withKdfIterations(
+				iterations).getKdfIterations());
+	}
+
+	/**
+	 * Options are immutable, the defaults stay untouched.
+	 */
+	@Test
+	public void testOptionsImmutable() {
+		EncryptionOptions options = EncryptionOptions.DEFAULT
+				.withCipherScheme(CipherScheme.AES_CBC)
+				.withEnvelopeEncryption(true);
+		assertEquals(CipherScheme.AES_CBC, options.getCipherScheme());
+		assertTrue(options.isEnvelopeEncryption());
+		assertEquals(CipherScheme.AES_GCM, EncryptionOptions.DEFAULT
+				.getCipherScheme());
+		assertFalse(EncryptionOptions.DEFAULT.isEnvelopeEncryption());
+	}
+
+	/**
+	 * A wrong password is reliably detected by the key check value, before
+	 * the payload is read.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test
+	public void testGcmWrongPassword() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD);
+		try {
+			decryptContainer(cypher, "wrong");
+			fail("Wrong password not detected");
+		} catch (SysCryptoException e) {
+			assertTrue(e.getCause() instanceof AEADBadTagException);
+		}
+	}
+
+	/**
+	 * Wrong passwords never get into the key cache, so they cannot evict the
+	 * keys of the right one.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testWrongPasswordNotCached() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD);
+		int cached = EnryptionUtil.getKeyCache().size();
+		for (int i = 0; i < 3; i++) {
+			try {
+				decryptContainer(cypher, "wrong" + i);
+				fail("Wrong password not detected");
+			} catch (SysCryptoException e) {
+				// expected
+			}
+		}
+		assertEquals("Cached keys", cached, EnryptionUtil.getKeyCache()
+				.size());
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(cypher,
+				PASSWORD));
+	}
+
+	/**
+	 * Whichever providers the benchmark picks, files written before are read
+	 * and Jasypt still reads what we write.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testProviderBenchmark() throws Exception {
+		String legacy = createJasyptEncryptor().encrypt(PLAINTEXT);
+		byte[] container = encryptContainer(PASSWORD);
+
+		EnryptionUtil.getProviderSelector().setBenchmark(true);
+		assertEquals("Legacy", PLAINTEXT, EnryptionUtil.decryptString(legacy,
+				PASSWORD));
+		assertEquals("Container", PLAINTEXT, decryptContainer(container,
+				PASSWORD));
+		assertEquals("For Jasypt", PLAINTEXT, createJasyptEncryptor().decrypt(
+				EnryptionUtil.encryptString(PLAINTEXT, PASSWORD)));
+		assertTrue("Reported", EnryptionUtil.getProviderSelector()
+				.getChoices().get(CipherScheme.AES_CBC).isBenchmarked());
+	}
+
+	/**
+	 * Containers and the legacy format are decrypted asynchronously, on a
+	 * single thread as well.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testDecryptStreamAsync() throws Exception {
+		byte[] container = encryptContainer(PASSWORD);
+		byte[] legacy = EnryptionUtil.encryptString(PLAINTEXT, PASSWORD)
+				.getBytes(StandardCharsets.US_ASCII);
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			for (byte[] cypher : Arrays.asList(container, legacy)) {
+				assertEquals("Async", PLAINTEXT, readFully(EnryptionUtil
+						.decryptStreamAsync(new ByteArrayInputStream(cypher),
+								PASSWORD).get()));
+				assertEquals("Single thread", PLAINTEXT,
+						readFully(EnryptionUtil.decryptStreamAsync(
+								new ByteArrayInputStream(cypher), PASSWORD,
+								single).get()));
+			}
+		} finally {
+			single.shutdown();
+		}
+		try {
+			EnryptionUtil.decryptStreamAsync(
+					new ByteArrayInputStream(container), "wrong").get();
+			fail("Wrong password not detected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SysCryptoException);
+		}
+	}
+
+	/**
+	 * Read a plaintext stream to its end.
+	 * 
+	 * @param in
+	 *            the plaintext stream
+	 * 
+	 * @return the plaintext
+	 * 
+	 * @throws IOException
+	 *             when the stream cannot be read
+	 */
+	private static String readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0) {
+			plain.write(b);
+		}
+		in.close();
+		return new String(plain.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The password is verified by the key check value alone.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testVerifyPassword() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD);
+		ByteArrayInputStream in = new ByteArrayInputStream(cypher);
+		ContainerHeader.read(in);
+		// the payload is not needed, the header suffices
+		byte[] header = Arrays.copyOf(cypher, cypher.length - in.available());
+		assertTrue("Right password", EnryptionUtil.verifyPassword(
+				new ByteArrayInputStream(header), PASSWORD));
+		assertFalse("Wrong password", EnryptionUtil.verifyPassword(
+				new ByteArrayInputStream(header), "wrong"));
+	}
+
+	/**
+	 * Containers without key check value, as written by earlier versions,
+	 * detect a wrong password by the authentication tag.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testWithoutKeyCheck() throws Exception {
+		ContainerHeader header = ContainerHeader.read(new ByteArrayInputStream(
+				encryptContainer(PASSWORD)));
+		header.setKeyCheck(null);
+		byte[] headerBytes = header.toByteArray();
+		DerivedKey key = KeyDerivation.derive(header.getKdfParameters(),
+				PASSWORD, header.getSalt(), 256, 0);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getKey(),
+				"AES"), new GCMParameterSpec(128, header.getIv()));
+		cipher.updateAAD(headerBytes);
+		ByteArrayOutputStream old = new ByteArrayOutputStream();
+		old.write(headerBytes);
+		old.write(cipher.doFinal(PLAINTEXT.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals("Decrypted text", PLAINTEXT, decryptContainer(old
+				.toByteArray(), PASSWORD));
+		assertTrue("Right password", EnryptionUtil.verifyPassword(
+				new ByteArrayInputStream(old.toByteArray()), PASSWORD));
+		assertFalse("Wrong password", EnryptionUtil.verifyPassword(
+				new ByteArrayInputStream(old.toByteArray()), "wrong"));
+		try {
+			decryptContainer(old.toByteArray(), "wrong");
+			fail("Wrong password not detected");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof AEADBadTagException);
+		}
+	}
+
+	/**
+	 * A modified payload is detected.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test
+	public void testGcmTampered() throws Exception {
+		byte[] cypher = encryptContainer(PASSWORD);
+		cypher[cypher.length - 20] ^= 1;
+		try {
+			decryptContainer(cypher, PASSWORD);
+			fail("Modification not detected");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof AEADBadTagException);
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+
+/**
+ * The Class VaultSessionTest checks, that an unlocked session reads and
+ * writes the containers of its password.
+ * 
+ * @author Jan Petranek
+ */
+public class VaultSessionTest {
+
+	/** The password. */
+	private static final String PASSWORD = "sécret";
+
+	/** The plaintext, with some non-ASCII characters. */
+	private static final String PLAINTEXT = "<list>Hello, Wörld!</list>";
+
+	/** The options, keeping the key derivation cheap. */
+	private static final EncryptionOptions OPTIONS = EncryptionOptions.DEFAULT
+			.withKdfIterations(EnryptionUtil.MIN_PBKDF2_ITERATIONS);
+
+	/**
+	 * Wipe the cached keys after each test.
+	 */
+	@After
+	public void tearDown() {
+		EnryptionUtil.lock();
+	}
+
+	/**
+	 * Encrypt the plaintext with a session.
+	 * 
+	 * @param session
+	 *            the session
+	 * 
+	 * @return the container
+	 * 
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private static byte[] encrypt(VaultSession session) throws Exception {
+		ByteArrayOutputStream cypher = new ByteArrayOutputStream();
+		OutputStream out = EnryptionUtil.encryptStream(cypher, session);
+		out.write(PLAINTEXT.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		return cypher.toByteArray();
+	}
+
+	/**
+	 * Encrypt the plaintext with the password.
+	 * 
+	 * @return the cyphertext
+	 * 
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private static byte[] encrypt() throws Exception {
+		return encrypt(OPTIONS);
+	}
+
+	/**
+	 * Encrypt the plaintext with the password and the given options.
+	 * 
+	 * @param options
+	 *            the options for writing
+	 * 
+	 * @return the cyphertext
+	 * 
+	 * @throws Exception
+	 *             when the encryption fails
+	 */
+	private static byte[] encrypt(EncryptionOptions options) throws Exception {
+		ByteArrayOutputStream cypher = new ByteArrayOutputStream();
+		OutputStream out = EnryptionUtil.encryptStream(cypher, PASSWORD, null,
+				options);
+		out.write(PLAINTEXT.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		return cypher.toByteArray();
+	}
+
+	/**
+	 * Read a decrypting stream to its end.
+	 * 
+	 * @param plain
+	 *            the decrypting stream
+	 * 
+	 * @return the plaintext
+	 * 
+	 * @throws Exception
+	 *             when the decryption fails
+	 */
+	private static String read(InputStream plain) throws Exception {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		int b;
+		while ((b = plain.read()) >= 0) {
+			content.write(b);
+		}
+		plain.close();
+		return new String(content.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Unlock the cyphertext with the password.
+	 * 
+	 * @param cypher
+	 *            the cyphertext
+	 * 
+	 * @return the session
+	 * 
+	 * @throws Exception
+	 *             when unlocking fails
+	 */
+	private static VaultSession unlock(byte[] cypher) throws Exception {
+		return EnryptionUtil.unlock(new ByteArrayInputStream(cypher), PASSWORD
+				.toCharArray(), OPTIONS);
+	}
+
+	/**
+	 * A new session reads what it wrote, the password is wiped.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testNewVault() throws Exception {
+		char[] password = PASSWORD.toCharArray();
+		VaultSession session = EnryptionUtil.unlock(password, OPTIONS);
+		assertArrayEquals("Password wiped", new char[password.length],
+				password);
+
+		byte[] cypher = encrypt(session);
+		assertEquals("Session", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(cypher), session)));
+		assertEquals("Password", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(cypher), PASSWORD)));
+		session.close();
+	}
+
+	/**
+	 * A session unlocked from a container reads it and writes containers the
+	 * password opens.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testExistingVault() throws Exception {
+		byte[] cypher = encrypt();
+		VaultSession session = unlock(cypher);
+		assertEquals("Read", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(cypher), session)));
+
+		byte[] saved = encrypt(session);
+		assertEquals("Saved", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(saved), PASSWORD)));
+		session.close();
+	}
+
+	/**
+	 * Sessions keep the key slots of a vault.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testKeySlots() throws Exception {
+		byte[] cypher = encrypt(OPTIONS.withEnvelopeEncryption(true));
+		VaultSession session = unlock(cypher);
+
+		byte[] saved = encrypt(session);
+		ContainerHeader header = ContainerHeader.read(new ByteArrayInputStream(
+				saved));
+		assertTrue("Key slots kept", header.hasKeySlots());
+		assertEquals("Session", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(saved), session)));
+		assertEquals("Password", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(saved), PASSWORD)));
+		session.close();
+	}
+
+	/**
+	 * A wrong password opens no key slot.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testWrongPassword() throws Exception {
+		EnryptionUtil.unlock(new ByteArrayInputStream(encrypt(OPTIONS
+				.withEnvelopeEncryption(true))), "wrong".toCharArray(), OPTIONS);
+	}
+
+	/**
+	 * Vaults in the legacy format are read, and saved as containers.
+	 * 
+	 * @throws Exception
+	 *             when the test fails
+	 */
+	@Test
+	public void testLegacyVault() throws Exception {
+		byte[] cypher = encrypt(OPTIONS.withLegacyFormat(true));
+		VaultSession session = unlock(cypher);
+		assertEquals("Read", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(cypher), session)));
+
+		byte[] saved = encrypt(session);
+		assertTrue("Container", ContainerHeader
+				.isContainer(new ByteArrayInputStream(saved)));
+		assertEquals("Saved", PLAINTEXT, read(EnryptionUtil.decryptStream(
+				new ByteArrayInputStream(saved), PASSWORD)));
+		session.close();
+	}
+
+	/**
+	 * Containers of other vaults are rejected.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testOtherVault() throws Exception {
+		VaultSession session = EnryptionUtil.unlock(PASSWORD.toCharArray(), OPTIONS);
+		EnryptionUtil.decryptStream(new ByteArrayInputStream(encrypt()),
+				session);
+	}
+
+	/**
+	 * Closed sessions cannot be used.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testClosed() throws Exception {
+		VaultSession session = EnryptionUtil.unlock(PASSWORD.toCharArray(), OPTIONS);
+		byte[] cypher = encrypt(session);
+		session.close();
+		assertTrue(session.isClosed());
+		EnryptionUtil.decryptStream(new ByteArrayInputStream(cypher), session);
+	}
+
+}
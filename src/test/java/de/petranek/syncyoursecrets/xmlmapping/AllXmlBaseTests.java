@@ -22,8 +22,16 @@ package de.petranek.syncyoursecrets.xmlmapping;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import de.petranek.syncyoursecrets.crypto.ChunkedCipherTest;
+import de.petranek.syncyoursecrets.crypto.ContainerHeaderTest;
+import de.petranek.syncyoursecrets.crypto.FieldCipherTest;
+import de.petranek.syncyoursecrets.crypto.DerivedKeyCacheTest;
+import de.petranek.syncyoursecrets.crypto.KeyDerivationTest;
+import de.petranek.syncyoursecrets.crypto.ProviderSelectorTest;
+import de.petranek.syncyoursecrets.util.EnryptionUtilTest;
 import de.petranek.syncyoursecrets.util.SetIntersectionTest;
 import de.petranek.syncyoursecrets.util.StringUtilTest;
+import de.petranek.syncyoursecrets.util.VaultSessionTest;
 
 /**
  * This class is only an empty dummy class. All testclasses are placed in the
@@ -35,7 +43,15 @@ import de.petranek.syncyoursecrets.util.StringUtilTest;
 @Suite.SuiteClasses( { CryptedTest.class, ListElementTest.class,
 		ListElementMergeTest.class, StringElementTest.class,
 		XmlSerializeToolTest.class, StringUtilTest.class,
-		SetIntersectionTest.class })
+		SetIntersectionTest.class, EnryptionUtilTest.class,
+		DerivedKeyCacheTest.class, ContainerHeaderTest.class,
+		KeyDerivationTest.class, FieldCipherTest.class,
+		FieldEncryptionTest.class, ChunkedCipherTest.class,
+		VaultSessionTest.class, ProviderSelectorTest.class,
+		StreamLoaderTest.class, StreamSaverTest.class,
+		LazyListElementTest.class, BinaryCodecTest.class,
+		JournalTest.class, DirtyTrackingTest.class,
+		ParallelSerializationTest.class })
 public class AllXmlBaseTests {
 	// dummy class
 }
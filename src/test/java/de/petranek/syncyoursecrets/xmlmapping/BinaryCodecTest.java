@@ -0,0 +1,231 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class BinaryCodecTest checks, that the binary format round-trips
+ * exactly with the XML format and is detected per file.
+ * 
+ * @author Jan Petranek
+ */
+public class BinaryCodecTest {
+
+	/** The testfile. */
+	private File testfile;
+
+	/**
+	 * Sets the testsuite up.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		testfile = FileLocationHelper.getFile("tmp/binaryCodec.bin");
+	}
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		EnryptionUtil.lock();
+		if (testfile.exists()) {
+			testfile.delete();
+		}
+	}
+
+	/**
+	 * Write the root element with the codec.
+	 * 
+	 * @param root
+	 *            the root element
+	 * @param codec
+	 *            the codec
+	 * 
+	 * @return the bytes written
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static byte[] save(MappingElement root, ModelCodec codec)
+			throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamSaver.save(root, out, codec);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Load a card list, whatever the codec.
+	 * 
+	 * @param bytes
+	 *            the bytes
+	 * 
+	 * @return the card list
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static CardList load(byte[] bytes) throws Exception {
+		return StreamLoader.load(new ByteArrayInputStream(bytes),
+				CardList::new);
+	}
+
+	/**
+	 * Plain and sealed lists survive the round trip through the binary
+	 * format, and it is smaller than the XML.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String expected = StreamLoaderTest.toXmlString(list);
+		byte[] binary = save(list, ModelCodecs.BINARY);
+		assertEquals(expected, StreamLoaderTest.toXmlString(load(binary)));
+		assertTrue(binary.length < save(list, ModelCodecs.XML).length);
+
+		// binary again, the same bytes
+		assertArrayEquals(binary, save(load(binary), ModelCodecs.BINARY));
+
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		expected = StreamLoaderTest.toXmlString(list);
+		CardList loaded = load(save(list, ModelCodecs.BINARY));
+		loaded.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(expected, StreamLoaderTest.toXmlString(loaded));
+	}
+
+	/**
+	 * Timestamps, which are not in the canonical notation, are kept as text.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLegacyFile() throws Exception {
+		File listFile = FileLocationHelper.getFile("inputList.xml");
+		ListElement list = StreamLoader.loadFile(listFile,
+				reader -> new ListElement(reader, null));
+		String expected = StreamLoaderTest.toXmlString(list);
+		byte[] binary = save(list, ModelCodecs.BINARY);
+		ListElement loaded = StreamLoader.load(
+				new ByteArrayInputStream(binary), reader -> new ListElement(
+						reader, null));
+		assertEquals(expected, StreamLoaderTest.toXmlString(loaded));
+	}
+
+	/**
+	 * The codec is chosen per file: the loader detects it.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testDetection() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String expected = StreamLoaderTest.toXmlString(list);
+
+		StreamSaver.saveFile(list, testfile, ModelCodecs.BINARY);
+		byte[] head = Arrays.copyOf(Files.readAllBytes(testfile.toPath()),
+				BinaryCodec.SIGNATURE.length);
+		assertArrayEquals(BinaryCodec.SIGNATURE, head);
+		assertEquals(expected, StreamLoaderTest.toXmlString(StreamLoader
+				.loadFile(testfile, CardList::new)));
+
+		StreamSaver.saveFile(list, testfile);
+		assertFalse(ModelCodecs.BINARY.accepts(Files.readAllBytes(testfile
+				.toPath()), BinaryCodec.SIGNATURE.length));
+		try (InputStream in = new ByteArrayInputStream(Files
+				.readAllBytes(testfile.toPath()))) {
+			assertSame(ModelCodecs.XML, ModelCodecs.detect(in));
+		}
+		assertEquals(expected, StreamLoaderTest.toXmlString(StreamLoader
+				.loadFile(testfile, CardList::new)));
+	}
+
+	/**
+	 * An encrypted file holds the binary format just as well.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testEncryptedFile() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String expected = StreamLoaderTest.toXmlString(list);
+		StreamSaver.saveEncryptedFile(CryptedTest.PASSWORD, list, testfile,
+				ModelCodecs.BINARY);
+		EnryptionUtil.lock();
+		assertEquals(expected, StreamLoaderTest.toXmlString(StreamLoader
+				.loadEncryptedFile(CryptedTest.PASSWORD, testfile,
+						CardList::new)));
+	}
+
+	/**
+	 * A truncated binary model is reported as broken.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysParseException.class)
+	public void testTruncated() throws Exception {
+		byte[] binary = save(StreamLoaderTest.createList(), ModelCodecs.BINARY);
+		load(Arrays.copyOf(binary, binary.length / 2));
+	}
+
+	/**
+	 * Codecs are found by name, names are unique.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysInvalidArgumentException.class)
+	public void testRegisterDuplicate() throws Exception {
+		assertSame(ModelCodecs.BINARY, ModelCodecs.forName(BinaryCodec.NAME));
+		assertSame(ModelCodecs.XML, ModelCodecs.forName(XmlCodec.NAME));
+		ModelCodecs.register(new BinaryCodec());
+	}
+
+}
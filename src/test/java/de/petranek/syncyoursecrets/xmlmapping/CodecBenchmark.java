@@ -0,0 +1,143 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.Card;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class CodecBenchmark compares size and load and save times of the XML
+ * and the binary format. It is not part of the test suite; run it with
+ * 
+ * <pre>
+ * mvn test -Dtest=CodecBenchmark -Dbenchmark=true [-Dbenchmark.sizes=1000,1000000]
+ * </pre>
+ * 
+ * @author Jan Petranek
+ */
+public class CodecBenchmark {
+
+	/** The default numbers of entries. */
+	private static final String DEFAULT_SIZES = "1000,10000,100000";
+
+	/** The number of measured runs per size and codec. */
+	private static final int RUNS = 3;
+
+	/**
+	 * Skip unless the benchmark is asked for.
+	 */
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+	}
+
+	/**
+	 * Create a list of cards.
+	 * 
+	 * @param size
+	 *            the number of cards
+	 * 
+	 * @return the list
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static CardList createList(int size) throws Exception {
+		CardList list = new CardList();
+		list.setName("cards");
+		for (int i = 0; i < size; i++) {
+			Card card = new Card();
+			card.setName("card " + i);
+			card.getStringChildByName(Card.NUMBER).setContent(
+					String.format("%016d", i));
+			card.getStringChildByName(Card.PIN).setContent(
+					String.format("%04d", i % 10000));
+			list.add(card);
+		}
+		return list;
+	}
+
+	/**
+	 * Measure both codecs for each size.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCodecs() throws Exception {
+		System.out.println(String.format("%10s %-7s %12s %10s %10s",
+				"entries", "codec", "bytes", "save ms", "load ms"));
+		for (String size : System.getProperty("benchmark.sizes",
+				DEFAULT_SIZES).split(",")) {
+			CardList list = createList(Integer.parseInt(size.trim()));
+			for (ModelCodec codec : new ModelCodec[] { ModelCodecs.XML,
+					ModelCodecs.BINARY }) {
+				measure(list, codec);
+			}
+		}
+	}
+
+	/**
+	 * Save and load the list with the codec, warm up once and print the best
+	 * of the measured runs.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param codec
+	 *            the codec
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void measure(CardList list, ModelCodec codec)
+			throws Exception {
+		long bestSave = Long.MAX_VALUE;
+		long bestLoad = Long.MAX_VALUE;
+		byte[] bytes = null;
+		for (int run = 0; run <= RUNS; run++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long start = System.nanoTime();
+			StreamSaver.save(list, out, codec);
+			long saved = System.nanoTime();
+			bytes = out.toByteArray();
+			CardList loaded = StreamLoader.load(new ByteArrayInputStream(
+					bytes), CardList::new);
+			long end = System.nanoTime();
+			assertEquals(list.getElements().size(), loaded.getElements()
+					.size());
+			if (run > 0) {
+				bestSave = Math.min(bestSave, saved - start);
+				bestLoad = Math.min(bestLoad, end - saved);
+			}
+		}
+		System.out.println(String.format("%10d %-7s %12d %10d %10d", list
+				.getElements().size(), codec.getName(), bytes.length,
+				bestSave / 1000000, bestLoad / 1000000));
+	}
+
+}
@@ -0,0 +1,334 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+import de.petranek.syncyoursecrets.xmlmapping.LazyListElementTest.LazyCardList;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.Card;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class DirtyTrackingTest checks, that changes mark the elements dirty
+ * and that recorded elements are written just like fresh ones.
+ * 
+ * @author Jan Petranek
+ */
+public class DirtyTrackingTest {
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		EnryptionUtil.lock();
+	}
+
+	/**
+	 * Load the list of StreamLoaderTest.
+	 * 
+	 * @return the list, as read
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static CardList loadList() throws Exception {
+		return StreamLoader.loadString(StreamSaver.saveString(StreamLoaderTest
+				.createList()), CardList::new);
+	}
+
+	/**
+	 * Find the visible card with the given name.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param name
+	 *            the name
+	 * 
+	 * @return the card
+	 */
+	private static Card findCard(ListElement list, String name) {
+		for (Map.Entry<Long, String> entry : list.getNames().entrySet()) {
+			if (name.equals(entry.getValue())) {
+				return (Card) list.get(entry.getKey());
+			}
+		}
+		throw new AssertionError("No card named " + name);
+	}
+
+	/**
+	 * Check, that a list is written the same with and without recordings.
+	 * 
+	 * @param list
+	 *            the list, with recordings
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void assertWrittenAfresh(CardList list) throws Exception {
+		String written = StreamSaver.saveString(list);
+		CardList fresh = StreamLoader.loadString(written, CardList::new);
+		assertEquals(StreamSaver.saveString(fresh), written);
+		assertEquals(StreamLoaderTest.toXmlString(fresh), StreamLoaderTest
+				.toXmlString(list));
+	}
+
+	/**
+	 * A loaded tree is clean, a change marks the element and its parents
+	 * dirty, but not its siblings.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testChangeMarksParents() throws Exception {
+		CardList list = loadList();
+		Card first = findCard(list, "first");
+		StringElement pin = first.getStringChildByName(Card.PIN);
+		assertFalse(list.isDirty());
+		assertFalse(first.isDirty());
+
+		pin.setContent("4321");
+		assertTrue(pin.isDirty());
+		assertTrue(first.isDirty());
+		assertTrue(list.isDirty());
+		assertFalse(first.getStringChildByName(Card.NUMBER).isDirty());
+		assertEquals(Arrays.asList(first), list.getDirtyElements());
+
+		list.markClean();
+		assertFalse(pin.isDirty());
+		assertFalse(first.isDirty());
+		assertTrue(list.getDirtyElements().isEmpty());
+	}
+
+	/**
+	 * Unchanged elements keep their recording, changed ones are recorded
+	 * again. Either way, the list is written just like a fresh one.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRecordingReused() throws Exception {
+		CardList list = loadList();
+		assertWrittenAfresh(list);
+		Card first = findCard(list, "first");
+		Fragment recorded = first.getFragment();
+		assertSame(recorded, first.getFragment());
+
+		first.getStringChildByName(Card.PIN).setContent("4321");
+		assertNotSame(recorded, first.getFragment());
+		assertTrue(StreamSaver.saveString(list).contains("4321"));
+		assertWrittenAfresh(list);
+
+		// not modified, but written differently
+		first.getStringChildByName(Card.PIN).setIndexed(true);
+		assertWrittenAfresh(list);
+	}
+
+	/**
+	 * Adding and deleting children invalidates the list.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testAddAndDelete() throws Exception {
+		CardList list = loadList();
+		assertWrittenAfresh(list);
+
+		Card third = new Card();
+		third.setName("third");
+		list.add(third);
+		assertTrue(list.isDirty());
+		assertTrue(StreamSaver.saveString(list).contains("third"));
+		assertWrittenAfresh(list);
+
+		list.markClean();
+		list.remove(findCard(list, "first"));
+		assertTrue(list.isDirty());
+		assertFalse(list.getNames().containsValue("first"));
+		assertFalse(StreamSaver.saveString(list).contains("first"));
+		assertWrittenAfresh(list);
+	}
+
+	/**
+	 * Enabling field encryption drops all recordings, no plain field is
+	 * written afterwards.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testFieldEncryption() throws Exception {
+		CardList list = loadList();
+		long id = findCard(list, "first").getId();
+		Element number = findNumber(StreamSaver.saveString(list), id);
+		assertEquals("1234", number.getTextContent());
+		assertFalse(number.hasAttribute(StringElement.ENCRYPTED));
+
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		assertTrue(list.isDirty());
+		assertTrue(findCard(list, "first").isDirty());
+		number = findNumber(StreamSaver.saveString(list), id);
+		assertFalse("1234".equals(number.getTextContent()));
+		assertEquals("true", number.getAttribute(StringElement.ENCRYPTED));
+	}
+
+	/**
+	 * Parse the written list and find the number element of the card with
+	 * the given id.
+	 * 
+	 * @param xml
+	 *            the written list
+	 * @param id
+	 *            the id of the card
+	 * 
+	 * @return the number element, as written
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static Element findNumber(String xml, long id) throws Exception {
+		NodeList cards = XmlSerializeTool.readString(xml)
+				.getElementsByTagName("card");
+		for (int i = 0; i < cards.getLength(); i++) {
+			Element card = (Element) cards.item(i);
+			if (String.valueOf(id).equals(
+					card.getAttribute(MappingElement.ID))) {
+				NodeList numbers = card.getElementsByTagName(Card.NUMBER);
+				assertEquals(1, numbers.getLength());
+				return (Element) numbers.item(0);
+			}
+		}
+		throw new AssertionError("No card with id " + id);
+	}
+
+	/**
+	 * Merging keeps recordings consistent, also of children taken from the
+	 * other list.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testMerge() throws Exception {
+		String xml = StreamSaver.saveString(StreamLoaderTest.createList());
+		CardList left = StreamLoader.loadString(xml, CardList::new);
+		CardList right = StreamLoader.loadString(xml, CardList::new);
+		StreamSaver.saveString(left);
+		StreamSaver.saveString(right);
+		findCard(right, "first").getStringChildByName(Card.PIN).setContent(
+				"4321");
+		Card third = new Card();
+		third.setName("third");
+		right.add(third);
+
+		CardList merged = (CardList) left.merge(right);
+		String written = StreamSaver.saveString(merged);
+		assertTrue(written.contains("4321"));
+		assertTrue(written.contains("third"));
+		assertWrittenAfresh(merged);
+	}
+
+	/**
+	 * Loading the children of a lazy list does not change it.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLazyLoadStaysClean() throws Exception {
+		LazyCardList list = StreamLoader.loadString(StreamSaver
+				.saveString(StreamLoaderTest.createList()), LazyCardList::new);
+		Card first = findCard(list, "first");
+		assertEquals("0000", first.getStringChildByName(Card.PIN)
+				.getContent());
+		assertFalse(first.isDirty());
+		assertFalse(list.isDirty());
+
+		first.getStringChildByName(Card.PIN).setContent("4321");
+		assertTrue(list.isDirty());
+		assertEquals(Arrays.asList(first), list.getDirtyElements());
+	}
+
+	/**
+	 * Children overriding toXml() only are serialized by it, even when their
+	 * recording has been made by a save.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testToXmlOverride() throws Exception {
+		ListElement list = new ListElement("list", null);
+		TaggedCard card = new TaggedCard();
+		card.setName("tagged");
+		list.add(card);
+		assertFalse(card.supportsRecording());
+		assertTrue(new Card().supportsRecording());
+
+		StreamSaver.saveString(list);
+		String xml = StreamLoaderTest.toXmlString(list);
+		assertTrue(xml, xml.contains("tag=\"custom\""));
+	}
+
+	/**
+	 * A card adding an attribute in toXml() only.
+	 */
+	private static class TaggedCard extends Card {
+
+		/**
+		 * Instantiates a new tagged card.
+		 * 
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		TaggedCard() throws SysInvalidArgumentException {
+			super();
+		}
+
+		@Override
+		public Element toXml(Document doc) throws SysInvalidArgumentException {
+			Element node = super.toXml(doc);
+			node.setAttribute("tag", "custom");
+			return node;
+		}
+	}
+
+}
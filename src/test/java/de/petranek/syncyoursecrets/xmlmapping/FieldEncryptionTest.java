@@ -0,0 +1,476 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+
+/**
+ * The Class FieldEncryptionTest tests field level encryption: sealed contents,
+ * readable structure and merging without opening any field.
+ * 
+ * @author Jan Petranek
+ */
+public class FieldEncryptionTest {
+
+	/** The id of the first element. */
+	private static final long FIRST_ID = 1L;
+
+	/** The id of the second element. */
+	private static final long SECOND_ID = 2L;
+
+	/**
+	 * Wipe all keys after each test.
+	 */
+	@After
+	public void tearDown() {
+		EnryptionUtil.lock();
+	}
+
+	/**
+	 * Create a list with field encryption and two children.
+	 * 
+	 * @return the list
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static ListElement createList() throws Exception {
+		ListElement list = new ListElement(ListElementTest.LIST_ELEMENT_NAME,
+				null);
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+
+		StringElement first = new StringElement(
+				ListElementTest.FIRST_ELEMENT_NAME, null);
+		first.setContent(ListElementTest.FIRST_CONTENT, true);
+		first.setId(FIRST_ID);
+		list.add(first);
+
+		StringElement second = new StringElement(
+				ListElementTest.SECOND_ELEMENT_NAME, null);
+		second.setContent(ListElementTest.SECOND_CONTENT, true);
+		second.setId(SECOND_ID);
+		list.add(second);
+		return list;
+	}
+
+	/**
+	 * Serialize a list into a new document.
+	 * 
+	 * @param list
+	 *            the list
+	 * 
+	 * @return the document
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static Document toDocument(ListElement list) throws Exception {
+		Document doc = XmlSerializeTool.createDocument();
+		doc.appendChild(list.toXml(doc));
+		return doc;
+	}
+
+	/**
+	 * Gets the text of the child element with the given id.
+	 * 
+	 * @param doc
+	 *            the document
+	 * @param id
+	 *            the id
+	 * 
+	 * @return the text content
+	 */
+	private static String getText(Document doc, long id) {
+		Element child = (Element) doc.getDocumentElement().getFirstChild();
+		while (!String.valueOf(id).equals(child.getAttribute("id"))) {
+			child = (Element) child.getNextSibling();
+		}
+		return child.getTextContent();
+	}
+
+	/**
+	 * The contents are sealed, the structure is not; after unlocking, the
+	 * contents are read back.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		Document doc = XmlSerializeTool.readString(XmlSerializeTool
+				.writeString(toDocument(createList())));
+		String xml = XmlSerializeTool.writeString(doc);
+		assertFalse("Content is sealed", xml
+				.contains(ListElementTest.FIRST_CONTENT));
+		assertTrue("Id is readable", xml.contains("id=\"" + FIRST_ID + "\""));
+
+		EnryptionUtil.lock();
+		ListElement list = new ListElement(doc.getDocumentElement(), null);
+		assertTrue(list.isFieldEncrypted());
+		list.unlockFields(CryptedTest.PASSWORD);
+
+		assertEquals(ListElementTest.FIRST_CONTENT, ((StringElement) list
+				.getElements().get(FIRST_ID)).getContent());
+		assertEquals(ListElementTest.SECOND_CONTENT, ((StringElement) list
+				.getElements().get(SECOND_ID)).getContent());
+	}
+
+	/**
+	 * Unlocking with the wrong password fails right away.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testWrongPassword() throws Exception {
+		Document doc = toDocument(createList());
+		EnryptionUtil.lock();
+		new ListElement(doc.getDocumentElement(), null).unlockFields("wrong");
+	}
+
+	/**
+	 * Sealed contents cannot be accessed before unlocking.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysRuntimeException.class)
+	public void testLocked() throws Exception {
+		Document doc = toDocument(createList());
+		EnryptionUtil.lock();
+		ListElement list = new ListElement(doc.getDocumentElement(), null);
+		((StringElement) list.getElements().get(FIRST_ID)).getContent();
+	}
+
+	/**
+	 * Each document keeps its own field cipher: locking one leaves the other
+	 * readable, and so does wiping the key cache.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLockFields() throws Exception {
+		Document doc = toDocument(createList());
+		ListElement locked = new ListElement(doc.getDocumentElement(), null);
+		ListElement open = new ListElement(doc.getDocumentElement(), null);
+		locked.unlockFields(CryptedTest.PASSWORD);
+		open.unlockFields(CryptedTest.PASSWORD);
+
+		locked.lockFields();
+		EnryptionUtil.lock();
+		assertNull(locked.getFieldCipher());
+		assertEquals(ListElementTest.FIRST_CONTENT, ((StringElement) open
+				.getElements().get(FIRST_ID)).getContent());
+		try {
+			((StringElement) locked.getElements().get(FIRST_ID)).getContent();
+			fail("Locked fields opened");
+		} catch (SysRuntimeException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Unchanged fields are written as they were read, only changed ones are
+	 * sealed again.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testOnlyChangedFieldsResealed() throws Exception {
+		Document first = toDocument(createList());
+		ListElement list = new ListElement(first.getDocumentElement(), null);
+		list.unlockFields(CryptedTest.PASSWORD);
+		((StringElement) list.getElements().get(SECOND_ID))
+				.setContent("changed");
+
+		Document second = toDocument(list);
+		assertEquals("Unchanged seal", getText(first, FIRST_ID), getText(
+				second, FIRST_ID));
+		assertNotEquals("New seal", getText(first, SECOND_ID), getText(second,
+				SECOND_ID));
+	}
+
+	/**
+	 * Entries are found by the blind index of a property, also after reading
+	 * the document back; modifications are found right away.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testFindByIndex() throws Exception {
+		AccountList list = new AccountList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		new Account(list, "alice", "first");
+		new Account(list, "bob", "alice");
+		new Account(list, "alice", "third");
+
+		assertEquals("Found", 2, list.findByIndex(Account.USERNAME, "alice")
+				.size());
+		assertTrue("Not indexed", list.findByIndex(Account.REMARK, "first")
+				.isEmpty());
+
+		Document doc = toDocument(list);
+		assertTrue("Index written", XmlSerializeTool.writeString(doc)
+				.contains("index=\""));
+		EnryptionUtil.lock();
+		list = new AccountList(doc.getDocumentElement());
+		list.unlockFields(CryptedTest.PASSWORD);
+		assertEquals("Read back", 2, list.findByIndex(Account.USERNAME,
+				"alice").size());
+		assertEquals("Other value", 1, list.findByIndex(Account.USERNAME,
+				"bob").size());
+
+		Account bob = (Account) list.findByIndex(Account.USERNAME, "bob")
+				.get(0);
+		bob.getStringChildByName(Account.USERNAME).setContent("alice");
+		assertEquals("Modified", 3, list.findByIndex(Account.USERNAME,
+				"alice").size());
+		list.remove(list.findByIndex(Account.USERNAME, "alice").get(0));
+		assertEquals("Removed", 2, list.findByIndex(Account.USERNAME,
+				"alice").size());
+	}
+
+	/**
+	 * Content set without firing a modify event and a changed index flag are
+	 * found right away as well.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testFindByIndexWithoutModify() throws Exception {
+		AccountList list = new AccountList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		Account first = new Account(list, "alice", "first");
+		new Account(list, "bob", "second");
+		assertEquals("Before", 1, list.findByIndex(Account.USERNAME, "alice")
+				.size());
+
+		first.getStringChildByName(Account.USERNAME).setContent("bob", true);
+		assertTrue("Old value", list.findByIndex(Account.USERNAME, "alice")
+				.isEmpty());
+		assertEquals("New value", 2, list.findByIndex(Account.USERNAME,
+				"bob").size());
+
+		first.getStringChildByName(Account.REMARK).setIndexed(true);
+		assertEquals("Indexed", 1, list.findByIndex(Account.REMARK, "first")
+				.size());
+	}
+
+	/**
+	 * An entry with an indexed username and a plain remark.
+	 */
+	private static class Account extends Entry {
+
+		/** The indexed property. */
+		static final String USERNAME = "username";
+
+		/** The property, which is not indexed. */
+		static final String REMARK = "remark";
+
+		/**
+		 * Instantiates a new account and adds it to the list.
+		 * 
+		 * @param list
+		 *            the list
+		 * @param username
+		 *            the username
+		 * @param remark
+		 *            the remark
+		 * 
+		 * @throws Exception
+		 *             the exception
+		 */
+		Account(AccountList list, String username, String remark)
+				throws Exception {
+			super("account", null);
+			list.add(this);
+			getStringChildByName(USERNAME).setContent(username);
+			getStringChildByName(REMARK).setContent(remark);
+		}
+
+		/**
+		 * Parses an account.
+		 * 
+		 * @param node
+		 *            the node
+		 * @param parent
+		 *            the parent
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		Account(Element node, MappingElement parent)
+				throws SysParseException, SysInvalidArgumentException {
+			super(node, parent);
+		}
+
+		@Override
+		protected void initChildren() {
+			try {
+				addStringProperty(USERNAME, true);
+				addStringProperty(REMARK);
+			} catch (SysInvalidArgumentException e) {
+				throw new SysRuntimeException("Cannot add properties", e);
+			}
+		}
+	}
+
+	/**
+	 * A list of accounts.
+	 */
+	private static class AccountList extends ListElement {
+
+		/**
+		 * Instantiates a new, empty list.
+		 * 
+		 * @throws Exception
+		 *             the exception
+		 */
+		AccountList() throws Exception {
+			super(ListElementTest.LIST_ELEMENT_NAME, null);
+		}
+
+		/**
+		 * Parses a list.
+		 * 
+		 * @param node
+		 *            the node
+		 * 
+		 * @throws Exception
+		 *             the exception
+		 */
+		AccountList(Element node) throws Exception {
+			super(node, null);
+		}
+
+		@Override
+		protected MappingElement loadElement(String name, Element node)
+				throws SysParseException, SysInvalidArgumentException {
+			return new Account(node, this);
+		}
+	}
+
+	/**
+	 * Field iterations, which are not a number or out of the PBKDF2 bounds,
+	 * are rejected when parsing.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testParseFieldIterations() throws Exception {
+		Document doc = toDocument(createList());
+		for (String iterations : new String[] { "many", "0",
+				String.valueOf(KdfParameters.MAX_PBKDF2_ITERATIONS + 1L) }) {
+			doc.getDocumentElement().setAttribute("fieldIterations",
+					iterations);
+			try {
+				new ListElement(doc.getDocumentElement(), null);
+				fail("Field iterations " + iterations + " accepted");
+			} catch (SysParseException e) {
+				assertTrue(e.getMessage().startsWith("Field iterations"));
+			}
+		}
+	}
+
+	/**
+	 * Merging a root without field encryption into one with it copies the
+	 * field cipher: locking the older root leaves the merged one unlocked.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testMergeKeepsOwnCipher() throws Exception {
+		ListElement left = createList();
+		ListElement right = new ListElement(ListElementTest.LIST_ELEMENT_NAME,
+				null);
+		right.setId(left.getId());
+		right.setLastModified(left.getLastModified().plusSeconds(1));
+		MappingElement merged = left.merge(right);
+		assertTrue("Newer root kept", merged == right);
+
+		left.lockFields();
+		Document doc = toDocument(right);
+		ListElement result = new ListElement(doc.getDocumentElement(), null);
+		result.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(ListElementTest.FIRST_CONTENT, ((StringElement) result
+				.getElements().get(FIRST_ID)).getContent());
+	}
+
+	/**
+	 * Two replicas with different field keys are merged without unlocking.
+	 * The result is written with the key of the merged root.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testMergeLocked() throws Exception {
+		ListElement left = createList();
+		ListElement right = createList();
+		((StringElement) right.getElements().get(SECOND_ID)).setContent(
+				"changed in right");
+		Document leftDoc = toDocument(left);
+		Document rightDoc = toDocument(right);
+		EnryptionUtil.lock();
+
+		left = new ListElement(leftDoc.getDocumentElement(), null);
+		right = new ListElement(rightDoc.getDocumentElement(), null);
+		ListElement merged = (ListElement) left.merge(right);
+
+		left.unlockFields(CryptedTest.PASSWORD);
+		right.unlockFields(CryptedTest.PASSWORD);
+		Document mergedDoc = toDocument(merged);
+
+		EnryptionUtil.lock();
+		ListElement result = new ListElement(mergedDoc.getDocumentElement(),
+				null);
+		result.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(ListElementTest.FIRST_CONTENT, ((StringElement) result
+				.getElements().get(FIRST_ID)).getContent());
+		assertEquals("changed in right", ((StringElement) result.getElements()
+				.get(SECOND_ID)).getContent());
+	}
+
+}
@@ -0,0 +1,292 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+import de.petranek.syncyoursecrets.xmlmapping.LazyListElementTest.LazyCardList;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.Card;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class JournalTest checks, that saves append the changes to the journal
+ * and that opening the vault replays them.
+ * 
+ * @author Jan Petranek
+ */
+public class JournalTest {
+
+	/** The vault file. */
+	private File testfile;
+
+	/** The session. */
+	private VaultSession session;
+
+	/**
+	 * Sets the testsuite up.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		testfile = FileLocationHelper.getFile("tmp/journal.xml");
+		tearDownFiles();
+		session = XmlSerializeTool.unlock(testfile, CryptedTest.PASSWORD
+				.toCharArray());
+	}
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		session.close();
+		EnryptionUtil.lock();
+		tearDownFiles();
+	}
+
+	/**
+	 * Delete vault and journal.
+	 */
+	private void tearDownFiles() {
+		File journalFile = new File(testfile.getPath() + Journal.SUFFIX);
+		if (journalFile.exists()) {
+			journalFile.delete();
+		}
+		if (testfile.exists()) {
+			testfile.delete();
+		}
+	}
+
+	/**
+	 * Open the vault with a fresh session.
+	 * 
+	 * @return the journal
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private Journal<CardList> reopen() throws Exception {
+		try (VaultSession fresh = XmlSerializeTool.unlock(testfile,
+				CryptedTest.PASSWORD.toCharArray())) {
+			return Journal.open(fresh, testfile, CardList::new);
+		}
+	}
+
+	/**
+	 * Create a card.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param number
+	 *            the number
+	 * 
+	 * @return the card
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static Card createCard(String name, String number)
+			throws Exception {
+		Card card = new Card();
+		card.setName(name);
+		card.getStringChildByName(Card.NUMBER).setContent(number);
+		return card;
+	}
+
+	/**
+	 * Find the visible card with the given name.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param name
+	 *            the name
+	 * 
+	 * @return the card
+	 */
+	private static Card findCard(ListElement list, String name) {
+		for (Map.Entry<Long, String> entry : list.getNames().entrySet()) {
+			if (name.equals(entry.getValue())) {
+				return (Card) list.get(entry.getKey());
+			}
+		}
+		throw new AssertionError("No card named " + name);
+	}
+
+	/**
+	 * Creates, updates and deletes are appended, the vault is left alone and
+	 * opening replays them.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		Journal<CardList> journal = Journal.create(session, testfile,
+				StreamLoaderTest.createList(), CardList::new);
+		byte[] vault = Files.readAllBytes(testfile.toPath());
+		CardList list = journal.getRoot();
+		Card first = findCard(list, "first");
+
+		first.getStringChildByName(Card.PIN).setContent("4321");
+		journal.save();
+		list.add(createCard("third", "9012"));
+		list.remove(first);
+		journal.save();
+
+		assertArrayEquals(vault, Files.readAllBytes(testfile.toPath()));
+		assertTrue(journal.getJournalFile().exists());
+		assertEquals(StreamLoaderTest.toXmlString(list), StreamLoaderTest
+				.toXmlString(reopen().getRoot()));
+		assertFalse(reopen().getRoot().getNames().containsValue("first"));
+	}
+
+	/**
+	 * A save costs the change, not the vault.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRecordSize() throws Exception {
+		CardList list = new CardList();
+		for (int i = 0; i < 200; i++) {
+			list.add(createCard("card " + i, Integer.toString(i)));
+		}
+		Journal<CardList> journal = Journal.create(session, testfile, list,
+				CardList::new);
+		findCard(list, "card 7").getStringChildByName(Card.PIN)
+				.setContent("7777");
+		journal.save();
+		assertTrue(journal.getJournalFile().length() * 20 < testfile
+				.length());
+
+		// nothing changed, nothing written
+		long length = journal.getJournalFile().length();
+		journal.save();
+		assertEquals(length, journal.getJournalFile().length());
+	}
+
+	/**
+	 * A record cut off by a crash is discarded, the complete ones are kept.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testTornRecord() throws Exception {
+		Journal<CardList> journal = Journal.create(session, testfile,
+				StreamLoaderTest.createList(), CardList::new);
+		CardList list = journal.getRoot();
+		list.add(createCard("third", "9012"));
+		journal.save();
+		String expected = StreamLoaderTest.toXmlString(list);
+		long complete = journal.getJournalFile().length();
+
+		list.add(createCard("fourth", "3456"));
+		journal.save();
+		try (RandomAccessFile raf = new RandomAccessFile(journal
+				.getJournalFile(), "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+
+		assertEquals(expected, StreamLoaderTest.toXmlString(reopen()
+				.getRoot()));
+		assertEquals(complete, journal.getJournalFile().length());
+	}
+
+	/**
+	 * A checkpoint writes the vault and deletes the journal; replaying an
+	 * old journal once more changes nothing.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCheckpoint() throws Exception {
+		Journal<CardList> journal = Journal.create(session, testfile,
+				StreamLoaderTest.createList(), CardList::new);
+		CardList list = journal.getRoot();
+		list.add(createCard("third", "9012"));
+		journal.save();
+		File copy = new File(testfile.getPath() + ".copy");
+		Files.copy(journal.getJournalFile().toPath(), copy.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		journal.setCheckpointSize(0);
+		findCard(list, "third").getStringChildByName(Card.PIN)
+				.setContent("1111");
+		journal.save();
+		assertFalse(journal.getJournalFile().exists());
+		String expected = StreamLoaderTest.toXmlString(list);
+		assertEquals(expected, StreamLoaderTest.toXmlString(StreamLoader
+				.loadEncryptedFile(session, testfile, CardList::new)));
+
+		Files.move(copy.toPath(), journal.getJournalFile().toPath());
+		assertEquals(expected, StreamLoaderTest.toXmlString(reopen()
+				.getRoot()));
+	}
+
+	/**
+	 * Children of a lazy list are journaled only when changed, not when
+	 * loaded.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLazyList() throws Exception {
+		Journal.create(session, testfile, StreamLoaderTest.createList(),
+				CardList::new);
+		Journal<LazyCardList> journal = Journal.open(session, testfile,
+				LazyCardList::new);
+		LazyCardList list = journal.getRoot();
+		assertEquals("0000", findCard(list, "first")
+				.getStringChildByName(Card.PIN).getContent());
+		journal.save();
+		assertFalse(journal.getJournalFile().exists());
+
+		list.add(createCard("third", "9012"));
+		journal.save();
+		assertTrue(journal.getJournalFile().exists());
+		assertEquals(StreamLoaderTest.toXmlString(list), StreamLoaderTest
+				.toXmlString(reopen().getRoot()));
+	}
+
+}
@@ -0,0 +1,237 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.Card;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class LazyListElementTest checks, that a lazily loading ListElement
+ * loads its children only when they are accessed, and then just like an eager
+ * one.
+ * 
+ * @author Jan Petranek
+ */
+public class LazyListElementTest {
+
+	/**
+	 * Wipe all keys after each test.
+	 */
+	@After
+	public void tearDown() {
+		EnryptionUtil.lock();
+	}
+
+	/**
+	 * Gets the id of the visible child with the given name.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param name
+	 *            the name
+	 * 
+	 * @return the id
+	 */
+	private static long idOf(ListElement list, String name) {
+		for (Map.Entry<Long, String> entry : list.getNames().entrySet()) {
+			if (name.equals(entry.getValue())) {
+				return entry.getKey();
+			}
+		}
+		throw new AssertionError("No child named " + name);
+	}
+
+	/**
+	 * Names are known without loading a child; only accessed children are
+	 * loaded.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testStream() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String xml = StreamLoaderTest.toXmlString(list);
+
+		LazyCardList lazy = StreamLoader.loadString(xml, LazyCardList::new);
+		Map<Long, String> names = lazy.getNames();
+		assertEquals(list.getNames(), names);
+		assertEquals(2, names.size());
+		assertTrue(names.containsValue("first"));
+		assertEquals(0, lazy.loaded);
+
+		Card first = (Card) lazy.get(idOf(lazy, "first"));
+		assertEquals("0000", first.getStringChildByName(Card.PIN).getContent());
+		assertEquals(1, lazy.loaded);
+
+		// the deleted card is not loaded for iterating
+		Iterator<MappingElement> it = lazy.iterator();
+		it.next();
+		it.next();
+		assertTrue(!it.hasNext());
+		assertEquals(2, lazy.loaded);
+
+		assertEquals(xml, StreamLoaderTest.toXmlString(lazy));
+		assertEquals(3, lazy.loaded);
+	}
+
+	/**
+	 * A list parsed from a DOM loads lazily as well.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testDom() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String xml = StreamLoaderTest.toXmlString(list);
+
+		LazyCardList lazy = new LazyCardList(XmlSerializeTool.readString(xml)
+				.getDocumentElement());
+		assertEquals(list.getNames(), lazy.getNames());
+		assertEquals(0, lazy.loaded);
+		assertEquals(2, lazy.toArray().length);
+		assertEquals(2, lazy.loaded);
+		assertEquals(xml, StreamLoaderTest.toXmlString(lazy));
+	}
+
+	/**
+	 * Sealed names are opened by loading the child; unknown ids are null.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSealedNames() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		String xml = StreamLoaderTest.toXmlString(list);
+
+		LazyCardList lazy = StreamLoader.loadString(xml, LazyCardList::new);
+		lazy.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(list.getNames(), lazy.getNames());
+		// the card has a sealed name, the note has none
+		assertEquals(1, lazy.loaded);
+		assertNull(lazy.get(-1L));
+		assertEquals(xml, StreamLoaderTest.toXmlString(lazy));
+	}
+
+	/**
+	 * Merging loads all children of both lists.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testMerge() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String xml = StreamLoaderTest.toXmlString(list);
+		LazyCardList lazy = StreamLoader.loadString(xml, LazyCardList::new);
+
+		Card other = new Card();
+		other.setName("other");
+		list.add(other);
+
+		ListElement merged = (ListElement) lazy.merge(list);
+		assertEquals(3, lazy.loaded);
+		assertEquals(3, merged.getNames().size());
+		assertEquals(StreamLoaderTest.toXmlString(list.merge(new CardList(
+				XmlSerializeTool.readString(xml).getDocumentElement()))),
+				StreamLoaderTest.toXmlString(merged));
+	}
+
+	/**
+	 * A list of cards, loading its children lazily and counting the loads.
+	 */
+	static class LazyCardList extends CardList {
+
+		/** The number of children loaded. */
+		private int loaded;
+
+		/**
+		 * Parses a list.
+		 * 
+		 * @param node
+		 *            the node
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		LazyCardList(Element node) throws SysParseException,
+				SysInvalidArgumentException {
+			super(node);
+		}
+
+		/**
+		 * Reads a list.
+		 * 
+		 * @param reader
+		 *            the reader
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		LazyCardList(XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException {
+			super(reader);
+		}
+
+		@Override
+		protected boolean loadsLazily() {
+			return true;
+		}
+
+		@Override
+		protected MappingElement loadElement(String name, Element node)
+				throws SysParseException, SysInvalidArgumentException {
+			loaded++;
+			return super.loadElement(name, node);
+		}
+
+		@Override
+		protected MappingElement loadElement(String name,
+				XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException {
+			loaded++;
+			return super.loadElement(name, reader);
+		}
+	}
+
+}
@@ -0,0 +1,249 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.Card;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class ParallelSerializationTest checks, that large lists recorded in
+ * parallel are written exactly like those recorded one by one.
+ * 
+ * @author Jan Petranek
+ */
+public class ParallelSerializationTest {
+
+	/** The number of cards, enough to record them in parallel. */
+	private static final int SIZE = 2 * ListElement.PARALLEL_THRESHOLD;
+
+	/** The pool of the PooledCardLists. */
+	private static CountingPool pool;
+
+	/**
+	 * Sets the testsuite up.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		pool = new CountingPool();
+	}
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdown();
+		EnryptionUtil.lock();
+	}
+
+	/**
+	 * Create a large list.
+	 * 
+	 * @return the list
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static CardList createList() throws Exception {
+		CardList list = new CardList();
+		list.setName("cards");
+		for (int i = 0; i < SIZE; i++) {
+			Card card = new Card();
+			card.setName("card " + i);
+			card.getStringChildByName(Card.NUMBER).setContent(
+					Integer.toString(i));
+			card.getStringChildByName(Card.PIN).setContent("<" + i + "&>");
+			list.add(card);
+		}
+		return list;
+	}
+
+	/**
+	 * The output is byte-identical to the one of a list, whose children have
+	 * been recorded one by one, both as stream and as DOM.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSameAsSequential() throws Exception {
+		String xml = StreamSaver.saveString(createList());
+		CardList parallel = StreamLoader.loadString(xml, PooledCardList::new);
+		CardList sequential = StreamLoader.loadString(xml, CardList::new);
+		for (MappingElement element : sequential.getChildren()) {
+			element.getFragment();
+		}
+
+		assertEquals(StreamSaver.saveString(sequential), StreamSaver
+				.saveString(parallel));
+		assertTrue("Recorded in parallel", pool.submitted.get() > 1);
+		assertEquals(StreamLoaderTest.toXmlString(sequential),
+				StreamLoaderTest.toXmlString(parallel));
+		assertEquals(xml, StreamSaver.saveString(parallel));
+	}
+
+	/**
+	 * Only the changed children are recorded again, the DOM is built the
+	 * same way.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testDomAfterChange() throws Exception {
+		String xml = StreamSaver.saveString(createList());
+		CardList parallel = StreamLoader.loadString(xml, PooledCardList::new);
+		String first = StreamLoaderTest.toXmlString(parallel);
+		int submitted = pool.submitted.get();
+		assertTrue("Recorded in parallel", submitted > 1);
+
+		((Card) parallel.iterator().next()).getStringChildByName(Card.PIN)
+				.setContent("changed");
+		String second = StreamLoaderTest.toXmlString(parallel);
+		assertEquals("Too few to record in parallel", submitted, pool.submitted
+				.get());
+		assertFalse(first.contains("changed"));
+		assertTrue(second.contains("changed"));
+		assertEquals(second, StreamLoaderTest.toXmlString(StreamLoader
+				.loadString(StreamSaver.saveString(parallel), CardList::new)));
+	}
+
+	/**
+	 * Sealed fields are recorded in parallel as well and read back.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testFieldEncryption() throws Exception {
+		CardList list = createList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		String xml = StreamSaver.saveString(list);
+		EnryptionUtil.lock();
+
+		CardList loaded = StreamLoader.loadString(xml, PooledCardList::new);
+		loaded.unlockFields(CryptedTest.PASSWORD);
+		String resealed = StreamSaver.saveString(loaded);
+		assertTrue("Recorded in parallel", pool.submitted.get() > 1);
+		EnryptionUtil.lock();
+
+		CardList result = StreamLoader.loadString(resealed, CardList::new);
+		result.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(1, result.findByIndex(Card.NUMBER, "7").size());
+		MappingElement[] cards = result.toArray();
+		assertEquals(SIZE, cards.length);
+		for (MappingElement element : cards) {
+			Card card = (Card) element;
+			assertEquals("<" + card.getStringChildByName(Card.NUMBER)
+					.getContent() + "&>", card.getStringChildByName(Card.PIN)
+					.getContent());
+		}
+	}
+
+	/**
+	 * A failure while recording in parallel is passed on to the caller.
+	 * 
+	 * @throws Exception
+	 *             expected
+	 */
+	@Test(expected = SysInvalidArgumentException.class)
+	public void testLocked() throws Exception {
+		CardList list = createList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		String xml = StreamSaver.saveString(list);
+		EnryptionUtil.lock();
+
+		CardList loaded = StreamLoader.loadString(xml, PooledCardList::new);
+		StreamSaver.saveString(loaded);
+	}
+
+	/**
+	 * A pool counting the tasks submitted.
+	 */
+	private static final class CountingPool extends ForkJoinPool {
+
+		/** The number of tasks submitted. */
+		private final AtomicInteger submitted = new AtomicInteger();
+
+		/**
+		 * Instantiates a new pool with four threads.
+		 */
+		CountingPool() {
+			super(4);
+		}
+
+		@Override
+		public <T> ForkJoinTask<T> submit(Callable<T> task) {
+			submitted.incrementAndGet();
+			return super.submit(task);
+		}
+	}
+
+	/**
+	 * A list of cards, serialized on the pool of the test.
+	 */
+	static class PooledCardList extends CardList {
+
+		/**
+		 * Reads a list.
+		 * 
+		 * @param reader
+		 *            the reader
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		PooledCardList(XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException {
+			super(reader);
+		}
+
+		@Override
+		protected ForkJoinPool getSerializationPool() {
+			return pool;
+		}
+	}
+
+}
@@ -0,0 +1,439 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import de.petranek.syncyoursecrets.util.SysInvalidArgumentException;
+import de.petranek.syncyoursecrets.util.SysParseException;
+import de.petranek.syncyoursecrets.util.SysRuntimeException;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+
+/**
+ * The Class StreamLoaderTest checks, that loading from a StAX stream builds
+ * the same elements as parsing a DOM.
+ * 
+ * @author Jan Petranek
+ */
+public class StreamLoaderTest {
+
+	/** A list in version 1, whose name is an attribute. */
+	private static final String LEGACY_NAME_LIST = "<list created=\"2008-09-19T21:52:14.887+02:00\" id=\"1\" lastAction=\"CREATE\" lastModified=\"2008-09-19T21:52:14.887+02:00\" name=\"Legacy\">"
+			+ "<firstElement created=\"2008-09-19T21:52:14.989+02:00\" id=\"2\" lastAction=\"CREATE\" lastModified=\"2008-09-19T21:52:14.989+02:00\">Hello &amp; <![CDATA[<World>]]></firstElement>"
+			+ "<!-- a comment --></list>";
+
+	/** The testfile. */
+	private File testfile;
+
+	/**
+	 * Sets the testsuite up.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		testfile = FileLocationHelper.getFile("tmp/streamLoader.xml");
+	}
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		EnryptionUtil.lock();
+		if (testfile.exists()) {
+			testfile.delete();
+		}
+	}
+
+	/**
+	 * Serialize an element into a String.
+	 * 
+	 * @param element
+	 *            the element
+	 * 
+	 * @return the XML
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	static String toXmlString(MappingElement element) throws Exception {
+		Document doc = XmlSerializeTool.createDocument();
+		doc.appendChild(element.toXml(doc));
+		return XmlSerializeTool.writeString(doc);
+	}
+
+	/**
+	 * Create a list with two named entries, one of them deleted.
+	 * 
+	 * @return the list
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	static CardList createList() throws Exception {
+		CardList list = new CardList();
+		list.setName("cards");
+
+		Card first = new Card();
+		first.setName("first");
+		first.getStringChildByName(Card.NUMBER).setContent("1234");
+		first.getStringChildByName(Card.PIN).setContent("0000");
+		list.add(first);
+
+		Card second = new Card();
+		second.setName("second");
+		second.getStringChildByName(Card.NUMBER).setContent("5678");
+		list.add(second);
+		second.delete();
+
+		StringElement note = new StringElement("note", null);
+		note.setContent("  spaces\nand lines <&> \"quoted\"  ");
+		list.add(note);
+		return list;
+	}
+
+	/**
+	 * The legacy test files are loaded the same way as by the DOM parser.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLegacyFiles() throws Exception {
+		File listFile = FileLocationHelper.getFile("inputList.xml");
+		Element node = XmlSerializeTool.readFile(listFile).getDocumentElement();
+		ListElement list = StreamLoader.loadFile(listFile,
+				reader -> new ListElement(reader, null));
+		assertEquals(toXmlString(new ListElement(node, null)),
+				toXmlString(list));
+
+		File entryFile = FileLocationHelper.getFile("inputPWEntry.xml");
+		node = XmlSerializeTool.readFile(entryFile).getDocumentElement();
+		Entry entry = StreamLoader.loadFile(entryFile,
+				reader -> new PasswordEntry(reader, null));
+		assertEquals(toXmlString(new PasswordEntry(node, null)),
+				toXmlString(entry));
+		assertEquals("access to the world bank", entry.getName());
+		assertEquals("swordfish", entry.getStringChildByName("password")
+				.getContent());
+	}
+
+	/**
+	 * A name in the attribute of version 1 is converted, text is read in one
+	 * piece.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLegacyName() throws Exception {
+		Element node = XmlSerializeTool.readString(LEGACY_NAME_LIST)
+				.getDocumentElement();
+		ListElement expected = new ListElement(node, null);
+		ListElement list = StreamLoader.loadString(LEGACY_NAME_LIST,
+				reader -> new ListElement(reader, null));
+		// the converted name gets a new id, each time
+		assertEquals("Legacy", list.getName());
+		assertEquals(expected.getName(), list.getName());
+		assertEquals(expected.getNameProperty().getCreated(), list
+				.getNameProperty().getCreated());
+		assertEquals(toXmlString(expected.getElements().get(2L)),
+				toXmlString(list.getElements().get(2L)));
+		assertEquals("Hello & <World>", ((StringElement) list.getElements()
+				.get(2L)).getContent());
+	}
+
+	/**
+	 * Entries, names and deleted elements survive a round trip through the
+	 * stream loader.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		String xml = toXmlString(createList());
+		CardList loaded = StreamLoader.loadString(xml, CardList::new);
+		assertEquals(xml, toXmlString(loaded));
+		assertEquals("cards", loaded.getName());
+		assertEquals(xml, toXmlString(new CardList(XmlSerializeTool
+				.readString(xml).getDocumentElement())));
+	}
+
+	/**
+	 * Sealed fields of an encrypted file are loaded and opened.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testEncrypted() throws Exception {
+		CardList list = createList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		String xml = toXmlString(list);
+		Document doc = XmlSerializeTool.createDocument();
+		doc.appendChild(list.toXml(doc));
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc,
+				testfile);
+		EnryptionUtil.lock();
+
+		CardList loaded = StreamLoader.loadEncryptedFile(CryptedTest.PASSWORD,
+				testfile, CardList::new);
+		loaded.unlockFields(CryptedTest.PASSWORD);
+		assertEquals(xml, toXmlString(loaded));
+		assertTrue(xml.contains("encrypted=\"true\""));
+		assertEquals("first", loaded.findByIndex(Card.NUMBER, "1234").get(0)
+				.getName());
+	}
+
+	/**
+	 * A wrong password is reported as such, not as broken XML.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void testWrongPassword() throws Exception {
+		Document doc = XmlSerializeTool.createDocument();
+		doc.appendChild(createList().toXml(doc));
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc,
+				testfile);
+		StreamLoader.loadEncryptedFile("wrong", testfile, CardList::new);
+	}
+
+	/**
+	 * Broken XML is reported.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test(expected = SysParseException.class)
+	public void testBrokenXml() throws Exception {
+		StreamLoader.loadString(LEGACY_NAME_LIST.replace("</list>", ""),
+				reader -> new ListElement(reader, null));
+	}
+
+	/**
+	 * An entry like the one in the legacy test file.
+	 */
+	private static class PasswordEntry extends Entry {
+
+		/**
+		 * Parses an entry.
+		 * 
+		 * @param node
+		 *            the node
+		 * @param parent
+		 *            the parent
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		PasswordEntry(Element node, MappingElement parent)
+				throws SysParseException, SysInvalidArgumentException {
+			super(node, parent);
+		}
+
+		/**
+		 * Reads an entry.
+		 * 
+		 * @param reader
+		 *            the reader
+		 * @param parent
+		 *            the parent
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		PasswordEntry(XMLStreamReader reader, MappingElement parent)
+				throws SysParseException, SysInvalidArgumentException {
+			super(reader, parent);
+		}
+
+		@Override
+		protected void initChildren() {
+			try {
+				addStringProperty("password");
+				addStringProperty("user");
+				addStringProperty("url");
+				addStringProperty("remark");
+			} catch (SysInvalidArgumentException e) {
+				throw new SysRuntimeException("Cannot add properties", e);
+			}
+		}
+	}
+
+	/**
+	 * A card with an indexed number and a pin.
+	 */
+	static class Card extends Entry {
+
+		/** The indexed property. */
+		static final String NUMBER = "number";
+
+		/** The property, which is not indexed. */
+		static final String PIN = "pin";
+
+		/**
+		 * Instantiates a new card.
+		 * 
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		Card() throws SysInvalidArgumentException {
+			super("card", null);
+		}
+
+		/**
+		 * Parses a card.
+		 * 
+		 * @param node
+		 *            the node
+		 * @param parent
+		 *            the parent
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		Card(Element node, MappingElement parent) throws SysParseException,
+				SysInvalidArgumentException {
+			super(node, parent);
+		}
+
+		/**
+		 * Reads a card.
+		 * 
+		 * @param reader
+		 *            the reader
+		 * @param parent
+		 *            the parent
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		Card(XMLStreamReader reader, MappingElement parent)
+				throws SysParseException, SysInvalidArgumentException {
+			super(reader, parent);
+		}
+
+		@Override
+		protected void initChildren() {
+			try {
+				addStringProperty(NUMBER, true);
+				addStringProperty(PIN);
+			} catch (SysInvalidArgumentException e) {
+				throw new SysRuntimeException("Cannot add properties", e);
+			}
+		}
+	}
+
+	/**
+	 * A list of cards and notes.
+	 */
+	static class CardList extends ListElement {
+
+		/**
+		 * Instantiates a new, empty list.
+		 * 
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		CardList() throws SysInvalidArgumentException {
+			super("cards", null);
+		}
+
+		/**
+		 * Parses a list.
+		 * 
+		 * @param node
+		 *            the node
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		CardList(Element node) throws SysParseException,
+				SysInvalidArgumentException {
+			super(node, null);
+		}
+
+		/**
+		 * Reads a list.
+		 * 
+		 * @param reader
+		 *            the reader
+		 * 
+		 * @throws SysParseException
+		 *             the sys parse exception
+		 * @throws SysInvalidArgumentException
+		 *             the sys invalid argument exception
+		 */
+		CardList(XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException {
+			super(reader, null);
+		}
+
+		@Override
+		protected MappingElement loadElement(String name, Element node)
+				throws SysParseException, SysInvalidArgumentException {
+			if ("card".equals(name)) {
+				return new Card(node, this);
+			}
+			return super.loadElement(name, node);
+		}
+
+		@Override
+		protected MappingElement loadElement(String name,
+				XMLStreamReader reader) throws SysParseException,
+				SysInvalidArgumentException {
+			if ("card".equals(name)) {
+				return new Card(reader, this);
+			}
+			return super.loadElement(name, reader);
+		}
+	}
+
+}
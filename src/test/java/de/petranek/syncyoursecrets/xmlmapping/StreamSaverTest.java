@@ -0,0 +1,193 @@
+/**
+ * SyncYourSecrets-xmlbase provides a basic layer for SyncYourSecrets
+ *
+ *
+ *    Copyright 2026 Jan Petranek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package de.petranek.syncyoursecrets.xmlmapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.VaultSession;
+import de.petranek.syncyoursecrets.util.XmlSerializeTool;
+import de.petranek.syncyoursecrets.xmlmapping.StreamLoaderTest.CardList;
+
+/**
+ * The Class StreamSaverTest checks, that writing to a StAX stream produces
+ * the same document as serializing a DOM.
+ * 
+ * @author Jan Petranek
+ */
+public class StreamSaverTest {
+
+	/** The testfile. */
+	private File testfile;
+
+	/**
+	 * Sets the testsuite up.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		testfile = FileLocationHelper.getFile("tmp/streamSaver.xml");
+	}
+
+	/**
+	 * Tear the testsuite down.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		EnryptionUtil.lock();
+		if (testfile.exists()) {
+			testfile.delete();
+		}
+	}
+
+	/**
+	 * Run an XML document through the DOM parser and serializer, so documents
+	 * differing only in their notation compare equal.
+	 * 
+	 * @param xml
+	 *            the XML document
+	 * 
+	 * @return the normalized document
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static String normalize(String xml) throws Exception {
+		return XmlSerializeTool.writeString(XmlSerializeTool.readString(xml));
+	}
+
+	/**
+	 * The document written is the one toXml() produces.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSameAsDom() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String expected = StreamLoaderTest.toXmlString(list);
+		assertEquals(expected, normalize(StreamSaver.saveString(list)));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamSaver.save(list, out);
+		assertEquals(expected, normalize(new String(out.toByteArray(),
+				StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * A plain file is read back by the DOM parser and the stream loader.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testFile() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		String expected = StreamLoaderTest.toXmlString(list);
+		StreamSaver.saveFile(list, testfile);
+
+		assertEquals(expected, XmlSerializeTool.writeString(XmlSerializeTool
+				.readFile(testfile)));
+		assertEquals(expected, StreamLoaderTest.toXmlString(StreamLoader
+				.loadFile(testfile, CardList::new)));
+	}
+
+	/**
+	 * Sealed fields and the encrypted file are written as with a DOM.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testEncryptedFile() throws Exception {
+		CardList list = StreamLoaderTest.createList();
+		list.enableFieldEncryption(CryptedTest.PASSWORD);
+		String expected = StreamLoaderTest.toXmlString(list);
+		assertTrue(expected.contains("encrypted=\"true\""));
+
+		StreamSaver.saveEncryptedFile(CryptedTest.PASSWORD, list, testfile);
+		assertEquals(expected, XmlSerializeTool.writeString(XmlSerializeTool
+				.readEncryptedFile(CryptedTest.PASSWORD, testfile)));
+
+		try (VaultSession session = XmlSerializeTool.unlock(testfile,
+				CryptedTest.PASSWORD.toCharArray())) {
+			StreamSaver.saveEncryptedFile(session, list, testfile);
+			CardList loaded = StreamLoader.loadEncryptedFile(session,
+					testfile, CardList::new);
+			loaded.unlockFields(CryptedTest.PASSWORD);
+			assertEquals(expected, StreamLoaderTest.toXmlString(loaded));
+		}
+	}
+
+
+	/**
+	 * Line breaks, carriage returns and tabs read back unchanged, in content
+	 * as well as in attribute values.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testLineBreaks() throws Exception {
+		String content = "a\r\nb\rc\td\n";
+		CardList list = new CardList();
+		list.setName(content);
+		StringElement note = new StringElement("note", null);
+		note.setContent(content);
+		list.add(note);
+
+		CardList loaded = StreamLoader.loadString(StreamSaver
+				.saveString(list), CardList::new);
+		assertEquals(content, loaded.getName());
+		StreamSaver.saveFile(list, testfile);
+		loaded = StreamLoader.loadFile(testfile, CardList::new);
+		assertEquals(content, ((StringElement) loaded.getElements().get(
+				note.getId())).getContent());
+
+		StringWriter out = new StringWriter();
+		XMLStreamWriter writer = XmlCodec.createWriter(out);
+		writer.writeStartDocument();
+		writer.writeEmptyElement("element");
+		writer.writeAttribute("attribute", content);
+		writer.writeEndDocument();
+		writer.close();
+		XMLStreamReader reader = XmlCodec.createReader(out.toString());
+		reader.nextTag();
+		assertEquals(content, reader.getAttributeValue(null, "attribute"));
+	}
+
+}
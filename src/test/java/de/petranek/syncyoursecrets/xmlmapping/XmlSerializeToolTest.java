@@ -18,16 +18,34 @@
  */
 package de.petranek.syncyoursecrets.xmlmapping;
 
+import de.petranek.syncyoursecrets.crypto.CipherScheme;
+import de.petranek.syncyoursecrets.crypto.Compression;
+import de.petranek.syncyoursecrets.crypto.ContainerHeader;
+import de.petranek.syncyoursecrets.crypto.KdfParameters;
+import de.petranek.syncyoursecrets.io.FileHelper;
+import de.petranek.syncyoursecrets.util.EncryptionOptions;
+import de.petranek.syncyoursecrets.util.EnryptionUtil;
+import de.petranek.syncyoursecrets.util.SysCryptoException;
+import de.petranek.syncyoursecrets.util.SysParseException;
 import de.petranek.syncyoursecrets.util.SysXmlBaseException;
+import de.petranek.syncyoursecrets.util.VaultSession;
 import de.petranek.syncyoursecrets.util.XmlSerializeTool;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * The Class XmlSerializeToolTest performs a simple read/write test with an xml
@@ -37,6 +55,11 @@ import static org.junit.Assert.assertEquals;
  */
 public class XmlSerializeToolTest {
 
+	/** The files the tests write below tmp, deleted after each test. */
+	private static final String[] TMP_FILES = { "output.xml", "legacy.xml",
+			"string.enc", "session.enc", "entity.txt", "async.enc",
+			"verify.enc", "passwords.enc", "convert.xml", "options.enc" };
+
 	/**
 	 * Sets the up.
 	 *
@@ -47,12 +70,18 @@ public class XmlSerializeToolTest {
 	}
 
 	/**
-	 * Tear down.
+	 * Tear down, delete the files written.
 	 *
 	 * @throws Exception the exception
 	 */
 	@After
 	public void tearDown() throws Exception {
+		for (String name : TMP_FILES) {
+			File file = FileLocationHelper.getFile("tmp/" + name);
+			if (file.exists()) {
+				file.delete();
+			}
+		}
 	}
 
 	/**
@@ -80,4 +109,326 @@ public class XmlSerializeToolTest {
 
 	}
 
+	/**
+	 * Encrypt a document into a stream and read it back.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void encryptedStreamTest() throws SysXmlBaseException {
+		Document doc = XmlSerializeTool.readFile(FileLocationHelper
+				.getFile("input.xml"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc, out);
+
+		doc = XmlSerializeTool.readEncryptedStream(CryptedTest.PASSWORD,
+				new ByteArrayInputStream(out.toByteArray()));
+		assertEquals("Checking root childnodes", "root", doc
+				.getDocumentElement().getNodeName());
+	}
+
+	/**
+	 * In legacy mode, streams are the same as the String based encryption.
+	 * Containers are smaller, as they are not Base64 encoded.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void legacyStreamTest() throws SysXmlBaseException {
+		Document doc = XmlSerializeTool.readFile(FileLocationHelper
+				.getFile("input.xml"));
+
+		ByteArrayOutputStream container = new ByteArrayOutputStream();
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc,
+				container);
+
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc,
+				legacy, EncryptionOptions.DEFAULT.withLegacyFormat(true));
+
+		String cypher = new String(legacy.toByteArray(),
+				StandardCharsets.US_ASCII);
+		assertEquals("Same as String based encryption", XmlSerializeTool
+				.writeString(doc), EnryptionUtil.decryptString(cypher,
+				CryptedTest.PASSWORD));
+		assertTrue("Container is smaller", container.size() < legacy.size());
+
+		doc = XmlSerializeTool.readEncryptedStream(CryptedTest.PASSWORD,
+				new ByteArrayInputStream(legacy.toByteArray()));
+		assertEquals("Checking root childnodes", "root", doc
+				.getDocumentElement().getNodeName());
+	}
+
+	/**
+	 * Files written by earlier versions are still read.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void readLegacyFileTest() throws SysXmlBaseException {
+		Document doc = XmlSerializeTool.readFile(FileLocationHelper
+				.getFile("input.xml"));
+		String plaintext = XmlSerializeTool.writeString(doc);
+		File file = FileLocationHelper.getFile("tmp/legacy.xml");
+		FileHelper.writeStringToFile(EnryptionUtil.encryptString(plaintext,
+				CryptedTest.PASSWORD), file);
+
+		assertEquals("Legacy content", plaintext, XmlSerializeTool
+				.readEncryptedFileContent(CryptedTest.PASSWORD, file));
+		doc = XmlSerializeTool.readEncryptedFile(CryptedTest.PASSWORD, file);
+		assertEquals("Checking root childnodes", "root", doc
+				.getDocumentElement().getNodeName());
+	}
+
+	/**
+	 * Encrypted Strings are written as containers and read back.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void encryptedStringTest() throws SysXmlBaseException {
+		String plaintext = "Gr\u00fc\u00dfe, <secret/>";
+		File file = FileLocationHelper.getFile("tmp/string.enc");
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				plaintext);
+
+		assertEquals("Content survives", plaintext, XmlSerializeTool
+				.readEncryptedFileContent(CryptedTest.PASSWORD, file));
+	}
+
+	/**
+	 * A vault unlocked once is saved and read again without the password.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void sessionTest() throws SysXmlBaseException {
+		File file = FileLocationHelper.getFile("tmp/session.enc");
+		file.delete();
+		VaultSession session = XmlSerializeTool.unlock(file,
+				CryptedTest.PASSWORD.toCharArray());
+		XmlSerializeTool.writeEncryptedString(session, file, "<first/>");
+		XmlSerializeTool.writeEncryptedString(session, file, "<second/>");
+		assertEquals("Session", "<second/>", XmlSerializeTool
+				.readEncryptedFileContent(session, file));
+		session.close();
+
+		session = XmlSerializeTool.unlock(file, CryptedTest.PASSWORD
+				.toCharArray());
+		Document doc = XmlSerializeTool.readEncryptedFile(session, file);
+		assertEquals("Unlocked again", "second", doc.getDocumentElement()
+				.getNodeName());
+		session.close();
+	}
+
+	/**
+	 * External entities are not loaded.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void externalEntityTest() throws Exception {
+		File secret = FileLocationHelper.getFile("tmp/entity.txt");
+		XmlSerializeTool.writeFile(XmlSerializeTool.readString("<secret/>"),
+				secret);
+		String xml = "<!DOCTYPE list [<!ENTITY xxe SYSTEM \""
+				+ secret.toURI() + "\">]><list>&xxe;</list>";
+		try {
+			Document doc = XmlSerializeTool.readString(xml);
+			assertFalse("Entity loaded", doc.getDocumentElement()
+					.getTextContent().contains("secret"));
+		} catch (SysParseException e) {
+			// rejected, fine as well
+		}
+	}
+
+	/**
+	 * Reused builders and transformers start afresh with every document.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void reuseTest() throws Exception {
+		for (String xml : new String[] { "<first/>", "<second>2</second>" }) {
+			Document doc = XmlSerializeTool.readString(xml);
+			assertTrue("Round trip", XmlSerializeTool.writeString(doc)
+					.endsWith(xml));
+		}
+		assertFalse("New document", XmlSerializeTool.createDocument()
+				.hasChildNodes());
+	}
+
+	/**
+	 * Files are read asynchronously; a wrong password fails the future.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void readAsyncTest() throws Exception {
+		File file = FileLocationHelper.getFile("tmp/async.enc");
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				"<secret/>");
+		Document doc = XmlSerializeTool.readEncryptedFileAsync(
+				CryptedTest.PASSWORD, file).get();
+		assertEquals("Async", "secret", doc.getDocumentElement()
+				.getNodeName());
+		try {
+			XmlSerializeTool.readEncryptedFileAsync("wrong", file).get();
+			fail("Wrong password not detected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SysCryptoException);
+		}
+	}
+
+	/**
+	 * Verifying a password checks the key check value in the header.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void verifyPasswordTest() throws SysXmlBaseException {
+		File file = FileLocationHelper.getFile("tmp/verify.enc");
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				"<secret/>");
+		assertTrue("Right password", XmlSerializeTool.verifyPassword(file,
+				CryptedTest.PASSWORD));
+		assertFalse("Wrong password", XmlSerializeTool.verifyPassword(file,
+				"wrong"));
+	}
+
+	/**
+	 * Passwords are changed and added by rewriting the header; the file is
+	 * converted to key slots on the first change. Saving keeps all passwords.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void changePasswordTest() throws SysXmlBaseException {
+		String plaintext = "<secret/>";
+		File file = FileLocationHelper.getFile("tmp/passwords.enc");
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				plaintext);
+
+		XmlSerializeTool.changePassword(CryptedTest.PASSWORD, file, "changed");
+		assertEquals("New password", plaintext, XmlSerializeTool
+				.readEncryptedFileContent("changed", file));
+		try {
+			XmlSerializeTool.readEncryptedFileContent(CryptedTest.PASSWORD,
+					file);
+			fail("Old password still valid");
+		} catch (SysCryptoException e) {
+			// expected
+		}
+
+		XmlSerializeTool.addPassword("changed", file, "added");
+		assertEquals("Added password", plaintext, XmlSerializeTool
+				.readEncryptedFileContent("added", file));
+
+		XmlSerializeTool.writeEncryptedString("added", file, "<saved/>");
+		assertEquals("Passwords kept", "<saved/>", XmlSerializeTool
+				.readEncryptedFileContent("changed", file));
+	}
+
+	/**
+	 * Converting a legacy file to key slots with a wrong password, which
+	 * happens to pass the padding check, fails and leaves the file as it is.
+	 *
+	 * @throws SysXmlBaseException the sys xml base exception
+	 */
+	@Test
+	public void convertWrongPasswordTest() throws SysXmlBaseException {
+		String plaintext = XmlSerializeTool.writeString(XmlSerializeTool
+				.readFile(FileLocationHelper.getFile("input.xml")));
+		File file = FileLocationHelper.getFile("tmp/convert.xml");
+		String cypher = EnryptionUtil.encryptString(plaintext,
+				CryptedTest.PASSWORD);
+		FileHelper.writeStringToFile(cypher, file);
+
+		String wrong = null;
+		for (int i = 0; wrong == null; i++) {
+			try {
+				XmlSerializeTool.readEncryptedFileContent("wrong" + i, file);
+				wrong = "wrong" + i;
+			} catch (SysCryptoException e) {
+				// bad padding, try the next one
+			}
+		}
+		try {
+			XmlSerializeTool.addPassword(wrong, file, "added");
+			fail("Wrong password not detected");
+		} catch (SysCryptoException e) {
+			// expected
+		}
+		assertEquals("File kept", cypher, FileHelper.readStringFromFile(file));
+		assertEquals("Content kept", plaintext, XmlSerializeTool
+				.readEncryptedFileContent(CryptedTest.PASSWORD, file));
+	}
+
+	/**
+	 * Saving with the password keeps the cipher scheme, key derivation and
+	 * compression of the file; options given are used instead.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void keepOptionsTest() throws Exception {
+		File file = FileLocationHelper.getFile("tmp/options.enc");
+		KdfParameters scrypt = KdfParameters.scrypt(1 << 12, 8, 2);
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				"<secret/>", EncryptionOptions.DEFAULT.withCipherScheme(
+						CipherScheme.AES_GCM_CHUNKED).withCompression(
+						Compression.DEFLATE).withKdfParameters(scrypt));
+
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD,
+				XmlSerializeTool.readString("<saved/>"), file);
+		ContainerHeader header = readHeader(file);
+		assertEquals(CipherScheme.AES_GCM_CHUNKED, header.getCipherScheme());
+		assertEquals(Compression.DEFLATE, header.getCompression());
+		assertEquals(scrypt, header.getKdfParameters());
+		assertEquals("Saved", "saved", XmlSerializeTool.readEncryptedFile(
+				CryptedTest.PASSWORD, file).getDocumentElement().getNodeName());
+
+		XmlSerializeTool.writeEncryptedString(CryptedTest.PASSWORD, file,
+				"<secret/>", EncryptionOptions.DEFAULT);
+		header = readHeader(file);
+		assertEquals(CipherScheme.AES_GCM, header.getCipherScheme());
+		assertEquals(Compression.NONE, header.getCompression());
+	}
+
+	/**
+	 * Read the container header of a file.
+	 *
+	 * @param file the file
+	 * @return the header
+	 * @throws Exception the exception
+	 */
+	private static ContainerHeader readHeader(File file) throws Exception {
+		InputStream in = FileHelper.openInputStream(file);
+		try {
+			return ContainerHeader.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reading an encrypted stream with the wrong password fails with a
+	 * SysCryptoException: the default AES-GCM container rejects the key by
+	 * its key check value, before any garbage reaches the parser.
+	 *
+	 * @throws SysXmlBaseException expected
+	 */
+	@Test(expected = SysCryptoException.class)
+	public void encryptedStreamWrongPasswordTest() throws SysXmlBaseException {
+		Document doc = XmlSerializeTool.readFile(FileLocationHelper
+				.getFile("input.xml"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XmlSerializeTool.writeEncryptedDocument(CryptedTest.PASSWORD, doc, out);
+
+		XmlSerializeTool.readEncryptedStream("wrong", new ByteArrayInputStream(
+				out.toByteArray()));
+	}
+
 }